@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * Determines whether an image with 8 bits per sample can be written
+ * as a grayscale image with a lower bit depth or as a palette image.
+ * The colors are counted with a small open addressing hash table; the
+ * analysis stops as soon as more than 256 distinct colors are found.
+ * If the image can be reduced, the pixels are converted into a single
+ * band raster holding gray levels or palette indices.
+ */
+final class PNGColorReducer {
+
+    private static final int MAX_COLORS = 256;
+    private static final int HASH_SIZE = 1024;
+    private static final int HASH_MASK = HASH_SIZE - 1;
+
+    private final int[] hashColors = new int[HASH_SIZE];
+    private final int[] hashIndices = new int[HASH_SIZE];
+    private final int[] colors = new int[MAX_COLORS];
+    private int numColors;
+
+    private WritableRaster raster;
+    private boolean gray;
+    private int bitDepth;
+    private byte[] redPalette;
+    private byte[] greenPalette;
+    private byte[] bluePalette;
+    private byte[] alphaPalette;
+
+    /**
+     * Analyzes the given raster, which must have between one and four
+     * bands of 8 bit samples, interpreted as gray, gray and alpha, RGB
+     * or RGB and alpha.
+     *
+     * @return <code>true</code> if the raster can be written with a
+     *         smaller color type or bit depth.
+     */
+    public boolean reduce(Raster ras) {
+        int numBands = ras.getNumBands();
+        if (numBands < 1 || numBands > 4) {
+            return false;
+        }
+        int minX = ras.getMinX();
+        int minY = ras.getMinY();
+        int width = ras.getWidth();
+        int height = ras.getHeight();
+
+        raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE,
+                width, height, 1, null);
+        byte[] indices = ((DataBufferByte)raster.getDataBuffer()).getData();
+
+        int[] samples = new int[width * numBands];
+        int lastColor = 0;
+        int lastIndex = -1;
+        int pos = 0;
+        for (int y = 0; y < height; y++) {
+            ras.getPixels(minX, minY + y, width, 1, samples);
+            for (int s = 0; s < samples.length; s += numBands) {
+                int color = toARGB(samples, s, numBands);
+                if (color != lastColor || lastIndex < 0) {
+                    lastIndex = lookup(color);
+                    if (lastIndex < 0) {
+                        raster = null;
+                        return false;
+                    }
+                    lastColor = color;
+                }
+                indices[pos++] = (byte)lastIndex;
+            }
+        }
+
+        gray = true;
+        for (int i = 0; i < numColors; i++) {
+            int c = colors[i];
+            int v = c & 0xff;
+            if ((c >>> 24) != 0xff || ((c >> 16) & 0xff) != v || ((c >> 8) & 0xff) != v) {
+                gray = false;
+                break;
+            }
+        }
+
+        byte[] lut = new byte[numColors];
+        if (gray) {
+            bitDepth = getGrayBitDepth();
+            if (bitDepth == 8 && numBands == 1) {
+                // Nothing to gain
+                raster = null;
+                return false;
+            }
+            int divisor = 255 / ((1 << bitDepth) - 1);
+            for (int i = 0; i < numColors; i++) {
+                lut[i] = (byte)((colors[i] & 0xff) / divisor);
+            }
+        } else {
+            bitDepth = 1;
+            while ((1 << bitDepth) < numColors) {
+                bitDepth <<= 1;
+            }
+            createPalette(lut);
+        }
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = lut[indices[i] & 0xff];
+        }
+        return true;
+    }
+
+    private static int toARGB(int[] samples, int s, int numBands) {
+        switch (numBands) {
+        case 1:
+            return 0xff000000 | (samples[s] * 0x010101);
+        case 2:
+            return (samples[s + 1] << 24) | (samples[s] * 0x010101);
+        case 3:
+            return 0xff000000 | (samples[s] << 16) | (samples[s + 1] << 8) | samples[s + 2];
+        default:
+            return (samples[s + 3] << 24) | (samples[s] << 16)
+                    | (samples[s + 1] << 8) | samples[s + 2];
+        }
+    }
+
+    /**
+     * Returns the index of a color, adding it if it has not been seen
+     * yet, or -1 if there are too many colors.
+     */
+    private int lookup(int color) {
+        int h = (color * 0x9E3779B1) >>> 22;
+        while (true) {
+            int index = hashIndices[h] - 1;
+            if (index < 0) {
+                if (numColors == MAX_COLORS) {
+                    return -1;
+                }
+                colors[numColors] = color;
+                hashColors[h] = color;
+                hashIndices[h] = ++numColors;
+                return numColors - 1;
+            } else if (hashColors[h] == color) {
+                return index;
+            }
+            h = (h + 1) & HASH_MASK;
+        }
+    }
+
+    /**
+     * Returns the smallest bit depth in which all gray values can be
+     * represented exactly.
+     */
+    private int getGrayBitDepth() {
+        boolean fits1 = true;
+        boolean fits2 = true;
+        boolean fits4 = true;
+        for (int i = 0; i < numColors; i++) {
+            int v = colors[i] & 0xff;
+            fits1 &= v == 0 || v == 255;
+            fits2 &= v % 85 == 0;
+            fits4 &= v % 17 == 0;
+        }
+        return fits1 ? 1 : (fits2 ? 2 : (fits4 ? 4 : 8));
+    }
+
+    /**
+     * Creates the palette, placing the colors which are not fully
+     * opaque first so the tRNS chunk can be as short as possible,
+     * and fills the lookup table mapping color numbers to palette
+     * indices.
+     */
+    private void createPalette(byte[] lut) {
+        redPalette = new byte[numColors];
+        greenPalette = new byte[numColors];
+        bluePalette = new byte[numColors];
+        alphaPalette = new byte[numColors];
+        int index = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < numColors; i++) {
+                int c = colors[i];
+                boolean opaque = (c >>> 24) == 0xff;
+                if (opaque == (pass == 1)) {
+                    redPalette[index] = (byte)(c >> 16);
+                    greenPalette[index] = (byte)(c >> 8);
+                    bluePalette[index] = (byte)c;
+                    alphaPalette[index] = (byte)(c >>> 24);
+                    lut[i] = (byte)index++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the single band raster holding gray levels or palette
+     * indices.
+     */
+    public Raster getRaster() {
+        return raster;
+    }
+
+    /**
+     * Returns <code>true</code> if the image can be written as a
+     * grayscale image, <code>false</code> if it needs a palette.
+     */
+    public boolean isGray() {
+        return gray;
+    }
+
+    /**
+     * Returns the bit depth of the reduced image.
+     */
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * Returns the red palette entries, or <code>null</code> if the
+     * image can be written as a grayscale image.
+     */
+    public byte[] getRedPalette() {
+        return redPalette;
+    }
+
+    /**
+     * Returns the green palette entries, or <code>null</code> if the
+     * image can be written as a grayscale image.
+     */
+    public byte[] getGreenPalette() {
+        return greenPalette;
+    }
+
+    /**
+     * Returns the blue palette entries, or <code>null</code> if the
+     * image can be written as a grayscale image.
+     */
+    public byte[] getBluePalette() {
+        return bluePalette;
+    }
+
+    /**
+     * Returns the alpha palette entries, or <code>null</code> if the
+     * image can be written as a grayscale image.
+     */
+    public byte[] getAlphaPalette() {
+        return alphaPalette;
+    }
+}
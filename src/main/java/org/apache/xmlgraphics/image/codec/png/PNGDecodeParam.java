@@ -19,6 +19,8 @@
 
 package org.apache.xmlgraphics.image.codec.png;
 
+import java.awt.Rectangle;
+
 import org.apache.xmlgraphics.image.codec.util.ImageDecodeParam;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
@@ -311,6 +313,124 @@ public class PNGDecodeParam implements ImageDecodeParam {
         this.expandGrayAlpha = expandGrayAlpha;
     }
 
+    private Rectangle sourceRegion;
+
+    /**
+     * Returns the source region to be decoded, or <code>null</code> if
+     * the whole image is decoded.
+     */
+    public Rectangle getSourceRegion() {
+        return sourceRegion == null ? null : new Rectangle(sourceRegion);
+    }
+
+    /**
+     * Sets the region of the image, in pixels, that will be decoded.
+     * The decoded image has its origin at the upper left corner of the
+     * region, clipped to the image bounds.  For non-interlaced images,
+     * rows below the region are not decompressed at all.
+     *
+     * <p> By default, or if <code>null</code> is passed, the whole image
+     * is decoded.
+     */
+    public void setSourceRegion(Rectangle sourceRegion) {
+        this.sourceRegion = sourceRegion == null ? null : new Rectangle(sourceRegion);
+    }
+
+    private int xSubsampling = 1;
+
+    private int ySubsampling = 1;
+
+    /**
+     * Returns the horizontal subsampling factor.
+     */
+    public int getXSubsampling() {
+        return xSubsampling;
+    }
+
+    /**
+     * Returns the vertical subsampling factor.
+     */
+    public int getYSubsampling() {
+        return ySubsampling;
+    }
+
+    /**
+     * Sets the subsampling factors applied while decoding.  Only every
+     * <code>xSubsampling</code>-th column and every
+     * <code>ySubsampling</code>-th row of the source region, starting
+     * with its first column and row, is stored in the decoded image, so
+     * a factor of 2 halves the width or height of the image.  The
+     * remaining pixels are never materialized.
+     *
+     * <p> The default values are 1, meaning no subsampling.  If either
+     * value is smaller than 1, an
+     * <code>IllegalArgumentException</code> will be thrown.
+     */
+    public void setSubsampling(int xSubsampling, int ySubsampling) {
+        if (xSubsampling < 1 || ySubsampling < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGDecodeParam2"));
+        }
+        this.xSubsampling = xSubsampling;
+        this.ySubsampling = ySubsampling;
+    }
+
+    private int bandHeight;
+
+    private int maxDecodedBands = 2;
+
+    /**
+     * Returns the height, in rows, of the bands in which non-interlaced
+     * images are decoded, or 0 if images are decoded at once.
+     */
+    public int getBandHeight() {
+        return bandHeight;
+    }
+
+    /**
+     * Sets the height, in rows of the decoded image, of the bands in
+     * which non-interlaced images are decoded.  If positive, the image
+     * is returned as a column of tiles of that height and each tile is
+     * decoded only when it is first requested, keeping the state of
+     * the decompressor between requests, so that the whole image is
+     * never materialized.  Tiles should be requested from top to
+     * bottom: requesting a tile above the last decoded one restarts
+     * decoding at the top of the image unless it is still retained,
+     * see <code>setMaxDecodedBands</code>.
+     *
+     * <p> The default value is 0, meaning that the whole image is
+     * decoded at once.  Interlaced images are always decoded at once.
+     * If the value is negative, an
+     * <code>IllegalArgumentException</code> will be thrown.
+     */
+    public void setBandHeight(int bandHeight) {
+        if (bandHeight < 0) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGDecodeParam3"));
+        }
+        this.bandHeight = bandHeight;
+    }
+
+    /**
+     * Returns the number of decoded bands that are retained.
+     */
+    public int getMaxDecodedBands() {
+        return maxDecodedBands;
+    }
+
+    /**
+     * Sets the number of decoded bands that are retained when an image
+     * is decoded in bands, see <code>setBandHeight</code>.  The least
+     * recently requested band is discarded first.
+     *
+     * <p> The default value is 2.  If the value is smaller than 1, an
+     * <code>IllegalArgumentException</code> will be thrown.
+     */
+    public void setMaxDecodedBands(int maxDecodedBands) {
+        if (maxDecodedBands < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGDecodeParam4"));
+        }
+        this.maxDecodedBands = maxDecodedBands;
+    }
+
     private boolean generateEncodeParam;
 
     private PNGEncodeParam encodeParam;
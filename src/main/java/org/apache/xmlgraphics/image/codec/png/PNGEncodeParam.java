@@ -26,6 +26,8 @@ import java.awt.image.SampleModel;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 
 import org.apache.xmlgraphics.image.codec.util.ImageEncodeParam;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
@@ -74,6 +76,32 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
     /** Constant for use in filtering. */
     public static final int PNG_FILTER_PAETH = 4;
 
+    /**
+     * Filter selection mode: every row is filtered with all five
+     * filter types and the one with the smallest sum of absolute
+     * differences is used.  This is the default.
+     */
+    public static final int FILTER_SELECTION_EXHAUSTIVE = 0;
+
+    /**
+     * Filter selection mode: every row is filtered with the filter
+     * type given by <code>setFilterType</code>.
+     */
+    public static final int FILTER_SELECTION_FIXED = 1;
+
+    /**
+     * Filter selection mode: the filter type is estimated from a
+     * sample of the pixels of each row and only the chosen filter is
+     * applied to the whole row.  Palette images are not filtered.
+     */
+    public static final int FILTER_SELECTION_FAST = 2;
+
+    /** Number of pixels per sampled pixel for FILTER_SELECTION_FAST. */
+    private static final int FAST_FILTER_SAMPLING = 4;
+
+    /** Default minimum number of uncompressed bytes per block for parallel compression. */
+    public static final int DEFAULT_COMPRESSION_BLOCK_SIZE = 128 * 1024;
+
 
     /**
      * Returns an instance of <code>PNGEncodeParam.Palette</code>,
@@ -600,6 +628,215 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
         return useInterlacing;
     }
 
+    // Compression
+
+    private int compressionLevel = Deflater.BEST_COMPRESSION;
+    private int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+    private int compressionThreads = 1;
+    private int compressionBlockSize = DEFAULT_COMPRESSION_BLOCK_SIZE;
+    private ExecutorService compressionExecutor;
+    private int filterSelection = FILTER_SELECTION_EXHAUSTIVE;
+    private int filterType = PNG_FILTER_PAETH;
+
+    /**
+     * Sets the deflate compression level, either
+     * <code>Deflater.DEFAULT_COMPRESSION</code> or a value between 0
+     * (no compression) and 9 (best compression).  The default is 9.
+     *
+     * @throws IllegalArgumentException if the level is out of range.
+     */
+    public void setCompressionLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION
+                && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam31"));
+        }
+        this.compressionLevel = level;
+    }
+
+    /**
+     * Returns the deflate compression level.
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate compression strategy, one of
+     * <code>Deflater.DEFAULT_STRATEGY</code>,
+     * <code>Deflater.FILTERED</code> or
+     * <code>Deflater.HUFFMAN_ONLY</code>.  The default is
+     * <code>Deflater.DEFAULT_STRATEGY</code>.
+     *
+     * @throws IllegalArgumentException if the strategy is unknown.
+     */
+    public void setCompressionStrategy(int strategy) {
+        if (strategy != Deflater.DEFAULT_STRATEGY
+                && strategy != Deflater.FILTERED
+                && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam32"));
+        }
+        this.compressionStrategy = strategy;
+    }
+
+    /**
+     * Returns the deflate compression strategy.
+     */
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    /**
+     * Sets the way the default implementation of
+     * <code>filterRow</code> chooses the filter type for each row:
+     * <code>FILTER_SELECTION_EXHAUSTIVE</code> (the default),
+     * <code>FILTER_SELECTION_FIXED</code> or
+     * <code>FILTER_SELECTION_FAST</code>.
+     *
+     * @throws IllegalArgumentException if the mode is unknown.
+     */
+    public void setFilterSelection(int mode) {
+        if (mode != FILTER_SELECTION_EXHAUSTIVE
+                && mode != FILTER_SELECTION_FIXED
+                && mode != FILTER_SELECTION_FAST) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam33"));
+        }
+        this.filterSelection = mode;
+    }
+
+    /**
+     * Returns the filter selection mode.
+     */
+    public int getFilterSelection() {
+        return filterSelection;
+    }
+
+    /**
+     * Sets the filter type used with
+     * <code>FILTER_SELECTION_FIXED</code>, one of the
+     * <code>PNG_FILTER_*</code> constants.  The default is
+     * <code>PNG_FILTER_PAETH</code>.
+     *
+     * @throws IllegalArgumentException if the filter type is unknown.
+     */
+    public void setFilterType(int filterType) {
+        if (filterType < PNG_FILTER_NONE || filterType > PNG_FILTER_PAETH) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam34"));
+        }
+        this.filterType = filterType;
+    }
+
+    /**
+     * Returns the filter type used with
+     * <code>FILTER_SELECTION_FIXED</code>.
+     */
+    public int getFilterType() {
+        return filterType;
+    }
+
+    /**
+     * Sets the number of threads used to filter and compress the
+     * image data.  With more than one thread, the rows of a
+     * non-interlaced image are split into blocks which are filtered
+     * and deflated concurrently.  Each block ends with a sync flush
+     * so the blocks can be concatenated into a single zlib stream.
+     * At most this many blocks are compressed at the same time, on
+     * the executor set with <code>setCompressionExecutor</code>.
+     * The default is 1, i.e. no parallel compression.
+     *
+     * <p> In parallel mode, <code>filterRow</code> is called
+     * concurrently from several threads, so subclasses overriding it
+     * must not keep state between calls.
+     *
+     * @throws IllegalArgumentException if <code>threads</code> is
+     *         smaller than 1.
+     */
+    public void setCompressionThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam29"));
+        }
+        this.compressionThreads = threads;
+    }
+
+    /**
+     * Returns the number of threads used to filter and compress the
+     * image data.
+     */
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets the minimum number of uncompressed bytes per block when
+     * compressing in parallel.  Blocks always consist of whole rows.
+     * Smaller blocks give more parallelism but a slightly larger
+     * output, since the compressor starts afresh for every block.
+     * The output only depends on the block size, not on the number
+     * of threads.
+     *
+     * @throws IllegalArgumentException if <code>blockSize</code> is
+     *         smaller than 1.
+     */
+    public void setCompressionBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam30"));
+        }
+        this.compressionBlockSize = blockSize;
+    }
+
+    /**
+     * Returns the minimum number of uncompressed bytes per block when
+     * compressing in parallel.
+     */
+    public int getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    /**
+     * Sets the executor the blocks are compressed on in parallel
+     * mode.  The executor is not shut down by the encoder, so it can
+     * be shared between encoders.  If <code>null</code> (the default),
+     * the common fork/join pool is used.
+     */
+    public void setCompressionExecutor(ExecutorService executor) {
+        this.compressionExecutor = executor;
+    }
+
+    /**
+     * Returns the executor the blocks are compressed on in parallel
+     * mode, or <code>null</code> if the common fork/join pool is used.
+     */
+    public ExecutorService getCompressionExecutor() {
+        return compressionExecutor;
+    }
+
+    // Color reduction
+
+    private boolean colorReduction;
+
+    /**
+     * Turns automatic color reduction on or off.  When enabled, the
+     * encoder analyzes images with 8 bits per sample and writes them
+     * as grayscale images with a bit depth of 1, 2, 4 or 8 if all
+     * pixels are opaque gray values that can be represented exactly
+     * in that bit depth, or as palette images if they use at most 256
+     * distinct colors.  The reduction is skipped if the image uses an
+     * <code>IndexColorModel</code>, or if a background, transparency,
+     * significant bits, palette histogram, bit depth, bit shift or ICC
+     * profile has been set, as these depend on the original color
+     * type.  The
+     * default is <code>false</code>.
+     */
+    public void setColorReduction(boolean colorReduction) {
+        this.colorReduction = colorReduction;
+    }
+
+    /**
+     * Returns <code>true</code> if automatic color reduction is enabled.
+     */
+    public boolean getColorReduction() {
+        return colorReduction;
+    }
+
     // bKGD chunk - delegate to subclasses
 
     // In JAI 1.0, 'backgroundSet' was private.  The JDK 1.2 compiler
@@ -1345,11 +1582,17 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
      * value of the method should contain the filtered data.  The
      * return value will also be used as the filter type.
      *
-     * <p> The default implementation of the method performs a trial
+     * <p> The default implementation of the method depends on the
+     * filter selection mode.  In the default mode,
+     * <code>FILTER_SELECTION_EXHAUSTIVE</code>, it performs a trial
      * encoding with each of the filter types, and computes the sum of
      * absolute values of the differences between the raw bytes of the
      * current row and the predicted values.  The index of the filter
      * producing the smallest result is returned.
+     * <code>FILTER_SELECTION_FIXED</code> always applies the filter
+     * type set with <code>setFilterType</code>, and
+     * <code>FILTER_SELECTION_FAST</code> applies the filter type that
+     * performs best on a sample of the pixels of the row.
      *
      * <p> As an example, to perform only 'sub' filtering, this method
      * could be implemented (non-optimally) as follows:
@@ -1391,6 +1634,139 @@ public abstract class PNGEncodeParam implements ImageEncodeParam {
                          byte[][] scratchRows,
                          int bytesPerRow,
                          int bytesPerPixel) {
+        int type;
+        switch (filterSelection) {
+        case FILTER_SELECTION_FIXED:
+            type = filterType;
+            break;
+        case FILTER_SELECTION_FAST:
+            type = estimateFilterType(currRow, prevRow, bytesPerRow, bytesPerPixel);
+            break;
+        default:
+            return filterRowExhaustive(currRow, prevRow, scratchRows,
+                                       bytesPerRow, bytesPerPixel);
+        }
+        applyFilter(type, currRow, prevRow, scratchRows[type],
+                    bytesPerRow, bytesPerPixel);
+        return type;
+    }
+
+    /**
+     * Chooses the filter type for a row by comparing the sums of the
+     * absolute values of the filtered bytes of every
+     * <code>FAST_FILTER_SAMPLING</code>th pixel.
+     */
+    private int estimateFilterType(byte[] currRow,
+                                   byte[] prevRow,
+                                   int bytesPerRow,
+                                   int bytesPerPixel) {
+        if (this instanceof Palette) {
+            // Filtering rarely pays off for palette images
+            return PNG_FILTER_NONE;
+        }
+        int none = 0;
+        int sub = 0;
+        int up = 0;
+        int average = 0;
+        int paeth = 0;
+        int end = bytesPerRow + bytesPerPixel;
+        int step = bytesPerPixel * FAST_FILTER_SAMPLING;
+        for (int p = bytesPerPixel; p < end; p += step) {
+            int pixelEnd = Math.min(p + bytesPerPixel, end);
+            for (int i = p; i < pixelEnd; i++) {
+                int curr   = currRow[i] & 0xff;
+                int left   = currRow[i - bytesPerPixel] & 0xff;
+                int upper  = prevRow[i] & 0xff;
+                int upleft = prevRow[i - bytesPerPixel] & 0xff;
+
+                none    += abs((byte)curr);
+                sub     += abs((byte)(curr - left));
+                up      += abs((byte)(curr - upper));
+                average += abs((byte)(curr - ((left + upper) >> 1)));
+                paeth   += abs((byte)(curr - paethPredictor(left, upper, upleft)));
+            }
+        }
+        int type = PNG_FILTER_NONE;
+        int min = none;
+        if (sub < min) {
+            min = sub;
+            type = PNG_FILTER_SUB;
+        }
+        if (up < min) {
+            min = up;
+            type = PNG_FILTER_UP;
+        }
+        if (average < min) {
+            min = average;
+            type = PNG_FILTER_AVERAGE;
+        }
+        if (paeth < min) {
+            type = PNG_FILTER_PAETH;
+        }
+        return type;
+    }
+
+    /**
+     * Applies a given filter type to a row.  This routine is included
+     * as a convenience to subclasses that override the
+     * <code>filterRow</code> method.  The arrays are laid out as
+     * described for <code>filterRow</code>.
+     *
+     * @param filterType one of the <code>PNG_FILTER_*</code> constants.
+     * @param currRow the current row.
+     * @param prevRow the previous row.
+     * @param filteredRow the array receiving the filtered row.
+     * @param bytesPerRow the number of bytes in the image row.
+     * @param bytesPerPixel the number of bytes per pixel, rounded up.
+     */
+    public static void applyFilter(int filterType,
+                                   byte[] currRow,
+                                   byte[] prevRow,
+                                   byte[] filteredRow,
+                                   int bytesPerRow,
+                                   int bytesPerPixel) {
+        int end = bytesPerRow + bytesPerPixel;
+        switch (filterType) {
+        case PNG_FILTER_NONE:
+            System.arraycopy(currRow, bytesPerPixel,
+                             filteredRow, bytesPerPixel,
+                             bytesPerRow);
+            break;
+        case PNG_FILTER_SUB:
+            for (int i = bytesPerPixel; i < end; i++) {
+                filteredRow[i] = (byte)(currRow[i] - currRow[i - bytesPerPixel]);
+            }
+            break;
+        case PNG_FILTER_UP:
+            for (int i = bytesPerPixel; i < end; i++) {
+                filteredRow[i] = (byte)(currRow[i] - prevRow[i]);
+            }
+            break;
+        case PNG_FILTER_AVERAGE:
+            for (int i = bytesPerPixel; i < end; i++) {
+                int left = currRow[i - bytesPerPixel] & 0xff;
+                int up = prevRow[i] & 0xff;
+                filteredRow[i] = (byte)(currRow[i] - ((left + up) >> 1));
+            }
+            break;
+        case PNG_FILTER_PAETH:
+            for (int i = bytesPerPixel; i < end; i++) {
+                int left = currRow[i - bytesPerPixel] & 0xff;
+                int up = prevRow[i] & 0xff;
+                int upleft = prevRow[i - bytesPerPixel] & 0xff;
+                filteredRow[i] = (byte)(currRow[i] - paethPredictor(left, up, upleft));
+            }
+            break;
+        default:
+            throw new IllegalArgumentException(PropertyUtil.getString("PNGEncodeParam34"));
+        }
+    }
+
+    private int filterRowExhaustive(byte[] currRow,
+                                    byte[] prevRow,
+                                    byte[][] scratchRows,
+                                    int bytesPerRow,
+                                    int bytesPerPixel) {
 
         int [] badness = {0, 0, 0, 0, 0};
         int curr;
@@ -30,12 +30,22 @@ import java.io.DataOutput;
 import java.io.DataOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Deque;
 import java.util.GregorianCalendar;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
@@ -297,6 +307,7 @@ public class PNGImageEncoder extends ImageEncoderImpl {
     private PNGEncodeParam param;
 
     private RenderedImage image;
+    private Raster imageData;
     private int width;
     private int height;
     private int bitDepth;
@@ -349,32 +360,13 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         }
     }
 
-    private byte[] prevRow;
-    private byte[] currRow;
-
-    private byte[][] filteredRows;
-
     private static int clamp(int val, int maxValue) {
         return (val > maxValue) ? maxValue : val;
     }
 
-    private void encodePass(OutputStream os, Raster ras,
-                            int xOffset,     int yOffset,
-                            int xSkip,       int ySkip)
-        throws IOException {
-        int minX   = ras.getMinX();
-        int minY   = ras.getMinY();
-        int width  = ras.getWidth();
-        int height = ras.getHeight();
-
-        xOffset *= numBands;
-        xSkip   *= numBands;
-
+    private int getBytesPerRow(int numSamples, int xOffset, int xSkip) {
         int samplesPerByte = 8 / bitDepth;
 
-        int numSamples = width * numBands;
-        int[] samples = new int[numSamples];
-
         int pixels = (numSamples - xOffset + xSkip - 1) / xSkip;
         int bytesPerRow = pixels * numBands;
         if (bitDepth < 8) {
@@ -382,74 +374,106 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         } else if (bitDepth == 16) {
             bytesPerRow *= 2;
         }
+        return bytesPerRow;
+    }
 
-        if (bytesPerRow == 0) {
-            return;
-        }
-
-        currRow = new byte[bytesPerRow + bpp];
-        prevRow = new byte[bytesPerRow + bpp];
-
-        filteredRows = new byte[5][bytesPerRow + bpp];
+    /**
+     * Packs the samples of one row of the raster into <code>currRow</code>,
+     * starting at index <code>bpp</code>. <code>xOffset</code> and
+     * <code>xSkip</code> are given in samples, not in pixels.
+     */
+    private void packRow(Raster ras, int row,
+                         int xOffset, int xSkip,
+                         int[] samples, byte[] currRow) {
+        int minX   = ras.getMinX();
+        int width  = ras.getWidth();
 
+        int samplesPerByte = 8 / bitDepth;
+        int numSamples = width * numBands;
         int maxValue = (1 << bitDepth) - 1;
 
-        for (int row = minY + yOffset; row < minY + height; row += ySkip) {
-            ras.getPixels(minX, row, width, 1, samples);
+        ras.getPixels(minX, row, width, 1, samples);
 
-            if (compressGray) {
-                int shift = 8 - bitDepth;
-                for (int i = 0; i < width; i++) {
-                    samples[i] >>= shift;
-                }
+        if (compressGray) {
+            int shift = 8 - bitDepth;
+            for (int i = 0; i < width; i++) {
+                samples[i] >>= shift;
             }
+        }
 
-            int count = bpp; // leave first 'bpp' bytes zero
-            int pos = 0;
-            int tmp = 0;
-
-            switch (bitDepth) {
-            case 1: case 2: case 4:
-                // Image can only have a single band
+        int count = bpp; // leave first 'bpp' bytes zero
+        int pos = 0;
+        int tmp = 0;
 
-                int mask = samplesPerByte - 1;
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    int val = clamp(samples[s] >> bitShift, maxValue);
-                    tmp = (tmp << bitDepth) | val;
+        switch (bitDepth) {
+        case 1: case 2: case 4:
+            // Image can only have a single band
 
-                    if (pos++  == mask) {
-                        currRow[count++] = (byte)tmp;
-                        tmp = 0;
-                        pos = 0;
-                    }
-                }
+            int mask = samplesPerByte - 1;
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                int val = clamp(samples[s] >> bitShift, maxValue);
+                tmp = (tmp << bitDepth) | val;
 
-                // Left shift the last byte
-                if (pos != 0) {
-                    tmp <<= (samplesPerByte - pos) * bitDepth;
+                if (pos++  == mask) {
                     currRow[count++] = (byte)tmp;
+                    tmp = 0;
+                    pos = 0;
                 }
-                break;
+            }
 
-            case 8:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < numBands; b++) {
-                        currRow[count++] =
-                            (byte)clamp(samples[s + b] >> bitShift, maxValue);
-                    }
+            // Left shift the last byte
+            if (pos != 0) {
+                tmp <<= (samplesPerByte - pos) * bitDepth;
+                currRow[count++] = (byte)tmp;
+            }
+            break;
+
+        case 8:
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                for (int b = 0; b < numBands; b++) {
+                    currRow[count++] =
+                        (byte)clamp(samples[s + b] >> bitShift, maxValue);
                 }
-                break;
-
-            case 16:
-                for (int s = xOffset; s < numSamples; s += xSkip) {
-                    for (int b = 0; b < numBands; b++) {
-                        int val = clamp(samples[s + b] >> bitShift, maxValue);
-                        currRow[count++] = (byte)(val >> 8);
-                        currRow[count++] = (byte)(val & 0xff);
-                    }
+            }
+            break;
+
+        case 16:
+            for (int s = xOffset; s < numSamples; s += xSkip) {
+                for (int b = 0; b < numBands; b++) {
+                    int val = clamp(samples[s + b] >> bitShift, maxValue);
+                    currRow[count++] = (byte)(val >> 8);
+                    currRow[count++] = (byte)(val & 0xff);
                 }
-                break;
             }
+            break;
+        }
+    }
+
+    private void encodePass(OutputStream os, Raster ras,
+                            int xOffset,     int yOffset,
+                            int xSkip,       int ySkip)
+        throws IOException {
+        int minY   = ras.getMinY();
+        int height = ras.getHeight();
+
+        xOffset *= numBands;
+        xSkip   *= numBands;
+
+        int numSamples = ras.getWidth() * numBands;
+        int bytesPerRow = getBytesPerRow(numSamples, xOffset, xSkip);
+
+        if (bytesPerRow == 0) {
+            return;
+        }
+
+        int[] samples = new int[numSamples];
+        byte[] currRow = new byte[bytesPerRow + bpp];
+        byte[] prevRow = new byte[bytesPerRow + bpp];
+
+        byte[][] filteredRows = new byte[5][bytesPerRow + bpp];
+
+        for (int row = minY + yOffset; row < minY + height; row += ySkip) {
+            packRow(ras, row, xOffset, xSkip, samples, currRow);
 
             // Perform filtering
             int filterType = param.filterRow(currRow, prevRow,
@@ -466,10 +490,195 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         }
     }
 
+    /**
+     * Filters and compresses a block of consecutive rows for parallel
+     * compression.  The block is deflated without zlib wrapper and
+     * ends with a sync flush (or the final block), so the compressed
+     * blocks can simply be concatenated.
+     */
+    private class BlockCompressor implements Callable<BlockCompressor> {
+
+        private final Raster ras;
+        private final int startRow;
+        private final int endRow;
+        private final boolean last;
+        private final int bytesPerRow;
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private long adler;
+        private long length;
+
+        BlockCompressor(Raster ras, int startRow, int endRow, boolean last,
+                        int bytesPerRow) {
+            this.ras = ras;
+            this.startRow = startRow;
+            this.endRow = endRow;
+            this.last = last;
+            this.bytesPerRow = bytesPerRow;
+        }
+
+        public BlockCompressor call() throws IOException {
+            int[] samples = new int[ras.getWidth() * numBands];
+            byte[] currRow = new byte[bytesPerRow + bpp];
+            byte[] prevRow = new byte[bytesPerRow + bpp];
+            byte[][] filteredRows = new byte[5][bytesPerRow + bpp];
+
+            if (startRow > ras.getMinY()) {
+                // Filtering of the first row refers to the previous one
+                packRow(ras, startRow - 1, 0, numBands, samples, prevRow);
+            }
+
+            Deflater deflater = createDeflater(true);
+            Adler32 checksum = new Adler32();
+            DeflaterOutputStream dos = new DeflaterOutputStream(data, deflater, 8192, true);
+            CheckedOutputStream cos = new CheckedOutputStream(dos, checksum);
+            try {
+                for (int row = startRow; row < endRow; row++) {
+                    packRow(ras, row, 0, numBands, samples, currRow);
+                    int filterType = param.filterRow(currRow, prevRow,
+                                                     filteredRows,
+                                                     bytesPerRow, bpp);
+                    cos.write(filterType);
+                    cos.write(filteredRows[filterType], bpp, bytesPerRow);
+
+                    byte[] swap = currRow;
+                    currRow = prevRow;
+                    prevRow = swap;
+                }
+                if (last) {
+                    dos.finish();
+                } else {
+                    dos.flush(); // sync flush
+                }
+            } finally {
+                deflater.end();
+            }
+            this.adler = checksum.getValue();
+            this.length = (long)(endRow - startRow) * (bytesPerRow + 1);
+            return this;
+        }
+    }
+
+    private Deflater createDeflater(boolean nowrap) {
+        Deflater deflater = new Deflater(param.getCompressionLevel(), nowrap);
+        deflater.setStrategy(param.getCompressionStrategy());
+        return deflater;
+    }
+
+    private void encodeParallel(OutputStream os, Raster ras)
+        throws IOException {
+        int numSamples = ras.getWidth() * numBands;
+        int bytesPerRow = getBytesPerRow(numSamples, 0, numBands);
+        int blockSize = param.getCompressionBlockSize();
+        int rowsPerBlock = Math.max(1, (blockSize + bytesPerRow) / (bytesPerRow + 1));
+        int threads = param.getCompressionThreads();
+        // Limits the number of blocks compressed at the same time, and
+        // with it the memory held by blocks waiting to be written
+        int maxPending = threads;
+
+        // zlib header
+        int level = param.getCompressionLevel();
+        int cmf = 0x78;
+        int flg = ((level < 0 || level == 6) ? 2 : (level < 2 ? 0 : (level < 6 ? 1 : 3))) << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        os.write(cmf);
+        os.write(flg);
+
+        ExecutorService executor = param.getCompressionExecutor();
+        if (executor == null) {
+            executor = ForkJoinPool.commonPool();
+        }
+        Deque<Future<BlockCompressor>> pending = new ArrayDeque<Future<BlockCompressor>>();
+        long adler = 1;
+        try {
+            int minY = ras.getMinY();
+            int maxY = minY + ras.getHeight();
+            for (int y = minY; y < maxY; y += rowsPerBlock) {
+                int end = Math.min(y + rowsPerBlock, maxY);
+                pending.add(executor.submit(
+                        new BlockCompressor(ras, y, end, end == maxY, bytesPerRow)));
+                if (pending.size() >= maxPending) {
+                    adler = writeBlock(os, pending.removeFirst(), adler);
+                }
+            }
+            while (!pending.isEmpty()) {
+                adler = writeBlock(os, pending.removeFirst(), adler);
+            }
+        } finally {
+            // Only non-empty if writing a block failed
+            for (Future<BlockCompressor> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        // zlib trailer: Adler-32 checksum of the uncompressed data
+        os.write((int)(adler >> 24) & 0xff);
+        os.write((int)(adler >> 16) & 0xff);
+        os.write((int)(adler >> 8) & 0xff);
+        os.write((int)adler & 0xff);
+    }
+
+    private static long writeBlock(OutputStream os, Future<BlockCompressor> future,
+                                   long adler) throws IOException {
+        BlockCompressor block;
+        try {
+            block = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+        block.data.writeTo(os);
+        return combineAdler32(adler, block.adler, block.length);
+    }
+
+    /**
+     * Combines two Adler-32 checksums into the checksum of the
+     * concatenated data (as adler32_combine() in zlib).
+     */
+    static long combineAdler32(long adler1, long adler2, long len2) {
+        final long base = 65521;
+        long rem = len2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private Raster getImageData() {
+        if (imageData == null) {
+            imageData = image.getData(new Rectangle(image.getMinX(),
+                                                    image.getMinY(),
+                                                    image.getWidth(),
+                                                    image.getHeight()));
+        }
+        return imageData;
+    }
+
     private void writeIDAT() throws IOException {
         IDATOutputStream ios = new IDATOutputStream(dataOutput, 8192);
-        DeflaterOutputStream dos =
-            new DeflaterOutputStream(ios, new Deflater(9));
 
         // Future work - don't convert entire image to a Raster It
         // might seem that you could just call image.getData() but
@@ -478,10 +687,7 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         // you get back here appears larger than it should.
         // This solves that problem by bounding the raster to the
         // image's bounds...
-        Raster ras = image.getData(new Rectangle(image.getMinX(),
-                                                 image.getMinY(),
-                                                 image.getWidth(),
-                                                 image.getHeight()));
+        Raster ras = getImageData();
         // System.out.println("Image: [" +
         //                    image.getMinY()  + ", " +
         //                    image.getMinX()  + ", " +
@@ -505,6 +711,18 @@ public class PNGImageEncoder extends ImageEncoderImpl {
                                   bandList);
         }
 
+        if (!interlace && param.getCompressionThreads() > 1
+                && ras.getWidth() > 0 && ras.getHeight() > 0) {
+            encodeParallel(ios, ras);
+            ios.flush();
+            ios.close();
+            return;
+        }
+
+        Deflater deflater = createDeflater(false);
+        DeflaterOutputStream dos =
+            new DeflaterOutputStream(ios, deflater);
+
         if (interlace) {
             // Interlacing pass 1
             encodePass(dos, ras, 0, 0, 8, 8);
@@ -526,6 +744,7 @@ public class PNGImageEncoder extends ImageEncoderImpl {
 
         dos.finish();
         dos.close();
+        deflater.end();
         ios.flush();
         ios.close();
     }
@@ -912,6 +1131,53 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         return param;
     }
 
+    /**
+     * Checks whether automatic color reduction is requested and
+     * possible for the current image and parameters, and if so
+     * replaces the image data with gray levels or palette indices.
+     */
+    private boolean reduceColors(ColorModel colorModel, int[] sampleSize) {
+        if (param == null || !param.getColorReduction()
+                || colorModel instanceof IndexColorModel
+                || param.isBackgroundSet()
+                || param.isTransparencySet()
+                || param.isSignificantBitsSet()
+                || param.isPaletteHistogramSet()
+                || param.isICCProfileDataSet()) {
+            return false;
+        }
+        if (param instanceof PNGEncodeParam.Gray) {
+            PNGEncodeParam.Gray paramg = (PNGEncodeParam.Gray)param;
+            if (paramg.isBitDepthSet() || paramg.isBitShiftSet()) {
+                return false;
+            }
+        }
+        for (int size : sampleSize) {
+            if (size != 8) {
+                return false;
+            }
+        }
+
+        PNGColorReducer reducer = new PNGColorReducer();
+        if (!reducer.reduce(getImageData())) {
+            return false;
+        }
+        this.imageData = reducer.getRaster();
+        this.bitDepth = reducer.getBitDepth();
+        this.numBands = 1;
+        this.bpp = 1;
+        if (reducer.isGray()) {
+            this.colorType = PNG_COLOR_GRAY;
+        } else {
+            redPalette = reducer.getRedPalette();
+            greenPalette = reducer.getGreenPalette();
+            bluePalette = reducer.getBluePalette();
+            alphaPalette = reducer.getAlphaPalette();
+            this.colorType = PNG_COLOR_PALETTE;
+        }
+        return true;
+    }
+
     /**
      * This method encodes a <code>RenderedImage</code> into PNG.
      * The stream into which the PNG is dumped is not closed at
@@ -921,6 +1187,7 @@ public class PNGImageEncoder extends ImageEncoderImpl {
     @Override
     public void encode(RenderedImage im) throws IOException {
         this.image = im;
+        this.imageData = null;
         this.width = image.getWidth();
         this.height = image.getHeight();
 
@@ -972,7 +1239,9 @@ public class PNGImageEncoder extends ImageEncoderImpl {
         this.bpp = numBands * ((bitDepth == 16) ? 2 : 1);
 
         ColorModel colorModel = image.getColorModel();
-        if (colorModel instanceof IndexColorModel) {
+        if (reduceColors(colorModel, sampleSize)) {
+            // Image data replaced by gray levels or palette indices
+        } else if (colorModel instanceof IndexColorModel) {
             if (bitDepth < 1 || bitDepth > 8) {
                 throw new RuntimeException(PropertyUtil.getString("PNGImageEncoder2"));
             }
@@ -26,35 +26,40 @@ import java.awt.Transparency;
 import java.awt.color.ColorSpace;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferUShort;
 import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import org.apache.xmlgraphics.image.GraphicsUtil;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 import org.apache.xmlgraphics.image.rendered.AbstractRed;
 import org.apache.xmlgraphics.image.rendered.CachableRed;
+import org.apache.xmlgraphics.image.rendered.TileScheduler;
 
 // CSOFF: ConstantName
 // CSOFF: InnerAssignment
@@ -285,8 +290,10 @@ public class PNGRed extends AbstractRed {
     private static final int POST_ADD_GRAY_TRANS_EXP =
         POST_ADD_GRAY_TRANS | POST_EXP_MASK;
 
-    private List<InputStream> streamVec = new ArrayList<InputStream>();
-    private DataInputStream dataStream;
+    // The compressed image data of the IDAT chunks and their decompressor
+    private List<byte[]> idatChunks = new ArrayList<byte[]>();
+    private int nextChunk;
+    private Inflater inflater;
 
     private int bytesPerPixel; // number of bytes per input pixel
     private int inputBands;
@@ -302,6 +309,26 @@ public class PNGRed extends AbstractRed {
     private List ztextStrings = new ArrayList();
 
     private WritableRaster theTile;
+
+    // The decoded part of the source image and the subsampling factors
+    private Rectangle sourceRegion;
+    private int xSubsampling;
+    private int ySubsampling;
+    private boolean subsampled;
+
+    // Non-interlaced images may be decoded lazily in bands of rows, in
+    // which case the decoded bands and the next source row are kept
+    private int bandHeight;
+    private int maxBands;
+    private Map<Integer, WritableRaster> bands;
+    private int nextRow;
+
+    // State of the row decoder
+    private final byte[] filterType = new byte[1];
+    private byte[] currRow;
+    private byte[] priorRow;
+    private WritableRaster passRow;
+    private WritableRaster subsampledRow;
     private Rectangle bounds;
 
     /** A Hashtable containing the image properties. */
@@ -382,6 +409,10 @@ public class PNGRed extends AbstractRed {
             output8BitGray = true;
         }
         this.generateEncodeParam = decodeParam.getGenerateEncodeParam();
+        this.xSubsampling = decodeParam.getXSubsampling();
+        this.ySubsampling = decodeParam.getYSubsampling();
+        this.bandHeight = decodeParam.getBandHeight();
+        this.maxBands = decodeParam.getMaxDecodedBands();
 
         if (emitProperties) {
             properties.put("file_type", "PNG v. 1.0");
@@ -405,7 +436,7 @@ public class PNGRed extends AbstractRed {
                 parse_PLTE_chunk(chunk);
             } else if (chunkType.equals("IDAT")) {
                 chunk = readChunk(distream);
-                streamVec.add(new ByteArrayInputStream(chunk.getData()));
+                idatChunks.add(chunk.getData());
             } else if (chunkType.equals("IEND")) {
                 chunk = readChunk(distream);
                 try {
@@ -523,6 +554,19 @@ public class PNGRed extends AbstractRed {
 
         bounds = new Rectangle(0, 0, width, height);
 
+        sourceRegion = decodeParam.getSourceRegion();
+        if (sourceRegion == null) {
+            sourceRegion = new Rectangle(bounds);
+        } else {
+            sourceRegion = sourceRegion.intersection(bounds);
+            if (sourceRegion.isEmpty()) {
+                String msg = PropertyUtil.getString("PNGImageDecoder20");
+                throw new IllegalArgumentException(msg);
+            }
+        }
+        subsampled = !sourceRegion.equals(bounds)
+            || xSubsampling != 1 || ySubsampling != 1;
+
         bitDepth = chunk.getInt1(8);
 
         int validMask = (1 << 1) | (1 << 2) | (1 << 4) | (1 << 8) | (1 << 16);
@@ -749,11 +793,7 @@ public class PNGRed extends AbstractRed {
         }
 
         // Parse prior IDAT chunks
-        InputStream seqStream =
-            new SequenceInputStream(Collections.enumeration(streamVec));
-        InputStream infStream =
-            new InflaterInputStream(seqStream, new Inflater());
-        dataStream = new DataInputStream(infStream);
+        startInflating();
 
         // Create an empty WritableRaster
         int depth = bitDepth;
@@ -764,14 +804,17 @@ public class PNGRed extends AbstractRed {
         if ((colorType == PNG_COLOR_PALETTE) && expandPalette) {
             depth = 8;
         }
-        int width  = bounds.width;
-        int height = bounds.height;
+        int width  = (sourceRegion.width + xSubsampling - 1) / xSubsampling;
+        int height = (sourceRegion.height + ySubsampling - 1) / ySubsampling;
 
         int bytesPerRow = (outputBands * width * depth + 7) / 8;
         int scanlineStride =
             (depth == 16) ? (bytesPerRow / 2) : bytesPerRow;
 
-        theTile = createRaster(width, height, outputBands,
+        // Non-interlaced images are decoded lazily if a band height is set
+        boolean lazy = bandHeight > 0 && bandHeight < height
+            && interlaceMethod == 0;
+        theTile = createRaster(width, lazy ? bandHeight : height, outputBands,
                                scanlineStride,
                                depth);
 
@@ -784,15 +827,20 @@ public class PNGRed extends AbstractRed {
             initGrayLut(bitDepth);
         }
 
-        decodeImage(interlaceMethod == 1);
-
-        // Free resources associated with compressed data.
-        dataStream.close();
-        infStream.close();
-        seqStream.close();
-        streamVec = null;
-
         SampleModel sm = theTile.getSampleModel();
+        if (lazy) {
+            // Bands are decoded by getTile(), keep the compressed data
+            bands = createBandCache();
+            theTile = null;
+        } else {
+            try {
+                decodeImage(interlaceMethod == 1);
+            } finally {
+                // Free resources associated with compressed data.
+                inflater.end();
+                idatChunks = null;
+            }
+        }
         ColorModel  cm;
 
         if ((colorType == PNG_COLOR_PALETTE) && !expandPalette) {
@@ -823,7 +871,8 @@ public class PNGRed extends AbstractRed {
                 createComponentColorModel(sm);
         }
 
-        init((CachableRed)null, bounds, cm, sm, 0, 0, properties);
+        init((CachableRed)null, new Rectangle(0, 0, width, height), cm, sm,
+             0, 0, properties);
     }
 
     private static final int[] GrayBits8 = { 8 };
@@ -1404,23 +1453,24 @@ public class PNGRed extends AbstractRed {
     // Data filtering methods
 
     private static void decodeSubFilter(byte[] curr, int count, int bpp) {
+        if (bpp == 1) {
+            // Carry the previous byte instead of reading it back
+            byte val = curr[0];
+            for (int i = 1; i < count; i++) {
+                val += curr[i];
+                curr[i] = val;
+            }
+            return;
+        }
         for (int i = bpp; i < count; i++) {
-            int val;
-
-            val = curr[i] & 0xff;
-            val += curr[i - bpp] & 0xff;
-
-            curr[i] = (byte)val;
+            curr[i] += curr[i - bpp];
         }
     }
 
     private static void decodeUpFilter(byte[] curr, byte[] prev,
                                        int count) {
         for (int i = 0; i < count; i++) {
-            int raw   = curr[i] & 0xff;
-            int prior = prev[i] & 0xff;
-
-            curr[i] = (byte)(raw + prior);
+            curr[i] += prev[i];
         }
     }
 
@@ -1442,42 +1492,34 @@ public class PNGRed extends AbstractRed {
         }
     }
 
-    private static int paethPredictor(int a, int b, int c) {
-        int p = a + b - c;
-        int pa = Math.abs(p - a);
-        int pb = Math.abs(p - b);
-        int pc = Math.abs(p - c);
-
-        if ((pa <= pb) && (pa <= pc)) {
-            return a;
-        } else if (pb <= pc) {
-            return b;
-        } else {
-            return c;
-        }
-    }
-
     private static void decodePaethFilter(byte[] curr, byte[] prev,
                                           int count, int bpp) {
-        int priorPixel;
-        int priorRowPixel;
-
         for (int i = 0; i < bpp; i++) {
-            int raw = curr[i] & 0xff;
-            int priorRow = prev[i] & 0xff;
-
-            curr[i] = (byte)(raw + priorRow);
+            curr[i] += prev[i];
         }
 
+        // The predictor is inlined, with p - a = b - c and p - b = a - c
         for (int i = bpp; i < count; i++) {
-            int raw = curr[i] & 0xff;
-            priorPixel = curr[i - bpp] & 0xff;
+            int priorPixel = curr[i - bpp] & 0xff;
             int priorRow = prev[i] & 0xff;
-            priorRowPixel = prev[i - bpp] & 0xff;
-
-            curr[i] = (byte)(raw + paethPredictor(priorPixel,
-                                                  priorRow,
-                                                  priorRowPixel));
+            int priorRowPixel = prev[i - bpp] & 0xff;
+
+            int pa = priorRow - priorRowPixel;
+            int pb = priorPixel - priorRowPixel;
+            int pc = pa + pb;
+            pa = (pa < 0) ? -pa : pa;
+            pb = (pb < 0) ? -pb : pb;
+            pc = (pc < 0) ? -pc : pc;
+
+            int predictor;
+            if ((pa <= pb) && (pa <= pc)) {
+                predictor = priorPixel;
+            } else if (pb <= pc) {
+                predictor = priorRow;
+            } else {
+                predictor = priorRowPixel;
+            }
+            curr[i] += (byte)predictor;
         }
     }
 
@@ -1489,7 +1531,7 @@ public class PNGRed extends AbstractRed {
 
         // Create an array suitable for holding one pixel
         int[] ps = src.getPixel(0, 0, (int[])null);
-        int[] pd = dst.getPixel(0, 0, (int[])null);
+        int[] pd = dst.getPixel(dst.getMinX(), dst.getMinY(), (int[])null);
 
         dstX = xOffset;
         switch (process) {
@@ -1750,25 +1792,8 @@ public class PNGRed extends AbstractRed {
             return;
         }
 
-        int bytesPerRow = (inputBands * passWidth * bitDepth + 7) / 8;
-        int eltsPerRow = (bitDepth == 16) ? bytesPerRow / 2 : bytesPerRow;
-        byte[] curr = new byte[bytesPerRow];
-        byte[] prior = new byte[bytesPerRow];
-
-        // Create a 1-row tall Raster to hold the data
-        WritableRaster passRow =
-            createRaster(passWidth, 1, inputBands,
-                         eltsPerRow,
-                         bitDepth);
-        DataBuffer dataBuffer = passRow.getDataBuffer();
-        int type = dataBuffer.getDataType();
-        byte[] byteData = null;
-        short[] shortData = null;
-        if (type == DataBuffer.TYPE_BYTE) {
-            byteData = ((DataBufferByte)dataBuffer).getData();
-        } else {
-            shortData = ((DataBufferUShort)dataBuffer).getData();
-        }
+        startPass(imRas, xOffset, xStep, passWidth);
+        int lastY = sourceRegion.y + sourceRegion.height;
 
         // Decode the (sub)image row-by-row
         int srcY;
@@ -1776,55 +1801,276 @@ public class PNGRed extends AbstractRed {
         for (srcY = 0, dstY = yOffset;
              srcY < passHeight;
              srcY++, dstY += yStep) {
-            // Read the filter type byte and a row of data
-            int filter = 0;
-            try {
-                filter = dataStream.read();
-                dataStream.readFully(curr, 0, bytesPerRow);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-
-            switch (filter) {
-            case PNG_FILTER_NONE:
-                break;
-            case PNG_FILTER_SUB:
-                decodeSubFilter(curr, bytesPerRow, bytesPerPixel);
-                break;
-            case PNG_FILTER_UP:
-                decodeUpFilter(curr, prior, bytesPerRow);
+            if (dstY >= lastY && xStep == 1 && yStep == 1) {
+                // The rest of a non-interlaced image is not needed
                 break;
-            case PNG_FILTER_AVERAGE:
-                decodeAverageFilter(curr, prior, bytesPerRow, bytesPerPixel);
-                break;
-            case PNG_FILTER_PAETH:
-                decodePaethFilter(curr, prior, bytesPerRow, bytesPerPixel);
-                break;
-            default:
-                // Error -- unknown filter type
-                String msg = PropertyUtil.getString("PNGImageDecoder16");
-                throw new RuntimeException(msg);
             }
+            decodeRow();
+            storeRow(imRas, xOffset, xStep, passWidth, dstY);
+        }
+    }
+
+    /**
+     * Allocates the row buffers for a pass of <code>passWidth</code>
+     * pixels that is stored into <code>imRas</code>.
+     */
+    private void startPass(WritableRaster imRas,
+                           int xOffset, int xStep, int passWidth) {
+        int bytesPerRow = (inputBands * passWidth * bitDepth + 7) / 8;
+        int eltsPerRow = (bitDepth == 16) ? bytesPerRow / 2 : bytesPerRow;
+        currRow = new byte[bytesPerRow];
+        priorRow = new byte[bytesPerRow];
+
+        // Create a 1-row tall Raster to hold the data
+        passRow = createRaster(passWidth, 1, inputBands,
+                               eltsPerRow,
+                               bitDepth);
 
-            // Copy data into passRow byte by byte
-            if (bitDepth < 16) {
-                System.arraycopy(curr, 0, byteData, 0, bytesPerRow);
+        // Rows are post-processed into a full width row first if only
+        // parts of the image are kept
+        subsampledRow = null;
+        if (subsampled) {
+            subsampledRow = imRas.createCompatibleWritableRaster(
+                    xOffset + (passWidth - 1) * xStep + 1, 1);
+        }
+    }
+
+    /**
+     * Reads and unfilters the next row of the current pass into
+     * <code>priorRow</code>.
+     */
+    private void decodeRow() {
+        int bytesPerRow = currRow.length;
+        byte[] curr = currRow;
+        byte[] prior = priorRow;
+
+        // Read the filter type byte and a row of data
+        int filter;
+        try {
+            inflate(filterType, 0, 1);
+            filter = filterType[0] & 0xff;
+            inflate(curr, 0, bytesPerRow);
+        } catch (IOException e) {
+            String msg = PropertyUtil.getString("PNGImageDecoder2");
+            throw new RuntimeException(msg, e);
+        }
+
+        switch (filter) {
+        case PNG_FILTER_NONE:
+            break;
+        case PNG_FILTER_SUB:
+            decodeSubFilter(curr, bytesPerRow, bytesPerPixel);
+            break;
+        case PNG_FILTER_UP:
+            decodeUpFilter(curr, prior, bytesPerRow);
+            break;
+        case PNG_FILTER_AVERAGE:
+            decodeAverageFilter(curr, prior, bytesPerRow, bytesPerPixel);
+            break;
+        case PNG_FILTER_PAETH:
+            decodePaethFilter(curr, prior, bytesPerRow, bytesPerPixel);
+            break;
+        default:
+            // Error -- unknown filter type
+            String msg = PropertyUtil.getString("PNGImageDecoder16");
+            throw new RuntimeException(msg);
+        }
+
+        // Swap curr and prior
+        priorRow = curr;
+        currRow = prior;
+    }
+
+    /**
+     * Post-processes the last decoded row, source row <code>dstY</code>,
+     * into <code>imRas</code> if it is part of the source region.
+     */
+    private void storeRow(WritableRaster imRas, int xOffset, int xStep,
+                          int passWidth, int dstY) {
+        if (subsampledRow == null) {
+            writeRow(imRas, xOffset, xStep, dstY, passWidth);
+        } else if (dstY >= sourceRegion.y
+                && dstY < sourceRegion.y + sourceRegion.height
+                && (dstY - sourceRegion.y) % ySubsampling == 0) {
+            writeRow(subsampledRow, xOffset, xStep, 0, passWidth);
+            copySubsampledPixels(subsampledRow, imRas, xOffset, xStep,
+                                 (dstY - sourceRegion.y) / ySubsampling);
+        }
+    }
+
+    /**
+     * Post-processes the last decoded row into row <code>y</code> of
+     * <code>dst</code>.  Rows of non-interlaced images that need no
+     * post-processing other than gamma correction are written straight
+     * into the data array of <code>dst</code>, which has the same layout
+     * as the decoded row; all others go through <code>passRow</code>
+     * and <code>processPixels</code>.
+     */
+    private void writeRow(WritableRaster dst, int xOffset, int xStep,
+                          int y, int passWidth) {
+        byte[] row = priorRow;
+        int count = row.length;
+        SampleModel sm = dst.getSampleModel();
+        int stride = -1;
+        if (sm instanceof ComponentSampleModel) {
+            stride = ((ComponentSampleModel)sm).getScanlineStride();
+        } else if (sm instanceof MultiPixelPackedSampleModel) {
+            stride = ((MultiPixelPackedSampleModel)sm).getScanlineStride();
+        }
+        if (xOffset == 0 && xStep == 1 && stride >= 0
+                && dst.getSampleModelTranslateX() == 0
+                && (postProcess == POST_NONE || postProcess == POST_GAMMA)) {
+            DataBuffer dataBuffer = dst.getDataBuffer();
+            int offset = dataBuffer.getOffset()
+                + (y - dst.getSampleModelTranslateY()) * stride;
+            if (dataBuffer.getDataType() == DataBuffer.TYPE_BYTE) {
+                byte[] data = ((DataBufferByte)dataBuffer).getData();
+                if (postProcess == POST_NONE) {
+                    System.arraycopy(row, 0, data, offset, count);
+                } else {
+                    for (int i = 0; i < count; i++) {
+                        data[offset + i] = (byte)gammaLut[row[i] & 0xff];
+                    }
+                }
             } else {
-                int idx = 0;
-                for (int j = 0; j < eltsPerRow; j++) {
-                    shortData[j] =
-                        (short)((curr[idx] << 8) | (curr[idx + 1] & 0xff));
-                    idx += 2;
+                short[] data = ((DataBufferUShort)dataBuffer).getData();
+                boolean gamma = postProcess == POST_GAMMA;
+                for (int i = 0; i < count; i += 2) {
+                    int val = ((row[i] & 0xff) << 8) | (row[i + 1] & 0xff);
+                    data[offset++] = (short)(gamma ? gammaLut[val] : val);
+                }
+            }
+            return;
+        }
+
+        // Copy data into passRow byte by byte
+        DataBuffer dataBuffer = passRow.getDataBuffer();
+        if (bitDepth < 16) {
+            byte[] byteData = ((DataBufferByte)dataBuffer).getData();
+            System.arraycopy(row, 0, byteData, 0, count);
+        } else {
+            short[] shortData = ((DataBufferUShort)dataBuffer).getData();
+            int eltsPerRow = count / 2;
+            int idx = 0;
+            for (int j = 0; j < eltsPerRow; j++) {
+                shortData[j] =
+                    (short)((row[idx] << 8) | (row[idx + 1] & 0xff));
+                idx += 2;
+            }
+        }
+        processPixels(postProcess, passRow, dst, xOffset, xStep, y, passWidth);
+    }
+
+    /**
+     * Returns the band of output rows for tile row <code>tileY</code>,
+     * decoding it if it is not retained.  Rows are decoded sequentially,
+     * so a band above the rows decoded so far restarts decoding at the
+     * top of the image.
+     */
+    private synchronized Raster getBand(int tileY) {
+        WritableRaster band = bands.get(tileY);
+        if (band != null) {
+            return band;
+        }
+        int minY = tileY * bandHeight;
+        int maxY = Math.min(minY + bandHeight, getHeight()) - 1;
+        int firstRow = sourceRegion.y + minY * ySubsampling;
+        int lastRow = sourceRegion.y + maxY * ySubsampling;
+
+        band = Raster.createWritableRaster(getSampleModel(), new Point(0, minY));
+        if (nextRow > firstRow) {
+            startInflating();
+            nextRow = 0;
+            currRow = null;
+        }
+        if (currRow == null) {
+            // The row buffers are kept between bands, as the first row of
+            // a band is unfiltered against the last row of the previous one
+            startPass(band, 0, 1, bounds.width);
+        }
+        for (; nextRow <= lastRow; nextRow++) {
+            decodeRow();
+            if (nextRow >= firstRow) {
+                storeRow(band, 0, 1, bounds.width, nextRow);
+            }
+        }
+        if (maxY == getHeight() - 1) {
+            // All rows have been decoded, free the native memory of the
+            // decompressor; a new one is created if decoding restarts
+            inflater.end();
+            inflater = null;
+        }
+        bands.put(tileY, band);
+        return band;
+    }
+
+    /**
+     * Positions the decompressor at the start of the first IDAT chunk.
+     */
+    private void startInflating() {
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            inflater.reset();
+        }
+        nextChunk = 0;
+    }
+
+    /**
+     * Inflates the next <code>len</code> bytes of image data into
+     * <code>b</code>, feeding the IDAT chunks to the decompressor as
+     * it needs them.
+     */
+    private void inflate(byte[] b, int off, int len) throws IOException {
+        try {
+            while (len > 0) {
+                int n = inflater.inflate(b, off, len);
+                if (n == 0) {
+                    if (!inflater.needsInput()
+                            || nextChunk == idatChunks.size()) {
+                        throw new EOFException();
+                    }
+                    inflater.setInput(idatChunks.get(nextChunk++));
                 }
+                off += n;
+                len -= n;
             }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+    }
 
-            processPixels(postProcess,
-                          passRow, imRas, xOffset, xStep, dstY, passWidth);
+    /**
+     * Creates the map of decoded bands, retaining the
+     * <code>maxBands</code> most recently used ones.
+     */
+    private Map<Integer, WritableRaster> createBandCache() {
+        return new LinkedHashMap<Integer, WritableRaster>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                    Map.Entry<Integer, WritableRaster> eldest) {
+                return size() > maxBands;
+            }
+        };
+    }
 
-            // Swap curr and prior
-            byte[] tmp = prior;
-            prior = curr;
-            curr = tmp;
+    /**
+     * Copies the pixels of a post-processed row that fall on the
+     * subsampling grid of the source region into row <code>y</code>
+     * of <code>dst</code>.  Only the pixels decoded by the current
+     * pass, at <code>xOffset</code> plus multiples of
+     * <code>xStep</code>, are copied.
+     */
+    private void copySubsampledPixels(Raster row, WritableRaster dst,
+                                      int xOffset, int xStep, int y) {
+        Object pixel = null;
+        int width = dst.getWidth();
+        for (int x = 0; x < width; x++) {
+            int srcX = sourceRegion.x + x * xSubsampling;
+            if (srcX >= xOffset && (srcX - xOffset) % xStep == 0
+                    && srcX < row.getWidth()) {
+                pixel = row.getDataElements(srcX, 0, pixel);
+                dst.setDataElements(x, y, pixel);
+            }
         }
     }
 
@@ -1846,13 +2092,30 @@ public class PNGRed extends AbstractRed {
     }
 
     public WritableRaster copyData(WritableRaster wr) {
-        GraphicsUtil.copyData(theTile, wr);
+        if (bands != null) {
+            copyToRaster(wr);
+        } else {
+            GraphicsUtil.copyData(theTile, wr);
+        }
         return wr;
     }
 
+    /**
+     * Returns null: the bands of lazily decoded images are decoded in
+     * order, requesting them concurrently would only restart decoding.
+     */
+    @Override
+    protected TileScheduler getTileScheduler() {
+        return null;
+    }
+
     // RenderedImage stuff
     @Override
     public Raster getTile(int tileX, int tileY) {
+        if (bands != null && tileX == 0
+                && tileY >= 0 && tileY < getNumYTiles()) {
+            return getBand(tileY);
+        }
         if (tileX != 0 || tileY != 0) {
             // Error -- bad tile requested
             String msg = PropertyUtil.getString("PNGImageDecoder17");
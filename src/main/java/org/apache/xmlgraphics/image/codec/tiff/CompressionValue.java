@@ -24,17 +24,17 @@ public enum CompressionValue {
     NONE(1),
     /**
      * Modified Huffman Compression (CCITT Group 3 1D facsimile compression).
-     * <p><b>Not currently supported.</b>
+     * <p>Only available for bilevel images.
      */
     GROUP3_1D(2),
     /**
      * CCITT T.4 bilevel compression (CCITT Group 3 2D facsimile compression).
-     * <p><b>Not currently supported.</b>
+     * <p>Only available for bilevel images.
      */
     GROUP3_2D(3),
     /**
      * CCITT T.6 bilevel compression (CCITT Group 4 facsimile compression).
-     * <p><b>Not currently supported.</b>
+     * <p>Only available for bilevel images.
      */
     GROUP4(4),
     /** LZW compression. <p><b>Not supported.</b> */
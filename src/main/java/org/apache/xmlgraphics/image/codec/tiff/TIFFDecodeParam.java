@@ -19,7 +19,10 @@
 
 package org.apache.xmlgraphics.image.codec.tiff;
 
+import java.awt.Rectangle;
+
 import  org.apache.xmlgraphics.image.codec.util.ImageDecodeParam;
+import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 /**
  * An instance of <code>ImageDecodeParam</code> for decoding images in
@@ -76,6 +79,11 @@ public class TIFFDecodeParam implements ImageDecodeParam {
     private boolean decodePaletteAsShorts;
     private Long ifdOffset;
     private boolean convertJPEGYCbCrToRGB = true;
+    private long tileCacheSize;
+    private boolean parallelDecoding;
+    private Rectangle sourceRegion;
+    private int xSubsampling = 1;
+    private int ySubsampling = 1;
 
     /** Constructs a default instance of <code>TIFFDecodeParam</code>. */
     public TIFFDecodeParam() {
@@ -157,4 +165,89 @@ public class TIFFDecodeParam implements ImageDecodeParam {
     public boolean getJPEGDecompressYCbCrToRGB() {
         return convertJPEGYCbCrToRGB;
     }
+
+    /**
+     * Sets the maximum number of bytes of decoded tiles (or strips) that
+     * a <code>TIFFImage</code> keeps in memory, so that repeated requests
+     * for the same tile do not decode it again.  The least recently used
+     * tiles are discarded first.  The default value is 0, which disables
+     * the cache.
+     */
+    public void setTileCacheSize(long tileCacheSize) {
+        this.tileCacheSize = tileCacheSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes of cached decoded tiles.
+     */
+    public long getTileCacheSize() {
+        return tileCacheSize;
+    }
+
+    /**
+     * Sets a flag indicating whether <code>copyData()</code> and
+     * <code>getData()</code> decode the tiles of the requested area
+     * concurrently using the common fork/join pool.  The default value
+     * is <code>false</code>.
+     */
+    public void setParallelDecoding(boolean parallelDecoding) {
+        this.parallelDecoding = parallelDecoding;
+    }
+
+    /**
+     * Whether tiles will be decoded concurrently by <code>copyData()</code>.
+     */
+    public boolean getParallelDecoding() {
+        return parallelDecoding;
+    }
+
+    /**
+     * Sets the region of the image, in pixels, that will be decoded.
+     * The decoded image has its origin at the upper left corner of the
+     * region, clipped to the image bounds.  Tiles or strips outside
+     * the region are not read.  By default, or if <code>null</code> is
+     * passed, the whole image is decoded.
+     */
+    public void setSourceRegion(Rectangle sourceRegion) {
+        this.sourceRegion = sourceRegion == null ? null : new Rectangle(sourceRegion);
+    }
+
+    /**
+     * Returns the source region to be decoded, or <code>null</code> if
+     * the whole image is decoded.
+     */
+    public Rectangle getSourceRegion() {
+        return sourceRegion == null ? null : new Rectangle(sourceRegion);
+    }
+
+    /**
+     * Sets the subsampling factors applied while decoding.  Only every
+     * <code>xSubsampling</code>-th column and every
+     * <code>ySubsampling</code>-th row of the source region, starting
+     * with its first column and row, is copied into the decoded image.
+     * The default values are 1, meaning no subsampling.
+     *
+     * @throws IllegalArgumentException if either value is smaller than 1.
+     */
+    public void setSubsampling(int xSubsampling, int ySubsampling) {
+        if (xSubsampling < 1 || ySubsampling < 1) {
+            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDecodeParam0"));
+        }
+        this.xSubsampling = xSubsampling;
+        this.ySubsampling = ySubsampling;
+    }
+
+    /**
+     * Returns the horizontal subsampling factor.
+     */
+    public int getXSubsampling() {
+        return xSubsampling;
+    }
+
+    /**
+     * Returns the vertical subsampling factor.
+     */
+    public int getYSubsampling() {
+        return ySubsampling;
+    }
 }
@@ -57,6 +57,9 @@ import org.apache.xmlgraphics.image.codec.util.SeekableStream;
  * also contain so-called private IFDs that are referenced from
  * tag data and do not appear in the main list.
  *
+ * <p> Both classic TIFF files and BigTIFF files (version 43, with
+ * 64 bit offsets and counts) can be read.
+ *
  * <p><b> This class is not a committed part of the JAI API.  It may
  * be removed or changed in future releases of JAI.</b>
  *
@@ -69,6 +72,9 @@ public class TIFFDirectory implements Serializable {
     /** A boolean storing the endianness of the stream. */
     boolean isBigEndian;
 
+    /** Whether the stream is a BigTIFF stream with 64 bit offsets. */
+    boolean isBigTIFF;
+
     /** The number of entries in the IFD. */
     int numEntries;
 
@@ -84,6 +90,9 @@ public class TIFFDirectory implements Serializable {
     /** The offset of the next IFD. */
     long nextIFDOffset;
 
+    /** The field type of classic TIFF IFD offsets. */
+    private static final int TIFF_IFD = 13;
+
     /** The default constructor. */
     TIFFDirectory() { }
 
@@ -105,34 +114,15 @@ public class TIFFDirectory implements Serializable {
         throws IOException {
 
         long globalSaveOffset = stream.getFilePointer();
-        long ifdOffset;
 
         // Read the TIFF header
-        stream.seek(0L);
-        int endian = stream.readUnsignedShort();
-        if (!isValidEndianTag(endian)) {
-            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory1"));
-        }
-        isBigEndian = (endian == 0x4d4d);
-
-        int magic = readUnsignedShort(stream);
-        if (magic != 42) {
-            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory2"));
-        }
-
-        // Get the initial ifd offset as an unsigned int (using a long)
-        ifdOffset = readUnsignedInt(stream);
+        long ifdOffset = readHeader(stream);
 
         for (int i = 0; i < directory; i++) {
             if (ifdOffset == 0L) {
                 throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory3"));
             }
-
-            stream.seek(ifdOffset);
-            long entries = readUnsignedShort(stream);
-            stream.skip(12 * entries);
-
-            ifdOffset = readUnsignedInt(stream);
+            ifdOffset = readNextIFDOffset(stream, ifdOffset);
         }
         if (ifdOffset == 0L) {
             throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory3"));
@@ -160,35 +150,14 @@ public class TIFFDirectory implements Serializable {
         throws IOException {
 
         long globalSaveOffset = stream.getFilePointer();
-        stream.seek(0L);
-        int endian = stream.readUnsignedShort();
-        if (!isValidEndianTag(endian)) {
-            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory1"));
-        }
-        isBigEndian = (endian == 0x4d4d);
-
-        // Seek to the first IFD.
-        stream.seek(ifdOffset);
+        readHeader(stream);
 
         // Seek to desired IFD if necessary.
-        int dirNum = 0;
-        while (dirNum < directory) {
-            // Get the number of fields in the current IFD.
-            long numEntries = readUnsignedShort(stream);
-
-            // Skip to the next IFD offset value field.
-            stream.seek(ifdOffset + 12 * numEntries);
-
-            // Read the offset to the next IFD beyond this one.
-            ifdOffset = readUnsignedInt(stream);
-
-            // Seek to the next IFD.
-            stream.seek(ifdOffset);
-
-            // Increment the directory.
-            dirNum++;
+        for (int dirNum = 0; dirNum < directory; dirNum++) {
+            ifdOffset = readNextIFDOffset(stream, ifdOffset);
         }
 
+        stream.seek(ifdOffset);
         initialize(stream);
         stream.seek(globalSaveOffset);
     }
@@ -206,9 +175,57 @@ public class TIFFDirectory implements Serializable {
         4, //  9 = slong
         8, // 10 = srational
         4, // 11 = float
-        8  // 12 = double
+        8, // 12 = double
+        4, // 13 = ifd
+        0, // 14 = n/a
+        0, // 15 = n/a
+        8, // 16 = long8
+        8, // 17 = slong8
+        8  // 18 = ifd8
     };
 
+    /**
+     * Reads the file header, setting the byte order and whether this is
+     * a BigTIFF stream, and returns the offset of the first IFD.
+     */
+    long readHeader(SeekableStream stream) throws IOException {
+        stream.seek(0L);
+        int endian = stream.readUnsignedShort();
+        if (!isValidEndianTag(endian)) {
+            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory1"));
+        }
+        isBigEndian = (endian == 0x4d4d);
+
+        int magic = readUnsignedShort(stream);
+        if (magic == 43) {
+            // BigTIFF: the offset size (always 8) and a reserved 0 follow
+            if (readUnsignedShort(stream) != 8 || readUnsignedShort(stream) != 0) {
+                throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory4"));
+            }
+            isBigTIFF = true;
+            return readLong(stream);
+        } else if (magic != 42) {
+            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory2"));
+        }
+
+        // Get the initial ifd offset as an unsigned int (using a long)
+        return readUnsignedInt(stream);
+    }
+
+    /** Returns the offset of the IFD following the one at <code>ifdOffset</code>. */
+    long readNextIFDOffset(SeekableStream stream, long ifdOffset) throws IOException {
+        stream.seek(ifdOffset);
+        if (isBigTIFF) {
+            long entries = readLong(stream);
+            stream.seek(ifdOffset + 8 + 20 * entries);
+            return readLong(stream);
+        } else {
+            long entries = readUnsignedShort(stream);
+            stream.seek(ifdOffset + 2 + 12 * entries);
+            return readUnsignedInt(stream);
+        }
+    }
+
     private void initialize(SeekableStream stream) throws IOException {
         long nextTagOffset;
         int i;
@@ -216,32 +233,32 @@ public class TIFFDirectory implements Serializable {
 
         ifdOffset = stream.getFilePointer();
 
-        numEntries = readUnsignedShort(stream);
+        numEntries = isBigTIFF ? (int)readLong(stream) : readUnsignedShort(stream);
         fields = new TIFFField[numEntries];
 
+        // The size of the value or value offset in an entry.
+        int valueSize = isBigTIFF ? 8 : 4;
+
         for (i = 0; i < numEntries; i++) {
             int tag = readUnsignedShort(stream);
             int type = readUnsignedShort(stream);
-            int count = (int)(readUnsignedInt(stream));
-            int value = 0;
+            int count = (int)(isBigTIFF ? readLong(stream) : readUnsignedInt(stream));
 
             // The place to return to to read the next tag
-            nextTagOffset = stream.getFilePointer() + 4;
-
-            try {
-                // If the tag data can't fit in 4 bytes, the next 4 bytes
-                // contain the starting offset of the data
-                if (count * SIZE_OF_TYPE[type] > 4) {
-                    value = (int)(readUnsignedInt(stream));
-                    stream.seek(value);
-                }
-            } catch (ArrayIndexOutOfBoundsException ae) {
-                // System.err.println(tag + " " + "TIFFDirectory4"); TODO - log this message
+            nextTagOffset = stream.getFilePointer() + valueSize;
+
+            if (type >= SIZE_OF_TYPE.length || SIZE_OF_TYPE[type] == 0) {
                 // if the data type is unknown we should skip this TIFF Field
                 stream.seek(nextTagOffset);
                 continue;
             }
 
+            // If the tag data can't fit in the entry, it contains the
+            // starting offset of the data instead
+            if ((long)count * SIZE_OF_TYPE[type] > valueSize) {
+                stream.seek(isBigTIFF ? readLong(stream) : readUnsignedInt(stream));
+            }
+
             fieldIndex.put(tag, i);
             Object obj = null;
 
@@ -298,6 +315,26 @@ public class TIFFDirectory implements Serializable {
                 obj = lvalues;
                 break;
 
+            case TIFFDirectory.TIFF_IFD:
+                // Classic IFD offsets are read as TIFF_LONG values
+                type = TIFFField.TIFF_LONG;
+                long[] ifdvalues = new long[count];
+                for (j = 0; j < count; j++) {
+                    ifdvalues[j] = readUnsignedInt(stream);
+                }
+                obj = ifdvalues;
+                break;
+
+            case TIFFField.TIFF_LONG8:
+            case TIFFField.TIFF_SLONG8:
+            case TIFFField.TIFF_IFD8:
+                long[] l8values = new long[count];
+                for (j = 0; j < count; j++) {
+                    l8values[j] = readLong(stream);
+                }
+                obj = l8values;
+                break;
+
             case TIFFField.TIFF_RATIONAL:
                 long[][] llvalues = new long[count][2];
                 for (j = 0; j < count; j++) {
@@ -357,7 +394,7 @@ public class TIFFDirectory implements Serializable {
         }
 
         // Read the offset of the next IFD.
-        nextIFDOffset = readUnsignedInt(stream);
+        nextIFDOffset = isBigTIFF ? readLong(stream) : readUnsignedInt(stream);
     }
 
     /** Returns the number of directory entries. */
@@ -530,14 +567,14 @@ public class TIFFDirectory implements Serializable {
         }
     }
 
-//    private long readLong(SeekableStream stream)
-//        throws IOException {
-//        if (isBigEndian) {
-//            return stream.readLong();
-//        } else {
-//            return stream.readLongLE();
-//        }
-//    }
+    private long readLong(SeekableStream stream)
+        throws IOException {
+        if (isBigEndian) {
+            return stream.readLong();
+        } else {
+            return stream.readLongLE();
+        }
+    }
 
     private float readFloat(SeekableStream stream)
         throws IOException {
@@ -587,28 +624,13 @@ public class TIFFDirectory implements Serializable {
         throws IOException {
         long pointer = stream.getFilePointer(); // Save stream pointer
 
-        stream.seek(0L);
-        int endian = stream.readUnsignedShort();
-        if (!isValidEndianTag(endian)) {
-            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory1"));
-        }
-        boolean isBigEndian = (endian == 0x4d4d);
-        int magic = readUnsignedShort(stream, isBigEndian);
-        if (magic != 42) {
-            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory2"));
-        }
-
-        stream.seek(4L);
-        long offset = readUnsignedInt(stream, isBigEndian);
+        TIFFDirectory dir = new TIFFDirectory();
+        long offset = dir.readHeader(stream);
 
         int numDirectories = 0;
         while (offset != 0L) {
             ++numDirectories;
-
-            stream.seek(offset);
-            long entries = readUnsignedShort(stream, isBigEndian);
-            stream.skip(12 * entries);
-            offset = readUnsignedInt(stream, isBigEndian);
+            offset = dir.readNextIFDOffset(stream, offset);
         }
 
         stream.seek(pointer); // Reset stream pointer
@@ -624,6 +646,14 @@ public class TIFFDirectory implements Serializable {
         return isBigEndian;
     }
 
+    /**
+     * Returns whether the stream is a BigTIFF stream, which uses 64 bit
+     * offsets.
+     */
+    public boolean isBigTIFF() {
+        return isBigTIFF;
+    }
+
     /**
      * Returns the offset of the IFD corresponding to this
      * <code>TIFFDirectory</code>.
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.io.IOException;
+
+import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+
+/**
+ * A lazily built index of the offsets of the Image File Directories (IFDs)
+ * of a TIFF stream.  The linked list of IFDs is only followed as far as
+ * needed and each link is followed once, so accessing the pages of a
+ * multi-page TIFF stream in any order does not re-walk the list from the
+ * first IFD.  Only the entry count and the next IFD offset of each IFD are
+ * read; the fields themselves are left to {@link TIFFDirectory}.
+ *
+ * <p> The index does not keep a reference to a stream, so it may be kept
+ * with the <code>ImageInfo</code> of an image and used with other streams
+ * over the same data.  The stream pointer of a
+ * stream passed to a method is restored before the method returns.
+ *
+ * <p> The IFDs are expected at increasing offsets, and a list of IFDs that
+ * loops back or holds more than {@link #MAX_DIRECTORIES} IFDs is rejected
+ * with an <code>IllegalArgumentException</code>.
+ */
+public class TIFFDirectoryIndex {
+
+    /** The maximum number of IFDs followed. */
+    public static final int MAX_DIRECTORIES = 65536;
+
+    /** Holds the byte order and the offset size of the stream. */
+    private final TIFFDirectory header = new TIFFDirectory();
+
+    /** The offsets of the IFDs found so far. */
+    private long[] offsets = new long[8];
+
+    /** The number of IFDs found so far. */
+    private int count;
+
+    /** Whether the end of the list of IFDs has been reached. */
+    private boolean complete;
+
+    /**
+     * Creates an index for a TIFF stream, reading its header.
+     *
+     * @param stream the stream to read from
+     * @throws IOException if an I/O error occurs
+     */
+    public TIFFDirectoryIndex(SeekableStream stream) throws IOException {
+        long pointer = stream.getFilePointer();
+        try {
+            long ifdOffset = header.readHeader(stream);
+            if (ifdOffset == 0L) {
+                complete = true;
+            } else {
+                offsets[count++] = ifdOffset;
+            }
+        } finally {
+            stream.seek(pointer);
+        }
+    }
+
+    /**
+     * Returns whether the stream is a BigTIFF stream.
+     */
+    public boolean isBigTIFF() {
+        return header.isBigTIFF;
+    }
+
+    /**
+     * Returns the offset of an IFD, following the list of IFDs only as far
+     * as it has not been followed before.
+     *
+     * @param stream the stream to read from
+     * @param directory the index of the IFD, 0 being the first one
+     * @return the offset of the IFD
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if there is no such IFD or the list
+     *         of IFDs is invalid before it
+     */
+    public synchronized long getIFDOffset(SeekableStream stream, int directory)
+            throws IOException {
+        if (directory < 0 || !find(stream, directory + 1)) {
+            throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory3"));
+        }
+        return offsets[directory];
+    }
+
+    /**
+     * Indicates whether an IFD exists, following the list of IFDs only as
+     * far as needed to tell.
+     *
+     * @param stream the stream to read from
+     * @param directory the index of the IFD, 0 being the first one
+     * @return true if there is such an IFD
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the list of IFDs is invalid before
+     *         the IFD is reached
+     */
+    public synchronized boolean hasDirectory(SeekableStream stream, int directory)
+            throws IOException {
+        return directory >= 0 && find(stream, directory + 1);
+    }
+
+    /**
+     * Returns the number of IFDs, following the list of IFDs to its end.
+     *
+     * @param stream the stream to read from
+     * @return the number of IFDs
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if the list of IFDs is invalid
+     */
+    public synchronized int getNumDirectories(SeekableStream stream) throws IOException {
+        find(stream, Integer.MAX_VALUE);
+        return count;
+    }
+
+    /**
+     * Reads a directory of the stream.
+     *
+     * @param stream the stream to read from
+     * @param directory the index of the IFD, 0 being the first one
+     * @return the directory
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalArgumentException if there is no such IFD
+     */
+    public TIFFDirectory getDirectory(SeekableStream stream, int directory)
+            throws IOException {
+        return new TIFFDirectory(stream, getIFDOffset(stream, directory), 0);
+    }
+
+    /** Follows the list of IFDs until n IFDs are known or its end is reached. */
+    private boolean find(SeekableStream stream, int n) throws IOException {
+        if (count >= n || complete) {
+            return count >= n;
+        }
+        long pointer = stream.getFilePointer();
+        try {
+            while (count < n) {
+                long next = header.readNextIFDOffset(stream, offsets[count - 1]);
+                if (next == 0L) {
+                    complete = true;
+                    break;
+                }
+                if (next <= offsets[count - 1]) {
+                    //Also stops a list that loops back to an earlier IFD
+                    throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory5"));
+                }
+                if (count == MAX_DIRECTORIES) {
+                    throw new IllegalArgumentException(PropertyUtil.getString("TIFFDirectory6"));
+                }
+                if (count == offsets.length) {
+                    long[] newOffsets = new long[count * 2];
+                    System.arraycopy(offsets, 0, newOffsets, 0, count);
+                    offsets = newOffsets;
+                }
+                offsets[count++] = next;
+            }
+        } finally {
+            stream.seek(pointer);
+        }
+        return count >= n;
+    }
+}
@@ -60,6 +60,14 @@ public class TIFFEncodeParam implements ImageEncodeParam {
 
     private int deflateLevel = Deflater.DEFAULT_COMPRESSION;
 
+    private boolean parallelEncoding;
+
+    private int maxPendingStrips;
+
+    private boolean streaming;
+
+    private boolean bigTIFF;
+
     /**
      * Constructs a TIFFEncodeParam object with default values for
      * all parameters.
@@ -76,8 +84,9 @@ public class TIFFEncodeParam implements ImageEncodeParam {
     /**
      * Specifies the type of compression to be used.  The compression type
      * specified will be honored only if it is compatible with the image
-     * being written out.  Currently only PackBits, JPEG, and DEFLATE
-     * compression schemes are supported.
+     * being written out.  Currently only PackBits, JPEG, DEFLATE and, for
+     * bilevel images, CCITT Group 3 and Group 4 compression schemes are
+     * supported.
      *
      * <p> If <code>compression</code> is set to any value but
      * <code>COMPRESSION_NONE</code> and the <code>OutputStream</code>
@@ -96,6 +105,9 @@ public class TIFFEncodeParam implements ImageEncodeParam {
         case NONE:
         case PACKBITS:
         case DEFLATE:
+        case GROUP3_1D:
+        case GROUP3_2D:
+        case GROUP4:
             // Do nothing.
             break;
         default:
@@ -250,4 +262,82 @@ public class TIFFEncodeParam implements ImageEncodeParam {
         }
         return extraFields;
     }
+
+    /**
+     * Sets a flag indicating whether strips (or tiles) are compressed
+     * concurrently using the common fork/join pool.  The compressed data
+     * are still written in order.  The default value is <code>false</code>.
+     * This flag is ignored if the compression type is NONE.
+     */
+    public void setParallelEncoding(boolean parallelEncoding) {
+        this.parallelEncoding = parallelEncoding;
+    }
+
+    /**
+     * Whether strips (or tiles) will be compressed concurrently.
+     */
+    public boolean getParallelEncoding() {
+        return parallelEncoding;
+    }
+
+    /**
+     * Sets the maximum number of strips (or tiles) that are being
+     * compressed or waiting to be written when encoding in parallel,
+     * which bounds the memory used for their data.  The default value
+     * of 0 uses twice the parallelism of the common fork/join pool.
+     */
+    public void setMaxPendingStrips(int maxPendingStrips) {
+        this.maxPendingStrips = maxPendingStrips;
+    }
+
+    /**
+     * Returns the maximum number of strips (or tiles) in flight when
+     * encoding in parallel, or 0 for the default.
+     */
+    public int getMaxPendingStrips() {
+        return maxPendingStrips;
+    }
+
+    /**
+     * Sets a flag indicating whether compressed images are streamed to an
+     * <code>OutputStream</code> which is not a
+     * <code>SeekableOutputStream</code>.  Normally the compressed data are
+     * cached in a temporary file or in memory until the Image File Directory,
+     * which precedes them, can be written.  When streaming, the data are
+     * compressed twice instead: once to determine the size of each strip
+     * (or tile) and once more to write it, so that only a single strip (or
+     * the strips pending when encoding in parallel) is held in memory at a
+     * time.  This trades CPU time for memory and disk I/O.  The image must
+     * return the same data on both passes.  The default value is
+     * <code>false</code>.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Whether compressed data will be streamed to non-seekable outputs.
+     */
+    public boolean getStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Sets a flag indicating whether a BigTIFF file is written.  BigTIFF
+     * files use 64 bit offsets so that the image data may exceed the 4 GB
+     * limit of classic TIFF files, but they cannot be read by all TIFF
+     * readers.  The flag applies to the whole file, so its value in the
+     * parameters of extra images is ignored.  The default value is
+     * <code>false</code>.
+     */
+    public void setBigTIFF(boolean bigTIFF) {
+        this.bigTIFF = bigTIFF;
+    }
+
+    /**
+     * Whether a BigTIFF file will be written.
+     */
+    public boolean getBigTIFF() {
+        return bigTIFF;
+    }
 }
@@ -568,8 +568,9 @@ class TIFFFaxDecoder {
 
         this.bitPointer = 0;
         this.bytePointer = 0;
-        this.prevChangingElems = new int[w];
-        this.currChangingElems = new int[w];
+        // A row has at most w changing elements plus the ones marking its end.
+        this.prevChangingElems = new int[w + 2];
+        this.currChangingElems = new int[w + 2];
     }
 
     // One-dimensional decoding methods
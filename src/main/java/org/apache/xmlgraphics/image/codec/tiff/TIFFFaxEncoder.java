@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.util.Arrays;
+
+/**
+ * Table-driven encoder for CCITT bilevel data. Packed rows of 1-bit pixels are
+ * coded as Modified Huffman (compression 2), T.4 (compression 3, using
+ * two-dimensional coding) or T.6 (compression 4) data as understood by
+ * {@link TIFFFaxDecoder}. Zero bits are coded as white runs and one bits as
+ * black runs, i.e. the data is WhiteIsZero.
+ */
+final class TIFFFaxEncoder {
+
+    /** T4Options value written for T.4 data: two-dimensional coding, no fill bits. */
+    static final long T4_OPTIONS_2D = 0x01;
+
+    /** Every K-th row of T.4 data is coded one-dimensionally to limit error propagation. */
+    private static final int T4_K_FACTOR = 4;
+
+    /** Largest run length which has a make-up code of its own. */
+    private static final int MAX_MAKEUP_RUN = 2560;
+
+    private static final int EOL_CODE = 0x001;
+    private static final int EOL_LENGTH = 12;
+
+    private static final int PASS_CODE = 0x1;
+    private static final int PASS_LENGTH = 4;
+
+    private static final int HORIZONTAL_CODE = 0x1;
+    private static final int HORIZONTAL_LENGTH = 3;
+
+    /** Vertical mode codes for a1 - b1 of 3 down to -3 (code, length). */
+    private static final int[] VERTICAL = {
+        0x03, 7, 0x03, 6, 0x03, 3, // VR3, VR2, VR1
+        0x01, 1,                   // V0
+        0x02, 3, 0x02, 6, 0x02, 7  // VL1, VL2, VL3
+    };
+
+    /** White terminating codes for run lengths 0 to 63 (code, length). */
+    private static final int[] WHITE_TERMINATING = {
+        0x35, 8, 0x07, 6, 0x07, 4, 0x08, 4, // 0 - 3
+        0x0b, 4, 0x0c, 4, 0x0e, 4, 0x0f, 4, // 4 - 7
+        0x13, 5, 0x14, 5, 0x07, 5, 0x08, 5, // 8 - 11
+        0x08, 6, 0x03, 6, 0x34, 6, 0x35, 6, // 12 - 15
+        0x2a, 6, 0x2b, 6, 0x27, 7, 0x0c, 7, // 16 - 19
+        0x08, 7, 0x17, 7, 0x03, 7, 0x04, 7, // 20 - 23
+        0x28, 7, 0x2b, 7, 0x13, 7, 0x24, 7, // 24 - 27
+        0x18, 7, 0x02, 8, 0x03, 8, 0x1a, 8, // 28 - 31
+        0x1b, 8, 0x12, 8, 0x13, 8, 0x14, 8, // 32 - 35
+        0x15, 8, 0x16, 8, 0x17, 8, 0x28, 8, // 36 - 39
+        0x29, 8, 0x2a, 8, 0x2b, 8, 0x2c, 8, // 40 - 43
+        0x2d, 8, 0x04, 8, 0x05, 8, 0x0a, 8, // 44 - 47
+        0x0b, 8, 0x52, 8, 0x53, 8, 0x54, 8, // 48 - 51
+        0x55, 8, 0x24, 8, 0x25, 8, 0x58, 8, // 52 - 55
+        0x59, 8, 0x5a, 8, 0x5b, 8, 0x4a, 8, // 56 - 59
+        0x4b, 8, 0x32, 8, 0x33, 8, 0x34, 8 // 60 - 63
+    };
+
+    /** White make-up codes for run lengths 64 to 2560 in steps of 64. */
+    private static final int[] WHITE_MAKEUP = {
+        0x1b, 5, 0x12, 5, 0x17, 6, 0x37, 7, // 64 - 256
+        0x36, 8, 0x37, 8, 0x64, 8, 0x65, 8, // 320 - 512
+        0x68, 8, 0x67, 8, 0xcc, 9, 0xcd, 9, // 576 - 768
+        0xd2, 9, 0xd3, 9, 0xd4, 9, 0xd5, 9, // 832 - 1024
+        0xd6, 9, 0xd7, 9, 0xd8, 9, 0xd9, 9, // 1088 - 1280
+        0xda, 9, 0xdb, 9, 0x98, 9, 0x99, 9, // 1344 - 1536
+        0x9a, 9, 0x18, 6, 0x9b, 9, 0x08, 11, // 1600 - 1792
+        0x0c, 11, 0x0d, 11, 0x12, 12, 0x13, 12, // 1856 - 2048
+        0x14, 12, 0x15, 12, 0x16, 12, 0x17, 12, // 2112 - 2304
+        0x1c, 12, 0x1d, 12, 0x1e, 12, 0x1f, 12 // 2368 - 2560
+    };
+
+    /** Black terminating codes for run lengths 0 to 63 (code, length). */
+    private static final int[] BLACK_TERMINATING = {
+        0x37, 10, 0x02, 3, 0x03, 2, 0x02, 2, // 0 - 3
+        0x03, 3, 0x03, 4, 0x02, 4, 0x03, 5, // 4 - 7
+        0x05, 6, 0x04, 6, 0x04, 7, 0x05, 7, // 8 - 11
+        0x07, 7, 0x04, 8, 0x07, 8, 0x18, 9, // 12 - 15
+        0x17, 10, 0x18, 10, 0x08, 10, 0x67, 11, // 16 - 19
+        0x68, 11, 0x6c, 11, 0x37, 11, 0x28, 11, // 20 - 23
+        0x17, 11, 0x18, 11, 0xca, 12, 0xcb, 12, // 24 - 27
+        0xcc, 12, 0xcd, 12, 0x68, 12, 0x69, 12, // 28 - 31
+        0x6a, 12, 0x6b, 12, 0xd2, 12, 0xd3, 12, // 32 - 35
+        0xd4, 12, 0xd5, 12, 0xd6, 12, 0xd7, 12, // 36 - 39
+        0x6c, 12, 0x6d, 12, 0xda, 12, 0xdb, 12, // 40 - 43
+        0x54, 12, 0x55, 12, 0x56, 12, 0x57, 12, // 44 - 47
+        0x64, 12, 0x65, 12, 0x52, 12, 0x53, 12, // 48 - 51
+        0x24, 12, 0x37, 12, 0x38, 12, 0x27, 12, // 52 - 55
+        0x28, 12, 0x58, 12, 0x59, 12, 0x2b, 12, // 56 - 59
+        0x2c, 12, 0x5a, 12, 0x66, 12, 0x67, 12 // 60 - 63
+    };
+
+    /** Black make-up codes for run lengths 64 to 2560 in steps of 64. */
+    private static final int[] BLACK_MAKEUP = {
+        0x0f, 10, 0xc8, 12, 0xc9, 12, 0x5b, 12, // 64 - 256
+        0x33, 12, 0x34, 12, 0x35, 12, 0x6c, 13, // 320 - 512
+        0x6d, 13, 0x4a, 13, 0x4b, 13, 0x4c, 13, // 576 - 768
+        0x4d, 13, 0x72, 13, 0x73, 13, 0x74, 13, // 832 - 1024
+        0x75, 13, 0x76, 13, 0x77, 13, 0x52, 13, // 1088 - 1280
+        0x53, 13, 0x54, 13, 0x55, 13, 0x5a, 13, // 1344 - 1536
+        0x5b, 13, 0x64, 13, 0x65, 13, 0x08, 11, // 1600 - 1792
+        0x0c, 11, 0x0d, 11, 0x12, 12, 0x13, 12, // 1856 - 2048
+        0x14, 12, 0x15, 12, 0x16, 12, 0x17, 12, // 2112 - 2304
+        0x1c, 12, 0x1d, 12, 0x1e, 12, 0x1f, 12 // 2368 - 2560
+    };
+
+
+    private final CompressionValue compression;
+    private final int width;
+    private final int bytesPerRow;
+
+    /** The imaginary all-white row preceding the first row of T.6 data. */
+    private final byte[] whiteRow;
+
+    private byte[] buffer;
+    private int count;
+
+    private int bitBuffer;
+    private int bitCount;
+
+    /**
+     * Creates an encoder.
+     * @param compression one of GROUP3_1D, GROUP3_2D and GROUP4
+     * @param width the number of pixels per row
+     */
+    TIFFFaxEncoder(CompressionValue compression, int width) {
+        switch (compression) {
+        case GROUP3_1D:
+        case GROUP3_2D:
+        case GROUP4:
+            break;
+        default:
+            throw new IllegalArgumentException(compression.toString());
+        }
+        this.compression = compression;
+        this.width = width;
+        this.bytesPerRow = (width + 7) / 8;
+        this.whiteRow = new byte[bytesPerRow];
+        this.buffer = new byte[Math.max(64, bytesPerRow * 8)];
+    }
+
+    /**
+     * Encodes a strip or tile of packed rows, each starting on a byte boundary.
+     * The compressed data is available through {@link #getBuffer()}.
+     * @param data the packed rows
+     * @param rows the number of rows to encode
+     * @return the number of compressed bytes
+     */
+    int encode(byte[] data, int rows) {
+        count = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+
+        int offset = 0;
+        for (int row = 0; row < rows; row++) {
+            switch (compression) {
+            case GROUP3_1D:
+                encode1DRow(data, offset);
+                flushBits();
+                break;
+            case GROUP3_2D:
+                putBits(EOL_CODE, EOL_LENGTH);
+                if (row % T4_K_FACTOR == 0) {
+                    putBits(1, 1);
+                    encode1DRow(data, offset);
+                } else {
+                    putBits(0, 1);
+                    encode2DRow(data, offset, data, offset - bytesPerRow);
+                }
+                break;
+            default:
+                if (row == 0) {
+                    encode2DRow(data, offset, whiteRow, 0);
+                } else {
+                    encode2DRow(data, offset, data, offset - bytesPerRow);
+                }
+            }
+            offset += bytesPerRow;
+        }
+
+        if (compression == CompressionValue.GROUP4) {
+            // EOFB
+            putBits(EOL_CODE, EOL_LENGTH);
+            putBits(EOL_CODE, EOL_LENGTH);
+        }
+        flushBits();
+        return count;
+    }
+
+    /**
+     * Returns the buffer holding the data compressed by the last call to
+     * {@link #encode(byte[], int)}.
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    private void encode1DRow(byte[] row, int offset) {
+        int a0 = 0;
+        int color = 0;
+        while (true) {
+            int a1 = findChange(row, offset, a0, color);
+            putRun(a1 - a0, color);
+            if (a1 >= width) {
+                break;
+            }
+            a0 = a1;
+            color ^= 1;
+        }
+    }
+
+    private void encode2DRow(byte[] row, int offset, byte[] ref, int refOffset) {
+        int a0 = 0;
+        int color = 0;
+        int a1 = pixel(row, offset, 0) != 0 ? 0 : findChange(row, offset, 0, 0);
+        int b1 = pixel(ref, refOffset, 0) != 0 ? 0 : findChange(ref, refOffset, 0, 0);
+        while (true) {
+            int b2 = b1 < width ? findChange(ref, refOffset, b1, pixel(ref, refOffset, b1)) : width;
+            if (b2 < a1) {
+                putBits(PASS_CODE, PASS_LENGTH);
+                a0 = b2;
+            } else {
+                int d = a1 - b1;
+                if (d >= -3 && d <= 3) {
+                    putCode(VERTICAL, 3 - d);
+                    a0 = a1;
+                    color ^= 1;
+                } else {
+                    int a2 = a1 < width
+                            ? findChange(row, offset, a1, pixel(row, offset, a1)) : width;
+                    putBits(HORIZONTAL_CODE, HORIZONTAL_LENGTH);
+                    putRun(a1 - a0, color);
+                    putRun(a2 - a1, color ^ 1);
+                    a0 = a2;
+                }
+            }
+            if (a0 >= width) {
+                break;
+            }
+            a1 = findChange(row, offset, a0, color);
+            b1 = findChange(ref, refOffset, a0, color ^ 1);
+            b1 = findChange(ref, refOffset, b1, color);
+        }
+    }
+
+    private static int pixel(byte[] row, int offset, int x) {
+        return (row[offset + (x >> 3)] >> (7 - (x & 7))) & 1;
+    }
+
+    /**
+     * Returns the position of the first pixel at or after x which is not of
+     * the given color, or the row width if there is none.
+     */
+    private int findChange(byte[] row, int offset, int x, int color) {
+        int run = color == 0 ? 0x00 : 0xff;
+        while (x < width) {
+            if ((x & 7) == 0 && (row[offset + (x >> 3)] & 0xff) == run) {
+                x += 8;
+            } else if (pixel(row, offset, x) != color) {
+                return x;
+            } else {
+                x++;
+            }
+        }
+        return width;
+    }
+
+    private void putRun(int run, int color) {
+        int[] makeup = color == 0 ? WHITE_MAKEUP : BLACK_MAKEUP;
+        while (run >= MAX_MAKEUP_RUN + 64) {
+            putCode(makeup, MAX_MAKEUP_RUN / 64 - 1);
+            run -= MAX_MAKEUP_RUN;
+        }
+        if (run >= 64) {
+            putCode(makeup, run / 64 - 1);
+            run &= 63;
+        }
+        putCode(color == 0 ? WHITE_TERMINATING : BLACK_TERMINATING, run);
+    }
+
+    private void putCode(int[] table, int index) {
+        putBits(table[2 * index], table[2 * index + 1]);
+    }
+
+    private void putBits(int code, int length) {
+        bitBuffer = (bitBuffer << length) | code;
+        bitCount += length;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            write(bitBuffer >>> bitCount);
+        }
+    }
+
+    /** Pads the current byte with zero bits and writes it. */
+    private void flushBits() {
+        if (bitCount > 0) {
+            write(bitBuffer << (8 - bitCount));
+            bitCount = 0;
+        }
+    }
+
+    private void write(int b) {
+        if (count == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[count++] = (byte) b;
+    }
+}
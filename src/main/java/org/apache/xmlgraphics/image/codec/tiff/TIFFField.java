@@ -32,7 +32,8 @@ import java.io.Serializable;
  * <p> A field in a TIFF Image File Directory (IFD).  A field is defined
  * as a sequence of values of identical data type.  TIFF 6.0 defines
  * 12 data types, which are mapped internally onto the Java datatypes
- * byte, int, long, float, and double.
+ * byte, int, long, float, and double.  The 64 bit integer types added
+ * by BigTIFF are mapped onto long.
  *
  * <p><b> This class is not a committed part of the JAI API.  It may
  * be removed or changed in future releases of JAI.</b>
@@ -76,6 +77,15 @@ public class TIFFField implements Comparable, Serializable {
 
     /** Flag for 64 bit IEEE doubles. */
     public static final int TIFF_DOUBLE    = 12;
+
+    /** Flag for 64 bit unsigned integers (BigTIFF). */
+    public static final int TIFF_LONG8     = 16;
+
+    /** Flag for 64 bit signed integers (BigTIFF). */
+    public static final int TIFF_SLONG8    = 17;
+
+    /** Flag for 64 bit IFD offsets (BigTIFF). */
+    public static final int TIFF_IFD8      = 18;
     private static final long serialVersionUID = 207783128222415437L;
 
     /** The tag number. */
@@ -127,6 +137,12 @@ public class TIFFField implements Comparable, Serializable {
      * <td><tt>TIFF_FLOAT</tt></td>     <td><tt>float</tt></td>
      * <tr>
      * <td><tt>TIFF_DOUBLE</tt></td>    <td><tt>double</tt></td>
+     * <tr>
+     * <td><tt>TIFF_LONG8</tt></td>     <td><tt>long</tt></td>
+     * <tr>
+     * <td><tt>TIFF_SLONG8</tt></td>    <td><tt>long</tt></td>
+     * <tr>
+     * <td><tt>TIFF_IFD8</tt></td>      <td><tt>long</tt></td>
      * </table>
      */
     public TIFFField(int tag, int type, int count, Object data) {
@@ -211,11 +227,11 @@ public class TIFFField implements Comparable, Serializable {
     }
 
     /**
-     * Returns TIFF_LONG data as an array of longs (signed 64-bit
-     * integers).
+     * Returns TIFF_LONG, TIFF_LONG8, TIFF_SLONG8 or TIFF_IFD8 data as an
+     * array of longs (signed 64-bit integers).
      *
      * <p> A ClassCastException will be thrown if the field is not
-     * of type TIFF_LONG.
+     * of one of these types.
      */
     public long[] getAsLongs() {
         return (long[])data;
@@ -293,7 +309,8 @@ public class TIFFField implements Comparable, Serializable {
 
     /**
      * Returns data in TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT,
-     * TIFF_SSHORT, TIFF_SLONG, or TIFF_LONG format as a long.
+     * TIFF_SSHORT, TIFF_SLONG, TIFF_LONG or one of the 64 bit integer
+     * formats as a long.
      *
      * <p> TIFF_BYTE and TIFF_UNDEFINED data are treated as unsigned;
      * that is, no sign extension will take place and the returned
@@ -302,7 +319,8 @@ public class TIFFField implements Comparable, Serializable {
      *
      * <p> A ClassCastException will be thrown if the field is not of
      * type TIFF_BYTE, TIFF_SBYTE, TIFF_UNDEFINED, TIFF_SHORT,
-     * TIFF_SSHORT, TIFF_SLONG, or TIFF_LONG.
+     * TIFF_SSHORT, TIFF_SLONG, TIFF_LONG, TIFF_LONG8, TIFF_SLONG8 or
+     * TIFF_IFD8.
      */
     public long getAsLong(int index) {
         switch (type) {
@@ -317,6 +335,9 @@ public class TIFFField implements Comparable, Serializable {
         case TIFF_SLONG:
             return ((int[])data)[index];
         case TIFF_LONG:
+        case TIFF_LONG8:
+        case TIFF_SLONG8:
+        case TIFF_IFD8:
             return ((long[])data)[index];
         default:
             throw new ClassCastException();
@@ -347,6 +368,9 @@ public class TIFFField implements Comparable, Serializable {
         case TIFF_SLONG:
             return ((int[])data)[index];
         case TIFF_LONG:
+        case TIFF_LONG8:
+        case TIFF_SLONG8:
+        case TIFF_IFD8:
             return ((long[])data)[index];
         case TIFF_FLOAT:
             return ((float[])data)[index];
@@ -385,6 +409,9 @@ public class TIFFField implements Comparable, Serializable {
         case TIFF_SLONG:
             return ((int[])data)[index];
         case TIFF_LONG:
+        case TIFF_LONG8:
+        case TIFF_SLONG8:
+        case TIFF_IFD8:
             return ((long[])data)[index];
         case TIFF_FLOAT:
             return ((float[])data)[index];
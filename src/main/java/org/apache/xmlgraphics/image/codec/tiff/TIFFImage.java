@@ -19,6 +19,7 @@
 
 package org.apache.xmlgraphics.image.codec.tiff;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.Transparency;
 import java.awt.color.ColorSpace;
@@ -36,11 +37,16 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
+import org.apache.xmlgraphics.image.GraphicsUtil;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.rendered.AbstractRed;
@@ -101,11 +107,9 @@ public class TIFFImage extends AbstractRed {
     long tiffT6Options;
     int fillOrder;
 
-    // LZW compression related variable
+    // LZW compression related variables
     int predictor;
-
-    // DEFLATE variables
-    Inflater inflater;
+    int samplesPerPixel;
 
     // Endian-ness indicator
     boolean isBigEndian;
@@ -117,23 +121,35 @@ public class TIFFImage extends AbstractRed {
     boolean decodePaletteAsShorts;
     boolean tiled;
 
-    // Decoders
-    private TIFFFaxDecoder decoder;
-    private TIFFLZWDecoder lzwDecoder;
+    // Decoded tiles, or null if tiles are not cached
+    private TIFFTileCache tileCache;
+    private boolean parallelDecoding;
+
+    // Layout of the tiles (strips) in the file, which differs from the
+    // layout of the image if a source region or subsampling is used
+    private SampleModel sourceSampleModel;
+    private int sourceTileWidth;
+    private int sourceTileHeight;
+    private Rectangle sourceRegion;
+    private int xSubsampling;
+    private int ySubsampling;
+    private boolean subsampled;
 
     /**
-     * Inflates <code>deflated</code> into <code>inflated</code> using the
-     * <code>Inflater</code> constructed during class instantiation.
+     * Inflates <code>deflated</code> into <code>inflated</code> using a
+     * new <code>Inflater</code>, so that tiles can be inflated concurrently.
      */
-    private void inflate(byte[] deflated, byte[] inflated) {
+    private static void inflate(byte[] deflated, byte[] inflated) {
+        Inflater inflater = new Inflater();
         inflater.setInput(deflated);
         try {
             inflater.inflate(inflated);
         } catch (DataFormatException dfe) {
             throw new RuntimeException(PropertyUtil.getString("TIFFImage17") + ": "
                                        + dfe.getMessage());
+        } finally {
+            inflater.end();
         }
-        inflater.reset();
     }
 
     private static SampleModel createPixelInterleavedSampleModel(
@@ -148,7 +164,8 @@ public class TIFFImage extends AbstractRed {
     }
 
     /**
-     * Return as a long[] the value of a TIFF_LONG or TIFF_SHORT field.
+     * Return as a long[] the value of a TIFF_LONG, TIFF_SHORT or BigTIFF
+     * TIFF_LONG8 field.
      */
     private long[] getFieldAsLongs(TIFFField field) {
         long[] value = null;
@@ -159,7 +176,9 @@ public class TIFFImage extends AbstractRed {
             for (int i = 0; i < charValue.length; i++) {
                 value[i] = charValue[i] & 0xffff;
             }
-        } else if (field.getType() == TIFFField.TIFF_LONG) {
+        } else if (field.getType() == TIFFField.TIFF_LONG
+                || field.getType() == TIFFField.TIFF_LONG8
+                || field.getType() == TIFFField.TIFF_IFD8) {
             value = field.getAsLongs();
         } else {
             throw new RuntimeException(PropertyUtil.getString("TIFFImage18") + ": "
@@ -198,7 +217,7 @@ public class TIFFImage extends AbstractRed {
 
         // Get the number of samples per pixel
         TIFFField sfield = dir.getField(TIFFImageDecoder.TIFF_SAMPLES_PER_PIXEL);
-        int samplesPerPixel = sfield == null ? 1 : (int)sfield.getAsLong(0);
+        samplesPerPixel = sfield == null ? 1 : (int)sfield.getAsLong(0);
 
         // Read the TIFF_PLANAR_CONFIGURATION field
         TIFFField planarConfigurationField =
@@ -374,7 +393,7 @@ public class TIFFImage extends AbstractRed {
                 tileHeight =
                     (int)dir.getFieldAsLong(TIFFImageDecoder.TIFF_TILE_LENGTH);
                 tileOffsets =
-                    (dir.getField(TIFFImageDecoder.TIFF_TILE_OFFSETS)).getAsLongs();
+                    getFieldAsLongs(dir.getField(TIFFImageDecoder.TIFF_TILE_OFFSETS));
                 tileByteCounts =
                     getFieldAsLongs(dir.getField(TIFFImageDecoder.TIFF_TILE_BYTE_COUNTS));
 
@@ -451,7 +470,7 @@ public class TIFFImage extends AbstractRed {
                 // Do nothing.
                 break;
             case COMP_DEFLATE:
-                inflater = new Inflater();
+                // Inflaters are created for each tile.
                 break;
             case COMP_FAX_G3_1D:
             case COMP_FAX_G3_2D:
@@ -483,14 +502,10 @@ public class TIFFImage extends AbstractRed {
                         tiffT6Options = 0;
                     }
                 }
-
-                // Fax encoding, need to create the Fax decoder.
-                decoder = new TIFFFaxDecoder(fillOrder,
-                                             tileWidth, tileHeight);
                 break;
 
             case COMP_LZW:
-                // LZW compression used, need to create the LZW decoder.
+                // LZW compression used, get the predictor for the decoder.
                 TIFFField predictorField =
                     dir.getField(TIFFImageDecoder.TIFF_PREDICTOR);
 
@@ -503,13 +518,10 @@ public class TIFFImage extends AbstractRed {
                         throw new RuntimeException(PropertyUtil.getString("TIFFImage8"));
                     }
 
-                    if (predictor == 2 && sampleSize != 8) {
+                    if (predictor == 2 && sampleSize != 8 && sampleSize != 16) {
                         throw new RuntimeException(PropertyUtil.getString("TIFFImage9"));
                     }
                 }
-
-                lzwDecoder = new TIFFLZWDecoder(tileWidth, predictor,
-                                                samplesPerPixel);
                 break;
 
             case COMP_JPEG_OLD:
@@ -719,6 +731,38 @@ public class TIFFImage extends AbstractRed {
         // Set a property "tiff_directory".
         properties.put("tiff_directory", dir);
 
+        if (param.getTileCacheSize() > 0) {
+            tileCache = new TIFFTileCache(param.getTileCacheSize());
+        }
+        parallelDecoding = param.getParallelDecoding();
+
+        sourceSampleModel = sampleModel;
+        sourceTileWidth = sampleModel.getWidth();
+        sourceTileHeight = sampleModel.getHeight();
+        sourceRegion = param.getSourceRegion();
+        if (sourceRegion == null) {
+            sourceRegion = bounds;
+        } else {
+            sourceRegion = sourceRegion.intersection(bounds);
+            if (sourceRegion.isEmpty()) {
+                throw new IllegalArgumentException(PropertyUtil.getString("TIFFImage21"));
+            }
+        }
+        xSubsampling = param.getXSubsampling();
+        ySubsampling = param.getYSubsampling();
+        subsampled = !sourceRegion.equals(bounds)
+            || xSubsampling != 1 || ySubsampling != 1;
+        if (subsampled) {
+            // Each tile of the image holds the pixels of about one tile
+            // (strip) of the file
+            int width = (sourceRegion.width + xSubsampling - 1) / xSubsampling;
+            int height = (sourceRegion.height + ySubsampling - 1) / ySubsampling;
+            bounds = new Rectangle(0, 0, width, height);
+            sampleModel = sampleModel.createCompatibleSampleModel(
+                Math.min(width, (sourceTileWidth + xSubsampling - 1) / xSubsampling),
+                Math.min(height, (sourceTileHeight + ySubsampling - 1) / ySubsampling));
+        }
+
         // System.out.println("Constructed TIFF");
 
         init((CachableRed)null, bounds, colorModel, sampleModel,
@@ -731,35 +775,156 @@ public class TIFFImage extends AbstractRed {
      * only by private tag values.
      */
     public TIFFDirectory getPrivateIFD(long offset) throws IOException {
-        return new TIFFDirectory(stream, offset, 0);
+        synchronized (stream) {
+            return new TIFFDirectory(stream, offset, 0);
+        }
     }
 
 
     public WritableRaster copyData(WritableRaster wr) {
-        copyToRaster(wr);
+        if (parallelDecoding) {
+            copyToRasterParallel(wr);
+        } else {
+            copyToRaster(wr);
+        }
         return wr;
     }
 
+    /**
+     * Decodes the tiles intersecting <code>wr</code> concurrently in the
+     * common fork/join pool and copies them into <code>wr</code> in order.
+     */
+    private void copyToRasterParallel(WritableRaster wr) {
+        int tx0 = Math.max(getXTile(wr.getMinX()), minTileX);
+        int ty0 = Math.max(getYTile(wr.getMinY()), minTileY);
+        int tx1 = Math.min(getXTile(wr.getMinX() + wr.getWidth() - 1),
+                           minTileX + numXTiles - 1);
+        int ty1 = Math.min(getYTile(wr.getMinY() + wr.getHeight() - 1),
+                           minTileY + numYTiles - 1);
+        if (tx0 >= tx1 && ty0 >= ty1) {
+            copyToRaster(wr);
+            return;
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        // Limits the number of decoded tiles waiting to be copied
+        int maxPending = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<Raster>> pending = new ArrayDeque<ForkJoinTask<Raster>>();
+        for (int y = ty0; y <= ty1; y++) {
+            for (int x = tx0; x <= tx1; x++) {
+                final int tileX = x;
+                final int tileY = y;
+                pending.add(pool.submit(() -> getTile(tileX, tileY)));
+                if (pending.size() >= maxPending) {
+                    GraphicsUtil.copyData(pending.removeFirst().join(), wr);
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            GraphicsUtil.copyData(pending.removeFirst().join(), wr);
+        }
+    }
+
+    /**
+     * Reads the raw, possibly compressed, data of a tile.  Access to the
+     * stream is synchronized on the stream, as it may be shared with
+     * other images decoded from the same file.
+     */
+    private byte[] readTileData(int tileIndex, int byteCount) {
+        byte[] data = new byte[byteCount];
+        synchronized (stream) {
+            try {
+                // Save original file pointer position and seek to tile data location.
+                long saveOffset = stream.getFilePointer();
+                stream.seek(tileOffsets[tileIndex]);
+                stream.readFully(data, 0, byteCount);
+                stream.seek(saveOffset);
+            } catch (IOException ioe) {
+                throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
+                                           + ioe.getMessage());
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Returns tile (tileX, tileY) as a Raster.  This method may be called
+     * concurrently: the tile data are read from the stream under a lock
+     * on the stream, but decoded with decoders created for each call.
+     * If a tile cache has been configured with
+     * {@link TIFFDecodeParam#setTileCacheSize(long)}, the same Raster
+     * instance is returned for repeated requests of a cached tile, so
+     * the returned Raster must not be modified.
+     */
+    public Raster getTile(int tileX, int tileY) {
+        if (!subsampled) {
+            return decodeTile(tileX, tileY);
+        }
+        if ((tileX < minTileX) || (tileX >= minTileX + numXTiles)
+            || (tileY < minTileY) || (tileY >= minTileY + numYTiles)) {
+            throw new IllegalArgumentException(PropertyUtil.getString("TIFFImage12"));
+        }
+
+        WritableRaster tile = makeTile(tileX, tileY);
+        Rectangle rect = tile.getBounds().intersection(getBounds());
+        int srcMinX = sourceRegion.x + rect.x * xSubsampling;
+        int srcMinY = sourceRegion.y + rect.y * ySubsampling;
+        int srcMaxX = sourceRegion.x + (rect.x + rect.width - 1) * xSubsampling;
+        int srcMaxY = sourceRegion.y + (rect.y + rect.height - 1) * ySubsampling;
+
+        // Copy the sampled pixels of each file tile covered by the tile
+        Object pixel = null;
+        for (int ty = srcMinY / sourceTileHeight; ty <= srcMaxY / sourceTileHeight; ty++) {
+            for (int tx = srcMinX / sourceTileWidth; tx <= srcMaxX / sourceTileWidth; tx++) {
+                Raster src = decodeTile(tx, ty);
+                int x0 = Math.max(rect.x,
+                    -Math.floorDiv(sourceRegion.x - src.getMinX(), xSubsampling));
+                int y0 = Math.max(rect.y,
+                    -Math.floorDiv(sourceRegion.y - src.getMinY(), ySubsampling));
+                int x1 = Math.min(rect.x + rect.width - 1, Math.floorDiv(
+                    src.getMinX() + src.getWidth() - 1 - sourceRegion.x, xSubsampling));
+                int y1 = Math.min(rect.y + rect.height - 1, Math.floorDiv(
+                    src.getMinY() + src.getHeight() - 1 - sourceRegion.y, ySubsampling));
+                for (int y = y0; y <= y1; y++) {
+                    int srcY = sourceRegion.y + y * ySubsampling;
+                    for (int x = x0; x <= x1; x++) {
+                        pixel = src.getDataElements(sourceRegion.x + x * xSubsampling, srcY, pixel);
+                        tile.setDataElements(x, y, pixel);
+                    }
+                }
+            }
+        }
+        return tile;
+    }
 
     /**
-     * Returns tile (tileX, tileY) as a Raster.
+     * Decodes tile (strip) (tileX, tileY) of the file, or returns it from
+     * the tile cache.
      */
-    public synchronized Raster getTile(int tileX, int tileY) {
+    private Raster decodeTile(int tileX, int tileY) {
         if ((tileX < 0) || (tileX >= tilesX)
             || (tileY < 0) || (tileY >= tilesY)) {
             throw new IllegalArgumentException(PropertyUtil.getString("TIFFImage12"));
         }
 
-        // System.out.println("Called TIFF getTile:" + tileX + "," + tileY);
+        int tileIndex = tileY * tilesX + tileX;
+        if (tileCache != null) {
+            Raster cached = tileCache.get(tileIndex);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
+        // System.out.println("Called TIFF getTile:" + tileX + "," + tileY);
 
         // Get the data array out of the DataBuffer
         byte[] bdata = null;
         short[] sdata = null;
         int[] idata = null;
 
-        SampleModel sampleModel = getSampleModel();
-        WritableRaster tile = makeTile(tileX, tileY);
+        SampleModel sampleModel = sourceSampleModel;
+        WritableRaster tile = Raster.createWritableRaster(sampleModel,
+            new Point(tileX * sourceTileWidth, tileY * sourceTileHeight));
 
         DataBuffer buffer = tile.getDataBuffer();
 
@@ -779,18 +944,11 @@ public class TIFFImage extends AbstractRed {
         short sswap;
         int iswap;
 
-        // Save original file pointer position and seek to tile data location.
-        long saveOffset = 0;
-        try {
-            saveOffset = stream.getFilePointer();
-            stream.seek(tileOffsets[tileY * tilesX + tileX]);
-        } catch (IOException ioe) {
-            throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
-        }
-
         // Number of bytes in this tile (strip) after compression.
-        int byteCount = (int)tileByteCounts[tileY * tilesX + tileX];
+        int byteCount = (int)tileByteCounts[tileIndex];
+
+        // Read the tile data, then decode it without holding the lock.
+        byte[] data = readTileData(tileIndex, byteCount);
 
         // Find out the number of bytes in the current tile
         Rectangle newRect;
@@ -798,57 +956,51 @@ public class TIFFImage extends AbstractRed {
             newRect = tile.getBounds();
         } else {
             newRect = new Rectangle(tile.getMinX(), tile.getMinY(),
-                                    tileWidth, tileHeight);
+                                    sourceTileWidth, sourceTileHeight);
         }
 
         int unitsInThisTile = newRect.width * newRect.height * numBands;
 
-        // Allocate read buffer if needed.
-        byte[] data = compression != COMP_NONE || imageType == TYPE_PALETTE
-            ? new byte[byteCount] : null;
+        // Decoders keep state while decoding, so create them for each tile.
+        TIFFLZWDecoder lzwDecoder = null;
+        TIFFFaxDecoder decoder = null;
+        if (compression == COMP_LZW) {
+            lzwDecoder = new TIFFLZWDecoder(sourceTileWidth, predictor, samplesPerPixel,
+                                            sampleSize, isBigEndian);
+        } else if (compression == COMP_FAX_G3_1D
+                   || compression == COMP_FAX_G3_2D
+                   || compression == COMP_FAX_G4_2D) {
+            decoder = new TIFFFaxDecoder(fillOrder, sourceTileWidth, sourceTileHeight);
+        }
 
         // Read the data, uncompressing as needed. There are four cases:
         // bilevel, palette-RGB, 4-bit grayscale, and everything else.
         if (imageType == TYPE_BILEVEL) { // bilevel
-            try {
-                if (compression == COMP_PACKBITS) {
-                    stream.readFully(data, 0, byteCount);
-
-                    // Since the decompressed data will still be packed
-                    // 8 pixels into 1 byte, calculate bytesInThisTile
-                    int bytesInThisTile;
-                    if ((newRect.width % 8) == 0) {
-                        bytesInThisTile = (newRect.width / 8) * newRect.height;
-                    } else {
-                        bytesInThisTile =
-                            (newRect.width / 8 + 1) * newRect.height;
-                    }
-                    decodePackbits(data, bytesInThisTile, bdata);
-                } else if (compression == COMP_LZW) {
-                    stream.readFully(data, 0, byteCount);
-                    lzwDecoder.decode(data, bdata, newRect.height);
-                } else if (compression == COMP_FAX_G3_1D) {
-                    stream.readFully(data, 0, byteCount);
-                    decoder.decode1D(bdata, data, 0, newRect.height);
-                } else if (compression == COMP_FAX_G3_2D) {
-                    stream.readFully(data, 0, byteCount);
-                    decoder.decode2D(bdata, data, 0, newRect.height,
-                                     tiffT4Options);
-                } else if (compression == COMP_FAX_G4_2D) {
-                    stream.readFully(data, 0, byteCount);
-                    decoder.decodeT6(bdata, data, 0, newRect.height,
-                                     tiffT6Options);
-                } else if (compression == COMP_DEFLATE) {
-                    stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
-                } else if (compression == COMP_NONE) {
-                    stream.readFully(bdata, 0, byteCount);
+            if (compression == COMP_PACKBITS) {
+                // Since the decompressed data will still be packed
+                // 8 pixels into 1 byte, calculate bytesInThisTile
+                int bytesInThisTile;
+                if ((newRect.width % 8) == 0) {
+                    bytesInThisTile = (newRect.width / 8) * newRect.height;
+                } else {
+                    bytesInThisTile =
+                        (newRect.width / 8 + 1) * newRect.height;
                 }
-
-                stream.seek(saveOffset);
-            } catch (IOException ioe) {
-                throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
+                decodePackbits(data, bytesInThisTile, bdata);
+            } else if (compression == COMP_LZW) {
+                lzwDecoder.decode(data, bdata, newRect.height);
+            } else if (compression == COMP_FAX_G3_1D) {
+                decoder.decode1D(bdata, data, 0, newRect.height);
+            } else if (compression == COMP_FAX_G3_2D) {
+                decoder.decode2D(bdata, data, 0, newRect.height,
+                                 tiffT4Options);
+            } else if (compression == COMP_FAX_G4_2D) {
+                decoder.decodeT6(bdata, data, 0, newRect.height,
+                                 tiffT6Options);
+            } else if (compression == COMP_DEFLATE) {
+                inflate(data, bdata);
+            } else if (compression == COMP_NONE) {
+                System.arraycopy(data, 0, bdata, 0, Math.min(byteCount, bdata.length));
             }
         } else if (imageType == TYPE_PALETTE) { // palette-RGB
             if (sampleSize == 16) {
@@ -869,54 +1021,39 @@ public class TIFFImage extends AbstractRed {
                     // how many bytes we'll get after decompression.
                     int entries = unitsBeforeLookup * 2;
 
-                    // Read the data, if compressed, decode it, reset the pointer
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-
-                            byte[] byteArray = new byte[entries];
-                            decodePackbits(data, entries, byteArray);
-                            tempData = new short[unitsBeforeLookup];
-                            interpretBytesAsShorts(byteArray, tempData,
-                                                   unitsBeforeLookup);
-
-                        }  else if (compression == COMP_LZW) {
-
-                            // Read in all the compressed data for this tile
-                            stream.readFully(data, 0, byteCount);
+                    // If compressed, decode the data.
+                    if (compression == COMP_PACKBITS) {
 
-                            byte[] byteArray = new byte[entries];
-                            lzwDecoder.decode(data, byteArray, newRect.height);
-                            tempData = new short[unitsBeforeLookup];
-                            interpretBytesAsShorts(byteArray, tempData,
-                                                   unitsBeforeLookup);
+                        byte[] byteArray = new byte[entries];
+                        decodePackbits(data, entries, byteArray);
+                        tempData = new short[unitsBeforeLookup];
+                        interpretBytesAsShorts(byteArray, tempData,
+                                               unitsBeforeLookup);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    }  else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            byte[] byteArray = new byte[entries];
-                            inflate(data, byteArray);
-                            tempData = new short[unitsBeforeLookup];
-                            interpretBytesAsShorts(byteArray, tempData,
-                                                   unitsBeforeLookup);
+                        byte[] byteArray = new byte[entries];
+                        lzwDecoder.decode(data, byteArray, newRect.height);
+                        tempData = new short[unitsBeforeLookup];
+                        interpretBytesAsShorts(byteArray, tempData,
+                                               unitsBeforeLookup);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            // byteCount tells us how many bytes are there
-                            // in this tile, but we need to read in shorts,
-                            // which will take half the space, so while
-                            // allocating we divide byteCount by 2.
-                            tempData = new short[byteCount / 2];
-                            readShorts(byteCount / 2, tempData);
-                        }
+                        byte[] byteArray = new byte[entries];
+                        inflate(data, byteArray);
+                        tempData = new short[unitsBeforeLookup];
+                        interpretBytesAsShorts(byteArray, tempData,
+                                               unitsBeforeLookup);
 
-                        stream.seek(saveOffset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
+                        // byteCount tells us how many bytes are there
+                        // in this tile, but we need to read in shorts,
+                        // which will take half the space, so while
+                        // allocating we divide byteCount by 2.
+                        tempData = new short[byteCount / 2];
+                        interpretBytesAsShorts(data, tempData, byteCount / 2);
                     }
 
                     if (dataType == DataBuffer.TYPE_USHORT) {
@@ -971,56 +1108,42 @@ public class TIFFImage extends AbstractRed {
                     // No lookup being done here, when RGB values are needed,
                     // the associated IndexColorModel can be used to get them.
 
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-
-                            // Since unitsInThisTile is the number of shorts,
-                            // but we do our decompression in terms of bytes, we
-                            // need to multiply unitsInThisTile by 2 in order to
-                            // figure out how many bytes we'll get after
-                            // decompression.
-                            int bytesInThisTile = unitsInThisTile * 2;
-
-                            byte[] byteArray = new byte[bytesInThisTile];
-                            decodePackbits(data, bytesInThisTile, byteArray);
-                            interpretBytesAsShorts(byteArray, sdata,
-                                                   unitsInThisTile);
-
-                        } else if (compression == COMP_LZW) {
+                    if (compression == COMP_PACKBITS) {
 
-                            stream.readFully(data, 0, byteCount);
+                        // Since unitsInThisTile is the number of shorts,
+                        // but we do our decompression in terms of bytes, we
+                        // need to multiply unitsInThisTile by 2 in order to
+                        // figure out how many bytes we'll get after
+                        // decompression.
+                        int bytesInThisTile = unitsInThisTile * 2;
 
-                            // Since unitsInThisTile is the number of shorts,
-                            // but we do our decompression in terms of bytes, we
-                            // need to multiply unitsInThisTile by 2 in order to
-                            // figure out how many bytes we'll get after
-                            // decompression.
-                            byte[] byteArray = new byte[unitsInThisTile * 2];
-                            lzwDecoder.decode(data, byteArray, newRect.height);
-                            interpretBytesAsShorts(byteArray, sdata,
-                                                   unitsInThisTile);
+                        byte[] byteArray = new byte[bytesInThisTile];
+                        decodePackbits(data, bytesInThisTile, byteArray);
+                        interpretBytesAsShorts(byteArray, sdata,
+                                               unitsInThisTile);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    } else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            byte[] byteArray = new byte[unitsInThisTile * 2];
-                            inflate(data, byteArray);
-                            interpretBytesAsShorts(byteArray, sdata,
-                                                   unitsInThisTile);
+                        // Since unitsInThisTile is the number of shorts,
+                        // but we do our decompression in terms of bytes, we
+                        // need to multiply unitsInThisTile by 2 in order to
+                        // figure out how many bytes we'll get after
+                        // decompression.
+                        byte[] byteArray = new byte[unitsInThisTile * 2];
+                        lzwDecoder.decode(data, byteArray, newRect.height);
+                        interpretBytesAsShorts(byteArray, sdata,
+                                               unitsInThisTile);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            readShorts(byteCount / 2, sdata);
-                        }
+                        byte[] byteArray = new byte[unitsInThisTile * 2];
+                        inflate(data, byteArray);
+                        interpretBytesAsShorts(byteArray, sdata,
+                                               unitsInThisTile);
 
-                        stream.seek(saveOffset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
+                        interpretBytesAsShorts(data, sdata, byteCount / 2);
                     }
                 }
 
@@ -1036,41 +1159,28 @@ public class TIFFImage extends AbstractRed {
                     // 3 bands, we need to divide this by 3.
                     int unitsBeforeLookup = unitsInThisTile / 3;
 
-                    // Read the data, if compressed, decode it, reset the pointer
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-                            tempData = new byte[unitsBeforeLookup];
-                            decodePackbits(data, unitsBeforeLookup, tempData);
-
-                        }  else if (compression == COMP_LZW) {
+                    // If compressed, decode the data.
+                    if (compression == COMP_PACKBITS) {
 
-                            stream.readFully(data, 0, byteCount);
-                            tempData = new byte[unitsBeforeLookup];
-                            lzwDecoder.decode(data, tempData, newRect.height);
+                        tempData = new byte[unitsBeforeLookup];
+                        decodePackbits(data, unitsBeforeLookup, tempData);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    }  else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            tempData = new byte[unitsBeforeLookup];
-                            inflate(data, tempData);
+                        tempData = new byte[unitsBeforeLookup];
+                        lzwDecoder.decode(data, tempData, newRect.height);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            tempData = new byte[byteCount];
-                            stream.readFully(tempData, 0, byteCount);
-                        } else {
-                            throw new RuntimeException(PropertyUtil.getString("IFFImage10") + ": "
-                                                       + compression);
-                        }
+                        tempData = new byte[unitsBeforeLookup];
+                        inflate(data, tempData);
 
-                        stream.seek(saveOffset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
+                        tempData = data;
+                    } else {
+                        throw new RuntimeException(PropertyUtil.getString("IFFImage10") + ": "
+                                                   + compression);
                     }
 
                     // Expand the palette image into an rgb image with ushort
@@ -1098,37 +1208,25 @@ public class TIFFImage extends AbstractRed {
                     // No lookup being done here, when RGB values are needed,
                     // the associated IndexColorModel can be used to get them.
 
-                    try {
-
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-                            decodePackbits(data, unitsInThisTile, bdata);
-
-                        } else if (compression == COMP_LZW) {
+                    if (compression == COMP_PACKBITS) {
 
-                            stream.readFully(data, 0, byteCount);
-                            lzwDecoder.decode(data, bdata, newRect.height);
+                        decodePackbits(data, unitsInThisTile, bdata);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    } else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                        lzwDecoder.decode(data, bdata, newRect.height);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            stream.readFully(bdata, 0, byteCount);
+                        inflate(data, bdata);
 
-                        } else {
-                            throw new RuntimeException(PropertyUtil.getString("TIFFImage10")
-                                                       + ": " + compression);
-                        }
+                    } else if (compression == COMP_NONE) {
 
-                        stream.seek(saveOffset);
+                        System.arraycopy(data, 0, bdata, 0, Math.min(byteCount, bdata.length));
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
+                    } else {
+                        throw new RuntimeException(PropertyUtil.getString("TIFFImage10")
+                                                   + ": " + compression);
                     }
                 }
 
@@ -1142,14 +1240,6 @@ public class TIFFImage extends AbstractRed {
 
                     byte[] tempData = null;
 
-                    try {
-                        stream.readFully(data, 0, byteCount);
-                        stream.seek(saveOffset);
-                    } catch (IOException ioe) {
-                        throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
-                    }
-
                     // If compressed, decode the data.
                     if (compression == COMP_PACKBITS) {
 
@@ -1209,198 +1299,151 @@ public class TIFFImage extends AbstractRed {
                 } else {
 
                     // Output byte values, use IndexColorModel for unpacking
-                    try {
-
-                        // If compressed, decode the data.
-                        if (compression == COMP_PACKBITS) {
-
-                            stream.readFully(data, 0, byteCount);
-                            decodePackbits(data, bytesPostDecoding, bdata);
-
-                        }  else if (compression == COMP_LZW) {
+                    // If compressed, decode the data.
+                    if (compression == COMP_PACKBITS) {
 
-                            stream.readFully(data, 0, byteCount);
-                            lzwDecoder.decode(data, bdata, newRect.height);
+                        decodePackbits(data, bytesPostDecoding, bdata);
 
-                        }  else if (compression == COMP_DEFLATE) {
+                    }  else if (compression == COMP_LZW) {
 
-                            stream.readFully(data, 0, byteCount);
-                            inflate(data, bdata);
+                        lzwDecoder.decode(data, bdata, newRect.height);
 
-                        } else if (compression == COMP_NONE) {
+                    }  else if (compression == COMP_DEFLATE) {
 
-                            stream.readFully(bdata, 0, byteCount);
-                        }
+                        inflate(data, bdata);
 
-                        stream.seek(saveOffset);
+                    } else if (compression == COMP_NONE) {
 
-                    } catch (IOException ioe) {
-                        throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
+                        System.arraycopy(data, 0, bdata, 0, Math.min(byteCount, bdata.length));
                     }
                 }
             }
         } else if (imageType == TYPE_GRAY_4BIT) { // 4-bit gray
-            try {
-                if (compression == COMP_PACKBITS) {
-
-                    stream.readFully(data, 0, byteCount);
-
-                    // Since the decompressed data will still be packed
-                    // 2 pixels into 1 byte, calculate bytesInThisTile
-                    int bytesInThisTile;
-                    if ((newRect.width % 8) == 0) {
-                        bytesInThisTile = (newRect.width / 2) * newRect.height;
-                    } else {
-                        bytesInThisTile = (newRect.width / 2 + 1)
-                            * newRect.height;
-                    }
-
-                    decodePackbits(data, bytesInThisTile, bdata);
-
-                } else if (compression == COMP_LZW) {
-
-                    stream.readFully(data, 0, byteCount);
-                    lzwDecoder.decode(data, bdata, newRect.height);
-
-                }  else if (compression == COMP_DEFLATE) {
-
-                    stream.readFully(data, 0, byteCount);
-                    inflate(data, bdata);
+            if (compression == COMP_PACKBITS) {
 
+                // Since the decompressed data will still be packed
+                // 2 pixels into 1 byte, calculate bytesInThisTile
+                int bytesInThisTile;
+                if ((newRect.width % 8) == 0) {
+                    bytesInThisTile = (newRect.width / 2) * newRect.height;
                 } else {
-
-                    stream.readFully(bdata, 0, byteCount);
+                    bytesInThisTile = (newRect.width / 2 + 1)
+                        * newRect.height;
                 }
 
-                stream.seek(saveOffset);
-            } catch (IOException ioe) {
-                throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
-            }
-        } else { // everything else
-            try {
-
-                if (sampleSize == 8) {
-
-                    if (compression == COMP_NONE) {
-                        stream.readFully(bdata, 0, byteCount);
+                decodePackbits(data, bytesInThisTile, bdata);
 
-                    } else if (compression == COMP_LZW) {
-
-                        stream.readFully(data, 0, byteCount);
-                        lzwDecoder.decode(data, bdata, newRect.height);
+            } else if (compression == COMP_LZW) {
 
-                    } else if (compression == COMP_PACKBITS) {
+                lzwDecoder.decode(data, bdata, newRect.height);
 
-                        stream.readFully(data, 0, byteCount);
-                        decodePackbits(data, unitsInThisTile, bdata);
+            }  else if (compression == COMP_DEFLATE) {
 
-                    } else if (compression == COMP_DEFLATE) {
+                inflate(data, bdata);
 
-                        stream.readFully(data, 0, byteCount);
-                        inflate(data, bdata);
+            } else {
 
-                    } else {
-                        throw new RuntimeException(PropertyUtil.getString("TIFFImage10")
-                                                   + ": " + compression);
-                    }
+                System.arraycopy(data, 0, bdata, 0, Math.min(byteCount, bdata.length));
+            }
+        } else { // everything else
+            if (sampleSize == 8) {
 
-                } else if (sampleSize == 16) {
+                if (compression == COMP_NONE) {
+                    System.arraycopy(data, 0, bdata, 0, Math.min(byteCount, bdata.length));
 
-                    if (compression == COMP_NONE) {
+                } else if (compression == COMP_LZW) {
 
-                        readShorts(byteCount / 2, sdata);
+                    lzwDecoder.decode(data, bdata, newRect.height);
 
-                    } else if (compression == COMP_LZW) {
+                } else if (compression == COMP_PACKBITS) {
 
-                        stream.readFully(data, 0, byteCount);
+                    decodePackbits(data, unitsInThisTile, bdata);
 
-                        // Since unitsInThisTile is the number of shorts,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 2 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        byte[] byteArray = new byte[unitsInThisTile * 2];
-                        lzwDecoder.decode(data, byteArray, newRect.height);
-                        interpretBytesAsShorts(byteArray, sdata,
-                                               unitsInThisTile);
+                } else if (compression == COMP_DEFLATE) {
 
-                    } else if (compression == COMP_PACKBITS) {
+                    inflate(data, bdata);
 
-                        stream.readFully(data, 0, byteCount);
+                } else {
+                    throw new RuntimeException(PropertyUtil.getString("TIFFImage10")
+                                               + ": " + compression);
+                }
 
-                        // Since unitsInThisTile is the number of shorts,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 2 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        int bytesInThisTile = unitsInThisTile * 2;
+            } else if (sampleSize == 16) {
 
-                        byte[] byteArray = new byte[bytesInThisTile];
-                        decodePackbits(data, bytesInThisTile, byteArray);
-                        interpretBytesAsShorts(byteArray, sdata,
-                                               unitsInThisTile);
-                    } else if (compression == COMP_DEFLATE) {
+                if (compression == COMP_NONE) {
 
-                        stream.readFully(data, 0, byteCount);
-                        byte[] byteArray = new byte[unitsInThisTile * 2];
-                        inflate(data, byteArray);
-                        interpretBytesAsShorts(byteArray, sdata,
-                                               unitsInThisTile);
+                    interpretBytesAsShorts(data, sdata, byteCount / 2);
 
-                    }
-                } else if (sampleSize == 32
-                           && dataType == DataBuffer.TYPE_INT) { // redundant
-                    if (compression == COMP_NONE) {
+                } else if (compression == COMP_LZW) {
 
-                        readInts(byteCount / 4, idata);
+                    // Since unitsInThisTile is the number of shorts,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 2 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    byte[] byteArray = new byte[unitsInThisTile * 2];
+                    lzwDecoder.decode(data, byteArray, newRect.height);
+                    interpretBytesAsShorts(byteArray, sdata,
+                                           unitsInThisTile);
 
-                    } else if (compression == COMP_LZW) {
+                } else if (compression == COMP_PACKBITS) {
 
-                        stream.readFully(data, 0, byteCount);
+                    // Since unitsInThisTile is the number of shorts,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 2 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    int bytesInThisTile = unitsInThisTile * 2;
+
+                    byte[] byteArray = new byte[bytesInThisTile];
+                    decodePackbits(data, bytesInThisTile, byteArray);
+                    interpretBytesAsShorts(byteArray, sdata,
+                                           unitsInThisTile);
+                } else if (compression == COMP_DEFLATE) {
 
-                        // Since unitsInThisTile is the number of ints,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 4 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        byte[] byteArray = new byte[unitsInThisTile * 4];
-                        lzwDecoder.decode(data, byteArray, newRect.height);
-                        interpretBytesAsInts(byteArray, idata,
-                                             unitsInThisTile);
+                    byte[] byteArray = new byte[unitsInThisTile * 2];
+                    inflate(data, byteArray);
+                    interpretBytesAsShorts(byteArray, sdata,
+                                           unitsInThisTile);
+                }
+            } else if (sampleSize == 32
+                       && dataType == DataBuffer.TYPE_INT) { // redundant
+                if (compression == COMP_NONE) {
 
-                    } else if (compression == COMP_PACKBITS) {
+                    interpretBytesAsInts(data, idata, byteCount / 4);
 
-                        stream.readFully(data, 0, byteCount);
+                } else if (compression == COMP_LZW) {
 
-                        // Since unitsInThisTile is the number of ints,
-                        // but we do our decompression in terms of bytes, we
-                        // need to multiply unitsInThisTile by 4 in order to
-                        // figure out how many bytes we'll get after
-                        // decompression.
-                        int bytesInThisTile = unitsInThisTile * 4;
+                    // Since unitsInThisTile is the number of ints,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 4 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    byte[] byteArray = new byte[unitsInThisTile * 4];
+                    lzwDecoder.decode(data, byteArray, newRect.height);
+                    interpretBytesAsInts(byteArray, idata,
+                                         unitsInThisTile);
 
-                        byte[] byteArray = new byte[bytesInThisTile];
-                        decodePackbits(data, bytesInThisTile, byteArray);
-                        interpretBytesAsInts(byteArray, idata,
-                                             unitsInThisTile);
-                    } else if (compression == COMP_DEFLATE) {
+                } else if (compression == COMP_PACKBITS) {
 
-                        stream.readFully(data, 0, byteCount);
-                        byte[] byteArray = new byte[unitsInThisTile * 4];
-                        inflate(data, byteArray);
-                        interpretBytesAsInts(byteArray, idata,
-                                             unitsInThisTile);
+                    // Since unitsInThisTile is the number of ints,
+                    // but we do our decompression in terms of bytes, we
+                    // need to multiply unitsInThisTile by 4 in order to
+                    // figure out how many bytes we'll get after
+                    // decompression.
+                    int bytesInThisTile = unitsInThisTile * 4;
+
+                    byte[] byteArray = new byte[bytesInThisTile];
+                    decodePackbits(data, bytesInThisTile, byteArray);
+                    interpretBytesAsInts(byteArray, idata,
+                                         unitsInThisTile);
+                } else if (compression == COMP_DEFLATE) {
 
-                    }
+                    byte[] byteArray = new byte[unitsInThisTile * 4];
+                    inflate(data, byteArray);
+                    interpretBytesAsInts(byteArray, idata,
+                                         unitsInThisTile);
                 }
-
-                stream.seek(saveOffset);
-
-            } catch (IOException ioe) {
-                throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
             }
 
             // Modify the data for certain special cases.
@@ -1547,41 +1590,10 @@ public class TIFFImage extends AbstractRed {
             }
         }
 
-        return tile;
-    }
-
-    private void readShorts(int shortCount, short[] shortArray) {
-
-        // Since each short consists of 2 bytes, we need a
-        // byte array of double size
-        int byteCount = 2 * shortCount;
-        byte[] byteArray = new byte[byteCount];
-
-        try {
-            stream.readFully(byteArray, 0, byteCount);
-        } catch (IOException ioe) {
-            throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
-        }
-
-        interpretBytesAsShorts(byteArray, shortArray, shortCount);
-    }
-
-    private void readInts(int intCount, int[] intArray) {
-
-        // Since each int consists of 4 bytes, we need a
-        // byte array of quadruple size
-        int byteCount = 4 * intCount;
-        byte[] byteArray = new byte[byteCount];
-
-        try {
-            stream.readFully(byteArray, 0, byteCount);
-        } catch (IOException ioe) {
-            throw new RuntimeException(PropertyUtil.getString("TIFFImage13") + ": "
-                                       + ioe.getMessage());
+        if (tileCache != null) {
+            tileCache.put(tileIndex, tile);
         }
-
-        interpretBytesAsInts(byteArray, intArray, intCount);
+        return tile;
     }
 
     // Method to interpret a byte array to a short array, depending on
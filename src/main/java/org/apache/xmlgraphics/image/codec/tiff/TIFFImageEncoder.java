@@ -38,11 +38,16 @@ import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.zip.Deflater;
 
 import org.apache.xmlgraphics.image.codec.util.ImageEncodeParam;
@@ -69,6 +74,9 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
     private static final int TIFF_YCBCR_POSITIONING = 531;
     private static final int TIFF_REF_BLACK_WHITE   = 532;
 
+    /** Whether the file being written is a BigTIFF file. */
+    private boolean bigTIFF;
+
 
 
     public TIFFImageEncoder(OutputStream output, ImageEncodeParam param) {
@@ -83,15 +91,15 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
      * OutputStream associated with this ImageEncoder.
      */
     public void encode(RenderedImage im) throws IOException {
-        // Write the file header (8 bytes).
-        writeFileHeader();
-
         // Get the encoding parameters.
         TIFFEncodeParam encodeParam = (TIFFEncodeParam)param;
 
+        // Write the file header (8 bytes, 16 for BigTIFF).
+        bigTIFF = encodeParam.getBigTIFF();
+        long ifdOffset = writeFileHeader();
+
         Iterator iter = encodeParam.getExtraImages();
         if (iter != null) {
-            int ifdOffset = 8;
             RenderedImage nextImage = im;
             TIFFEncodeParam nextParam = encodeParam;
             boolean hasNext;
@@ -111,7 +119,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                 }
             } while(hasNext);
         } else {
-            encode(im, encodeParam, 8, true);
+            encode(im, encodeParam, ifdOffset, true);
         }
     }
 
@@ -137,8 +145,9 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         Context c = (Context)context;
         if (c == null) {
             c = new Context();
-            // Write the file header (8 bytes).
-            writeFileHeader();
+            // Write the file header (8 bytes, 16 for BigTIFF).
+            bigTIFF = encodeParam.getBigTIFF();
+            c.ifdOffset = writeFileHeader();
         } else {
             //write image
             c.ifdOffset = encode(c.nextImage, encodeParam, c.ifdOffset, false);
@@ -169,11 +178,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         //TODO This approach causes always two images to be present at the same time.
         //The encoder has to be changed a little to avoid that.
         private RenderedImage nextImage;
-        private int ifdOffset = 8; //Initial offset
+        private long ifdOffset;
     }
 
-    private int encode(RenderedImage im, TIFFEncodeParam encodeParam,
-                       int ifdOffset, boolean isLast) throws IOException {
+    private long encode(RenderedImage im, TIFFEncodeParam encodeParam,
+                        long ifdOffset, boolean isLast) throws IOException {
         // Currently all images are stored uncompressed.
         CompressionValue compression = encodeParam.getCompression();
 
@@ -185,8 +194,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         boolean isTiled = encodeParam.getWriteTiled();
 
         // Set bounds.
-        int minX = im.getMinX();
-        int minY = im.getMinY();
         int width = im.getWidth();
         int height = im.getHeight();
 
@@ -199,9 +206,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         int dataType = sampleModel.getDataType();
         validateImage(dataTypeSize, sampleSize, numBands, dataType, colorModel);
 
-        boolean dataTypeIsShort = dataType == DataBuffer.TYPE_SHORT
-                || dataType == DataBuffer.TYPE_USHORT;
-
         // Set image type.
         ImageInfo imageInfo = ImageInfo.newInstance(im, dataTypeSize, numBands, colorModel,
                 encodeParam);
@@ -210,6 +214,20 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             throw new RuntimeException(PropertyUtil.getString("TIFFImageEncoder8"));
         }
 
+        boolean isCCITT = compression == CompressionValue.GROUP3_1D
+                || compression == CompressionValue.GROUP3_2D
+                || compression == CompressionValue.GROUP4;
+        ImageType photometricType = imageInfo.getType();
+        if (isCCITT) {
+            if (photometricType != ImageType.BILEVEL_WHITE_IS_ZERO
+                    && photometricType != ImageType.BILEVEL_BLACK_IS_ZERO) {
+                throw new IllegalArgumentException(PropertyUtil.getString("TIFFImageEncoder14"));
+            }
+            // CCITT data is coded as WhiteIsZero so BlackIsZero data gets inverted.
+            photometricType = ImageType.BILEVEL_WHITE_IS_ZERO;
+        }
+        boolean invertBilevel = photometricType != imageInfo.getType();
+
         final int numTiles = imageInfo.getNumTiles();
         final long bytesPerTile = imageInfo.getBytesPerTile();
         final long bytesPerRow = imageInfo.getBytesPerRow();
@@ -229,6 +247,9 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         long totalBytesOfData = bytesPerTile * (numTiles - 1) + tileByteCounts[numTiles - 1];
         long[] tileOffsets = new long[numTiles];
 
+        // BigTIFF data offsets and counts are written as 64 bit values.
+        int offsetType = bigTIFF ? TIFFField.TIFF_LONG8 : TIFFField.TIFF_LONG;
+
         // Basic fields - have to be in increasing numerical order.
         // ImageWidth                     256
         // ImageLength                    257
@@ -270,11 +291,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         fields.add(
             new TIFFField(TIFFImageDecoder.TIFF_PHOTOMETRIC_INTERPRETATION,
                           TIFFField.TIFF_SHORT, 1,
-                      new char[] {(char) imageInfo.getType().getPhotometricInterpretation()}));
+                      new char[] {(char) photometricType.getPhotometricInterpretation()}));
 
         if (!isTiled) {
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_STRIP_OFFSETS,
-                                     TIFFField.TIFF_LONG, numTiles,
+                                     offsetType, numTiles,
                                      tileOffsets));
         }
 
@@ -288,10 +309,16 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                                      new long[] {tileHeight}));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_STRIP_BYTE_COUNTS,
-                                     TIFFField.TIFF_LONG, numTiles,
+                                     offsetType, numTiles,
                                      tileByteCounts));
         }
 
+        if (compression == CompressionValue.GROUP3_2D) {
+            fields.add(new TIFFField(TIFFImageDecoder.TIFF_T4_OPTIONS,
+                                     TIFFField.TIFF_LONG, 1,
+                                     new long[] {TIFFFaxEncoder.T4_OPTIONS_2D}));
+        }
+
         if (imageInfo.getColormap() != null) {
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_COLORMAP,
                     TIFFField.TIFF_SHORT, imageInfo.getColormapSize(),
@@ -308,11 +335,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                                      new long[] {tileHeight}));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_TILE_OFFSETS,
-                                     TIFFField.TIFF_LONG, numTiles,
+                                     offsetType, numTiles,
                                      tileOffsets));
 
             fields.add(new TIFFField(TIFFImageDecoder.TIFF_TILE_BYTE_COUNTS,
-                                     TIFFField.TIFF_LONG, numTiles,
+                                     offsetType, numTiles,
                                      tileByteCounts));
         }
 
@@ -401,7 +428,7 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // Determine the size of the IFD which is written after the header
         // of the stream or after the data of the previous image in a
         // multi-page stream.
-        int dirSize = getDirectorySize(fields);
+        long dirSize = getDirectorySize(fields);
 
         // The first data segment is written after the field overflow
         // following the IFD so initialize the first offset accordingly.
@@ -414,16 +441,20 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // B) the OutputStream is not a SeekableOutputStream and a file cache
         //    is used (outCache non-null, tempFile non-null);
         // C) the OutputStream is not a SeekableOutputStream and a memory cache
-        //    is used (outCache non-null, tempFile null).
+        //    is used (outCache non-null, tempFile null);
+        // D) the OutputStream is not a SeekableOutputStream and streaming was
+        //    requested (outCache null, streaming true): the data are compressed
+        //    twice, first to determine the strip sizes for the IFD and then
+        //    to write them right after it.
 
         OutputStream outCache = null;
-        byte[] compressBuf = null;
         File tempFile = null;
 
-        int nextIFDOffset = 0;
+        long nextIFDOffset = 0;
         boolean skipByte = false;
 
-        Deflater deflater = null;
+        StripCompressor compressor = null;
+        boolean streaming = false;
         boolean jpegRGBToYCbCr = false;
 
         if (compression == CompressionValue.NONE) {
@@ -444,10 +475,11 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             for (int i = 1; i < numTiles; i++) {
                 tileOffsets[i] = tileOffsets[i - 1] + tileByteCounts[i - 1];
             }
+            checkOffset(tileOffsets[0] + totalBytesOfData);
 
             if (!isLast) {
                 // Determine the offset of the next IFD.
-                nextIFDOffset = (int)(tileOffsets[0] + totalBytesOfData);
+                nextIFDOffset = tileOffsets[0] + totalBytesOfData;
 
                 // IFD offsets must be on a word boundary.
                 if ((nextIFDOffset & 0x01) != 0) {
@@ -473,6 +505,8 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             if (output instanceof SeekableOutputStream) {
                 // Simply seek to the first data segment position.
                 ((SeekableOutputStream)output).seek(tileOffsets[0]);
+            } else if (encodeParam.getStreaming()) {
+                streaming = true;
             } else {
                 // Cache the original OutputStream.
                 outCache = output;
@@ -491,24 +525,180 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                 }
             }
 
-            int bufSize = 0;
-            switch(compression) {
-            case PACKBITS:
-                bufSize = (int) (bytesPerTile + ((bytesPerRow + 127) / 128) * tileHeight);
-                break;
-            case DEFLATE:
-                bufSize = (int) bytesPerTile;
-                deflater = new Deflater(encodeParam.getDeflateLevel());
-                break;
-            default:
-                bufSize = 0;
+            compressor = new StripCompressor(compression, encodeParam.getDeflateLevel(),
+                                             tileWidth, tileHeight, bytesPerRow);
+        }
+
+        // ---- Writing of actual image data ----
+
+        // When streaming, the first pass only determines the size of the
+        // compressed strips, which are written by a second pass below.
+        StripWriter writer = new StripWriter(streaming ? null : output, compressor,
+                                             bytesPerRow, tileByteCounts, encodeParam);
+        try {
+            writeStrips(im, imageInfo, compression, isTiled, invertBilevel, writer);
+            writer.finish();
+        } finally {
+            writer.close();
+        }
+
+        if (compression == CompressionValue.NONE) {
+            // Write an extra byte for IFD word alignment if needed.
+            if (skipByte) {
+                output.write((byte)0);
             }
-            if (bufSize != 0) {
-                compressBuf = new byte[bufSize];
+        } else {
+            // Recompute the tile offsets the size of the compressed tiles.
+            long totalBytes = 0;
+            for (int i = 1; i < numTiles; i++) {
+                long numBytes = tileByteCounts[i - 1];
+                totalBytes += numBytes;
+                tileOffsets[i] = tileOffsets[i - 1] + numBytes;
+            }
+            totalBytes += tileByteCounts[numTiles - 1];
+            checkOffset(ifdOffset + dirSize + totalBytes);
+
+            nextIFDOffset = isLast
+                ? 0 : ifdOffset + dirSize + totalBytes;
+            if ((nextIFDOffset & 0x01) != 0) {   // make it even
+                nextIFDOffset++;
+                skipByte = true;
+            }
+
+            if (streaming) {
+                // Write the IFD now that the strip sizes are known.
+                writeDirectory(ifdOffset, fields, nextIFDOffset);
+
+                // Compress the strips again, writing each right away.
+                long[] byteCounts = new long[numTiles];
+                writer = new StripWriter(output, compressor, bytesPerRow, byteCounts,
+                                         encodeParam);
+                try {
+                    writeStrips(im, imageInfo, compression, isTiled, invertBilevel, writer);
+                    writer.finish();
+                } finally {
+                    writer.close();
+                }
+                if (!Arrays.equals(byteCounts, tileByteCounts)) {
+                    throw new IllegalStateException(PropertyUtil.getString("TIFFImageEncoder15"));
+                }
+
+                // Write an extra byte for IFD word alignment if needed.
+                if (skipByte) {
+                    output.write((byte)0);
+                }
+            } else if (outCache == null) {
+                // Original OutputStream must be a SeekableOutputStream.
+
+                // Write an extra byte for IFD word alignment if needed.
+                if (skipByte) {
+                    output.write((byte)0);
+                }
+
+                SeekableOutputStream sos = (SeekableOutputStream)output;
+
+                // Save current position.
+                long savePos = sos.getFilePointer();
+
+                // Seek backward to the IFD offset and write IFD.
+                sos.seek(ifdOffset);
+                writeDirectory(ifdOffset, fields, nextIFDOffset);
+
+                // Seek forward to position after data.
+                sos.seek(savePos);
+            } else if (tempFile != null) {
+
+                // Using a file cache for the image data.
+
+                // Open a FileInputStream from which to copy the data.
+                FileInputStream fileStream = new FileInputStream(tempFile);
+                try {
+                    // Close the original SeekableOutputStream.
+                    output.close();
+
+                    // Reset variable to the original OutputStream.
+                    output = outCache;
+
+                    // Write the IFD.
+                    writeDirectory(ifdOffset, fields, nextIFDOffset);
+
+                    // Write the image data.
+                    byte[] copyBuffer = new byte[8192];
+                    long bytesCopied = 0;
+                    while (bytesCopied < totalBytes) {
+                        int bytesRead = fileStream.read(copyBuffer);
+                        if (bytesRead == -1) {
+                            break;
+                        }
+                        output.write(copyBuffer, 0, bytesRead);
+                        bytesCopied += bytesRead;
+                    }
+                } finally {
+                    // Delete the temporary file.
+                    fileStream.close();
+                }
+                boolean isDeleted = tempFile.delete();
+                assert isDeleted;
+
+                // Write an extra byte for IFD word alignment if needed.
+                if (skipByte) {
+                    output.write((byte)0);
+                }
+            } else if (output instanceof ByteArrayOutputStream) {
+
+                // Using a memory cache for the image data.
+
+                ByteArrayOutputStream memoryStream = (ByteArrayOutputStream)output;
+
+                // Reset variable to the original OutputStream.
+                output = outCache;
+
+                // Write the IFD.
+                writeDirectory(ifdOffset, fields, nextIFDOffset);
+
+                // Write the image data.
+                memoryStream.writeTo(output);
+
+                // Write an extra byte for IFD word alignment if needed.
+                if (skipByte) {
+                    output.write((byte)0);
+                }
+            } else {
+                // This should never happen.
+                throw new IllegalStateException(PropertyUtil.getString("TIFFImageEncoder13"));
             }
         }
 
-        // ---- Writing of actual image data ----
+        if (compressor != null) {
+            compressor.dispose();
+        }
+
+
+        return nextIFDOffset;
+    }
+
+    /**
+     * Reads the image in strips (or tiles), converts the pixels of each to
+     * the TIFF byte layout and passes them on to <code>writer</code>.
+     */
+    private void writeStrips(RenderedImage im, ImageInfo imageInfo, CompressionValue compression,
+                             boolean isTiled, boolean invertBilevel, StripWriter writer)
+            throws IOException {
+        int minX = im.getMinX();
+        int minY = im.getMinY();
+        int width = im.getWidth();
+        int height = im.getHeight();
+
+        SampleModel sampleModel = im.getSampleModel();
+        int dataTypeSize = sampleModel.getSampleSize(0);
+        int numBands = sampleModel.getNumBands();
+        int dataType = sampleModel.getDataType();
+        boolean dataTypeIsShort = dataType == DataBuffer.TYPE_SHORT
+                || dataType == DataBuffer.TYPE_USHORT;
+
+        final long bytesPerRow = imageInfo.getBytesPerRow();
+        final int tileHeight = imageInfo.getTileHeight();
+        final int tileWidth = imageInfo.getTileWidth();
 
         // Buffer for up to tileHeight rows of pixels
         int[] pixels = null;
@@ -539,7 +729,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         // Process tileHeight rows at a time
         int lastRow = minY + height;
         int lastCol = minX + width;
-        int tileNum = 0;
         for (int row = minY; row < lastRow; row += tileHeight) {
             int rows = isTiled
                 ? tileHeight : Math.min(tileHeight, lastRow - row);
@@ -662,22 +851,12 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                         }
                     }
 
-                    if (compression == CompressionValue.NONE) {
-                        output.write(bpixels, 0, rows * ((tileWidth + 7) / 8));
-                    } else if (compression == CompressionValue.PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == CompressionValue.DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
+                    if (invertBilevel) {
+                        int numBytes = rows * ((tileWidth + 7) / 8);
+                        for (int i = 0; i < numBytes; i++) {
+                            bpixels[i] = (byte) ~bpixels[i];
+                        }
                     }
-
                     break;
 
                 case 4:
@@ -700,22 +879,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                             bpixels[k++] = (byte)pixel;
                         }
                     }
-
-                    if (compression == CompressionValue.NONE) {
-                        output.write(bpixels, 0, rows * ((tileWidth + 1) / 2));
-                    } else if (compression == CompressionValue.PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == CompressionValue.DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
                     break;
 
                 case 8:
@@ -753,22 +916,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                             }
                         }
                     }
-
-                    if (compression == CompressionValue.NONE) {
-                        output.write(bpixels, 0, size);
-                    } else if (compression == CompressionValue.PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == CompressionValue.DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
                     break;
 
                 case 16:
@@ -779,22 +926,6 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                         bpixels[ls++] = (byte)((value & 0xff00) >> 8);
                         bpixels[ls++] = (byte) (value & 0x00ff);
                     }
-
-                    if (compression == CompressionValue.NONE) {
-                        output.write(bpixels, 0, size * 2);
-                    } else if (compression == CompressionValue.PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == CompressionValue.DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
                     break;
 
                 case 32:
@@ -817,134 +948,15 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
                             bpixels[lf++] = (byte)(value & 0x000000ff);
                         }
                     }
-                    if (compression == CompressionValue.NONE) {
-                        output.write(bpixels, 0, size * 4);
-                    } else if (compression == CompressionValue.PACKBITS) {
-                        int numCompressedBytes =
-                            compressPackBits(bpixels, rows,
-                                             bytesPerRow,
-                                             compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    } else if (compression == CompressionValue.DEFLATE) {
-                        int numCompressedBytes =
-                            deflate(deflater, bpixels, compressBuf);
-                        tileByteCounts[tileNum++] = numCompressedBytes;
-                        output.write(compressBuf, 0, numCompressedBytes);
-                    }
                     break;
                 default:
                     break;
                 }
-            }
-        }
-
-        if (compression == CompressionValue.NONE) {
-            // Write an extra byte for IFD word alignment if needed.
-            if (skipByte) {
-                output.write((byte)0);
-            }
-        } else {
-            // Recompute the tile offsets the size of the compressed tiles.
-            int totalBytes = 0;
-            for (int i = 1; i < numTiles; i++) {
-                int numBytes = (int)tileByteCounts[i - 1];
-                totalBytes += numBytes;
-                tileOffsets[i] = tileOffsets[i - 1] + numBytes;
-            }
-            totalBytes += (int)tileByteCounts[numTiles - 1];
-
-            nextIFDOffset = isLast
-                ? 0 : ifdOffset + dirSize + totalBytes;
-            if ((nextIFDOffset & 0x01) != 0) {   // make it even
-                nextIFDOffset++;
-                skipByte = true;
-            }
-
-            if (outCache == null) {
-                // Original OutputStream must be a SeekableOutputStream.
-
-                // Write an extra byte for IFD word alignment if needed.
-                if (skipByte) {
-                    output.write((byte)0);
-                }
-
-                SeekableOutputStream sos = (SeekableOutputStream)output;
-
-                // Save current position.
-                long savePos = sos.getFilePointer();
-
-                // Seek backward to the IFD offset and write IFD.
-                sos.seek(ifdOffset);
-                writeDirectory(ifdOffset, fields, nextIFDOffset);
-
-                // Seek forward to position after data.
-                sos.seek(savePos);
-            } else if (tempFile != null) {
-
-                // Using a file cache for the image data.
-
-                // Open a FileInputStream from which to copy the data.
-                FileInputStream fileStream = new FileInputStream(tempFile);
-                try {
-                    // Close the original SeekableOutputStream.
-                    output.close();
-
-                    // Reset variable to the original OutputStream.
-                    output = outCache;
-
-                    // Write the IFD.
-                    writeDirectory(ifdOffset, fields, nextIFDOffset);
-
-                    // Write the image data.
-                    byte[] copyBuffer = new byte[8192];
-                    int bytesCopied = 0;
-                    while (bytesCopied < totalBytes) {
-                        int bytesRead = fileStream.read(copyBuffer);
-                        if (bytesRead == -1) {
-                            break;
-                        }
-                        output.write(copyBuffer, 0, bytesRead);
-                        bytesCopied += bytesRead;
-                    }
-                } finally {
-                    // Delete the temporary file.
-                    fileStream.close();
-                }
-                boolean isDeleted = tempFile.delete();
-                assert isDeleted;
-
-                // Write an extra byte for IFD word alignment if needed.
-                if (skipByte) {
-                    output.write((byte)0);
-                }
-            } else if (output instanceof ByteArrayOutputStream) {
-
-                // Using a memory cache for the image data.
-
-                ByteArrayOutputStream memoryStream = (ByteArrayOutputStream)output;
-
-                // Reset variable to the original OutputStream.
-                output = outCache;
-
-                // Write the IFD.
-                writeDirectory(ifdOffset, fields, nextIFDOffset);
-
-                // Write the image data.
-                memoryStream.writeTo(output);
 
-                // Write an extra byte for IFD word alignment if needed.
-                if (skipByte) {
-                    output.write((byte)0);
-                }
-            } else {
-                // This should never happen.
-                throw new IllegalStateException(PropertyUtil.getString("TIFFImageEncoder13"));
+                writer.write(bpixels, rows);
             }
         }
 
-
-        return nextIFDOffset;
     }
 
     private void validateImage(int dataTypeSize, int[] sampleSize, int numBands, int dataType,
@@ -993,23 +1005,26 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
     /**
      * Calculates the size of the IFD.
      */
-    private int getDirectorySize(SortedSet fields) {
+    private long getDirectorySize(SortedSet fields) throws IOException {
         // Get the number of entries.
         int numEntries = fields.size();
 
-        // Initialize the size excluding that of any values > 4 bytes.
-        int dirSize = 2 + numEntries * 12 + 4;
+        // Initialize the size excluding that of any values which don't
+        // fit into an entry.
+        long dirSize = bigTIFF
+            ? 8 + numEntries * 20 + 8
+            : 2 + numEntries * 12 + 4;
 
-        // Loop over fields adding the size of all values > 4 bytes.
+        // Loop over fields adding the size of all values > 4 (or 8) bytes.
         for (Object field1 : fields) {
             // Get the field.
             TIFFField field = (TIFFField) field1;
 
             // Determine the size of the field value.
-            int valueSize = field.getCount() * SIZE_OF_TYPE[field.getType()];
+            int valueSize = getValueSize(field);
 
             // Add any excess size.
-            if (valueSize > 4) {
+            if (valueSize > getEntryValueSize()) {
                 dirSize += valueSize;
             }
         }
@@ -1017,8 +1032,27 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         return dirSize;
     }
 
-    private void writeFileHeader() throws IOException {
-        // 8 byte image file header
+    /**
+     * Returns the number of bytes available for a value in an IFD entry.
+     */
+    private int getEntryValueSize() {
+        return bigTIFF ? 8 : 4;
+    }
+
+    /**
+     * Ensures that an offset can be written to a classic TIFF file.
+     */
+    private void checkOffset(long offset) {
+        if (!bigTIFF && offset > 0xffffffffL) {
+            throw new IllegalArgumentException(PropertyUtil.getString("TIFFImageEncoder16"));
+        }
+    }
+
+    /**
+     * Writes the image file header and returns the offset of the first IFD.
+     */
+    private long writeFileHeader() throws IOException {
+        // 8 byte image file header (16 bytes for BigTIFF)
 
         // Byte order used within the file - Big Endian
         output.write('M');
@@ -1026,24 +1060,45 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
         // Magic value
         output.write(0);
-        output.write(42);
+        if (bigTIFF) {
+            output.write(43);
+
+            // Size of offsets and a reserved 0
+            writeUnsignedShort(8);
+            writeUnsignedShort(0);
 
-        // Offset in bytes of the first IFD.
-        writeLong(8);
+            // Offset in bytes of the first IFD.
+            writeLong8(16);
+            return 16;
+        } else {
+            output.write(42);
+
+            // Offset in bytes of the first IFD.
+            writeLong(8);
+            return 8;
+        }
     }
 
-    private void writeDirectory(int thisIFDOffset, SortedSet fields,
-                                int nextIFDOffset)
+    private void writeDirectory(long thisIFDOffset, SortedSet fields,
+                                long nextIFDOffset)
         throws IOException {
 
         // 2 byte count of number of directory entries (fields)
+        // (8 bytes for BigTIFF)
         int numEntries = fields.size();
+        int entryValueSize = getEntryValueSize();
 
-        long offsetBeyondIFD = thisIFDOffset + 12 * numEntries + 4 + 2;
+        long offsetBeyondIFD = bigTIFF
+            ? thisIFDOffset + 8 + 20 * numEntries + 8
+            : thisIFDOffset + 2 + 12 * numEntries + 4;
         List tooBig = new ArrayList();
 
         // Write number of fields in the IFD
-        writeUnsignedShort(numEntries);
+        if (bigTIFF) {
+            writeLong8(numEntries);
+        } else {
+            writeUnsignedShort(numEntries);
+        }
 
         for (Object field1 : fields) {
 
@@ -1060,26 +1115,31 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
             // bytes 4-7 the number of values of the indicated type except
             // ASCII-valued fields which require the total number of bytes.
+            // (bytes 4-11 for BigTIFF)
             int count = field.getCount();
             int valueSize = getValueSize(field);
-            writeLong(type == TIFFField.TIFF_ASCII ? valueSize : count);
+            writeOffset(type == TIFFField.TIFF_ASCII ? valueSize : count);
 
-            // bytes 8 - 11 the value or value offset
-            if (valueSize > 4) {
+            // bytes 8 - 11 the value or value offset (bytes 12-19 for BigTIFF)
+            if (valueSize > entryValueSize) {
 
-                // We need an offset as data won't fit into 4 bytes
-                writeLong(offsetBeyondIFD);
+                // We need an offset as data won't fit into the entry
+                writeOffset(offsetBeyondIFD);
                 offsetBeyondIFD += valueSize;
                 tooBig.add(field);
 
             } else {
-                writeValuesAsFourBytes(field);
+                // Left-justify the value within the entry.
+                writeValues(field);
+                for (int i = valueSize; i < entryValueSize; i++) {
+                    output.write(0);
+                }
             }
 
         }
 
         // Address of next IFD
-        writeLong(nextIFDOffset);
+        writeOffset(nextIFDOffset);
 
         // Write the tag values that did not fit into 4 bytes
         for (Object aTooBig : tooBig) {
@@ -1121,58 +1181,15 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         4, //  9 = slong
         8, // 10 = srational
         4, // 11 = float
-        8  // 12 = double
+        8, // 12 = double
+        4, // 13 = ifd
+        0, // 14 = n/a
+        0, // 15 = n/a
+        8, // 16 = long8
+        8, // 17 = slong8
+        8  // 18 = ifd8
     };
 
-    private void writeValuesAsFourBytes(TIFFField field) throws IOException {
-
-        int dataType = field.getType();
-        int count = field.getCount();
-
-        switch (dataType) {
-
-            // unsigned 8 bits
-        case TIFFField.TIFF_BYTE:
-            byte[] bytes = field.getAsBytes();
-            if (count > 4) {
-                count = 4;
-            }
-            for (int i = 0; i < count; i++) {
-                output.write(bytes[i]);
-            }
-
-            for (int i = 0; i < (4 - count); i++) {
-                output.write(0);
-            }
-            break;
-
-            // unsigned 16 bits
-        case TIFFField.TIFF_SHORT:
-            char[] chars = field.getAsChars();
-            if (count > 2) {
-                count = 2;
-            }
-            for (int i = 0; i < count; i++) {
-                writeUnsignedShort(chars[i]);
-            }
-            for (int i = 0; i < (2 - count); i++) {
-                writeUnsignedShort(0);
-            }
-
-            break;
-
-            // unsigned 32 bits
-        case TIFFField.TIFF_LONG:
-            long[] longs = field.getAsLongs();
-
-            for (int i = 0; i < count; i++) {
-                writeLong(longs[i]);
-            }
-            break;
-        }
-
-    }
-
     private void writeValues(TIFFField field) throws IOException {
 
         int dataType = field.getType();
@@ -1206,12 +1223,27 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
 
             // unsigned 32 bits
         case TIFFField.TIFF_LONG:
-        case TIFFField.TIFF_SLONG:
             long[] longs = field.getAsLongs();
             for (int i = 0; i < count; i++) {
                 writeLong(longs[i]);
             }
             break;
+        case TIFFField.TIFF_SLONG:
+            int[] ints = field.getAsInts();
+            for (int i = 0; i < count; i++) {
+                writeLong(ints[i]);
+            }
+            break;
+
+            // 64 bits (BigTIFF)
+        case TIFFField.TIFF_LONG8:
+        case TIFFField.TIFF_SLONG8:
+        case TIFFField.TIFF_IFD8:
+            long[] longs8 = field.getAsLongs();
+            for (int i = 0; i < count; i++) {
+                writeLong8(longs8[i]);
+            }
+            break;
 
         case TIFFField.TIFF_FLOAT:
             float[] floats = field.getAsFloats();
@@ -1231,13 +1263,19 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
             break;
 
         case TIFFField.TIFF_RATIONAL:
-        case TIFFField.TIFF_SRATIONAL:
             long[][] rationals = field.getAsRationals();
             for (int i = 0; i < count; i++) {
                 writeLong(rationals[i][0]);
                 writeLong(rationals[i][1]);
             }
             break;
+        case TIFFField.TIFF_SRATIONAL:
+            int[][] srationals = field.getAsSRationals();
+            for (int i = 0; i < count; i++) {
+                writeLong(srationals[i][0]);
+                writeLong(srationals[i][1]);
+            }
+            break;
 
         case TIFFField.TIFF_ASCII:
             for (int i = 0; i < count; i++) {
@@ -1275,6 +1313,26 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         output.write((int) (l & 0x000000ff));
     }
 
+    /**
+     * Writes all 64 bits of a long as 8 bytes to output.
+     */
+    private void writeLong8(long l) throws IOException {
+        writeLong(l >>> 32);
+        writeLong(l);
+    }
+
+    /**
+     * Writes an offset or count of an IFD, which takes 4 bytes in a
+     * classic TIFF file and 8 bytes in a BigTIFF file.
+     */
+    private void writeOffset(long l) throws IOException {
+        if (bigTIFF) {
+            writeLong8(l);
+        } else {
+            writeLong(l);
+        }
+    }
+
 //    /**
 //     * Returns the current offset in the supplied OutputStream.
 //     * This method should only be used if compressing data.
@@ -1360,13 +1418,210 @@ public class TIFFImageEncoder extends ImageEncoderImpl {
         return outOffset;
     }
 
-    private static int deflate(Deflater deflater,
-                               byte[] inflated, byte[] deflated) {
-        deflater.setInput(inflated);
-        deflater.finish();
-        int numCompressedBytes = deflater.deflate(deflated);
-        deflater.reset();
-        return numCompressedBytes;
+    /**
+     * Writes strips (or tiles) in file order, compressing them first if a
+     * compressor is given, and records their sizes.  If parallel encoding
+     * was requested the strips are compressed in the common fork/join pool.
+     * Without an output stream the strips are only compressed to determine
+     * their sizes.  {@link #close()} must be called when done, also if
+     * writing fails.
+     */
+    private static final class StripWriter {
+
+        private final OutputStream output;
+        private final StripCompressor compressor;
+        private final long bytesPerRow;
+        private final long[] byteCounts;
+        private int tileNum;
+
+        private ForkJoinPool pool;
+        private Deque<ForkJoinTask<byte[]>> pending;
+        private Deque<StripCompressor> compressors;
+        private boolean closed;
+        private int maxPending;
+
+        StripWriter(OutputStream output, StripCompressor compressor, long bytesPerRow,
+                    long[] byteCounts, TIFFEncodeParam param) {
+            this.output = output;
+            this.compressor = compressor;
+            this.bytesPerRow = bytesPerRow;
+            this.byteCounts = byteCounts;
+            if (compressor != null && param.getParallelEncoding() && byteCounts.length > 1) {
+                pool = ForkJoinPool.commonPool();
+                pending = new ArrayDeque<ForkJoinTask<byte[]>>();
+                compressors = new ArrayDeque<StripCompressor>();
+                maxPending = param.getMaxPendingStrips() > 0
+                        ? param.getMaxPendingStrips() : pool.getParallelism() * 2;
+            }
+        }
+
+        /** Writes the given number of rows of <code>data</code> as the next strip. */
+        void write(byte[] data, int rows) throws IOException {
+            int length = rows * (int) bytesPerRow;
+            if (compressor == null) {
+                byteCounts[tileNum++] = length;
+                output.write(data, 0, length);
+            } else if (pending == null) {
+                int numCompressedBytes = compressor.compress(data, rows);
+                byteCounts[tileNum++] = numCompressedBytes;
+                if (output != null) {
+                    output.write(compressor.getBuffer(), 0, numCompressedBytes);
+                }
+            } else {
+                if (pending.size() >= maxPending) {
+                    writeCompressed(pending.removeFirst().join());
+                }
+                final byte[] copy = Arrays.copyOf(data, length);
+                pending.addLast(pool.submit(() -> compress(copy, rows)));
+            }
+        }
+
+        /** Writes the strips still being compressed. */
+        void finish() throws IOException {
+            if (pending != null) {
+                while (!pending.isEmpty()) {
+                    writeCompressed(pending.removeFirst().join());
+                }
+            }
+        }
+
+        /**
+         * Cancels the strips still being compressed, if writing failed, and
+         * releases the compressors of the worker tasks.
+         */
+        void close() {
+            if (pending != null) {
+                for (ForkJoinTask<byte[]> task : pending) {
+                    task.cancel(false);
+                }
+                pending.clear();
+                synchronized (compressors) {
+                    closed = true;
+                    for (StripCompressor c : compressors) {
+                        c.dispose();
+                    }
+                    compressors.clear();
+                }
+            }
+        }
+
+        private byte[] compress(byte[] data, int rows) {
+            StripCompressor c;
+            synchronized (compressors) {
+                c = compressors.poll();
+            }
+            if (c == null) {
+                c = compressor.newInstance();
+            }
+            try {
+                int numCompressedBytes = c.compress(data, rows);
+                return Arrays.copyOf(c.getBuffer(), numCompressedBytes);
+            } finally {
+                synchronized (compressors) {
+                    if (closed) {
+                        // A task which was already running when the writer was closed
+                        c.dispose();
+                    } else {
+                        compressors.add(c);
+                    }
+                }
+            }
+        }
+
+        private void writeCompressed(byte[] compressed) throws IOException {
+            byteCounts[tileNum++] = compressed.length;
+            if (output != null) {
+                output.write(compressed);
+            }
+        }
+    }
+
+    /**
+     * Compresses strips or tiles using PackBits, DEFLATE or CCITT compression.
+     * An instance keeps its buffers between strips and must only be used by
+     * one thread at a time.
+     */
+    private static final class StripCompressor {
+
+        private final CompressionValue compression;
+        private final int deflateLevel;
+        private final int tileWidth;
+        private final int tileHeight;
+        private final long bytesPerRow;
+
+        private Deflater deflater;
+        private TIFFFaxEncoder faxEncoder;
+        private byte[] buffer;
+
+        StripCompressor(CompressionValue compression, int deflateLevel,
+                        int tileWidth, int tileHeight, long bytesPerRow) {
+            this.compression = compression;
+            this.deflateLevel = deflateLevel;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.bytesPerRow = bytesPerRow;
+            switch (compression) {
+            case PACKBITS:
+                buffer = new byte[(int) ((bytesPerRow + (bytesPerRow + 127) / 128) * tileHeight)];
+                break;
+            case DEFLATE:
+                buffer = new byte[(int) (bytesPerRow * tileHeight)];
+                deflater = new Deflater(deflateLevel);
+                break;
+            case GROUP3_1D:
+            case GROUP3_2D:
+            case GROUP4:
+                faxEncoder = new TIFFFaxEncoder(compression, tileWidth);
+                break;
+            }
+        }
+
+        /** Creates a compressor with the same settings. */
+        StripCompressor newInstance() {
+            return new StripCompressor(compression, deflateLevel, tileWidth, tileHeight,
+                                       bytesPerRow);
+        }
+
+        /**
+         * Compresses the given number of rows of <code>data</code>.
+         * @return the number of compressed bytes available from {@link #getBuffer()}
+         */
+        int compress(byte[] data, int rows) {
+            switch (compression) {
+            case PACKBITS:
+                return compressPackBits(data, rows, bytesPerRow, buffer);
+            case DEFLATE:
+                return deflate(data, rows * (int) bytesPerRow);
+            default:
+                return faxEncoder.encode(data, rows);
+            }
+        }
+
+        byte[] getBuffer() {
+            return faxEncoder != null ? faxEncoder.getBuffer() : buffer;
+        }
+
+        private int deflate(byte[] inflated, int length) {
+            deflater.setInput(inflated, 0, length);
+            deflater.finish();
+            int numCompressedBytes = 0;
+            while (!deflater.finished()) {
+                if (numCompressedBytes == buffer.length) {
+                    // Incompressible data
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                numCompressedBytes += deflater.deflate(buffer, numCompressedBytes,
+                                                       buffer.length - numCompressedBytes);
+            }
+            deflater.reset();
+            return numCompressedBytes;
+        }
+
+        void dispose() {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
     }
 
 }
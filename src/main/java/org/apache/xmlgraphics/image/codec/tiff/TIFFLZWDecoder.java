@@ -22,41 +22,75 @@ package org.apache.xmlgraphics.image.codec.tiff;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
 
 // CSOFF: InnerAssignment
-// CSOFF: MultipleVariableDeclarations
-// CSOFF: OneStatementPerLine
-// CSOFF: OperatorWrap
-// CSOFF: WhitespaceAround
 
 /**
  * A class for performing LZW decoding.
+ *
+ * <p>The string table is kept in flat arrays: each code refers to the
+ * code of its prefix string and stores its last byte, so adding a string
+ * does not allocate.  A string is written by walking its prefix chain
+ * backwards from the end of the string in the destination buffer.</p>
  */
 public class TIFFLZWDecoder {
 
-    byte[][] stringTable;
-    byte[] data;
-    byte[] uncompData;
-    int tableIndex;
-    int bitsToGet = 9;
-    int bytePointer;
-//    int bitPointer;
-    int dstIndex;
-    int w;
-    int predictor;
-    int samplesPerPixel;
-    int nextData;
-    int nextBits;
-
-    int[] andTable = {
-        511,
-        1023,
-        2047,
-        4095
-    };
+    private static final int CLEAR_CODE = 256;
+    private static final int EOI_CODE = 257;
+    private static final int FIRST_CODE = 258;
+    private static final int TABLE_SIZE = 4096;
+
+    private final short[] prefix = new short[TABLE_SIZE];
+    private final byte[] suffix = new byte[TABLE_SIZE];
+    private final byte[] first = new byte[TABLE_SIZE];
+    private final int[] length = new int[TABLE_SIZE];
+
+    private byte[] data;
+    private byte[] uncompData;
+    private int tableIndex;
+    private int bitsToGet = 9;
+    private int bytePointer;
+    private int dstIndex;
+    private int nextData;
+    private int nextBits;
+
+    private final int w;
+    private final int predictor;
+    private final int samplesPerPixel;
+    private final int bitsPerSample;
+    private final boolean bigEndian;
 
+    /**
+     * Creates a decoder for 8 bit samples.
+     *
+     * @param w the width of the decoded rows in pixels.
+     * @param predictor the predictor, 1 (none) or 2 (horizontal differencing).
+     * @param samplesPerPixel the number of samples per pixel.
+     */
     public TIFFLZWDecoder(int w, int predictor, int samplesPerPixel) {
+        this(w, predictor, samplesPerPixel, 8, true);
+    }
+
+    /**
+     * Creates a decoder.
+     *
+     * @param w the width of the decoded rows in pixels.
+     * @param predictor the predictor, 1 (none) or 2 (horizontal differencing).
+     * @param samplesPerPixel the number of samples per pixel.
+     * @param bitsPerSample the number of bits per sample, 8 or 16 if the
+     *        horizontal differencing predictor is used.
+     * @param bigEndian the byte order of 16 bit samples.
+     */
+    public TIFFLZWDecoder(int w, int predictor, int samplesPerPixel,
+                          int bitsPerSample, boolean bigEndian) {
         this.w = w;
         this.predictor = predictor;
         this.samplesPerPixel = samplesPerPixel;
+        this.bitsPerSample = bitsPerSample;
+        this.bigEndian = bigEndian;
+        for (int i = 0; i < 256; i++) {
+            suffix[i] = (byte)i;
+            first[i] = (byte)i;
+            length[i] = 1;
+        }
     }
 
     /**
@@ -75,99 +109,149 @@ public class TIFFLZWDecoder {
         initializeStringTable();
 
         this.data = data;
-//        this.h = h;
         this.uncompData = uncompData;
 
         // Initialize pointers
         bytePointer = 0;
-//        bitPointer = 0;
         dstIndex = 0;
-
-
         nextData = 0;
         nextBits = 0;
 
         int code;
-        int oldCode = 0;
-        byte[] string;
+        int oldCode = -1;
 
-        while ((code = getNextCode()) != 257
-                && dstIndex != uncompData.length) {
-
-            if (code == 256) {
+        while ((code = getNextCode()) != EOI_CODE
+                && dstIndex < uncompData.length) {
 
+            if (code == CLEAR_CODE) {
                 initializeStringTable();
-                code = getNextCode();
-
-                if (code == 257) {
+                oldCode = -1;
+            } else if (oldCode < 0) {
+                // First code after a clear code
+                if (code >= FIRST_CODE) {
                     break;
                 }
-
-                writeString(stringTable[code]);
+                writeString(code);
+                oldCode = code;
+            } else if (code < tableIndex) {
+                writeString(code);
+                addStringToTable(oldCode, first[code]);
                 oldCode = code;
-
             } else {
-
-                if (code < tableIndex) {
-
-                    string = stringTable[code];
-
-                    writeString(string);
-                    addStringToTable(stringTable[oldCode], string[0]);
-                    oldCode = code;
-
-                } else {
-
-                    string = stringTable[oldCode];
-                    string = composeString(string, string[0]);
-                    writeString(string);
-                    addStringToTable(string);
-                    oldCode = code;
+                // The code is not in the table yet: it is the previous
+                // string followed by its own first byte.
+                byte firstByte = first[oldCode];
+                writeString(oldCode);
+                if (dstIndex < uncompData.length) {
+                    uncompData[dstIndex++] = firstByte;
                 }
-
+                addStringToTable(oldCode, firstByte);
+                oldCode = code;
             }
-
         }
 
         // Horizontal Differencing Predictor
         if (predictor == 2) {
-
-            int count;
-            for (int j = 0; j < h; j++) {
-
-                count = samplesPerPixel * (j * w + 1);
-
-                for (int i = samplesPerPixel; i < w * samplesPerPixel; i++) {
-
-                    uncompData[count] += uncompData[count - samplesPerPixel];
-                    count++;
-                }
+            if (bitsPerSample == 16) {
+                undoPredictor16(h);
+            } else {
+                undoPredictor8(h);
             }
         }
 
+        this.data = null;
+        this.uncompData = null;
         return uncompData;
     }
 
+    private void undoPredictor8(int h) {
+        int rowLength = w * samplesPerPixel;
+        int rows = Math.min(h, uncompData.length / rowLength);
+        for (int j = 0; j < rows; j++) {
+            int end = (j + 1) * rowLength;
+            for (int count = j * rowLength + samplesPerPixel; count < end; count++) {
+                uncompData[count] += uncompData[count - samplesPerPixel];
+            }
+        }
+    }
+
+    private void undoPredictor16(int h) {
+        int rowLength = w * samplesPerPixel * 2;
+        int rows = Math.min(h, uncompData.length / rowLength);
+        int distance = samplesPerPixel * 2;
+        int hi = bigEndian ? 0 : 1;
+        int lo = 1 - hi;
+        for (int j = 0; j < rows; j++) {
+            int end = (j + 1) * rowLength;
+            for (int count = j * rowLength + distance; count < end; count += 2) {
+                int prev = count - distance;
+                int sum = ((uncompData[count + hi] & 0xff) << 8 | (uncompData[count + lo] & 0xff))
+                        + ((uncompData[prev + hi] & 0xff) << 8 | (uncompData[prev + lo] & 0xff));
+                uncompData[count + hi] = (byte)(sum >> 8);
+                uncompData[count + lo] = (byte)sum;
+            }
+        }
+    }
 
     /**
      * Initialize the string table.
      */
     public void initializeStringTable() {
+        tableIndex = FIRST_CODE;
+        bitsToGet = 9;
+    }
 
-        stringTable = new byte[4096][];
+    /**
+     * Writes the string for <code>code</code> by walking its prefix
+     * chain backwards.  Strings which do not fit are truncated.
+     */
+    private void writeString(int code) {
+        int len = length[code];
+        int end = dstIndex + len;
+        int pos = end - 1;
+        // Skip the bytes which do not fit into the destination
+        while (pos >= uncompData.length) {
+            code = prefix[code];
+            pos--;
+        }
+        while (pos >= dstIndex) {
+            uncompData[pos--] = suffix[code];
+            code = prefix[code];
+        }
+        dstIndex = Math.min(end, uncompData.length);
+    }
 
-        for (int i = 0; i < 256; i++) {
-            stringTable[i] = new byte[1];
-            stringTable[i][0] = (byte)i;
+    /**
+     * Adds the string for <code>prefixCode</code> followed by
+     * <code>newByte</code> to the string table.
+     */
+    private void addStringToTable(int prefixCode, byte newByte) {
+        if (tableIndex >= TABLE_SIZE) {
+            // Table full, the encoder should have sent a clear code
+            return;
         }
+        prefix[tableIndex] = (short)prefixCode;
+        suffix[tableIndex] = newByte;
+        first[tableIndex] = first[prefixCode];
+        length[tableIndex] = length[prefixCode] + 1;
+        tableIndex++;
 
-        tableIndex = 258;
-        bitsToGet = 9;
+        if (tableIndex == 511) {
+            bitsToGet = 10;
+        } else if (tableIndex == 1023) {
+            bitsToGet = 11;
+        } else if (tableIndex == 2047) {
+            bitsToGet = 12;
+        }
     }
 
     /**
      * Write out the string just uncompressed.
+     *
+     * @deprecated The decoder no longer keeps strings as byte arrays and
+     *             does not use this method.
      */
+    @Deprecated
     public void writeString(byte[] string) {
 
         for (byte aString : string) {
@@ -177,45 +261,34 @@ public class TIFFLZWDecoder {
 
     /**
      * Add a new string to the string table.
+     *
+     * @deprecated The decoder no longer keeps strings as byte arrays and
+     *             does not use this method.
      */
+    @Deprecated
     public void addStringToTable(byte[] oldString, byte newString) {
-        int length = oldString.length;
-        byte[] string = new byte[length + 1];
-        System.arraycopy(oldString, 0, string, 0, length);
-        string[length] = newString;
-
-        // Add this new String to the table
-        stringTable[tableIndex++] = string;
-
-        if (tableIndex == 511) {
-            bitsToGet = 10;
-        } else if (tableIndex == 1023) {
-            bitsToGet = 11;
-        } else if (tableIndex == 2047) {
-            bitsToGet = 12;
-        }
+        addStringToTable(findCode(oldString, oldString.length), newString);
     }
 
     /**
      * Add a new string to the string table.
+     *
+     * @deprecated The decoder no longer keeps strings as byte arrays and
+     *             does not use this method.
      */
+    @Deprecated
     public void addStringToTable(byte[] string) {
-
-        // Add this new String to the table
-        stringTable[tableIndex++] = string;
-
-        if (tableIndex == 511) {
-            bitsToGet = 10;
-        } else if (tableIndex == 1023) {
-            bitsToGet = 11;
-        } else if (tableIndex == 2047) {
-            bitsToGet = 12;
-        }
+        int prefixLength = string.length - 1;
+        addStringToTable(findCode(string, prefixLength), string[prefixLength]);
     }
 
     /**
      * Append <code>newString</code> to the end of <code>oldString</code>.
+     *
+     * @deprecated The decoder no longer keeps strings as byte arrays and
+     *             does not use this method.
      */
+    @Deprecated
     public byte[] composeString(byte[] oldString, byte newString) {
         int length = oldString.length;
         byte[] string = new byte[length + 1];
@@ -225,29 +298,52 @@ public class TIFFLZWDecoder {
         return string;
     }
 
+    /**
+     * Returns the code of the first <code>len</code> bytes of
+     * <code>string</code>, which must be in the string table.
+     */
+    private int findCode(byte[] string, int len) {
+        if (len == 1) {
+            return string[0] & 0xff;
+        }
+        for (int code = FIRST_CODE; code < tableIndex; code++) {
+            if (length[code] == len) {
+                int c = code;
+                int pos = len - 1;
+                while (pos >= 0 && suffix[c] == string[pos]) {
+                    c = prefix[c];
+                    pos--;
+                }
+                if (pos < 0) {
+                    return code;
+                }
+            }
+        }
+        throw new IllegalArgumentException("String not in the string table");
+    }
+
     // Returns the next 9, 10, 11 or 12 bits
     public int getNextCode() {
-        // Attempt to get the next code. The exception is caught to make
-        // this robust to cases wherein the EndOfInformation code has been
-        // omitted from a strip. Examples of such cases have been observed
-        // in practice.
-        try {
-            nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
-            nextBits += 8;
+        // Make this robust to cases wherein the EndOfInformation code
+        // has been omitted from a strip. Examples of such cases have
+        // been observed in practice.
+        if (bytePointer >= data.length) {
+            return EOI_CODE;
+        }
+        nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
+        nextBits += 8;
 
-            if (nextBits < bitsToGet) {
-                nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
-                nextBits += 8;
+        if (nextBits < bitsToGet) {
+            if (bytePointer >= data.length) {
+                return EOI_CODE;
             }
+            nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
+            nextBits += 8;
+        }
 
-            int code =
-                (nextData >> (nextBits - bitsToGet)) & andTable[bitsToGet - 9];
-            nextBits -= bitsToGet;
+        int code = (nextData >> (nextBits - bitsToGet)) & ((1 << bitsToGet) - 1);
+        nextBits -= bitsToGet;
 
-            return code;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            // Strip not terminated as expected: return EndOfInformation code.
-            return 257;
-        }
+        return code;
     }
 }
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of decoded tiles, bounded by the number
+ * of bytes held by the tiles' data buffers.
+ */
+final class TIFFTileCache {
+
+    private final long maxBytes;
+    private final Map<Integer, Raster> tiles = new LinkedHashMap<Integer, Raster>(16, 0.75f, true);
+    private long bytes;
+
+    TIFFTileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached tile with the given index, or null.
+     */
+    synchronized Raster get(int tileIndex) {
+        return tiles.get(tileIndex);
+    }
+
+    /**
+     * Adds a tile, discarding the least recently used tiles if the
+     * cache grows too large.  Tiles larger than the cache are ignored.
+     */
+    synchronized void put(int tileIndex, Raster tile) {
+        long size = sizeOf(tile);
+        if (size > maxBytes) {
+            return;
+        }
+        Raster old = tiles.put(tileIndex, tile);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += size;
+        Iterator<Raster> iter = tiles.values().iterator();
+        while (bytes > maxBytes && iter.hasNext()) {
+            bytes -= sizeOf(iter.next());
+            iter.remove();
+        }
+    }
+
+    private static long sizeOf(Raster tile) {
+        DataBuffer buffer = tile.getDataBuffer();
+        return (long)buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A pool of byte arrays whose sizes are powers of two.  The capacity only
+ * bounds the number of bytes kept for reuse: {@link #acquire(int)} always
+ * succeeds, and arrays released beyond the capacity of the pool are left to
+ * the garbage collector.
+ */
+final class ChunkPool {
+
+    /** The pool shared by all <code>MemoryCacheSeekableStream</code> instances. */
+    static final ChunkPool SHARED = new ChunkPool(16 * 1024 * 1024);
+
+    /** The free arrays, indexed by the binary logarithm of their size. */
+    private final List<Deque<byte[]>> free = new ArrayList<Deque<byte[]>>(31);
+
+    /** The maximum number of bytes kept in the pool. */
+    private final long capacity;
+
+    /** The number of bytes currently kept in the pool. */
+    private long pooled;
+
+    /**
+     * Creates a pool.
+     *
+     * @param capacity the maximum number of bytes kept in the pool
+     */
+    ChunkPool(long capacity) {
+        this.capacity = capacity;
+        for (int i = 0; i < 31; i++) {
+            free.add(new ArrayDeque<byte[]>());
+        }
+    }
+
+    /**
+     * Returns an array from the pool, or a new one if there is none.  The
+     * contents of the array are undefined.
+     *
+     * @param shift the binary logarithm of the size of the array
+     * @return an array of <code>1 &lt;&lt; shift</code> bytes
+     */
+    synchronized byte[] acquire(int shift) {
+        byte[] chunk = free.get(shift).poll();
+        if (chunk == null) {
+            return new byte[1 << shift];
+        }
+        pooled -= chunk.length;
+        return chunk;
+    }
+
+    /**
+     * Returns an array obtained from {@link #acquire(int)} to the pool.
+     *
+     * @param chunk the array
+     */
+    synchronized void release(byte[] chunk) {
+        if (pooled + chunk.length <= capacity) {
+            free.get(Integer.numberOfTrailingZeros(chunk.length)).push(chunk);
+            pooled += chunk.length;
+        }
+    }
+
+    /** Returns the number of bytes currently kept in the pool. */
+    synchronized long getPooledBytes() {
+        return pooled;
+    }
+}
@@ -62,6 +62,15 @@ public final class FileCacheSeekableStream extends SeekableStream {
     /** Next byte to be read. */
     private long pointer;
 
+    /** Holds cached data read ahead of the stream pointer. */
+    private byte[] readBuf = new byte[4096];
+
+    /** The position of the data in <code>readBuf</code>. */
+    private long readBufStart;
+
+    /** The number of bytes in <code>readBuf</code>. */
+    private int readBufLength;
+
     /** True if we've encountered the end of the source stream. */
     private boolean foundEOF;
 
@@ -100,15 +109,15 @@ public final class FileCacheSeekableStream extends SeekableStream {
         long len = pos - length;
         cache.seek(length);
         while (len > 0) {
-            // Copy a buffer's worth of data from the source to the cache
-            // bufLen will always fit into an int so this is safe
-            int nbytes = stream.read(buf, 0, (int)Math.min(len, bufLen));
+            // Copy a buffer's worth of data from the source to the cache,
+            // reading ahead of pos to avoid tiny writes to the cache file
+            int nbytes = stream.read(buf, 0, bufLen);
             if (nbytes == -1) {
                 foundEOF = true;
                 return length;
             }
 
-            cache.setLength(cache.length() + nbytes);
+            // Writing at the end extends the file, no need to set its length
             cache.write(buf, 0, nbytes);
             len -= nbytes;
             length += nbytes;
@@ -117,6 +126,23 @@ public final class FileCacheSeekableStream extends SeekableStream {
         return pos;
     }
 
+    /**
+     * Fills the read buffer with the cached data at the stream pointer,
+     * returning <code>false</code> at the end of the stream.  Only data
+     * which are already cached are read ahead.
+     */
+    private boolean fillReadBuffer() throws IOException {
+        if (readUntil(pointer + 1) <= pointer) {
+            return false;
+        }
+        int nbytes = (int)Math.min(readBuf.length, length - pointer);
+        cache.seek(pointer);
+        cache.readFully(readBuf, 0, nbytes);
+        readBufStart = pointer;
+        readBufLength = nbytes;
+        return true;
+    }
+
     /**
      * Returns <code>true</code> since all
      * <code>FileCacheSeekableStream</code> instances support seeking
@@ -166,14 +192,12 @@ public final class FileCacheSeekableStream extends SeekableStream {
      * @exception  IOException  if an I/O error occurs.
      */
     public int read() throws IOException {
-        long next = pointer + 1;
-        long pos = readUntil(next);
-        if (pos >= next) {
-            cache.seek(pointer++);
-            return cache.read();
-        } else {
-            return -1;
+        if (pointer < readBufStart || pointer >= readBufStart + readBufLength) {
+            if (!fillReadBuffer()) {
+                return -1;
+            }
         }
+        return readBuf[(int)(pointer++ - readBufStart)] & 0xff;
     }
 
     /**
@@ -235,6 +259,23 @@ public final class FileCacheSeekableStream extends SeekableStream {
             return 0;
         }
 
+        // Serve small reads from the read buffer
+        if (pointer >= readBufStart && pointer + len <= readBufStart + readBufLength) {
+            System.arraycopy(readBuf, (int)(pointer - readBufStart), b, off, len);
+            pointer += len;
+            return len;
+        }
+        if (len < readBuf.length) {
+            readUntil(pointer + len);
+            if (!fillReadBuffer()) {
+                return -1;
+            }
+            len = Math.min(len, readBufLength);
+            System.arraycopy(readBuf, 0, b, off, len);
+            pointer += len;
+            return len;
+        }
+
         long pos = readUntil(pointer + len);
 
         // len will always fit into an int so this is safe
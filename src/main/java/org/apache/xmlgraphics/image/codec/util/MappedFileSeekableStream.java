@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A subclass of <code>SeekableStream</code> that reads a local file
+ * through a memory mapping, so unlike <code>FileCacheSeekableStream</code>
+ * no copy of the data is made.  Multi-byte values are read directly from
+ * the mapped buffer.
+ *
+ * <p> Files larger than the mapping window (1 GB by default) are mapped one
+ * window at a time, the window being moved as the stream pointer moves.
+ * Smaller files are mapped at once and the file is closed right away, as the
+ * mapping stays valid until it is garbage collected.
+ *
+ * <p> A mapping has caveats a plain file read does not have: if the file is
+ * truncated while it is mapped, reading the missing part fails with an
+ * <code>InternalError</code> rather than an <code>IOException</code>, and on
+ * some platforms, notably Windows, the file cannot be deleted or replaced
+ * until the mapping has been garbage collected.
+ *
+ * <p> The <code>mark()</code> and <code>reset()</code> methods are
+ * supported.  Reading after <code>close()</code> fails with an
+ * <code>IOException</code>.
+ */
+public final class MappedFileSeekableStream extends SeekableStream {
+
+    /** The default size of the mapping window. */
+    private static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+
+    /** The alignment of the start of the mapping window. */
+    private static final long WINDOW_ALIGNMENT = 4096;
+
+    /** The channel to map windows from, null if the whole file is mapped. */
+    private FileChannel channel;
+
+    /** The length of the file. */
+    private final long length;
+
+    /** The maximum size of the mapping window. */
+    private final long windowSize;
+
+    /** The currently mapped part of the file. */
+    private ByteBuffer window;
+
+    /** The offset in the file of the start of the mapping window. */
+    private long windowStart;
+
+    /** The offset in the file of the end of the mapping window. */
+    private long windowEnd;
+
+    /** Next byte to be read. */
+    private long pointer;
+
+    /** True if the stream has been closed. */
+    private boolean closed;
+
+    /**
+     * Constructs a <code>MappedFileSeekableStream</code> that reads from
+     * a file.
+     *
+     * @param file the file to read from
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public MappedFileSeekableStream(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Constructs a <code>MappedFileSeekableStream</code> that reads from
+     * a file, with the given size of the mapping window.
+     */
+    MappedFileSeekableStream(File file, long windowSize) throws IOException {
+        if (windowSize <= WINDOW_ALIGNMENT + 8 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("windowSize: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        RandomAccessFile raFile = new RandomAccessFile(file, "r");
+        try {
+            channel = raFile.getChannel();
+            length = channel.size();
+            map(0, 0);
+        } catch (IOException e) {
+            raFile.close();
+            throw e;
+        }
+        if (length <= windowSize) {
+            // The whole file is mapped, the mapping doesn't need the file.
+            raFile.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Makes sure the bytes from <code>pos</code> to <code>pos + n</code>
+     * are mapped, moving the mapping window if necessary.
+     */
+    private void map(long pos, int n) throws IOException {
+        if (pos >= windowStart && pos + n <= windowEnd && window != null) {
+            return;
+        }
+        long start = pos & ~(WINDOW_ALIGNMENT - 1);
+        long size = Math.min(windowSize, length - start);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        windowStart = start;
+        windowEnd = start + size;
+    }
+
+    /**
+     * Moves the stream pointer past the next <code>n</code> bytes, making
+     * sure they are mapped, and returns their index in the mapping window.
+     */
+    private int advance(int n) throws IOException {
+        ensureOpen();
+        long pos = pointer;
+        if (pos + n > length) {
+            throw new EOFException();
+        }
+        map(pos, n);
+        pointer = pos + n;
+        return (int)(pos - windowStart);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException(PropertyUtil.getString("MappedFileSeekableStream1"));
+        }
+    }
+
+    /**
+     * Returns <code>true</code> since all
+     * <code>MappedFileSeekableStream</code> instances support seeking
+     * backwards.
+     */
+    public boolean canSeekBackwards() {
+        return true;
+    }
+
+    /**
+     * Returns the current offset in this file.
+     */
+    public long getFilePointer() {
+        return pointer;
+    }
+
+    /**
+     * Sets the file-pointer offset, measured from the beginning of this
+     * file, at which the next read occurs.  The offset may be set beyond
+     * the end of the file, in which case reads return the end of file.
+     *
+     * @param      pos   the offset position, measured in bytes from the
+     *                   beginning of the file, at which to set the file
+     *                   pointer.
+     * @exception  IOException  if <code>pos</code> is less than
+     *                          <code>0</code>.
+     */
+    public void seek(long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException(PropertyUtil.getString("MappedFileSeekableStream0"));
+        }
+        pointer = pos;
+    }
+
+    /** {@inheritDoc} */
+    public long skip(long n) {
+        if (n <= 0 || pointer >= length) {
+            return 0;
+        }
+        long skipped = Math.min(n, length - pointer);
+        pointer += skipped;
+        return skipped;
+    }
+
+    /** {@inheritDoc} */
+    public int available() {
+        return (int)Math.max(0, Math.min(length - pointer, Integer.MAX_VALUE));
+    }
+
+    /** {@inheritDoc} */
+    public int read() throws IOException {
+        ensureOpen();
+        if (pointer >= length) {
+            return -1;
+        }
+        int index = advance(1);
+        return window.get(index) & 0xff;
+    }
+
+    /** {@inheritDoc} */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureOpen();
+        if (len == 0) {
+            return 0;
+        }
+        if (pointer >= length) {
+            return -1;
+        }
+
+        int remaining = (int)Math.min(len, length - pointer);
+        int count = 0;
+        while (count < remaining) {
+            map(pointer, 1);
+            int n = (int)Math.min(remaining - count, windowEnd - pointer);
+            ByteBuffer view = window.duplicate();
+            view.position((int)(pointer - windowStart));
+            view.get(b, off + count, n);
+            pointer += n;
+            count += n;
+        }
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    public short readShort() throws IOException {
+        int index = advance(2);
+        return window.getShort(index);
+    }
+
+    /** {@inheritDoc} */
+    public short readShortLE() throws IOException {
+        int index = advance(2);
+        return Short.reverseBytes(window.getShort(index));
+    }
+
+    /** {@inheritDoc} */
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    /** {@inheritDoc} */
+    public int readUnsignedShortLE() throws IOException {
+        return readShortLE() & 0xffff;
+    }
+
+    /** {@inheritDoc} */
+    public char readChar() throws IOException {
+        int index = advance(2);
+        return window.getChar(index);
+    }
+
+    /** {@inheritDoc} */
+    public char readCharLE() throws IOException {
+        int index = advance(2);
+        return Character.reverseBytes(window.getChar(index));
+    }
+
+    /** {@inheritDoc} */
+    public int readInt() throws IOException {
+        int index = advance(4);
+        return window.getInt(index);
+    }
+
+    /** {@inheritDoc} */
+    public int readIntLE() throws IOException {
+        int index = advance(4);
+        return Integer.reverseBytes(window.getInt(index));
+    }
+
+    /** {@inheritDoc} */
+    public long readUnsignedInt() throws IOException {
+        return readInt() & 0xffffffffL;
+    }
+
+    /** {@inheritDoc} */
+    public long readUnsignedIntLE() throws IOException {
+        return readIntLE() & 0xffffffffL;
+    }
+
+    /** {@inheritDoc} */
+    public long readLong() throws IOException {
+        int index = advance(8);
+        return window.getLong(index);
+    }
+
+    /** {@inheritDoc} */
+    public long readLongLE() throws IOException {
+        int index = advance(8);
+        return Long.reverseBytes(window.getLong(index));
+    }
+
+    /**
+     * Closes this stream and releases any system resources
+     * associated with the stream.  The mapping itself is released
+     * when it is garbage collected.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void close() throws IOException {
+        super.close();
+        closed = true;
+        window = null;
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
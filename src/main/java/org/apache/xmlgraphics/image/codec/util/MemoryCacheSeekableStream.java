@@ -19,11 +19,17 @@
 
 package org.apache.xmlgraphics.image.codec.util;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.xmlgraphics.io.Resource;
+import org.apache.xmlgraphics.io.TempResourceResolver;
+import org.apache.xmlgraphics.io.TempResourceURIGenerator;
+
 /**
  * A subclass of <code>SeekableStream</code> that may be used to wrap
  * a regular <code>InputStream</code>.  Seeking backwards is supported
@@ -31,6 +37,20 @@ import java.util.List;
  * <code>FileCacheSeekableStream</code> should be used in
  * circumstances that allow the creation of a temporary file.
  *
+ * <p> The cache is made of chunks whose size doubles from 512 bytes up to
+ * 64 KB.  The chunks are taken from a pool shared by all instances and are
+ * returned to it when the stream is closed.  The pool only limits the
+ * number of bytes it keeps for reuse (16 MB); it does not limit the size of
+ * the caches of open streams, which grow with the data read.  To bound the
+ * memory a stream holds, its cache can be moved to a temporary resource
+ * once it grows beyond a threshold; from then on only a 64 KB window of the
+ * data is held in memory.
+ *
+ * <p> Since the cache is given up by <code>close()</code>, reading from the
+ * stream after it has been closed throws an <code>IOException</code>.  In earlier versions closing the
+ * stream had no effect, so callers must not close a stream that is still
+ * read from, for example by a decoder that reads its image lazily.
+ *
  * <p> The <code>mark()</code> and <code>reset()</code> methods are
  * supported.
  *
@@ -39,40 +59,121 @@ import java.util.List;
  */
 public final class MemoryCacheSeekableStream extends SeekableStream {
 
+    /** Log_2 of the size of the first chunk. */
+    private static final int MIN_CHUNK_SHIFT = 9;
+
+    /** Log_2 of the size of the largest chunks. */
+    private static final int MAX_CHUNK_SHIFT = 16;
+
+    /** The number of chunks smaller than the largest size. */
+    private static final int GROWING_CHUNKS = MAX_CHUNK_SHIFT - MIN_CHUNK_SHIFT;
+
+    /** The number of bytes held by the chunks smaller than the largest size. */
+    private static final long GROWING_BYTES = ((1L << GROWING_CHUNKS) - 1) << MIN_CHUNK_SHIFT;
+
+    /** Names the temporary resources the cache is moved to. */
+    private static final TempResourceURIGenerator TEMP_URI_GENERATOR
+        = new TempResourceURIGenerator("MemoryCacheSeekableStream");
+
     /** The source input stream. */
     private InputStream src;
 
     /** Position of first unread byte. */
     private long pointer;
 
-    /** Log_2 of the sector size. */
-    private static final int SECTOR_SHIFT = 9;
-
-    /** The sector size. */
-    private static final int SECTOR_SIZE = 1 << SECTOR_SHIFT;
+    /** The pool the chunks are taken from. */
+    private final ChunkPool pool = ChunkPool.SHARED;
 
-    /** A mask to determine the offset within a sector. */
-    private static final int SECTOR_MASK = SECTOR_SIZE - 1;
-
-    /** A Vector of source sectors. */
-    private List data = new ArrayList();
-
-    /** Number of sectors stored. */
-//    int sectors = 0;
+    /** The chunks of source data. */
+    private List<byte[]> data = new ArrayList<byte[]>();
 
     /** Number of bytes read. */
-    int length;
+    long length;
 
     /** True if we've previously reached the end of the source stream */
     boolean foundEOS;
 
+    /** True if the stream has been closed. */
+    private boolean closed;
+
+    /** The resolver for the temporary resource, or null. */
+    private final TempResourceResolver tempResolver;
+
+    /** The cache size beyond which the cache is moved to a temporary resource. */
+    private final long spillThreshold;
+
+    /** The identifier of the temporary resource, null if not created. */
+    private String spillId;
+
+    /** The stream writing the temporary resource. */
+    private OutputStream spillOut;
+
+    /** The stream reading the temporary resource, or null. */
+    private Resource spillIn;
+
+    /** The position of <code>spillIn</code>. */
+    private long spillInPos;
+
+    /** The number of bytes written when <code>spillIn</code> was opened. */
+    private long spillInLength;
+
+    /** Holds part of the data once the cache is a temporary resource. */
+    private byte[] window;
+
+    /** The position of the data in <code>window</code>. */
+    private long windowStart;
+
+    /** The number of bytes in <code>window</code>. */
+    private int windowLength;
+
+    /** The offset in the array last returned by <code>locate()</code>. */
+    private int locOffset;
+
+    /** The number of bytes available from <code>locOffset</code>. */
+    private int locRemaining;
+
     /**
      * Constructs a <code>MemoryCacheSeekableStream</code> that takes
      * its source data from a regular <code>InputStream</code>.
      * Seeking backwards is supported by means of an in-memory cache.
      */
     public MemoryCacheSeekableStream(InputStream src) {
+        this(src, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a <code>MemoryCacheSeekableStream</code> that takes
+     * its source data from a regular <code>InputStream</code> and moves
+     * its cache to a temporary resource once the cache grows beyond the
+     * given number of bytes.  The resolver must allow reading a resource
+     * whose output stream has been flushed but not closed.
+     *
+     * @param src the source stream
+     * @param tempResolver the resolver for the temporary resource, or null
+     *        to always cache in memory
+     * @param spillThreshold the maximum number of bytes cached in memory
+     */
+    public MemoryCacheSeekableStream(InputStream src, TempResourceResolver tempResolver,
+                                     long spillThreshold) {
         this.src = src;
+        this.tempResolver = tempResolver;
+        this.spillThreshold = tempResolver == null ? Long.MAX_VALUE : spillThreshold;
+    }
+
+    /** Returns the index of the chunk holding the byte at <code>pos</code>. */
+    private static int chunkIndex(long pos) {
+        if (pos < GROWING_BYTES) {
+            return 31 - Integer.numberOfLeadingZeros((int)(pos >> MIN_CHUNK_SHIFT) + 1);
+        }
+        return GROWING_CHUNKS + (int)((pos - GROWING_BYTES) >> MAX_CHUNK_SHIFT);
+    }
+
+    /** Returns the position of the first byte of a chunk. */
+    private static long chunkStart(int index) {
+        if (index < GROWING_CHUNKS) {
+            return ((1L << index) - 1) << MIN_CHUNK_SHIFT;
+        }
+        return GROWING_BYTES + ((long)(index - GROWING_CHUNKS) << MAX_CHUNK_SHIFT);
     }
 
     /**
@@ -82,44 +183,112 @@ public final class MemoryCacheSeekableStream extends SeekableStream {
      * length of the source stream.
      */
     private long readUntil(long pos) throws IOException {
-        // We've already got enough data cached
-        if (pos < length) {
-            return pos;
-        }
-        // pos >= length but length isn't getting any bigger, so return it
-        if (foundEOS) {
-            return length;
-        }
-
-        int sector = (int)(pos >> SECTOR_SHIFT);
-
-        // First unread sector
-        int startSector = length >> SECTOR_SHIFT;
-
-        // Read sectors until the desired sector
-        for (int i = startSector; i <= sector; i++) {
-            byte[] buf = new byte[SECTOR_SIZE];
-            data.add(buf);
-
-            // Read up to SECTOR_SIZE bytes
-            int len = SECTOR_SIZE;
-            int off = 0;
-            while (len > 0) {
-                int nbytes = src.read(buf, off, len);
-                // Found the end-of-stream
-                if (nbytes == -1) {
-                    foundEOS = true;
-                    return length;
+        if (closed) {
+            throw new IOException(PropertyUtil.getString("MemoryCacheSeekableStream1"));
+        }
+        while (length < pos && !foundEOS) {
+            byte[] buf;
+            int off;
+            if (spillId == null) {
+                int index = chunkIndex(length);
+                if (index == data.size()) {
+                    data.add(pool.acquire(Math.min(MIN_CHUNK_SHIFT + index, MAX_CHUNK_SHIFT)));
                 }
-                off += nbytes;
-                len -= nbytes;
+                buf = data.get(index);
+                off = (int)(length - chunkStart(index));
+            } else {
+                // The newly read data are kept in the window.
+                buf = window;
+                off = 0;
+                windowLength = 0;
+            }
 
-                // Record new data length
+            int nbytes = src.read(buf, off, buf.length - off);
+            if (nbytes == -1) {
+                foundEOS = true;
+            } else if (spillId == null) {
+                length += nbytes;
+                if (length > spillThreshold) {
+                    spill();
+                }
+            } else {
+                spillOut.write(buf, 0, nbytes);
+                windowStart = length;
+                windowLength = nbytes;
                 length += nbytes;
             }
         }
+        return Math.min(pos, length);
+    }
 
-        return length;
+    /** Moves the cache to a temporary resource. */
+    private void spill() throws IOException {
+        spillId = TEMP_URI_GENERATOR.generate().toASCIIString();
+        spillOut = tempResolver.getOutputStream(spillId);
+        for (int i = 0; i < data.size(); i++) {
+            byte[] chunk = data.get(i);
+            spillOut.write(chunk, 0, (int)Math.min(chunk.length, length - chunkStart(i)));
+            pool.release(chunk);
+        }
+        data.clear();
+        window = pool.acquire(MAX_CHUNK_SHIFT);
+    }
+
+    /**
+     * Returns the array holding the cached byte at <code>pos</code>, which
+     * must be less than <code>length</code>, setting <code>locOffset</code>
+     * and <code>locRemaining</code>.
+     */
+    private byte[] locate(long pos) throws IOException {
+        if (spillId == null) {
+            int index = chunkIndex(pos);
+            byte[] chunk = data.get(index);
+            locOffset = (int)(pos - chunkStart(index));
+            locRemaining = (int)Math.min(chunk.length - locOffset, length - pos);
+            return chunk;
+        }
+        if (pos < windowStart || pos >= windowStart + windowLength) {
+            fillWindow(pos);
+        }
+        locOffset = (int)(pos - windowStart);
+        locRemaining = windowLength - locOffset;
+        return window;
+    }
+
+    /** Reads the window from the temporary resource, starting at <code>pos</code>. */
+    private void fillWindow(long pos) throws IOException {
+        int len = (int)Math.min(window.length, length - pos);
+        spillOut.flush();
+        // Reopen if the resource might not show data written after opening it
+        if (spillIn == null || pos < spillInPos || pos + len > spillInLength) {
+            if (spillIn != null) {
+                spillIn.close();
+            }
+            spillIn = tempResolver.getResource(spillId);
+            spillInPos = 0;
+            spillInLength = length;
+        }
+        while (spillInPos < pos) {
+            long skipped = spillIn.skip(pos - spillInPos);
+            if (skipped <= 0) {
+                if (spillIn.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            spillInPos += skipped;
+        }
+        windowLength = 0;
+        for (int off = 0; off < len;) {
+            int nbytes = spillIn.read(window, off, len - off);
+            if (nbytes == -1) {
+                throw new EOFException();
+            }
+            off += nbytes;
+        }
+        spillInPos += len;
+        windowStart = pos;
+        windowLength = len;
     }
 
     /**
@@ -173,9 +342,8 @@ public final class MemoryCacheSeekableStream extends SeekableStream {
         long next = pointer + 1;
         long pos = readUntil(next);
         if (pos >= next) {
-            byte[] buf =
-                (byte[])data.get((int)(pointer >> SECTOR_SHIFT));
-            return buf[(int)(pointer++ & SECTOR_MASK)] & 0xff;
+            byte[] buf = locate(pointer++);
+            return buf[locOffset] & 0xff;
         } else {
             return -1;
         }
@@ -245,11 +413,40 @@ public final class MemoryCacheSeekableStream extends SeekableStream {
             return -1;
         }
 
-        byte[] buf = (byte[])data.get((int)(pointer >> SECTOR_SHIFT));
-        int nbytes = Math.min(len, SECTOR_SIZE - (int)(pointer & SECTOR_MASK));
-        System.arraycopy(buf, (int)(pointer & SECTOR_MASK),
-                         b, off, nbytes);
+        byte[] buf = locate(pointer);
+        int nbytes = Math.min(len, locRemaining);
+        System.arraycopy(buf, locOffset, b, off, nbytes);
         pointer += nbytes;
         return nbytes;
     }
+
+    /**
+     * Closes this stream, returning the cache to the shared pool.  The
+     * source stream is not closed.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (byte[] chunk : data) {
+            pool.release(chunk);
+        }
+        data.clear();
+        if (window != null) {
+            pool.release(window);
+            window = null;
+        }
+        try {
+            if (spillOut != null) {
+                spillOut.close();
+            }
+        } finally {
+            if (spillIn != null) {
+                spillIn.close();
+            }
+        }
+    }
 }
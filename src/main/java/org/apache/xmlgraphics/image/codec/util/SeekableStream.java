@@ -60,10 +60,9 @@ import java.io.InputStream;
  * <code>MemoryCacheSeekableStream</code> creates a potentially large in-memory
  * buffer to store the stream data and so should be avoided when possible.
  *
- * <p> The <code>FileSeekableStream</code> class wraps a <code>File</code> or
- * <code>RandomAccessFile</code>. It forwards requests to the real underlying
- * file.  It performs a limited amount of caching in order to avoid excessive
- * I/O costs.
+ * <p> The <code>MappedFileSeekableStream</code> class wraps a
+ * <code>File</code>.  It maps the file into memory rather than copying it,
+ * and reads multi-byte values directly from the mapped buffer.
  *
  * <p> The <code>SegmentedSeekableStream</code> class performs a different sort
  * of function.  It creates a <code>SeekableStream</code> from another
@@ -396,6 +395,31 @@ public abstract class SeekableStream extends InputStream implements DataInput {
         return ch;
     }
 
+    /** Holds the bytes of a multi-byte value. */
+    private final byte[] valueBuf = new byte[8];
+
+    /**
+     * Reads the <code>n</code> bytes of a multi-byte value, usually with a
+     * single call to <code>read(byte[], int, int)</code> rather than one
+     * call to <code>read()</code> per byte.
+     */
+    private byte[] readValue(int n) throws IOException {
+        readFully(valueBuf, 0, n);
+        return valueBuf;
+    }
+
+    /** Assembles a big-endian int. */
+    private static int toInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16)
+            | ((b[off + 2] & 0xff) << 8) | (b[off + 3] & 0xff);
+    }
+
+    /** Assembles a little-endian int. */
+    private static int toIntLE(byte[] b, int off) {
+        return ((b[off + 3] & 0xff) << 24) | ((b[off + 2] & 0xff) << 16)
+            | ((b[off + 1] & 0xff) << 8) | (b[off] & 0xff);
+    }
+
     /**
      * Reads a signed 16-bit number from this stream.
      * The method reads two
@@ -417,13 +441,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final short readShort() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (short)((ch1 << 8) + (ch2 << 0));
+    public short readShort() throws IOException {
+        byte[] b = readValue(2);
+        return (short)(((b[0] & 0xff) << 8) | (b[1] & 0xff));
     }
 
     /**
@@ -447,13 +467,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final short readShortLE() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (short)((ch2 << 8) + (ch1 << 0));
+    public short readShortLE() throws IOException {
+        byte[] b = readValue(2);
+        return (short)(((b[1] & 0xff) << 8) | (b[0] & 0xff));
     }
 
     /**
@@ -476,13 +492,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *             two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readUnsignedShort() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (ch1 << 8) + (ch2 << 0);
+    public int readUnsignedShort() throws IOException {
+        byte[] b = readValue(2);
+        return ((b[0] & 0xff) << 8) | (b[1] & 0xff);
     }
 
     /**
@@ -506,13 +518,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readUnsignedShortLE() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (ch2 << 8) + (ch1 << 0);
+    public int readUnsignedShortLE() throws IOException {
+        byte[] b = readValue(2);
+        return ((b[1] & 0xff) << 8) | (b[0] & 0xff);
     }
 
     /**
@@ -534,13 +542,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final char readChar() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (char)((ch1 << 8) + (ch2 << 0));
+    public char readChar() throws IOException {
+        byte[] b = readValue(2);
+        return (char)(((b[0] & 0xff) << 8) | (b[1] & 0xff));
     }
 
     /**
@@ -563,13 +567,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               two bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final char readCharLE() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        if ((ch1 | ch2) < 0) {
-            throw new EOFException();
-        }
-        return (char)((ch2 << 8) + (ch1 << 0));
+    public char readCharLE() throws IOException {
+        byte[] b = readValue(2);
+        return (char)(((b[1] & 0xff) << 8) | (b[0] & 0xff));
     }
 
     /**
@@ -592,15 +592,8 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readInt() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        int ch3 = this.read();
-        int ch4 = this.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0) {
-            throw new EOFException();
-        }
-        return ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
+    public int readInt() throws IOException {
+        return toInt(readValue(4), 0);
     }
 
     /**
@@ -624,15 +617,8 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final int readIntLE() throws IOException {
-        int ch1 = this.read();
-        int ch2 = this.read();
-        int ch3 = this.read();
-        int ch4 = this.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0) {
-            throw new EOFException();
-        }
-        return ((ch4 << 24) + (ch3 << 16) + (ch2 << 8) + (ch1 << 0));
+    public int readIntLE() throws IOException {
+        return toIntLE(readValue(4), 0);
     }
 
     /**
@@ -655,19 +641,10 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readUnsignedInt() throws IOException {
-        long ch1 = this.read();
-        long ch2 = this.read();
-        long ch3 = this.read();
-        long ch4 = this.read();
-        if ((ch1 | ch2 | ch3 | ch4) < 0) {
-            throw new EOFException();
-        }
-        return ((ch1 << 24) + (ch2 << 16) + (ch3 << 8) + (ch4 << 0));
+    public long readUnsignedInt() throws IOException {
+        return toInt(readValue(4), 0) & 0xffffffffL;
     }
 
-    private byte[] ruileBuf = new byte[4];
-
     /**
      * Reads an unsigned 32-bit integer from this stream in little-endian
      * order.  This method reads 4
@@ -689,14 +666,8 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               four bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readUnsignedIntLE() throws IOException {
-        this.readFully(ruileBuf);
-        long ch1 = (ruileBuf[0] & 0xff);
-        long ch2 = (ruileBuf[1] & 0xff);
-        long ch3 = (ruileBuf[2] & 0xff);
-        long ch4 = (ruileBuf[3] & 0xff);
-
-        return ((ch4 << 24) + (ch3 << 16) + (ch2 << 8) + (ch1 << 0));
+    public long readUnsignedIntLE() throws IOException {
+        return toIntLE(readValue(4), 0) & 0xffffffffL;
     }
 
     /**
@@ -727,8 +698,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               eight bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readLong() throws IOException {
-        return ((long)(readInt()) << 32) + (readInt() & 0xFFFFFFFFL);
+    public long readLong() throws IOException {
+        byte[] b = readValue(8);
+        return ((long)toInt(b, 0) << 32) | (toInt(b, 4) & 0xffffffffL);
     }
 
     /**
@@ -760,10 +732,9 @@ public abstract class SeekableStream extends InputStream implements DataInput {
      *               eight bytes.
      * @exception  IOException   if an I/O error occurs.
      */
-    public final long readLongLE() throws IOException {
-        int i1 = readIntLE();
-        int i2 = readIntLE();
-        return ((long)i2 << 32) + (i1 & 0xFFFFFFFFL);
+    public long readLongLE() throws IOException {
+        byte[] b = readValue(8);
+        return ((long)toIntLE(b, 4) << 32) | (toIntLE(b, 0) & 0xffffffffL);
     }
 
     /**
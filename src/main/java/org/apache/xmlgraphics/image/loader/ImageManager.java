@@ -198,6 +198,30 @@ public class ImageManager {
         return newHints;
     }
 
+    /**
+     * Sets the {@link ImageProcessingHints#SUBSAMPLING} hint from the target resolution and
+     * the resolution of the image if {@link ImageProcessingHints#SUBSAMPLE_TO_TARGET_RESOLUTION}
+     * is set and no subsampling has been requested explicitly.
+     */
+    private void addSubsamplingHint(ImageInfo info, Map<String, Object> hints) {
+        if (!Boolean.TRUE.equals(hints.get(ImageProcessingHints.SUBSAMPLE_TO_TARGET_RESOLUTION))
+                || hints.containsKey(ImageProcessingHints.SUBSAMPLING)) {
+            return;
+        }
+        Object targetResolution = hints.get(ImageProcessingHints.TARGET_RESOLUTION);
+        ImageSize size = info.getSize();
+        if (targetResolution instanceof Number && size != null) {
+            double target = ((Number)targetResolution).doubleValue();
+            if (target > 0) {
+                int subsampling = (int)(Math.min(size.getDpiHorizontal(), size.getDpiVertical())
+                        / target);
+                if (subsampling > 1) {
+                    hints.put(ImageProcessingHints.SUBSAMPLING, subsampling);
+                }
+            }
+        }
+    }
+
     /**
      * Loads an image. The caller can indicate what kind of image flavor is requested. When this
      * method is called the code looks for a suitable ImageLoader and, if necessary, builds
@@ -220,6 +244,7 @@ public class ImageManager {
                 ImageSessionContext session)
             throws ImageException, IOException {
         hints = prepareHints(hints, session);
+        addSubsamplingHint(info, hints);
 
         Image img = null;
         ImageProviderPipeline pipeline = getPipelineFactory().newImageConverterPipeline(
@@ -259,6 +284,7 @@ public class ImageManager {
                         ImageSessionContext session)
                 throws ImageException, IOException {
         hints = prepareHints(hints, session);
+        addSubsamplingHint(info, hints);
 
         Image img = null;
         ImageProviderPipeline[] candidates = getPipelineFactory().determineCandidatePipelines(
@@ -82,5 +82,31 @@ public interface ImageProcessingHints {
      */
     String TRANSPARENCY_INTENT_IGNORE = "ignore";
 
+    /**
+     * Used to tell image loaders that only every n-th row and column of a bitmap is needed,
+     * so they may subsample the image while decoding it. The loaded image has fewer pixels
+     * but the same intrinsic size, i.e. a lower resolution. Images loaded with subsampling
+     * are not cached.
+     * @since 2.11
+     */
+    String SUBSAMPLING = "SUBSAMPLING"; //Value: Integer (1 means no subsampling)
+
+    /**
+     * Used to tell the {@link ImageManager} to derive the {@link #SUBSAMPLING} hint from the
+     * {@link #TARGET_RESOLUTION} hint and the resolution of the image, so bitmaps are not
+     * decoded at a resolution much higher than needed, for example for previews.
+     * @since 2.11
+     */
+    String SUBSAMPLE_TO_TARGET_RESOLUTION = "SUBSAMPLE_TO_TARGET_RESOLUTION"; //Value: Boolean
+
+    /**
+     * Used to allow image loaders to memory-map local image files instead of reading them
+     * through the Source's stream. A mapped file is not copied, but reading a file truncated
+     * while it is mapped fails with an InternalError instead of an IOException, and on some
+     * platforms the file stays locked until the mapping is garbage collected.
+     * @since 2.11
+     */
+    String MAP_FILES = "MAP_FILES"; //Value: Boolean
+
 
 }
@@ -19,15 +19,27 @@
 
 package org.apache.xmlgraphics.image.loader.impl;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.util.Map;
 
+import javax.xml.transform.Source;
+
+import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
+import org.apache.xmlgraphics.image.codec.util.MappedFileSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageProcessingHints;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.ImageSize;
+import org.apache.xmlgraphics.image.loader.ImageSource;
 import org.apache.xmlgraphics.image.loader.spi.ImageLoader;
+import org.apache.xmlgraphics.image.loader.util.ImageUtil;
+import org.apache.xmlgraphics.io.XmlSourceUtil;
 
 /**
  * Simple abstract base class for ImageLoaders.
@@ -59,4 +71,61 @@ public abstract class AbstractImageLoader implements ImageLoader {
         return (b != null) && b;
     }
 
+    /**
+     * Returns a SeekableStream for reading the image from a Source. If the
+     * {@link ImageProcessingHints#MAP_FILES} hint is set and the Source accesses a local file,
+     * the file is memory-mapped and the Source's own stream is closed. Otherwise the Source's
+     * ImageInputStream is adapted.
+     * @param src the Source object
+     * @param hints a Map of hints that can be used by implementations to customize the loading
+     *                  process (may be null).
+     * @return the SeekableStream
+     * @throws IOException if an I/O error occurs
+     */
+    protected SeekableStream createSeekableStream(Source src, Map<String, Object> hints)
+            throws IOException {
+        boolean mapFiles = hints != null && Boolean.TRUE.equals(hints.get(ImageProcessingHints.MAP_FILES));
+        if (mapFiles && src instanceof ImageSource && ((ImageSource)src).isFastSource()) {
+            File file;
+            try {
+                file = AbstractImageSessionContext.toFile(new URL(src.getSystemId()));
+            } catch (MalformedURLException e) {
+                file = null;
+            }
+            if (file != null) {
+                SeekableStream seekStream = new MappedFileSeekableStream(file);
+                XmlSourceUtil.closeQuietly(src);
+                return seekStream;
+            }
+        }
+        return new ImageInputStreamSeekableStreamAdapter(ImageUtil.needImageInputStream(src));
+    }
+
+    /**
+     * Creates an ImageInfo for an image that has been subsampled while loading. The size in
+     * pixels and the resolution are adjusted while the intrinsic size stays the same.
+     * @param info the ImageInfo of the original image
+     * @param widthPx the width of the subsampled image in pixels
+     * @param heightPx the height of the subsampled image in pixels
+     * @return the ImageInfo for the subsampled image
+     */
+    protected ImageInfo createSubsampledInfo(ImageInfo info, int widthPx, int heightPx) {
+        ImageSize size = info.getSize();
+        if (size == null) {
+            return info;
+        }
+        ImageSize subsampledSize = new ImageSize(widthPx, heightPx,
+                size.getDpiHorizontal() * widthPx / size.getWidthPx(),
+                size.getDpiVertical() * heightPx / size.getHeightPx());
+        subsampledSize.setSizeInMillipoints(size.getWidthMpt(), size.getHeightMpt());
+        subsampledSize.setBaselinePositionFromBottom(size.getBaselinePositionFromBottom());
+        ImageInfo subsampledInfo = new ImageInfo(info.getOriginalURI(), info.getMimeType());
+        subsampledInfo.setSize(subsampledSize);
+        //ImageInfo keeps its custom objects in a raw Map
+        @SuppressWarnings("unchecked")
+        Map<Object, Object> customObjects = subsampledInfo.getCustomObjects();
+        customObjects.putAll((Map<?, ?>)info.getCustomObjects());
+        return subsampledInfo;
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.loader.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+
+/**
+ * Streams the concatenated data of the IDAT chunks of a PNG file, i.e. the
+ * zlib stream of the image, directly from the original source. The chunk
+ * headers and CRCs between the chunk data are skipped by seeking, so nothing
+ * is inflated or buffered. Closing this stream closes the source.
+ */
+class IDATInputStream extends InputStream {
+
+    private final SeekableStream source;
+    private final List<long[]> segments;
+    private int segment;
+    private long remaining;
+
+    /**
+     * Creates a new stream.
+     * @param source the PNG file
+     * @param segments the offset and length of the data of each IDAT chunk, in file order
+     */
+    public IDATInputStream(SeekableStream source, List<long[]> segments) {
+        this.source = source;
+        this.segments = segments;
+    }
+
+    /**
+     * Positions the source at the next unread byte of chunk data.
+     * @return false if all data has been read
+     */
+    private boolean nextSegment() throws IOException {
+        while (remaining == 0) {
+            if (segment == segments.size()) {
+                return false;
+            }
+            long[] s = segments.get(segment++);
+            source.seek(s[0]);
+            remaining = s[1];
+        }
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    public int read() throws IOException {
+        if (!nextSegment()) {
+            return -1;
+        }
+        int b = source.read();
+        if (b < 0) {
+            throw new EOFException();
+        }
+        remaining--;
+        return b;
+    }
+
+    /** {@inheritDoc} */
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextSegment()) {
+            return -1;
+        }
+        int n = source.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0) {
+            throw new EOFException();
+        }
+        remaining -= n;
+        return n;
+    }
+
+    /** {@inheritDoc} */
+    public int available() {
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    /** {@inheritDoc} */
+    public void close() throws IOException {
+        source.close();
+    }
+}
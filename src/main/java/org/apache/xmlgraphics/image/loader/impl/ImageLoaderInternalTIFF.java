@@ -22,13 +22,13 @@ package org.apache.xmlgraphics.image.loader.impl;
 import java.io.IOException;
 import java.util.Map;
 
-import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
+import org.apache.xmlgraphics.image.codec.tiff.TIFFDecodeParam;
+import org.apache.xmlgraphics.image.codec.tiff.TIFFDirectoryIndex;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
@@ -62,15 +62,34 @@ public class ImageLoaderInternalTIFF extends AbstractImageLoader {
             throws ImageException, IOException {
 
         Source src = session.needSource(info.getOriginalURI());
-        ImageInputStream imgStream = ImageUtil.needImageInputStream(src);
-
-        SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(imgStream);
+        SeekableStream seekStream = createSeekableStream(src, hints);
         try {
+            int pageIndex = ImageUtil.needPageIndexFromURI(info.getOriginalURI());
+            TIFFDecodeParam param = null;
+            TIFFDirectoryIndex index
+                = (TIFFDirectoryIndex)info.getCustomObjects().get("TIFF_DIRECTORY_INDEX");
+            if (index != null) {
+                //Go straight to the page's IFD found by the preloader
+                param = new TIFFDecodeParam();
+                param.setIFDOffset(index.getIFDOffset(seekStream, pageIndex));
+                pageIndex = 0;
+            }
+            int subsampling = ImageUtil.getSubsampling(hints);
+            if (subsampling > 1) {
+                if (param == null) {
+                    param = new TIFFDecodeParam();
+                }
+                param.setSubsampling(subsampling, subsampling);
+            }
             org.apache.xmlgraphics.image.codec.tiff.TIFFImage img
                 = new org.apache.xmlgraphics.image.codec.tiff.TIFFImage(
-                    seekStream, null, 0);
+                    seekStream, param, pageIndex);
+            ImageInfo imageInfo = info;
+            if (subsampling > 1) {
+                imageInfo = createSubsampledInfo(info, img.getWidth(), img.getHeight());
+            }
             // TODO: This may ignore ICC Profiles stored in TIFF images.
-            return new ImageRendered(info, img, null);
+            return new ImageRendered(imageInfo, img, null);
         } catch (RuntimeException e) {
             throw new ImageException("Could not load image with internal TIFF codec", e);
         }
@@ -23,12 +23,10 @@ import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.util.Map;
 
-import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
 
 import org.apache.xmlgraphics.image.codec.png.PNGDecodeParam;
 import org.apache.xmlgraphics.image.codec.png.PNGImageDecoder;
-import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
@@ -46,15 +44,20 @@ public class ImageLoaderPNG extends AbstractImageLoader {
     public Image loadImage(ImageInfo info, Map<String, Object> hints, ImageSessionContext session) throws IOException {
 
         Source src = session.needSource(info.getOriginalURI());
-        ImageInputStream imgStream = ImageUtil.needImageInputStream(src);
+        SeekableStream seekStream = createSeekableStream(src, hints);
 
-        SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(imgStream);
-
-        PNGImageDecoder decoder = new PNGImageDecoder(seekStream, new PNGDecodeParam());
+        PNGDecodeParam param = new PNGDecodeParam();
+        int subsampling = ImageUtil.getSubsampling(hints);
+        param.setSubsampling(subsampling, subsampling);
+        PNGImageDecoder decoder = new PNGImageDecoder(seekStream, param);
         RenderedImage image = decoder.decodeAsRenderedImage();
 
+        ImageInfo imageInfo = info;
+        if (subsampling > 1) {
+            imageInfo = createSubsampledInfo(info, image.getWidth(), image.getHeight());
+        }
         // need transparency here?
-        return new ImageRendered(info, image, null);
+        return new ImageRendered(imageInfo, image, null);
     }
 
     /** {@inheritDoc} */
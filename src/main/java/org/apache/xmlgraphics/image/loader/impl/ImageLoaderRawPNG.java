@@ -24,20 +24,17 @@ package org.apache.xmlgraphics.image.loader.impl;
 import java.io.IOException;
 import java.util.Map;
 
-import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.apache.xmlgraphics.image.codec.util.ImageInputStreamSeekableStreamAdapter;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.Image;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
-import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.io.XmlSourceUtil;
 import org.apache.xmlgraphics.util.MimeConstants;
 
@@ -66,10 +63,9 @@ public class ImageLoaderRawPNG extends AbstractImageLoader {
         }
 
         Source src = session.needSource(info.getOriginalURI());
-        ImageInputStream in = ImageUtil.needImageInputStream(src);
+        SeekableStream seekStream = createSeekableStream(src, hints);
         // Remove streams as we do things with them at some later time.
         XmlSourceUtil.removeStreams(src);
-        SeekableStream seekStream = new ImageInputStreamSeekableStreamAdapter(in);
         PNGFile im = new PNGFile(seekStream, info.getOriginalURI());
         ImageRawPNG irpng = im.getImageRawPNG(info);
         return irpng;
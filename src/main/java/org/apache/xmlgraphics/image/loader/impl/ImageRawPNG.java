@@ -25,6 +25,7 @@ import java.awt.Color;
 import java.awt.color.ColorSpace;
 import java.awt.color.ICC_Profile;
 import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
 import java.io.InputStream;
 
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
@@ -41,6 +42,7 @@ public class ImageRawPNG extends ImageRawStream {
     private int greenTransparentAlpha;
     private int blueTransparentAlpha;
     private int renderingIntent = -1;
+    private int columns;
 
     /**
      * Main constructor.
@@ -159,4 +161,39 @@ public class ImageRawPNG extends ImageRawStream {
       return this.renderingIntent;
     }
 
+    /**
+     * Returns the predictor of the image data, for /Predictor in the /DecodeParms of a
+     * /FlateDecode filter. PNG images use PNG prediction with the algorithm selected per row.
+     * @return the predictor (always 15)
+     */
+    public int getPredictor() {
+        return 15;
+    }
+
+    /**
+     * Returns the number of interleaved samples per pixel in the image data, for /Colors in
+     * the /DecodeParms of a /FlateDecode filter. This includes the alpha channel, if any.
+     * @return the number of samples per pixel
+     */
+    public int getColors() {
+        return (cm instanceof IndexColorModel) ? 1 : cm.getNumComponents();
+    }
+
+    /**
+     * Returns the number of pixels per row, for /Columns in the /DecodeParms of a
+     * /FlateDecode filter.
+     * @return the width of the image in pixels
+     */
+    public int getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * Sets the number of pixels per row.
+     * @param columns the width of the image in pixels
+     */
+    protected void setColumns(int columns) {
+        this.columns = columns;
+    }
+
 }
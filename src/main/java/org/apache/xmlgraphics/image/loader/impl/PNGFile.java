@@ -40,6 +40,7 @@ import java.util.zip.InflaterInputStream;
 
 import org.apache.xmlgraphics.image.codec.png.PNGChunk;
 import org.apache.xmlgraphics.image.codec.util.PropertyUtil;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
 
@@ -60,7 +61,11 @@ class PNGFile implements PNGConstants {
     private int redTransparentAlpha;
     private int greenTransparentAlpha;
     private int blueTransparentAlpha;
+    private int width;
     private List<InputStream> streamVec = new ArrayList<InputStream>();
+    // the seekable source and the offset and length of the data of each IDAT chunk
+    private SeekableStream seekStream;
+    private List<long[]> idatSegments = new ArrayList<long[]>();
     private int paletteEntries;
     private byte[] redPalette;
     private byte[] greenPalette;
@@ -70,7 +75,10 @@ class PNGFile implements PNGConstants {
     private boolean hasAlphaPalette;
 
     public PNGFile(InputStream stream, String uri) throws IOException, ImageException {
-        if (!stream.markSupported()) {
+        if (stream instanceof SeekableStream && stream.markSupported()) {
+            // the IDAT data can be streamed from the source later on
+            seekStream = (SeekableStream) stream;
+        } else if (!stream.markSupported()) {
             stream = new BufferedInputStream(stream);
         }
         DataInputStream distream = new DataInputStream(stream);
@@ -91,8 +99,16 @@ class PNGFile implements PNGConstants {
                     chunk = PNGChunk.readChunk(distream);
                     parse_PLTE_chunk(chunk);
                 } else if (chunkType.equals(PNGChunk.ChunkType.IDAT.name())) {
-                    chunk = PNGChunk.readChunk(distream);
-                    streamVec.add(new ByteArrayInputStream(chunk.getData()));
+                    if (seekStream != null) {
+                        // only remember where the data is: it follows the length and type
+                        // and precedes the CRC
+                        long start = seekStream.getFilePointer();
+                        PNGChunk.skipChunk(distream);
+                        idatSegments.add(new long[] {start + 8, seekStream.getFilePointer() - start - 12});
+                    } else {
+                        chunk = PNGChunk.readChunk(distream);
+                        streamVec.add(new ByteArrayInputStream(chunk.getData()));
+                    }
                 } else if (chunkType.equals(PNGChunk.ChunkType.IEND.name())) {
                     // chunk = PNGChunk.readChunk(distream);
                     PNGChunk.skipChunk(distream);
@@ -120,7 +136,12 @@ class PNGFile implements PNGConstants {
     }
 
     public ImageRawPNG getImageRawPNG(ImageInfo info) throws ImageException {
-        InputStream seqStream = new SequenceInputStream(Collections.enumeration(streamVec));
+        InputStream seqStream;
+        if (seekStream != null) {
+            seqStream = new IDATInputStream(seekStream, idatSegments);
+        } else {
+            seqStream = new SequenceInputStream(Collections.enumeration(streamVec));
+        }
         ColorSpace rgbCS = null;
         switch (colorType) {
         case PNG_COLOR_GRAY:
@@ -187,10 +208,12 @@ class PNGFile implements PNGConstants {
         if (sRGBRenderingIntent != -1) {
           rawImage.setRenderingIntent(sRGBRenderingIntent);
         }
+        rawImage.setColumns(width);
         return rawImage;
     }
 
     private void parse_IHDR_chunk(PNGChunk chunk) {
+        width = chunk.getInt4(0);
         bitDepth = chunk.getInt1(8);
         colorType = chunk.getInt1(9);
         int compressionMethod = chunk.getInt1(10);
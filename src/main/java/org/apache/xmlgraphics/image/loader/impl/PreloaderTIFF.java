@@ -19,7 +19,10 @@
 
 package org.apache.xmlgraphics.image.loader.impl;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.text.MessageFormat;
 
 import javax.imageio.stream.ImageInputStream;
@@ -29,6 +32,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.apache.xmlgraphics.image.codec.tiff.TIFFDirectory;
+import org.apache.xmlgraphics.image.codec.tiff.TIFFDirectoryIndex;
 import org.apache.xmlgraphics.image.codec.tiff.TIFFField;
 import org.apache.xmlgraphics.image.codec.tiff.TIFFImageDecoder;
 import org.apache.xmlgraphics.image.codec.util.SeekableStream;
@@ -39,6 +43,7 @@ import org.apache.xmlgraphics.image.loader.ImageSize;
 import org.apache.xmlgraphics.image.loader.SubImageNotFoundException;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.image.loader.util.SeekableStreamAdapter;
+import org.apache.xmlgraphics.image.loader.util.SoftMapCache;
 import org.apache.xmlgraphics.util.MimeConstants;
 import org.apache.xmlgraphics.util.UnitConv;
 
@@ -54,6 +59,12 @@ public class PreloaderTIFF extends AbstractImagePreloader {
 
     private static final int TIFF_SIG_LENGTH = 8;
 
+    /**
+     * The directory indexes of local files by path, so that the pages of a multi-page file
+     * share one index.
+     */
+    private static final SoftMapCache DIRECTORY_INDEXES = new SoftMapCache(true);
+
     /** {@inheritDoc}
      * @throws ImageException */
     public ImageInfo preloadImage(String uri, Source src, ImageContext context)
@@ -68,8 +79,8 @@ public class PreloaderTIFF extends AbstractImagePreloader {
         // first 2 bytes = II (little endian encoding)
         if (header[0] == (byte) 0x49 && header[1] == (byte) 0x49) {
 
-            // look for '42' in byte 3 and '0' in byte 4
-            if (header[2] == 42 && header[3] == 0) {
+            // look for '42' (or '43' for BigTIFF) in byte 3 and '0' in byte 4
+            if ((header[2] == 42 || header[2] == 43) && header[3] == 0) {
                 supported = true;
             }
         }
@@ -77,21 +88,22 @@ public class PreloaderTIFF extends AbstractImagePreloader {
         // first 2 bytes == MM (big endian encoding)
         if (header[0] == (byte) 0x4D && header[1] == (byte) 0x4D) {
 
-            // look for '42' in byte 4 and '0' in byte 3
-            if (header[2] == 0 && header[3] == 42) {
+            // look for '42' (or '43' for BigTIFF) in byte 4 and '0' in byte 3
+            if (header[2] == 0 && (header[3] == 42 || header[3] == 43)) {
                 supported = true;
             }
         }
 
         if (supported) {
-            ImageInfo info = createImageInfo(uri, in, context);
+            ImageInfo info = createImageInfo(uri, src, in, context);
             return info;
         } else {
             return null;
         }
     }
 
-    private ImageInfo createImageInfo(String uri, ImageInputStream in, ImageContext context)
+    private ImageInfo createImageInfo(String uri, Source src, ImageInputStream in,
+                ImageContext context)
                 throws IOException, ImageException {
         ImageInfo info = null;
         in.mark();
@@ -99,9 +111,10 @@ public class PreloaderTIFF extends AbstractImagePreloader {
             int pageIndex = ImageUtil.needPageIndexFromURI(uri);
 
             SeekableStream seekable = new SeekableStreamAdapter(in);
+            TIFFDirectoryIndex index = getDirectoryIndex(src, seekable);
             TIFFDirectory dir;
             try {
-                dir = new TIFFDirectory(seekable, pageIndex);
+                dir = index.getDirectory(seekable, pageIndex);
             } catch (IllegalArgumentException iae) {
                 String errorMessage = MessageFormat.format(
                         "Subimage {0} does not exist.", new Object[] {pageIndex});
@@ -180,16 +193,18 @@ public class PreloaderTIFF extends AbstractImagePreloader {
             }
             info.getCustomObjects().put("TIFF_STRIP_COUNT", stripCount);
 
+            boolean hasMoreImages;
             try {
-                //Check if there is a next page
-                new TIFFDirectory(seekable, pageIndex + 1);
-                info.getCustomObjects().put(ImageInfo.HAS_MORE_IMAGES, Boolean.TRUE);
-                if (log.isTraceEnabled()) {
-                    log.trace("TIFF is multi-page.");
-                }
+                //Check if there is a next page, only its IFD offset is read
+                hasMoreImages = index.hasDirectory(seekable, pageIndex + 1);
             } catch (IllegalArgumentException iae) {
-                info.getCustomObjects().put(ImageInfo.HAS_MORE_IMAGES, Boolean.FALSE);
+                hasMoreImages = false;
+            }
+            if (log.isTraceEnabled() && hasMoreImages) {
+                log.trace("TIFF is multi-page.");
             }
+            info.getCustomObjects().put(ImageInfo.HAS_MORE_IMAGES, hasMoreImages);
+            info.getCustomObjects().put("TIFF_DIRECTORY_INDEX", index);
         } finally {
             in.reset();
         }
@@ -197,4 +212,48 @@ public class PreloaderTIFF extends AbstractImagePreloader {
         return info;
     }
 
+    /**
+     * Returns the directory index for a TIFF image. The index of a local file is shared
+     * for as long as the file's modification time and length stay the same, an index for
+     * any other source is only used for one image.
+     */
+    private static TIFFDirectoryIndex getDirectoryIndex(Source src, SeekableStream seekable)
+                throws IOException {
+        File file = null;
+        if (src.getSystemId() != null) {
+            try {
+                file = AbstractImageSessionContext.toFile(new URL(src.getSystemId()));
+            } catch (MalformedURLException e) {
+                //no local file
+            }
+        }
+        if (file == null) {
+            return new TIFFDirectoryIndex(seekable);
+        }
+        String key = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        FileDirectoryIndex cached = (FileDirectoryIndex)DIRECTORY_INDEXES.get(key);
+        if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+            return cached.index;
+        }
+        TIFFDirectoryIndex index = new TIFFDirectoryIndex(seekable);
+        DIRECTORY_INDEXES.put(key, new FileDirectoryIndex(index, lastModified, length));
+        return index;
+    }
+
+    /** A directory index together with the state of the file it was built for. */
+    private static class FileDirectoryIndex {
+
+        private final TIFFDirectoryIndex index;
+        private final long lastModified;
+        private final long length;
+
+        FileDirectoryIndex(TIFFDirectoryIndex index, long lastModified, long length) {
+            this.index = index;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
 }
@@ -79,7 +79,8 @@ import org.apache.xmlgraphics.image.loader.impl.ImageRendered;
 import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 
 import org.apache.xmlgraphics.io.XmlSourceUtil;
-import org.apache.xmlgraphics.java2d.color.profile.ColorProfileUtil;
+import org.apache.xmlgraphics.java2d.color.RGBToCMYKConverter;
+import org.apache.xmlgraphics.java2d.color.profile.ColorProfileCache;
 
 /**
  * An ImageLoader implementation based on ImageIO for loading bitmap images.
@@ -125,6 +126,7 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
         boolean ignoreMetadata = (iiometa != null);
         boolean providerIgnoresICC = false;
 
+        int subsampling = ImageUtil.getSubsampling(hints);
         Source src = session.needSource(info.getOriginalURI());
         ImageInputStream imgStream = ImageUtil.needImageInputStream(src);
         try {
@@ -135,6 +137,9 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
                     imgStream.mark();
                     reader.setInput(imgStream, false, ignoreMetadata);
                     ImageReadParam param = getParam(reader, hints);
+                    if (subsampling > 1) {
+                        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                    }
                     final int pageIndex = ImageUtil.needPageIndexFromURI(info.getOriginalURI());
                     try {
 //                        if (ImageFlavor.BUFFERED_IMAGE.equals(this.targetFlavor)) {
@@ -191,6 +196,9 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
         if (imageData == null) {
             throw new ImageException("No ImageIO ImageReader found .");
         }
+        if (subsampling > 1) {
+            info = createSubsampledInfo(info, imageData.getWidth(), imageData.getHeight());
+        }
 
         ColorModel cm = imageData.getColorModel();
 
@@ -204,7 +212,7 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
                 ICC_Profile iccProf = tryToExctractICCProfile(iiometa);
                 if (iccProf != null) {
                     ColorModel cm2 = new ComponentColorModel(
-                            new ICC_ColorSpace(iccProf), cm.hasAlpha(), cm
+                            ColorProfileCache.getInstance().getColorSpace(iccProf), cm.hasAlpha(), cm
                                     .isAlphaPremultiplied(), cm
                                     .getTransparency(), cm.getTransferType());
                     WritableRaster wr = Raster.createWritableRaster(imageData
@@ -292,22 +300,28 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
         throws IOException {
         String iccUri = (String) info.getCustomObjects().get(ICC_CONVERTER);
         if (iccUri != null && image.getColorModel().getNumColorComponents() < 4) {
-            if (image.getType() != BufferedImage.TYPE_INT_RGB) {
-                BufferedImage rgbImage =
-                        new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-                Graphics2D g = (Graphics2D) rgbImage.getGraphics();
-                g.setBackground(Color.WHITE);
-                g.clearRect(0, 0, image.getWidth(), image.getHeight());
-                g.drawImage(image, 0, 0, null);
-                g.dispose();
-                image = rgbImage;
-            }
             try {
                 Source src = session.needSource(iccUri);
                 ImageInputStream iccStream = ImageUtil.needImageInputStream(src);
-                ColorSpace colorSpace = new ICC_ColorSpace(ICC_Profile.getInstance(
+                ColorProfileCache cache = ColorProfileCache.getInstance();
+                ICC_ColorSpace colorSpace = cache.getColorSpace(cache.getProfile(
                         new ImageInputStreamSeekableStreamAdapter(iccStream)));
-                ColorConvertOp convertOp = new ColorConvertOp(image.getColorModel().getColorSpace(), colorSpace, null);
+                if (colorSpace.getType() == ColorSpace.TYPE_CMYK) {
+                    return RGBToCMYKConverter.getInstance(colorSpace).convert(image);
+                }
+                if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+                    BufferedImage rgbImage =
+                            new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+                    Graphics2D g = (Graphics2D) rgbImage.getGraphics();
+                    g.setBackground(Color.WHITE);
+                    g.clearRect(0, 0, image.getWidth(), image.getHeight());
+                    g.drawImage(image, 0, 0, null);
+                    g.dispose();
+                    image = rgbImage;
+                }
+                //an own operation keeps concurrent loads from queuing on a shared one
+                ColorConvertOp convertOp = new ColorConvertOp(image.getColorModel().getColorSpace(),
+                        colorSpace, null);
                 return convertOp.filter(image, null);
             } catch (FileNotFoundException e) {
                 throw new IOException(e);
@@ -407,7 +421,7 @@ public class ImageLoaderImageIO extends AbstractImageLoader {
                 }
                 decompresser.end();
                 try {
-                    iccProf = ColorProfileUtil.getICC_Profile(bos.toByteArray());
+                    iccProf = ColorProfileCache.getInstance().getProfile(bos.toByteArray());
                 } catch (IllegalArgumentException e) {
                     log.debug("Failed to interpret embedded ICC Profile", e);
                     iccProf = null;
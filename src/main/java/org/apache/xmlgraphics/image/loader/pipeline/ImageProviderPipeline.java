@@ -39,6 +39,7 @@ import org.apache.xmlgraphics.image.loader.impl.ImageRawStream;
 import org.apache.xmlgraphics.image.loader.spi.ImageConverter;
 import org.apache.xmlgraphics.image.loader.spi.ImageImplRegistry;
 import org.apache.xmlgraphics.image.loader.spi.ImageLoader;
+import org.apache.xmlgraphics.image.loader.util.ImageUtil;
 import org.apache.xmlgraphics.image.loader.util.Penalty;
 import org.apache.xmlgraphics.util.io.IOUtils;
 
@@ -117,6 +118,8 @@ public class ImageProviderPipeline {
         if (hints == null) {
             hints = Collections.EMPTY_MAP;
         }
+        //Subsampled images must not be mixed up with the full images in the cache
+        ImageCache imageCache = (ImageUtil.getSubsampling(hints) > 1 ? null : cache);
         long start = System.currentTimeMillis();
         Image img = null;
 
@@ -125,11 +128,11 @@ public class ImageProviderPipeline {
 
         int converterCount = converters.size();
         int startingPoint = 0;
-        if (cache != null) {
+        if (imageCache != null) {
             for (int i = converterCount - 1; i >= 0; i--) {
                 ImageConverter converter = getConverter(i);
                 ImageFlavor flavor = converter.getTargetFlavor();
-                img = cache.getImage(info, flavor);
+                img = imageCache.getImage(info, flavor);
                 if (img != null) {
                     startingPoint = i + 1;
                     break;
@@ -139,7 +142,7 @@ public class ImageProviderPipeline {
             if (img == null && loader != null) {
                 //try target flavor of loader from cache
                 ImageFlavor flavor = loader.getTargetFlavor();
-                img = cache.getImage(info, flavor);
+                img = imageCache.getImage(info, flavor);
             }
         }
         if (img == null && originalImage != null) {
@@ -187,7 +190,7 @@ public class ImageProviderPipeline {
 
         //Note: Currently we just cache the end result of the pipeline, not all intermediate
         //results as it is expected that the cache hit ration would be rather small.
-        if (cache != null && !entirelyInCache) {
+        if (imageCache != null && !entirelyInCache) {
             if (lastCacheableImage == null) {
                 //Try to make the Image cacheable
                 lastCacheableImage = forceCaching(img);
@@ -196,7 +199,7 @@ public class ImageProviderPipeline {
                 if (log.isTraceEnabled()) {
                     log.trace("Caching image: " + lastCacheableImage);
                 }
-                cache.putImage(lastCacheableImage);
+                imageCache.putImage(lastCacheableImage);
             }
         }
         return img;
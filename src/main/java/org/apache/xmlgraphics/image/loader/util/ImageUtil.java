@@ -245,6 +245,20 @@ public final class ImageUtil {
         return hints;
     }
 
+    /**
+     * Returns the subsampling factor requested by the
+     * {@link ImageProcessingHints#SUBSAMPLING} hint.
+     * @param hints a Map of hints (may be null)
+     * @return the subsampling factor, 1 if no subsampling is requested
+     */
+    public static int getSubsampling(Map<?, ?> hints) {
+        Object value = (hints != null ? hints.get(ImageProcessingHints.SUBSAMPLING) : null);
+        if (value instanceof Number) {
+            return Math.max(1, ((Number)value).intValue());
+        }
+        return 1;
+    }
+
     private static final String PAGE_INDICATOR = "page=";
 
     /**
@@ -528,9 +528,37 @@ public abstract class AbstractRed implements CachableRed {
     //     return wr;
     // }
 
+    /**
+     * Returns a tile, computing it with copyData unless it is held by the
+     * tile cache returned by {@link #getTileCache()}.  Computed tiles are
+     * added to that cache, so if there is one callers must not modify the
+     * returned Raster.
+     */
     public Raster getTile(int tileX, int tileY) {
-        WritableRaster wr = makeTile(tileX, tileY);
-        return copyData(wr);
+        TileCache cache = getTileCache();
+        if (cache == null) {
+            WritableRaster wr = makeTile(tileX, tileY);
+            return copyData(wr);
+        }
+        Raster tile = cache.getTile(this, tileX, tileY);
+        if (tile == null) {
+            WritableRaster wr = makeTile(tileX, tileY);
+            tile = copyData(wr);
+            cache.addTile(this, tileX, tileY, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * Returns the cache for the tiles returned by getTile.  By default this
+     * is the {@link TileCache#getDefaultInstance() default tile cache}, which
+     * is not set unless caching has been enabled; subclasses whose tiles are
+     * cheap to produce, or whose content can change, may return null to
+     * disable caching.
+     * @return the tile cache or null
+     */
+    protected TileCache getTileCache() {
+        return TileCache.getDefaultInstance();
     }
 
     public Raster getData() {
@@ -545,9 +573,30 @@ public abstract class AbstractRed implements CachableRed {
         WritableRaster wr = Raster.createWritableRaster(smRet, pt);
 
         // System.out.println("GD DB: " + wr.getDataBuffer().getSize());
+        TileScheduler scheduler = getTileScheduler();
+        if (scheduler != null && spansTiles(rect)) {
+            return scheduler.copyData(this, wr);
+        }
         return copyData(wr);
     }
 
+    /**
+     * Returns the scheduler that computes the tiles of getData requests
+     * spanning several tiles concurrently.  By default this is the
+     * {@link TileScheduler#getDefaultInstance() default scheduler}, if
+     * one has been set; subclasses whose copyData is not safe to call
+     * concurrently must return null.
+     * @return the tile scheduler or null to compute tiles on the calling thread
+     */
+    protected TileScheduler getTileScheduler() {
+        return TileScheduler.getDefaultInstance();
+    }
+
+    private boolean spansTiles(Rectangle rect) {
+        return getXTile(rect.x) != getXTile(rect.x + rect.width - 1)
+            || getYTile(rect.y) != getYTile(rect.y + rect.height - 1);
+    }
+
     /**
      * Returns the x index of tile under xloc.
      * @param  xloc the x location (in pixels) to get tile for.
@@ -604,6 +653,12 @@ public abstract class AbstractRed implements CachableRed {
             ty1 = minTileY + numYTiles - 1;
         }
 
+        TileScheduler scheduler = getTileScheduler();
+        if (scheduler != null && (tx0 != tx1 || ty0 != ty1)) {
+            scheduler.copyData(this, wr);
+            return;
+        }
+
         final boolean isIntPack =
             GraphicsUtil.is_INT_PACK_Data(getSampleModel(), false);
 
@@ -117,6 +117,9 @@ public class Any2LsRGBRed extends AbstractRed {
         // Fast case, SRGB source, INT Pack writable raster...
         if (srcIssRGB
             && Any2sRGBRed.is_INT_PACK_COMP(wr.getSampleModel())) {
+            if (Any2sRGBRed.convertData_INT(src, wr, sRGBToLsRGBLut)) {
+                return wr;
+            }
             src.copyData(wr);
             if (srcCM.hasAlpha()) {
                 GraphicsUtil.coerceData(wr, srcCM, false);
@@ -125,6 +128,18 @@ public class Any2LsRGBRed extends AbstractRed {
             return wr;
         }
 
+        // SRGB source, byte writable raster, convert in place.
+        if (srcIssRGB
+            && Any2sRGBRed.is_BYTE_COMP(wr.getSampleModel())
+            && wr.getNumBands() == srcSM.getNumBands()) {
+            src.copyData(wr);
+            if (srcCM.hasAlpha()) {
+                GraphicsUtil.coerceData(wr, srcCM, false);
+            }
+            Any2sRGBRed.applyLut_BYTE(wr, sRGBToLsRGBLut);
+            return wr;
+        }
+
         if (srcCM == null) {
             // We don't really know much about this source, let's
             // guess based on the number of bands...
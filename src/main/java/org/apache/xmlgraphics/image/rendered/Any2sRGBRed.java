@@ -19,12 +19,16 @@
 
 package org.apache.xmlgraphics.image.rendered;
 
+import java.awt.Rectangle;
 import java.awt.color.ColorSpace;
 import java.awt.image.BandCombineOp;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorConvertOp;
 import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
 import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.awt.image.Raster;
 import java.awt.image.SampleModel;
@@ -179,6 +183,187 @@ public class Any2sRGBRed extends AbstractRed {
         return wr;
     }
 
+    /**
+     * Applies <code>lut</code> in place to the first three bands of a
+     * raster that stores one byte per sample, whether pixel interleaved
+     * or banded.  Any further band (alpha) is left untouched.
+     *
+     * @param wr the raster to convert, must use a byte
+     *           <code>ComponentSampleModel</code>
+     * @param lut the 256 entry lookup table to apply
+     * @return <code>wr</code>
+     */
+    public static WritableRaster applyLut_BYTE(WritableRaster wr,
+                                               final int []lut) {
+        ComponentSampleModel sm = (ComponentSampleModel)wr.getSampleModel();
+        DataBufferByte db = (DataBufferByte)wr.getDataBuffer();
+
+        final int x0         = wr.getMinX() - wr.getSampleModelTranslateX();
+        final int y0         = wr.getMinY() - wr.getSampleModelTranslateY();
+        final int width      = wr.getWidth();
+        final int height     = wr.getHeight();
+        final int pixStride  = sm.getPixelStride();
+        final int scanStride = sm.getScanlineStride();
+        final int [] bankIndices = sm.getBankIndices();
+        final int [] bandOffsets = sm.getBandOffsets();
+
+        // One pass per band keeps the inner loop to a single array.
+        for (int b = 0; b < 3; b++) {
+            final byte[] data = db.getData(bankIndices[b]);
+            final int base = db.getOffsets()[bankIndices[b]] + bandOffsets[b]
+                + x0 * pixStride + y0 * scanStride;
+            for (int y = 0; y < height; y++) {
+                int sp  = base + y * scanStride;
+                final int end = sp + width * pixStride;
+                for (; sp < end; sp += pixStride) {
+                    data[sp] = (byte)lut[data[sp] & 0xFF];
+                }
+            }
+        }
+        return wr;
+    }
+
+    /**
+     * Converts the part of <code>src</code> that lies under
+     * <code>wr</code> through <code>lut</code>, reading the source
+     * tiles in place and writing the result straight into the INT
+     * packed <code>wr</code>.  This saves the intermediate copy into
+     * <code>wr</code> and the second pass over it that
+     * <code>copyData</code> followed by <code>applyLut_INT</code>
+     * needs.  Only non premultiplied 8 bit sources stored in a byte
+     * <code>ComponentSampleModel</code> (interleaved or banded) with
+     * the same number of bands as <code>wr</code> are handled; INT
+     * packed sources are already served best by an array copy and
+     * <code>applyLut_INT</code>.
+     *
+     * @param src the source image
+     * @param wr the INT packed destination raster
+     * @param lut the 256 entry lookup table to apply to the color bands
+     * @return false if <code>src</code> is not supported, in which case
+     *         the caller must produce the data itself
+     */
+    static boolean convertData_INT(CachableRed src, WritableRaster wr,
+                                   final int []lut) {
+        ColorModel srcCM = src.getColorModel();
+        SampleModel srcSM = src.getSampleModel();
+        int numBands = wr.getNumBands();
+        if (srcCM == null || srcCM.isAlphaPremultiplied()
+            || srcSM.getNumBands() != numBands) {
+            return false;
+        }
+        if (!(srcCM instanceof ComponentColorModel)
+            || !is_BYTE_COMP(srcSM)) {
+            return false;
+        }
+        for (int i = 0; i < numBands; i++) {
+            if (srcCM.getComponentSize(i) != 8) {
+                return false;
+            }
+        }
+
+        Rectangle area = wr.getBounds().intersection(src.getBounds());
+        if (area.isEmpty()) {
+            return true;
+        }
+        int tw = srcSM.getWidth();
+        int th = srcSM.getHeight();
+        int tgx = src.getTileGridXOffset();
+        int tgy = src.getTileGridYOffset();
+        int tx0 = Math.floorDiv(area.x - tgx, tw);
+        int ty0 = Math.floorDiv(area.y - tgy, th);
+        int tx1 = Math.floorDiv(area.x + area.width - 1 - tgx, tw);
+        int ty1 = Math.floorDiv(area.y + area.height - 1 - tgy, th);
+
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                Raster tile = src.getTile(tx, ty);
+                // Not every CachableRed places its tiles in image
+                // coordinates, let the caller deal with those.
+                if (tile.getMinX() != tgx + tx * tw
+                    || tile.getMinY() != tgy + ty * th) {
+                    return false;
+                }
+                Rectangle r = area.intersection(tile.getBounds());
+                if (r.isEmpty()) {
+                    continue;
+                }
+                convertTile_BYTE(tile, wr, r, lut);
+            }
+        }
+        return true;
+    }
+
+    private static int dstOffset(WritableRaster wr, int x, int y) {
+        SinglePixelPackedSampleModel sm =
+            (SinglePixelPackedSampleModel)wr.getSampleModel();
+        return wr.getDataBuffer().getOffset()
+            + sm.getOffset(x - wr.getSampleModelTranslateX(),
+                           y - wr.getSampleModelTranslateY());
+    }
+
+    private static void convertTile_BYTE(Raster tile, WritableRaster wr,
+                                         Rectangle r, final int []lut) {
+        ComponentSampleModel srcSM = (ComponentSampleModel)tile.getSampleModel();
+        DataBufferByte srcDB = (DataBufferByte)tile.getDataBuffer();
+        final int [] bankIndices = srcSM.getBankIndices();
+        final int [] bandOffsets = srcSM.getBandOffsets();
+        final int [] bankOffsets = srcDB.getOffsets();
+        final int pixStride = srcSM.getPixelStride();
+        final int srcScanStride = srcSM.getScanlineStride();
+        final int srcBase =
+            (r.x - tile.getSampleModelTranslateX()) * pixStride
+            + (r.y - tile.getSampleModelTranslateY()) * srcScanStride;
+
+        final byte[] red = srcDB.getData(bankIndices[0]);
+        final byte[] grn = srcDB.getData(bankIndices[1]);
+        final byte[] blu = srcDB.getData(bankIndices[2]);
+        final int rOff = srcBase + bankOffsets[bankIndices[0]] + bandOffsets[0];
+        final int gOff = srcBase + bankOffsets[bankIndices[1]] + bandOffsets[1];
+        final int bOff = srcBase + bankOffsets[bankIndices[2]] + bandOffsets[2];
+        final boolean hasAlpha = bandOffsets.length == 4;
+        final byte[] alf = hasAlpha ? srcDB.getData(bankIndices[3]) : null;
+        final int aOff = hasAlpha
+            ? srcBase + bankOffsets[bankIndices[3]] + bandOffsets[3] : 0;
+
+        final int[] dstPixels = ((DataBufferInt)wr.getDataBuffer()).getBankData()[0];
+        final int dstBase = dstOffset(wr, r.x, r.y);
+        final int dstScanStride =
+            ((SinglePixelPackedSampleModel)wr.getSampleModel()).getScanlineStride();
+        final int width = r.width;
+
+        for (int y = 0; y < r.height; y++) {
+            final int row = y * srcScanStride;
+            final int dp = dstBase + y * dstScanStride;
+            int sp = row;
+            if (hasAlpha) {
+                for (int x = 0; x < width; x++, sp += pixStride) {
+                    dstPixels[dp + x] =
+                        (((alf[aOff + sp] & 0xFF) << 24)
+                         | (lut[red[rOff + sp] & 0xFF] << 16)
+                         | (lut[grn[gOff + sp] & 0xFF] << 8)
+                         | (lut[blu[bOff + sp] & 0xFF]));
+                }
+            } else {
+                for (int x = 0; x < width; x++, sp += pixStride) {
+                    dstPixels[dp + x] =
+                        ((lut[red[rOff + sp] & 0xFF] << 16)
+                         | (lut[grn[gOff + sp] & 0xFF] << 8)
+                         | (lut[blu[bOff + sp] & 0xFF]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if <code>sm</code> stores one byte per sample in a
+     * <code>ComponentSampleModel</code>, which <code>applyLut_BYTE</code>
+     * can convert in place.
+     */
+    static boolean is_BYTE_COMP(SampleModel sm) {
+        return (sm instanceof ComponentSampleModel)
+            && (sm.getDataType() == DataBuffer.TYPE_BYTE);
+    }
+
     public WritableRaster copyData(WritableRaster wr) {
 
         // Get my source.
@@ -190,6 +375,9 @@ public class Any2sRGBRed extends AbstractRed {
         // Fast case, Linear SRGB source, INT Pack writable raster...
         if (srcIsLsRGB
             && is_INT_PACK_COMP(wr.getSampleModel())) {
+            if (convertData_INT(src, wr, linearToSRGBLut)) {
+                return wr;
+            }
             src.copyData(wr);
             if (srcCM.hasAlpha()) {
                 GraphicsUtil.coerceData(wr, srcCM, false);
@@ -198,6 +386,18 @@ public class Any2sRGBRed extends AbstractRed {
             return wr;
         }
 
+        // Linear SRGB source, byte writable raster, convert in place.
+        if (srcIsLsRGB
+            && is_BYTE_COMP(wr.getSampleModel())
+            && wr.getNumBands() == srcSM.getNumBands()) {
+            src.copyData(wr);
+            if (srcCM.hasAlpha()) {
+                GraphicsUtil.coerceData(wr, srcCM, false);
+            }
+            applyLut_BYTE(wr, linearToSRGBLut);
+            return wr;
+        }
+
         if (srcCM == null) {
             // We don't really know much about this source, let's
             // guess based on the number of bands...
@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of computed tiles shared by all images, bounded by the number of
+ * bytes held by the tiles' data buffers.  When the budget is exceeded the
+ * least recently used tiles are discarded.  Images are only weakly
+ * referenced; the tiles of an image that has been garbage collected are
+ * released on the next access to the cache.
+ *
+ * <p>{@link AbstractRed#getTile(int, int)} consults the instance returned
+ * by {@link #getDefaultInstance()}, if one has been set, so a tile requested
+ * repeatedly, for example by several consumers of the same conversion, is
+ * only computed once.  Caching is off by default: tiles are only identified
+ * by their image and indices, so the tiles of a chain are not refreshed
+ * when a source such as the <code>BufferedImage</code> of a
+ * {@link BufferedImageCachableRed} is drawn into, and callers receive the
+ * shared cached Raster instead of a fresh one.  Only set a default instance
+ * if the sources of the images do not change and the tiles are not
+ * modified, or remove the tiles of changed images with
+ * {@link #removeTiles(Object)}.</p>
+ */
+public final class TileCache {
+
+    /** A suggested memory capacity, in bytes. */
+    public static final long DEFAULT_MEMORY_CAPACITY = 16L * 1024 * 1024;
+
+    private static volatile TileCache defaultInstance;
+
+    private final Map<Key, Raster> tiles = new LinkedHashMap<Key, Raster>(16, 0.75f, true);
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    private long memoryCapacity;
+    private long memoryUsage;
+
+    /**
+     * Creates a new tile cache.
+     * @param memoryCapacity the maximum number of bytes held by the cached tiles
+     */
+    public TileCache(long memoryCapacity) {
+        setMemoryCapacity(memoryCapacity);
+    }
+
+    /**
+     * Returns the tile cache used by {@link AbstractRed} for the tiles
+     * returned by <code>getTile</code>.
+     * @return the default cache or null if tiles are not cached (the default)
+     */
+    public static TileCache getDefaultInstance() {
+        return defaultInstance;
+    }
+
+    /**
+     * Sets the tile cache used by {@link AbstractRed} for the tiles returned
+     * by <code>getTile</code>.
+     * @param cache the cache or null to disable caching
+     */
+    public static void setDefaultInstance(TileCache cache) {
+        defaultInstance = cache;
+    }
+
+    /**
+     * Returns the maximum number of bytes held by the cached tiles.
+     * @return the memory capacity
+     */
+    public synchronized long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /**
+     * Sets the maximum number of bytes held by the cached tiles, discarding
+     * tiles if necessary. A capacity of 0 disables caching.
+     * @param memoryCapacity the memory capacity
+     */
+    public synchronized void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memoryCapacity must not be negative");
+        }
+        this.memoryCapacity = memoryCapacity;
+        evict();
+    }
+
+    /**
+     * Returns the number of bytes currently held by the cached tiles.
+     * @return the memory usage
+     */
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    /**
+     * Returns a cached tile.
+     * @param owner the image the tile belongs to
+     * @param tileX the X index of the tile
+     * @param tileY the Y index of the tile
+     * @return the tile or null if it is not cached
+     */
+    public synchronized Raster getTile(Object owner, int tileX, int tileY) {
+        removeCollected();
+        return tiles.get(new Key(owner, tileX, tileY, null));
+    }
+
+    /**
+     * Adds a tile, discarding the least recently used tiles if the cache
+     * grows too large. Tiles larger than the whole cache are not added.
+     * @param owner the image the tile belongs to
+     * @param tileX the X index of the tile
+     * @param tileY the Y index of the tile
+     * @param tile the tile
+     */
+    public synchronized void addTile(Object owner, int tileX, int tileY, Raster tile) {
+        removeCollected();
+        long size = sizeOf(tile);
+        if (size > memoryCapacity) {
+            return;
+        }
+        Raster old = tiles.put(new Key(owner, tileX, tileY, collected), tile);
+        if (old != null) {
+            memoryUsage -= sizeOf(old);
+        }
+        memoryUsage += size;
+        evict();
+    }
+
+    /**
+     * Removes all tiles of an image, for example because its content changed.
+     * @param owner the image
+     */
+    public synchronized void removeTiles(Object owner) {
+        Iterator<Map.Entry<Key, Raster>> iter = tiles.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, Raster> entry = iter.next();
+            if (entry.getKey().get() == owner) {
+                memoryUsage -= sizeOf(entry.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all tiles.
+     */
+    public synchronized void flush() {
+        tiles.clear();
+        memoryUsage = 0;
+    }
+
+    private void evict() {
+        Iterator<Raster> iter = tiles.values().iterator();
+        while (memoryUsage > memoryCapacity && iter.hasNext()) {
+            memoryUsage -= sizeOf(iter.next());
+            iter.remove();
+        }
+    }
+
+    private void removeCollected() {
+        Reference<?> ref;
+        while ((ref = collected.poll()) != null) {
+            Raster tile = tiles.remove(ref);
+            if (tile != null) {
+                memoryUsage -= sizeOf(tile);
+            }
+        }
+    }
+
+    private static long sizeOf(Raster tile) {
+        DataBuffer buffer = tile.getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Identifies a tile by its image, compared by identity, and its indices.
+     */
+    private static final class Key extends WeakReference<Object> {
+
+        private final int tileX;
+        private final int tileY;
+        private final int hash;
+
+        Key(Object owner, int tileX, int tileY, ReferenceQueue<Object> queue) {
+            super(owner, queue);
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.hash = (System.identityHashCode(owner) * 31 + tileX) * 31 + tileY;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            Object owner = get();
+            return owner != null && owner == other.get()
+                    && tileX == other.tileX && tileY == other.tileY;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.xmlgraphics.image.GraphicsUtil;
+
+/**
+ * Computes the tiles needed for a <code>copyData</code> or
+ * <code>getData</code> request concurrently on a fork/join pool.  Each
+ * tile is obtained with <code>getTile</code> in a task of its own, which
+ * pulls the source tiles it depends on through the chain on the same
+ * worker thread; tiles shared by several requests are computed only once
+ * if a default {@link TileCache} has been set.  The computed tiles are copied into
+ * the destination on the calling thread, in raster order, so that tiles
+ * of bit-packed images sharing bytes at their edges are never written
+ * concurrently.
+ *
+ * <p>The tile computation of the images in this package, of
+ * <code>PNGRed</code> and of <code>TIFFImage</code> may be called
+ * concurrently.  Subclasses of {@link AbstractRed} used with a scheduler
+ * must likewise not modify shared state in <code>copyData</code>.</p>
+ *
+ * <p>{@link AbstractRed} uses the instance returned by
+ * {@link #getDefaultInstance()}, if one has been set.</p>
+ */
+public final class TileScheduler {
+
+    private static volatile TileScheduler defaultInstance;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a scheduler using the common fork/join pool.
+     */
+    public TileScheduler() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a scheduler.
+     * @param pool the pool in which tiles are computed
+     */
+    public TileScheduler(ForkJoinPool pool) {
+        if (pool == null) {
+            throw new NullPointerException("pool must not be null");
+        }
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the scheduler used by {@link AbstractRed} to compute the tiles
+     * of <code>getData</code> requests.
+     * @return the default scheduler or null if tiles are computed on the calling thread
+     *         (the default)
+     */
+    public static TileScheduler getDefaultInstance() {
+        return defaultInstance;
+    }
+
+    /**
+     * Sets the scheduler used by {@link AbstractRed} to compute the tiles of
+     * <code>getData</code> requests.
+     * @param scheduler the scheduler or null to compute tiles on the calling thread
+     */
+    public static void setDefaultInstance(TileScheduler scheduler) {
+        defaultInstance = scheduler;
+    }
+
+    /**
+     * Returns the pool in which tiles are computed.
+     * @return the pool
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Copies the area of an image covered by a raster into the raster,
+     * computing the tiles intersecting it concurrently.
+     * @param image the image
+     * @param wr the destination
+     * @return the destination
+     */
+    public WritableRaster copyData(final CachableRed image, WritableRaster wr) {
+        Rectangle area = wr.getBounds().intersection(image.getBounds());
+        if (area.isEmpty()) {
+            return wr;
+        }
+        int tx0 = getTile(area.x, image.getTileGridXOffset(), image.getTileWidth());
+        int ty0 = getTile(area.y, image.getTileGridYOffset(), image.getTileHeight());
+        int tx1 = getTile(area.x + area.width - 1, image.getTileGridXOffset(),
+                image.getTileWidth());
+        int ty1 = getTile(area.y + area.height - 1, image.getTileGridYOffset(),
+                image.getTileHeight());
+
+        // Limits the number of computed tiles waiting to be copied
+        int maxPending = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<Raster>> pending = new ArrayDeque<ForkJoinTask<Raster>>();
+        for (int y = ty0; y <= ty1; y++) {
+            for (int x = tx0; x <= tx1; x++) {
+                final int tileX = x;
+                final int tileY = y;
+                pending.add(pool.submit(() -> image.getTile(tileX, tileY)));
+                if (pending.size() >= maxPending) {
+                    GraphicsUtil.copyData(pending.removeFirst().join(), wr);
+                }
+            }
+        }
+        while (!pending.isEmpty()) {
+            GraphicsUtil.copyData(pending.removeFirst().join(), wr);
+        }
+        return wr;
+    }
+
+    private static int getTile(int loc, int gridOffset, int tileSize) {
+        return Math.floorDiv(loc - gridOffset, tileSize);
+    }
+}
@@ -38,6 +38,11 @@ public class ImageWriterParams {
     private Float jpegQuality;
     private Boolean jpegForceBaseline;
     private String compressionMethod;
+    private Integer compressionLevel;
+    private Integer pngCompressionStrategy;
+    private Integer pngFilterSelection;
+    private Integer pngFilterType;
+    private Boolean pngColorReduction;
     private ResolutionUnit resolutionUnit = ResolutionUnit.INCH;
     private int rowsPerStrip = ONE_ROW_PER_STRIP;
     private Endianness endianness = Endianness.DEFAULT;
@@ -112,6 +117,90 @@ public class ImageWriterParams {
         this.compressionMethod = method;
     }
 
+    /**
+     * @return the deflate compression level (-1 for the default or 0-9),
+     *          or null if undefined
+     */
+    public Integer getCompressionLevel() {
+        return this.compressionLevel;
+    }
+
+    /**
+     * Sets the compression level for encoders using deflate compression.
+     * @param level the compression level (-1 for the default or 0-9)
+     */
+    public void setCompressionLevel(int level) {
+        this.compressionLevel = level;
+    }
+
+    /**
+     * @return the deflate strategy for encoding a PNG image
+     *          (see {@link java.util.zip.Deflater}), or null if undefined
+     */
+    public Integer getPNGCompressionStrategy() {
+        return this.pngCompressionStrategy;
+    }
+
+    /**
+     * Sets the deflate strategy for encoding PNG images.
+     * @param strategy the strategy, one of {@link java.util.zip.Deflater#DEFAULT_STRATEGY},
+     *          {@link java.util.zip.Deflater#FILTERED} or {@link java.util.zip.Deflater#HUFFMAN_ONLY}
+     */
+    public void setPNGCompressionStrategy(int strategy) {
+        this.pngCompressionStrategy = strategy;
+    }
+
+    /**
+     * @return the filter selection mode for encoding a PNG image,
+     *          or null if undefined
+     */
+    public Integer getPNGFilterSelection() {
+        return this.pngFilterSelection;
+    }
+
+    /**
+     * Sets how the row filters are chosen when encoding PNG images.
+     * @param mode one of the <code>FILTER_SELECTION_*</code> constants of
+     *          {@link org.apache.xmlgraphics.image.codec.png.PNGEncodeParam}
+     */
+    public void setPNGFilterSelection(int mode) {
+        this.pngFilterSelection = mode;
+    }
+
+    /**
+     * @return the filter type used for fixed filter selection when encoding
+     *          a PNG image, or null if undefined
+     */
+    public Integer getPNGFilterType() {
+        return this.pngFilterType;
+    }
+
+    /**
+     * Sets the filter type used with fixed filter selection when encoding PNG images.
+     * @param filterType one of the <code>PNG_FILTER_*</code> constants of
+     *          {@link org.apache.xmlgraphics.image.codec.png.PNGEncodeParam}
+     */
+    public void setPNGFilterType(int filterType) {
+        this.pngFilterType = filterType;
+    }
+
+    /**
+     * @return true if PNG images shall be written as gray or palette images
+     *          with a reduced bit depth when possible, or null if undefined
+     */
+    public Boolean getPNGColorReduction() {
+        return this.pngColorReduction;
+    }
+
+    /**
+     * Enables or disables automatic color reduction when encoding PNG images.
+     * @param colorReduction true to write images with at most 256 colors as
+     *          palette images and gray images with the smallest possible bit depth
+     */
+    public void setPNGColorReduction(boolean colorReduction) {
+        this.pngColorReduction = colorReduction;
+    }
+
     /**
      * Checks if image is single strip (required by some fax processors).
      * @return true if one row per strip.
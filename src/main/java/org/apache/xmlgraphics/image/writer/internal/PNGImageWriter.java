@@ -23,6 +23,7 @@ import java.awt.image.RenderedImage;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.apache.xmlgraphics.image.codec.png.PNGEncodeParam;
 import org.apache.xmlgraphics.image.codec.png.PNGImageEncoder;
 import org.apache.xmlgraphics.image.writer.AbstractImageWriter;
 import org.apache.xmlgraphics.image.writer.ImageWriterParams;
@@ -44,10 +45,39 @@ public class PNGImageWriter extends AbstractImageWriter {
     /** {@inheritDoc} */
     public void writeImage(RenderedImage image, OutputStream out,
             ImageWriterParams params) throws IOException {
-        PNGImageEncoder encoder = new PNGImageEncoder(out, null);
+        PNGImageEncoder encoder = new PNGImageEncoder(out, createEncodeParam(image, params));
         encoder.encode(image);
     }
 
+    private PNGEncodeParam createEncodeParam(RenderedImage image, ImageWriterParams params) {
+        if (params == null
+                || (params.getCompressionLevel() == null
+                    && params.getPNGCompressionStrategy() == null
+                    && params.getPNGFilterSelection() == null
+                    && params.getPNGFilterType() == null
+                    && params.getPNGColorReduction() == null)) {
+            return null;
+        }
+        PNGEncodeParam param = PNGEncodeParam.getDefaultEncodeParam(image);
+        if (params.getCompressionLevel() != null) {
+            param.setCompressionLevel(params.getCompressionLevel());
+        }
+        if (params.getPNGCompressionStrategy() != null) {
+            param.setCompressionStrategy(params.getPNGCompressionStrategy());
+        }
+        if (params.getPNGFilterType() != null) {
+            param.setFilterSelection(PNGEncodeParam.FILTER_SELECTION_FIXED);
+            param.setFilterType(params.getPNGFilterType());
+        }
+        if (params.getPNGFilterSelection() != null) {
+            param.setFilterSelection(params.getPNGFilterSelection());
+        }
+        if (params.getPNGColorReduction() != null) {
+            param.setColorReduction(params.getPNGColorReduction());
+        }
+        return param;
+    }
+
     /** {@inheritDoc} */
     public String getMIMEType() {
         return "image/png";
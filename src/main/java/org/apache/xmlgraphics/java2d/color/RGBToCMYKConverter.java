@@ -0,0 +1,484 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.java2d.color;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.xmlgraphics.java2d.color.profile.ColorProfileCache;
+
+/**
+ * Converts sRGB images to an ICC based CMYK color space through a three-dimensional lookup
+ * table. The sRGB to CMYK transform of the color management module is sampled once on a
+ * regular grid, typically of 17 or 33 points per axis, and pixels are then converted by
+ * tetrahedral interpolation between the grid points, reading and writing the sample arrays
+ * of the images directly. Large images are converted in bands of rows on a fork/join pool.
+ * <p>
+ * Images with an alpha channel are composited onto white, as the conversion has no room for
+ * the alpha channel. Images that are not in sRGB or use an unusual layout are drawn into an
+ * sRGB image first.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public final class RGBToCMYKConverter {
+
+    /** Default number of grid points per axis. */
+    public static final int DEFAULT_GRID_POINTS = 33;
+
+    /** Number of rows converted per task. */
+    private static final int BAND_HEIGHT = 32;
+
+    /**
+     * The converters returned by {@link #getInstance(ICC_ColorSpace)}, per color space. The
+     * converters refer to their color space, so they are held softly to let the entries go.
+     */
+    private static final Map<ColorSpace, Reference<RGBToCMYKConverter>> INSTANCES
+            = new WeakHashMap<ColorSpace, Reference<RGBToCMYKConverter>>();
+
+    private final ICC_ColorSpace colorSpace;
+
+    private final ColorModel colorModel;
+
+    private final int gridPoints;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * The 16 bit C, M, Y and K values of the grid points, with red varying slowest and
+     * blue fastest.
+     */
+    private final short[] table;
+
+    /** Offset of the lower grid point in the table along each axis, per 8 bit value. */
+    private final int[] redOffset = new int[256];
+    private final int[] greenOffset = new int[256];
+    private final int[] blueOffset = new int[256];
+
+    /** Distance to the lower grid point in 1/255 of the grid spacing, per 8 bit value. */
+    private final int[] fraction = new int[256];
+
+    /**
+     * Creates a converter with {@link #DEFAULT_GRID_POINTS} grid points per axis, using the
+     * rendering intent of the profile and the common fork/join pool.
+     * @param colorSpace the destination CMYK color space
+     */
+    public RGBToCMYKConverter(ICC_ColorSpace colorSpace) {
+        this(colorSpace, RenderingIntent.AUTO, DEFAULT_GRID_POINTS, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a converter.
+     * @param colorSpace the destination CMYK color space
+     * @param intent the rendering intent to sample the transform with
+     * @param gridPoints the number of grid points per axis (2 to 256), 17 or 33 give a good
+     *          balance between accuracy and table size
+     * @param pool the pool to convert large images in, or null to convert on the calling
+     *          thread only
+     */
+    public RGBToCMYKConverter(ICC_ColorSpace colorSpace, RenderingIntent intent,
+            int gridPoints, ForkJoinPool pool) {
+        if (colorSpace.getType() != ColorSpace.TYPE_CMYK) {
+            throw new IllegalArgumentException("Not a CMYK color space: " + colorSpace);
+        }
+        if (gridPoints < 2 || gridPoints > 256) {
+            throw new IllegalArgumentException("gridPoints must be between 2 and 256: "
+                    + gridPoints);
+        }
+        this.colorSpace = colorSpace;
+        this.colorModel = new ComponentColorModel(colorSpace, false, false,
+                Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        this.gridPoints = gridPoints;
+        this.pool = pool;
+        this.table = sample(colorSpace, intent, gridPoints);
+
+        int n = gridPoints;
+        for (int v = 0; v < 256; v++) {
+            int position = v * (n - 1);
+            int index = position / 255;
+            int f = position - index * 255;
+            if (index == n - 1) {
+                // Interpolate from the last cell so that the upper grid point exists
+                index--;
+                f = 255;
+            }
+            redOffset[v] = index * n * n * 4;
+            greenOffset[v] = index * n * 4;
+            blueOffset[v] = index * 4;
+            fraction[v] = f;
+        }
+    }
+
+    /**
+     * Returns a shared converter for a CMYK color space, created with the defaults of
+     * {@link #RGBToCMYKConverter(ICC_ColorSpace)}. Converters are shared per color space
+     * instance; use the color spaces of {@link ColorProfileCache} to share them across
+     * profiles read several times.
+     * @param colorSpace the destination CMYK color space
+     * @return the converter
+     */
+    public static RGBToCMYKConverter getInstance(ICC_ColorSpace colorSpace) {
+        synchronized (INSTANCES) {
+            Reference<RGBToCMYKConverter> ref = INSTANCES.get(colorSpace);
+            RGBToCMYKConverter converter = (ref != null ? ref.get() : null);
+            if (converter == null) {
+                converter = new RGBToCMYKConverter(colorSpace);
+                INSTANCES.put(colorSpace, new SoftReference<RGBToCMYKConverter>(converter));
+            }
+            return converter;
+        }
+    }
+
+    private static short[] sample(ICC_ColorSpace colorSpace, RenderingIntent intent, int n) {
+        // Sample in 16 bit so that the grid points, which don't fall on 8 bit values for
+        // most grid sizes, are hit precisely.
+        ColorModel rgbModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_USHORT);
+        WritableRaster rgb = rgbModel.createCompatibleWritableRaster(n, n * n);
+        short[] rgbData = ((DataBufferUShort) rgb.getDataBuffer()).getData();
+        int k = 0;
+        for (int r = 0; r < n; r++) {
+            for (int g = 0; g < n; g++) {
+                for (int b = 0; b < n; b++) {
+                    rgbData[k++] = (short) ((r * 65535 + (n - 1) / 2) / (n - 1));
+                    rgbData[k++] = (short) ((g * 65535 + (n - 1) / 2) / (n - 1));
+                    rgbData[k++] = (short) ((b * 65535 + (n - 1) / 2) / (n - 1));
+                }
+            }
+        }
+        // Convert the rasters rather than images: with images, ColorConvertOp appends the
+        // profile of the destination image to its own, which round trips through PCS if
+        // that is merely an equal copy of the cached profile.
+        WritableRaster cmyk = Raster.createInterleavedRaster(DataBuffer.TYPE_USHORT, n, n * n,
+                4, null);
+        ColorConvertOp op = ColorProfileCache.getInstance().getColorConvertOp(
+                rgbModel.getColorSpace(), colorSpace, intent);
+        synchronized (op) {
+            op.filter(rgb, cmyk);
+        }
+        return ((DataBufferUShort) cmyk.getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns the destination color space.
+     * @return the CMYK color space
+     */
+    public ICC_ColorSpace getColorSpace() {
+        return colorSpace;
+    }
+
+    /**
+     * Returns the number of grid points per axis of the lookup table.
+     * @return the number of grid points
+     */
+    public int getGridPoints() {
+        return gridPoints;
+    }
+
+    /**
+     * Converts an image to CMYK.
+     * @param image the image to convert
+     * @return a new image in the CMYK color space with 8 bits per component
+     */
+    public BufferedImage convert(BufferedImage image) {
+        final RowReader reader = createReader(image);
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+        WritableRaster raster = colorModel.createCompatibleWritableRaster(width, height);
+        final byte[] cmyk = ((DataBufferByte) raster.getDataBuffer()).getData();
+
+        int bands = (height + BAND_HEIGHT - 1) / BAND_HEIGHT;
+        if (pool == null || bands < 2 || pool.getParallelism() < 2) {
+            convertRows(reader, cmyk, width, 0, height);
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(bands);
+            for (int y = 0; y < height; y += BAND_HEIGHT) {
+                final int y0 = y;
+                final int y1 = Math.min(height, y + BAND_HEIGHT);
+                tasks.add(pool.submit(() -> convertRows(reader, cmyk, width, y0, y1)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private void convertRows(RowReader reader, byte[] cmyk, int width, int y0, int y1) {
+        final short[] t = table;
+        final int[] rOff = redOffset;
+        final int[] gOff = greenOffset;
+        final int[] bOff = blueOffset;
+        final int[] frac = fraction;
+        final int dr = gridPoints * gridPoints * 4;
+        final int dg = gridPoints * 4;
+        final int db = 4;
+        final int[] rgb = new int[width];
+
+        for (int y = y0; y < y1; y++) {
+            reader.readRow(y, rgb);
+            int dp = y * width * 4;
+            for (int x = 0; x < width; x++, dp += 4) {
+                final int pixel = rgb[x];
+                final int r = (pixel >> 16) & 0xFF;
+                final int g = (pixel >> 8) & 0xFF;
+                final int b = pixel & 0xFF;
+                final int fr = frac[r];
+                final int fg = frac[g];
+                final int fb = frac[b];
+
+                // Pick the tetrahedron containing the point by ordering the fractions
+                int f1;
+                int f2;
+                int f3;
+                int d1;
+                int d2;
+                if (fr >= fg) {
+                    if (fg >= fb) {
+                        f1 = fr;
+                        f2 = fg;
+                        f3 = fb;
+                        d1 = dr;
+                        d2 = dg;
+                    } else if (fr >= fb) {
+                        f1 = fr;
+                        f2 = fb;
+                        f3 = fg;
+                        d1 = dr;
+                        d2 = db;
+                    } else {
+                        f1 = fb;
+                        f2 = fr;
+                        f3 = fg;
+                        d1 = db;
+                        d2 = dr;
+                    }
+                } else {
+                    if (fr >= fb) {
+                        f1 = fg;
+                        f2 = fr;
+                        f3 = fb;
+                        d1 = dg;
+                        d2 = dr;
+                    } else if (fg >= fb) {
+                        f1 = fg;
+                        f2 = fb;
+                        f3 = fr;
+                        d1 = dg;
+                        d2 = db;
+                    } else {
+                        f1 = fb;
+                        f2 = fg;
+                        f3 = fr;
+                        d1 = db;
+                        d2 = dg;
+                    }
+                }
+                final int p0 = rOff[r] + gOff[g] + bOff[b];
+                final int p1 = p0 + d1;
+                final int p2 = p1 + d2;
+                final int p3 = p0 + dr + dg + db;
+                final int w0 = 255 - f1;
+                final int w1 = f1 - f2;
+                final int w2 = f2 - f3;
+                final int w3 = f3;
+                for (int c = 0; c < 4; c++) {
+                    int sum = (t[p0 + c] & 0xFFFF) * w0 + (t[p1 + c] & 0xFFFF) * w1
+                            + (t[p2 + c] & 0xFFFF) * w2 + (t[p3 + c] & 0xFFFF) * w3;
+                    // 16 bit values weighted in 1/255: scale by 1 / (255 * 257)
+                    cmyk[dp + c] = (byte) ((sum + 32767) / 65535);
+                }
+            }
+        }
+    }
+
+    private RowReader createReader(BufferedImage image) {
+        ColorModel cm = image.getColorModel();
+        if (cm.getColorSpace().isCS_sRGB() && !cm.isAlphaPremultiplied()) {
+            WritableRaster raster = image.getRaster();
+            SampleModel sm = raster.getSampleModel();
+            boolean alpha = cm.hasAlpha();
+            int bands = alpha ? 4 : 3;
+            if (sm.getNumBands() == bands) {
+                boolean eightBit = true;
+                for (int i = 0; i < bands; i++) {
+                    eightBit &= cm.getComponentSize(i) == 8;
+                }
+                if (eightBit && sm instanceof SinglePixelPackedSampleModel
+                        && sm.getDataType() == DataBuffer.TYPE_INT) {
+                    return new IntRowReader(raster, alpha);
+                }
+                if (eightBit && sm instanceof ComponentSampleModel
+                        && sm.getDataType() == DataBuffer.TYPE_BYTE) {
+                    return new ByteRowReader(raster, alpha);
+                }
+            }
+        }
+        BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgbImage.createGraphics();
+        g.setBackground(Color.WHITE);
+        g.clearRect(0, 0, image.getWidth(), image.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return new IntRowReader(rgbImage.getRaster(), false);
+    }
+
+    /** Reads rows of an image as packed 8 bit RGB values. */
+    private abstract static class RowReader {
+
+        /**
+         * Reads a row, compositing it onto white if it has an alpha channel.
+         * @param y the row, relative to the image
+         * @param rgb receives the pixels as 0xRRGGBB values
+         */
+        abstract void readRow(int y, int[] rgb);
+
+        static int onWhite(int value, int alpha) {
+            return value + ((255 - value) * (255 - alpha) + 127) / 255;
+        }
+    }
+
+    private static final class IntRowReader extends RowReader {
+
+        private final int[] data;
+        private final int offset;
+        private final int scanlineStride;
+        private final int[] shifts = new int[4];
+        private final boolean alpha;
+
+        IntRowReader(Raster raster, boolean alpha) {
+            SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+            this.data = db.getData();
+            this.offset = db.getOffset() + sm.getOffset(
+                    raster.getMinX() - raster.getSampleModelTranslateX(),
+                    raster.getMinY() - raster.getSampleModelTranslateY());
+            this.scanlineStride = sm.getScanlineStride();
+            int[] bitOffsets = sm.getBitOffsets();
+            System.arraycopy(bitOffsets, 0, shifts, 0, bitOffsets.length);
+            this.alpha = alpha;
+        }
+
+        void readRow(int y, int[] rgb) {
+            final int[] d = data;
+            final int rs = shifts[0];
+            final int gs = shifts[1];
+            final int bs = shifts[2];
+            final int as = shifts[3];
+            final int width = rgb.length;
+            int sp = offset + y * scanlineStride;
+            if (alpha) {
+                for (int x = 0; x < width; x++) {
+                    final int pixel = d[sp + x];
+                    final int a = (pixel >>> as) & 0xFF;
+                    rgb[x] = onWhite((pixel >>> rs) & 0xFF, a) << 16
+                            | onWhite((pixel >>> gs) & 0xFF, a) << 8
+                            | onWhite((pixel >>> bs) & 0xFF, a);
+                }
+            } else if (rs == 16 && gs == 8 && bs == 0) {
+                System.arraycopy(d, sp, rgb, 0, width);
+            } else {
+                for (int x = 0; x < width; x++) {
+                    final int pixel = d[sp + x];
+                    rgb[x] = ((pixel >>> rs) & 0xFF) << 16
+                            | ((pixel >>> gs) & 0xFF) << 8
+                            | ((pixel >>> bs) & 0xFF);
+                }
+            }
+        }
+    }
+
+    private static final class ByteRowReader extends RowReader {
+
+        private final byte[][] banks = new byte[4][];
+        private final int[] offsets = new int[4];
+        private final int pixelStride;
+        private final int scanlineStride;
+        private final boolean alpha;
+
+        ByteRowReader(Raster raster, boolean alpha) {
+            ComponentSampleModel sm = (ComponentSampleModel) raster.getSampleModel();
+            DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+            this.pixelStride = sm.getPixelStride();
+            this.scanlineStride = sm.getScanlineStride();
+            int base = (raster.getMinX() - raster.getSampleModelTranslateX()) * pixelStride
+                    + (raster.getMinY() - raster.getSampleModelTranslateY()) * scanlineStride;
+            int[] bankIndices = sm.getBankIndices();
+            int[] bandOffsets = sm.getBandOffsets();
+            for (int i = 0; i < sm.getNumBands(); i++) {
+                banks[i] = db.getData(bankIndices[i]);
+                offsets[i] = base + db.getOffsets()[bankIndices[i]] + bandOffsets[i];
+            }
+            this.alpha = alpha;
+        }
+
+        void readRow(int y, int[] rgb) {
+            final byte[] red = banks[0];
+            final byte[] grn = banks[1];
+            final byte[] blu = banks[2];
+            final int row = y * scanlineStride;
+            final int rOff = offsets[0] + row;
+            final int gOff = offsets[1] + row;
+            final int bOff = offsets[2] + row;
+            final int ps = pixelStride;
+            final int width = rgb.length;
+            if (alpha) {
+                final byte[] alf = banks[3];
+                final int aOff = offsets[3] + row;
+                for (int x = 0, sp = 0; x < width; x++, sp += ps) {
+                    final int a = alf[aOff + sp] & 0xFF;
+                    rgb[x] = onWhite(red[rOff + sp] & 0xFF, a) << 16
+                            | onWhite(grn[gOff + sp] & 0xFF, a) << 8
+                            | onWhite(blu[bOff + sp] & 0xFF, a);
+                }
+            } else {
+                for (int x = 0, sp = 0; x < width; x++, sp += ps) {
+                    rgb[x] = (red[rOff + sp] & 0xFF) << 16
+                            | (grn[gOff + sp] & 0xFF) << 8
+                            | (blu[bOff + sp] & 0xFF);
+                }
+            }
+        }
+    }
+}
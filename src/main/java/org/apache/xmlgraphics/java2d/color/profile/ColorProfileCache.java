@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.java2d.color.profile;
+
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.ColorConvertOp;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.xmlgraphics.image.loader.util.SoftMapCache;
+import org.apache.xmlgraphics.java2d.color.RenderingIntent;
+import org.apache.xmlgraphics.util.io.IOUtils;
+
+/**
+ * Cache of parsed ICC profiles, their color spaces and the color conversions between them,
+ * shared across image loads. Profiles are keyed by their content (profile ID, see
+ * {@link ColorProfileUtil#getProfileID(byte[])}) and rendering intent, so the same profile
+ * data read again from another image or resource resolves to the same instances and the
+ * parsing and transform setup is done only once. All entries are softly referenced, so the
+ * cache gives way when memory runs low.
+ * <p>
+ * The cached {@link ICC_Profile} instances are shared and must not be modified. A cached
+ * {@link ColorConvertOp} remembers the last transform it used in unsynchronized fields, so
+ * callers have to synchronize on it while filtering, which serializes all conversions between
+ * the same color spaces. Callers converting large images concurrently should rather create
+ * their own operation from the shared color spaces.
+ */
+public final class ColorProfileCache {
+
+    private static final ColorProfileCache INSTANCE = new ColorProfileCache();
+
+    /** Size of the ICC profile header. */
+    private static final int HEADER_SIZE = 128;
+
+    /** Offset of the preferred CMM type in the ICC profile header. */
+    private static final int CMM_TYPE_OFFSET = 4;
+
+    /** Offset of the profile creator, followed by the profile ID, in the ICC profile header. */
+    private static final int CREATOR_OFFSET = 80;
+
+    /** The profiles, by content key. */
+    private final SoftMapCache profiles = new SoftMapCache(true);
+
+    /** The color spaces, by content key of their profile. */
+    private final SoftMapCache colorSpaces = new SoftMapCache(true);
+
+    /** The color conversions, by content keys of the source and destination profiles. */
+    private final SoftMapCache colorConvertOps = new SoftMapCache(true);
+
+    /** Content keys of the profiles already hashed, by identity. */
+    private final Map<ICC_Profile, String> keys
+            = Collections.synchronizedMap(new WeakHashMap<ICC_Profile, String>());
+
+    /**
+     * Creates a new, empty cache. Most callers should use the shared {@link #getInstance()}.
+     */
+    public ColorProfileCache() {
+    }
+
+    /**
+     * Returns the cache shared by the whole VM.
+     * @return the shared cache
+     */
+    public static ColorProfileCache getInstance() {
+        return INSTANCE;
+    }
+
+    private static String getKey(byte[] data) {
+        // ICC_Profile.getData() rewrites the preferred CMM type and the profile creator, so
+        // leave those out, together with any stored ID, to give a profile parsed from a file
+        // and its serialized form the same key.
+        byte[] copy = data.clone();
+        Arrays.fill(copy, CMM_TYPE_OFFSET, CMM_TYPE_OFFSET + 4, (byte) 0);
+        Arrays.fill(copy, CREATOR_OFFSET, CREATOR_OFFSET + 20, (byte) 0);
+        return getKey(ColorProfileUtil.getProfileID(copy), data[ICC_Profile.icHdrRenderingIntent + 3]);
+    }
+
+    private static String getKey(byte[] id, int intent) {
+        StringBuilder sb = new StringBuilder(40);
+        for (byte b : id) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        // The profile ID ignores the rendering intent but ColorConvertOp honours it
+        sb.append('/').append(intent);
+        return sb.toString();
+    }
+
+    private String getKey(ICC_Profile profile) {
+        String key = keys.get(profile);
+        if (key == null) {
+            key = getKey(profile.getData());
+            keys.put(profile, key);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the value cached under the given key, or caches the given value if there is
+     * none (any more).
+     */
+    private static Object putIfAbsent(SoftMapCache cache, String key, Object value) {
+        synchronized (cache) {
+            Object existing = cache.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            cache.put(key, value);
+            return value;
+        }
+    }
+
+    private ICC_Profile intern(String key, ICC_Profile profile) {
+        ICC_Profile result = (ICC_Profile) putIfAbsent(profiles, key, profile);
+        if (result == profile) {
+            keys.put(profile, key);
+        }
+        return result;
+    }
+
+    private ICC_ColorSpace getColorSpace(String key, ICC_Profile profile) {
+        ICC_ColorSpace colorSpace = (ICC_ColorSpace) colorSpaces.get(key);
+        if (colorSpace == null) {
+            colorSpace = (ICC_ColorSpace) putIfAbsent(colorSpaces, key,
+                    new ICC_ColorSpace(intern(key, profile)));
+        }
+        return colorSpace;
+    }
+
+    /**
+     * Returns the profile for the given ICC profile data, parsing it only if no profile
+     * with the same content has been seen before.
+     * @param data the ICC profile data
+     * @return the shared profile
+     * @throws IllegalArgumentException if the data is not a valid ICC profile
+     */
+    public ICC_Profile getProfile(byte[] data) {
+        if (data.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Invalid ICC Profile Data");
+        }
+        String key = getKey(data);
+        ICC_Profile profile = (ICC_Profile) profiles.get(key);
+        if (profile == null) {
+            profile = intern(key, ColorProfileUtil.getICC_Profile(data));
+        }
+        return profile;
+    }
+
+    /**
+     * Reads ICC profile data from a stream and returns the matching shared profile. The
+     * stream is read to the end but not closed.
+     * @param in the stream to read the profile from
+     * @return the shared profile
+     * @throws IOException if an I/O error occurs while reading the stream
+     * @throws IllegalArgumentException if the stream does not contain a valid ICC profile
+     */
+    public ICC_Profile getProfile(InputStream in) throws IOException {
+        return getProfile(IOUtils.toByteArray(in));
+    }
+
+    /**
+     * Returns the shared color space for a profile with the same content as the given one.
+     * @param profile the ICC profile
+     * @return the shared color space
+     */
+    public ICC_ColorSpace getColorSpace(ICC_Profile profile) {
+        return getColorSpace(getKey(profile), profile);
+    }
+
+    /**
+     * Returns the shared color space for the given ICC profile data.
+     * @param data the ICC profile data
+     * @return the shared color space
+     * @throws IllegalArgumentException if the data is not a valid ICC profile
+     */
+    public ICC_ColorSpace getColorSpace(byte[] data) {
+        return getColorSpace(getProfile(data));
+    }
+
+    private ICC_ColorSpace withIntent(ICC_ColorSpace colorSpace, RenderingIntent intent) {
+        ICC_Profile profile = colorSpace.getProfile();
+        String key = getKey(profile);
+        if (intent == RenderingIntent.AUTO) {
+            return getColorSpace(key, profile);
+        }
+        int value = intent.getIntegerValue();
+        key = key.substring(0, key.indexOf('/') + 1) + value;
+        ICC_ColorSpace result = (ICC_ColorSpace) colorSpaces.get(key);
+        if (result == null) {
+            byte[] data = profile.getData();
+            data[ICC_Profile.icHdrRenderingIntent] = (byte) (value >>> 24);
+            data[ICC_Profile.icHdrRenderingIntent + 1] = (byte) (value >>> 16);
+            data[ICC_Profile.icHdrRenderingIntent + 2] = (byte) (value >>> 8);
+            data[ICC_Profile.icHdrRenderingIntent + 3] = (byte) value;
+            result = getColorSpace(key, ColorProfileUtil.getICC_Profile(data));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a shared color conversion between two color spaces. Conversions between ICC
+     * based color spaces are cached per source profile, destination profile and rendering
+     * intent; for other color spaces a new operation is returned. Callers must synchronize
+     * on the returned operation while using it, so concurrent conversions between the same
+     * color spaces run one after the other.
+     * @param src the source color space
+     * @param dst the destination color space
+     * @param intent the rendering intent to apply, {@link RenderingIntent#AUTO} to use the
+     *          intents recorded in the profiles
+     * @return the color conversion
+     */
+    public ColorConvertOp getColorConvertOp(ColorSpace src, ColorSpace dst,
+            RenderingIntent intent) {
+        if (!(src instanceof ICC_ColorSpace) || !(dst instanceof ICC_ColorSpace)) {
+            return new ColorConvertOp(src, dst, null);
+        }
+        ICC_ColorSpace srcCS = withIntent((ICC_ColorSpace) src, intent);
+        ICC_ColorSpace dstCS = withIntent((ICC_ColorSpace) dst, intent);
+        String key = getKey(srcCS.getProfile()) + ">" + getKey(dstCS.getProfile());
+        ColorConvertOp op = (ColorConvertOp) colorConvertOps.get(key);
+        if (op == null) {
+            op = (ColorConvertOp) putIfAbsent(colorConvertOps, key,
+                    new ColorConvertOp(srcCS, dstCS, null));
+        }
+        return op;
+    }
+
+    /**
+     * Removes all cached profiles, color spaces and conversions.
+     */
+    public void clear() {
+        profiles.clear();
+        colorSpaces.clear();
+        colorConvertOps.clear();
+        keys.clear();
+    }
+}
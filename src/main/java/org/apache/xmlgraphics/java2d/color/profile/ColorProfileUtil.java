@@ -25,6 +25,8 @@ import java.awt.color.ICC_ProfileRGB;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 // CSOFF: MethodName
@@ -34,6 +36,12 @@ import java.util.Arrays;
  */
 public final class ColorProfileUtil {
 
+    /** Offset of the profile flags in the ICC profile header. */
+    private static final int FLAGS_OFFSET = 44;
+
+    /** Offset of the profile ID in the ICC profile header. */
+    private static final int PROFILE_ID_OFFSET = 84;
+
     private ColorProfileUtil() {
     }
 
@@ -53,7 +61,7 @@ public final class ColorProfileUtil {
             try {
                 return new String(data, 12, length, "US-ASCII");
             } catch (UnsupportedEncodingException e) {
-                throw new UnsupportedOperationException("Incompatible VM");
+                throw new RuntimeException("Incompatible VM! " + e.getMessage(), e);
             }
         }
     }
@@ -85,6 +93,39 @@ public final class ColorProfileUtil {
         return true;
     }
 
+    /**
+     * Returns the profile ID of ICC profile data: the MD5 digest defined by the ICC
+     * specification (ICC.1:2010, 7.2.18), computed over the whole profile with the profile
+     * flags, rendering intent and profile ID header fields set to zero. The ID stored in the
+     * header is returned if present, otherwise it is computed.
+     * @param data the ICC profile data
+     * @return the 16 byte profile ID
+     * @throws IllegalArgumentException if the data is too short to hold a profile header
+     */
+    public static byte[] getProfileID(byte[] data) {
+        if (data.length < 128) {
+            throw new IllegalArgumentException("Invalid ICC Profile Data");
+        }
+        byte[] id = Arrays.copyOfRange(data, PROFILE_ID_OFFSET, PROFILE_ID_OFFSET + 16);
+        for (byte b : id) {
+            if (b != 0) {
+                return id;
+            }
+        }
+        MessageDigest md5;
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Incompatible VM! " + e.getMessage(), e);
+        }
+        byte[] copy = data.clone();
+        Arrays.fill(copy, FLAGS_OFFSET, FLAGS_OFFSET + 4, (byte) 0);
+        Arrays.fill(copy, ICC_Profile.icHdrRenderingIntent, ICC_Profile.icHdrRenderingIntent + 4,
+                (byte) 0);
+        Arrays.fill(copy, PROFILE_ID_OFFSET, PROFILE_ID_OFFSET + 16, (byte) 0);
+        return md5.digest(copy);
+    }
+
     /**
      * Proxy method for {@link ICC_Profile#getInstance(byte[])}
      * that properly synchronizes the call to avoid a potential race condition.
@@ -320,6 +320,19 @@ public class PSGenerator implements PSCommandMap {
         newLine();
     }
 
+    /**
+     * Writes a section of encoded data to the PostScript stream and ends the line.
+     *
+     * @param cmd              The buffer holding the encoded PostScript code.
+     * @param off              The offset of the first byte to write.
+     * @param len              The number of bytes to write.
+     * @exception IOException  In case of an I/O problem
+     */
+    public void writeByteArr(byte[] cmd, int off, int len) throws IOException {
+        out.write(cmd, off, len);
+        newLine();
+    }
+
 
     /**
      * Flushes the OutputStream.
@@ -19,8 +19,9 @@
 
 package org.apache.xmlgraphics.ps.dsc;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 import org.apache.xmlgraphics.ps.DSCConstants;
 import org.apache.xmlgraphics.ps.dsc.events.DSCComment;
@@ -42,51 +43,74 @@ import org.apache.xmlgraphics.ps.dsc.events.DSCCommentPages;
 import org.apache.xmlgraphics.ps.dsc.events.DSCCommentTitle;
 
 /**
- * Factory for DSCComment subclasses.
+ * Factory for DSCComment subclasses. The factory keeps a registry of {@link Supplier}s keyed by
+ * DSC comment name. Applications can register their own {@link DSCComment} implementations
+ * through {@link #register(String, Supplier)}.
  */
 public final class DSCCommentFactory {
 
     private DSCCommentFactory() {
     }
 
-    private static final Map DSC_FACTORIES = new java.util.HashMap();
+    private static final Map<String, Supplier<? extends DSCComment>> DSC_FACTORIES
+            = new ConcurrentHashMap<String, Supplier<? extends DSCComment>>();
 
     static {
-        DSC_FACTORIES.put(DSCConstants.END_COMMENTS,
-                DSCCommentEndComments.class);
-        DSC_FACTORIES.put(DSCConstants.BEGIN_RESOURCE,
-                DSCCommentBeginResource.class);
-        DSC_FACTORIES.put(DSCConstants.INCLUDE_RESOURCE,
-                DSCCommentIncludeResource.class);
-        DSC_FACTORIES.put(DSCConstants.PAGE_RESOURCES,
-                DSCCommentPageResources.class);
-        DSC_FACTORIES.put(DSCConstants.BEGIN_DOCUMENT,
-                DSCCommentBeginDocument.class);
-        DSC_FACTORIES.put(DSCConstants.PAGE,
-                DSCCommentPage.class);
-        DSC_FACTORIES.put(DSCConstants.PAGES,
-                DSCCommentPages.class);
-        DSC_FACTORIES.put(DSCConstants.BBOX,
-                DSCCommentBoundingBox.class);
-        DSC_FACTORIES.put(DSCConstants.HIRES_BBOX,
-                DSCCommentHiResBoundingBox.class);
-        DSC_FACTORIES.put(DSCConstants.PAGE_BBOX,
-                DSCCommentPageBoundingBox.class);
-        DSC_FACTORIES.put(DSCConstants.PAGE_HIRES_BBOX,
-                DSCCommentPageHiResBoundingBox.class);
-        DSC_FACTORIES.put(DSCConstants.LANGUAGE_LEVEL,
-                DSCCommentLanguageLevel.class);
-        DSC_FACTORIES.put(DSCConstants.DOCUMENT_NEEDED_RESOURCES,
-                DSCCommentDocumentNeededResources.class);
-        DSC_FACTORIES.put(DSCConstants.DOCUMENT_SUPPLIED_RESOURCES,
-                DSCCommentDocumentSuppliedResources.class);
-        DSC_FACTORIES.put(DSCConstants.TITLE,
-                DSCCommentTitle.class);
-        DSC_FACTORIES.put(DSCConstants.EOF,
-                DSCCommentEndOfFile.class);
+        register(DSCConstants.END_COMMENTS, DSCCommentEndComments::new);
+        register(DSCConstants.BEGIN_RESOURCE, DSCCommentBeginResource::new);
+        register(DSCConstants.INCLUDE_RESOURCE, DSCCommentIncludeResource::new);
+        register(DSCConstants.PAGE_RESOURCES, DSCCommentPageResources::new);
+        register(DSCConstants.BEGIN_DOCUMENT, DSCCommentBeginDocument::new);
+        register(DSCConstants.PAGE, DSCCommentPage::new);
+        register(DSCConstants.PAGES, DSCCommentPages::new);
+        register(DSCConstants.BBOX, DSCCommentBoundingBox::new);
+        register(DSCConstants.HIRES_BBOX, DSCCommentHiResBoundingBox::new);
+        register(DSCConstants.PAGE_BBOX, DSCCommentPageBoundingBox::new);
+        register(DSCConstants.PAGE_HIRES_BBOX, DSCCommentPageHiResBoundingBox::new);
+        register(DSCConstants.LANGUAGE_LEVEL, DSCCommentLanguageLevel::new);
+        register(DSCConstants.DOCUMENT_NEEDED_RESOURCES, DSCCommentDocumentNeededResources::new);
+        register(DSCConstants.DOCUMENT_SUPPLIED_RESOURCES,
+                DSCCommentDocumentSuppliedResources::new);
+        register(DSCConstants.TITLE, DSCCommentTitle::new);
+        register(DSCConstants.EOF, DSCCommentEndOfFile::new);
         //TODO Add additional implementations as needed
     }
 
+    /**
+     * Registers a supplier for DSC comments with a given name. A previously registered supplier
+     * for the same name is replaced.
+     * @param name the name of the DSCComment (without the "%%" prefix)
+     * @param supplier the supplier creating new, unparsed instances
+     */
+    public static void register(String name, Supplier<? extends DSCComment> supplier) {
+        if (name == null) {
+            throw new NullPointerException("name must not be null");
+        }
+        if (supplier == null) {
+            throw new NullPointerException("supplier must not be null");
+        }
+        DSC_FACTORIES.put(name, supplier);
+    }
+
+    /**
+     * Removes the supplier registered for DSC comments with a given name. Such comments will
+     * be reported as {@link org.apache.xmlgraphics.ps.dsc.events.UnparsedDSCComment}s afterwards.
+     * @param name the name of the DSCComment (without the "%%" prefix)
+     * @return the supplier that was registered or null if there was none
+     */
+    public static Supplier<? extends DSCComment> unregister(String name) {
+        return DSC_FACTORIES.remove(name);
+    }
+
+    /**
+     * Indicates whether a particular subclass is registered for DSC comments with a given name.
+     * @param name the name of the DSCComment (without the "%%" prefix)
+     * @return true if a supplier is registered
+     */
+    public static boolean isRegistered(String name) {
+        return DSC_FACTORIES.containsKey(name);
+    }
+
     /**
      * Creates and returns new instances for DSC comments with a given name.
      * @param name the name of the DSCComment (without the "%%" prefix)
@@ -94,23 +118,11 @@ public final class DSCCommentFactory {
      *          DSC comment.
      */
     public static DSCComment createDSCCommentFor(String name) {
-        Class clazz = (Class)DSC_FACTORIES.get(name);
-        if (clazz == null) {
+        Supplier<? extends DSCComment> supplier = DSC_FACTORIES.get(name);
+        if (supplier == null) {
             return null;
         }
-        try {
-            return (DSCComment)clazz.getDeclaredConstructor().newInstance();
-        } catch (InstantiationException e) {
-            throw new RuntimeException("Error instantiating instance for '" + name + "': "
-                    + e.getMessage());
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException("Illegal Access error while instantiating instance for '"
-                    + name + "': " + e.getMessage());
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e);
-        }
+        return supplier.get();
     }
 
 }
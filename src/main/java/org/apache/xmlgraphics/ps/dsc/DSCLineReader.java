@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps.dsc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads lines of PostScript code as raw bytes. Lines are terminated by a line feed ('\n'),
+ * a carriage return ('\r') or a carriage return followed immediately by a line feed, just like
+ * {@link java.io.BufferedReader#readLine()}. The current line is held in an internal buffer
+ * which is reused for every line, so no objects are allocated unless the line is explicitly
+ * converted to a String.
+ */
+final class DSCLineReader {
+
+    private final InputStream in;
+    private final byte[] buf = new byte[8192];
+    private int pos;
+    private int limit;
+    private boolean skipLF;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean lineAvailable;
+    private boolean pushedBack;
+
+    /**
+     * Creates a new instance.
+     * @param in the InputStream to read from
+     */
+    DSCLineReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next line into the line buffer.
+     * @return true if a line was read, false if the end of the stream was reached
+     * @throws IOException In case of an I/O error
+     */
+    boolean readLine() throws IOException {
+        if (pushedBack) {
+            pushedBack = false;
+            return lineAvailable;
+        }
+        lineLength = 0;
+        boolean found = false;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                lineAvailable = found;
+                return found;
+            }
+            if (skipLF) {
+                skipLF = false;
+                if (buf[pos] == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            found = true;
+            int start = pos;
+            while (pos < limit) {
+                byte b = buf[pos];
+                if (b == '\n' || b == '\r') {
+                    append(start, pos - start);
+                    pos++;
+                    skipLF = (b == '\r');
+                    lineAvailable = true;
+                    return true;
+                }
+                pos++;
+            }
+            append(start, pos - start);
+        }
+    }
+
+    /**
+     * Reads the next line and returns it as a String.
+     * @return the line or null if the end of the stream was reached
+     * @throws IOException In case of an I/O error
+     */
+    String readLineAsString() throws IOException {
+        return readLine() ? getLineAsString() : null;
+    }
+
+    /**
+     * Pushes back the current line so it is returned again by the next call to
+     * {@link #readLine()}. Only one line can be pushed back.
+     */
+    void unread() {
+        if (pushedBack) {
+            throw new IllegalStateException("A line has already been pushed back");
+        }
+        pushedBack = true;
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buf, 0, buf.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private void append(int start, int len) {
+        if (len == 0) {
+            return;
+        }
+        int required = lineLength + len;
+        if (required > line.length) {
+            byte[] newLine = new byte[Math.max(required, line.length * 2)];
+            System.arraycopy(line, 0, newLine, 0, lineLength);
+            line = newLine;
+        }
+        System.arraycopy(buf, start, line, lineLength, len);
+        lineLength = required;
+    }
+
+    /**
+     * Returns the buffer holding the current line. The buffer is only valid until the next
+     * call to {@link #readLine()}.
+     * @return the line buffer
+     */
+    byte[] getBuffer() {
+        return this.line;
+    }
+
+    /**
+     * Returns the length of the current line (without the line terminator).
+     * @return the length in bytes
+     */
+    int getLength() {
+        return this.lineLength;
+    }
+
+    /**
+     * Indicates whether the current line starts with the given ASCII prefix.
+     * @param prefix the prefix
+     * @return true if the line starts with the prefix
+     */
+    boolean startsWith(String prefix) {
+        int len = prefix.length();
+        if (lineLength < len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (line[i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current line as a String.
+     * @return the current line
+     */
+    String getLineAsString() {
+        return new String(line, 0, lineLength, StandardCharsets.US_ASCII);
+    }
+
+}
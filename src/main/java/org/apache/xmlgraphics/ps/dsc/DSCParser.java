@@ -19,10 +19,9 @@
 
 package org.apache.xmlgraphics.ps.dsc;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -44,12 +43,18 @@ import org.apache.xmlgraphics.ps.dsc.tools.DSCTools;
  * Parser for DSC-compliant PostScript files (DSC = Document Structuring Conventions). The parser
  * is implemented as a pull parser but has the ability to act as a push parser through the
  * DSCHandler interface.
+ * <p>
+ * By default, every call to {@link #next()} creates new event objects. For large files which
+ * are mostly piped through to the output, the parser can be told to reuse its
+ * {@link PostScriptLine}, {@link PostScriptComment} and {@link DSCHeaderComment} instances
+ * (see {@link #setReuseEvents(boolean)}). Those events are then backed by the raw line bytes
+ * and write them to a {@link PSGenerator} without decoding them to a String first.
  */
 public class DSCParser implements DSCParserConstants {
     private static final Log LOG = LogFactory.getLog(DSCParser.class);
 
     private InputStream in;
-    private BufferedReader reader;
+    private DSCLineReader reader;
     private boolean eofFound;
     private boolean checkEOF = true;
     private DSCEvent currentEvent;
@@ -58,6 +63,11 @@ public class DSCParser implements DSCParserConstants {
     private DSCListener filterListener;
     private List listeners;
     private boolean listenersDisabled;
+    private boolean reuseEvents;
+    private int reusableSlot;
+    private ReusablePostScriptLine[] reusableLines;
+    private ReusablePostScriptComment[] reusableComments;
+    private ReusableDSCHeaderComment[] reusableHeaderComments;
 
     /**
      * Creates a new DSC parser.
@@ -67,19 +77,9 @@ public class DSCParser implements DSCParserConstants {
      * @throws DSCException In case of a violation of the DSC spec
      */
     public DSCParser(InputStream in) throws IOException, DSCException {
-        if (in.markSupported()) {
-            this.in = in;
-        } else {
-            //Decorate for better performance
-            this.in = new java.io.BufferedInputStream(this.in);
-        }
-        String encoding = "US-ASCII";
-        try {
-            this.reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(this.in, encoding));
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException("Incompatible VM! " + e.getMessage());
-        }
+        this.in = in;
+        //DSCLineReader does its own buffering
+        this.reader = new DSCLineReader(this.in);
         parseNext();
     }
 
@@ -108,18 +108,22 @@ public class DSCParser implements DSCParserConstants {
      */
     protected String readLine() throws IOException, DSCException {
         String line;
-        line = this.reader.readLine();
+        line = this.reader.readLineAsString();
         checkLine(line);
 
         return line;
     }
 
     private void checkLine(String line) throws DSCException {
-        if (line == null) {
+        checkLine(line != null, line != null ? line.length() : 0);
+    }
+
+    private void checkLine(boolean available, int length) throws DSCException {
+        if (!available) {
             if (!eofFound) {
                 throw new DSCException("%%EOF not found. File is not well-formed.");
             }
-        } else if (line.length() > 255) {
+        } else if (length > 255) {
             warn("Line longer than 255 characters. This file is not fully PostScript conforming.");
         }
     }
@@ -146,7 +150,6 @@ public class DSCParser implements DSCParserConstants {
             }
             String nextLine;
             while (true) {
-                this.reader.mark(512);
                 nextLine = readLine();
                 if (nextLine == null) {
                     break;
@@ -155,7 +158,7 @@ public class DSCParser implements DSCParserConstants {
                 }
                 value.append(nextLine.substring(3));
             }
-            this.reader.reset();
+            this.reader.unread();
         } else {
             name = line.substring(2);
             return parseDSCComment(name, null);
@@ -288,6 +291,10 @@ public class DSCParser implements DSCParserConstants {
      * @throws DSCException In case of a violation of the DSC spec
      */
     protected void parseNext() throws IOException, DSCException {
+        if (isReuseEvents()) {
+            parseNextReusable();
+            return;
+        }
         String line = readLine();
         if (line != null) {
             if (isCheckEOF() && eofFound && (line.length() > 0)) {
@@ -311,6 +318,37 @@ public class DSCParser implements DSCParserConstants {
         }
     }
 
+    private void parseNextReusable() throws IOException, DSCException {
+        boolean available = this.reader.readLine();
+        int length = this.reader.getLength();
+        checkLine(available, length);
+        if (!available) {
+            this.nextEvent = null;
+            return;
+        }
+        if (isCheckEOF() && eofFound && (length > 0)) {
+            throw new DSCException("Content found after EOF");
+        }
+        if (this.reader.startsWith("%%")) {
+            DSCComment comment = parseDSCLine(this.reader.getLineAsString());
+            if (comment.getEventType() == EOF) {
+                this.eofFound = true;
+            }
+            this.nextEvent = comment;
+            return;
+        }
+        //The current event may still be in use, so alternate between two sets of instances
+        this.reusableSlot = 1 - this.reusableSlot;
+        byte[] buf = this.reader.getBuffer();
+        if (this.reader.startsWith("%!")) {
+            this.nextEvent = this.reusableHeaderComments[this.reusableSlot].reset(buf, length);
+        } else if (this.reader.startsWith("%")) {
+            this.nextEvent = this.reusableComments[this.reusableSlot].reset(buf, length);
+        } else {
+            this.nextEvent = this.reusableLines[this.reusableSlot].reset(buf, length);
+        }
+    }
+
     /**
      * Returns the current PostScript line.
      * @return the current PostScript line
@@ -470,6 +508,37 @@ public class DSCParser implements DSCParserConstants {
         }
     }
 
+    /**
+     * Tells the parser whether to reuse the event instances for PostScript lines, PostScript
+     * comments and header comments. If enabled, such events are only valid until the next call
+     * to {@link #next()} and must not be retained by the caller or by any listener. Their
+     * {@link DSCEvent#generate(PSGenerator)} method copies the original line bytes to the
+     * output. Lines are then read directly, bypassing {@link #readLine()}.
+     * <p>
+     * Note: the event following the current one is already parsed, so changing this setting
+     * only takes effect from the second event on.
+     * @param value true to enable event reuse
+     */
+    public void setReuseEvents(boolean value) {
+        if (value && this.reusableLines == null) {
+            this.reusableLines = new ReusablePostScriptLine[] {
+                    new ReusablePostScriptLine(), new ReusablePostScriptLine()};
+            this.reusableComments = new ReusablePostScriptComment[] {
+                    new ReusablePostScriptComment(), new ReusablePostScriptComment()};
+            this.reusableHeaderComments = new ReusableDSCHeaderComment[] {
+                    new ReusableDSCHeaderComment(), new ReusableDSCHeaderComment()};
+        }
+        this.reuseEvents = value;
+    }
+
+    /**
+     * Indicates whether the parser reuses event instances.
+     * @return true if event reuse is enabled
+     */
+    public boolean isReuseEvents() {
+        return this.reuseEvents;
+    }
+
     /**
      * Tells the parser whether to check for content after the EOF comment.
      * This can be disabled to skip nested documents.
@@ -487,4 +556,104 @@ public class DSCParser implements DSCParserConstants {
         return this.checkEOF;
     }
 
+    /**
+     * Holds a copy of the raw bytes of a line for the reusable events.
+     */
+    private static final class RawLine {
+
+        private byte[] buf = new byte[256];
+        private int length;
+        private String cached;
+        private int cachedOffset;
+
+        void reset(byte[] src, int len) {
+            if (len > buf.length) {
+                buf = new byte[Math.max(len, buf.length * 2)];
+            }
+            System.arraycopy(src, 0, buf, 0, len);
+            this.length = len;
+            this.cached = null;
+        }
+
+        String toString(int offset) {
+            if (cached == null || cachedOffset != offset) {
+                cached = new String(buf, offset, length - offset, StandardCharsets.US_ASCII);
+                cachedOffset = offset;
+            }
+            return cached;
+        }
+
+        void writeTo(PSGenerator gen) throws IOException {
+            gen.writeByteArr(buf, 0, length);
+        }
+    }
+
+    private static final class ReusablePostScriptLine extends PostScriptLine {
+
+        private final RawLine raw = new RawLine();
+
+        ReusablePostScriptLine() {
+            super(null);
+        }
+
+        DSCEvent reset(byte[] src, int len) {
+            raw.reset(src, len);
+            return this;
+        }
+
+        public String getLine() {
+            return raw.toString(0);
+        }
+
+        public void generate(PSGenerator gen) throws IOException {
+            raw.writeTo(gen);
+        }
+    }
+
+    private static final class ReusablePostScriptComment extends PostScriptComment {
+
+        private final RawLine raw = new RawLine();
+
+        ReusablePostScriptComment() {
+            super(null);
+        }
+
+        DSCEvent reset(byte[] src, int len) {
+            raw.reset(src, len);
+            return this;
+        }
+
+        public String getComment() {
+            return raw.toString(1);
+        }
+
+        public void generate(PSGenerator gen) throws IOException {
+            if (gen.isCommentsEnabled()) {
+                raw.writeTo(gen);
+            }
+        }
+    }
+
+    private static final class ReusableDSCHeaderComment extends DSCHeaderComment {
+
+        private final RawLine raw = new RawLine();
+
+        ReusableDSCHeaderComment() {
+            super(null);
+        }
+
+        DSCEvent reset(byte[] src, int len) {
+            raw.reset(src, len);
+            return this;
+        }
+
+        public String getComment() {
+            return raw.toString(2);
+        }
+
+        public void generate(PSGenerator gen) throws IOException {
+            raw.writeTo(gen);
+        }
+    }
+
 }
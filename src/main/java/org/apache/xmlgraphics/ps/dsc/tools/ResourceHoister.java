@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps.dsc.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.xmlgraphics.ps.DSCConstants;
+import org.apache.xmlgraphics.ps.PSGenerator;
+import org.apache.xmlgraphics.ps.PSResource;
+import org.apache.xmlgraphics.ps.dsc.DSCException;
+import org.apache.xmlgraphics.ps.dsc.DSCParser;
+import org.apache.xmlgraphics.ps.dsc.DSCParserConstants;
+import org.apache.xmlgraphics.ps.dsc.NestedDocumentHandler;
+import org.apache.xmlgraphics.ps.dsc.ResourceTracker;
+import org.apache.xmlgraphics.ps.dsc.events.DSCComment;
+import org.apache.xmlgraphics.ps.dsc.events.DSCCommentBeginResource;
+import org.apache.xmlgraphics.ps.dsc.events.DSCCommentIncludeResource;
+import org.apache.xmlgraphics.ps.dsc.events.DSCEvent;
+
+/**
+ * This class removes duplicate inline resources from a DSC-compliant PostScript file. This is
+ * mostly useful for files that have been concatenated from several documents, where the same
+ * fonts and procsets are embedded again on every page or in every sub-document.
+ * <p>
+ * The file is processed in two passes: {@link #analyze(InputStream)} collects all resources
+ * enclosed in %%BeginResource/%%EndResource and compares their content by hash. Then
+ * {@link #hoistResources(InputStream, OutputStream)} writes the file again. Every resource
+ * that occurs more than once with identical content is written once into the document prolog
+ * (or left in place if its first occurrence already is in the prolog) and all other
+ * occurrences are replaced by %%IncludeResource. Resources with the same name but different
+ * content are left untouched.
+ */
+public class ResourceHoister implements DSCParserConstants {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final ResourceTracker resourceTracker = new ResourceTracker();
+    private final Map<PSResource, ResourceInfo> resources
+            = new LinkedHashMap<PSResource, ResourceInfo>();
+    private boolean analyzed;
+
+    /**
+     * Runs the first pass over the PostScript file and determines the resources to be hoisted.
+     * @param in the InputStream to parse from
+     * @throws IOException In case of an I/O error
+     * @throws DSCException In case of a violation of the DSC spec
+     */
+    public void analyze(InputStream in) throws IOException, DSCException {
+        new Pass(in) {
+
+            void resource(DSCCommentBeginResource comment, boolean inProlog)
+                    throws IOException, DSCException {
+                PSResource res = comment.getResource();
+                ResourceInfo info = resources.get(res);
+                boolean capture = (info != null && info.content == null && !info.conflict);
+                ByteArrayOutputStream buffer = (capture ? new ByteArrayOutputStream() : null);
+                MessageDigest digest = createDigest();
+                OutputStream sink = new DigestOutputStream(
+                        (buffer != null ? buffer : NullOutputStream.INSTANCE), digest);
+                skipResource(new PSGenerator(sink));
+                byte[] hash = digest.digest();
+
+                resourceTracker.notifyResourceUsageOnPage(res);
+                if (info == null) {
+                    resources.put(res, new ResourceInfo(hash, inProlog));
+                } else if (!Arrays.equals(info.hash, hash)) {
+                    info.conflict = true;
+                    info.content = null;
+                } else if (capture) {
+                    info.beginComment = comment;
+                    info.content = buffer.toByteArray();
+                }
+            }
+
+        }.run();
+        for (Map.Entry<PSResource, ResourceInfo> entry : resources.entrySet()) {
+            if (entry.getValue().isHoisted()) {
+                resourceTracker.registerSuppliedResource(entry.getKey());
+            }
+        }
+        this.analyzed = true;
+    }
+
+    /**
+     * Runs the second pass over the PostScript file and writes it to the given OutputStream
+     * with duplicate resources replaced by %%IncludeResource comments.
+     * {@link #analyze(InputStream)} must have been called on the same content before.
+     * @param in the InputStream to parse from
+     * @param out the OutputStream to write the modified file to
+     * @throws IOException In case of an I/O error
+     * @throws DSCException In case of a violation of the DSC spec
+     */
+    public void hoistResources(InputStream in, final OutputStream out)
+                throws IOException, DSCException {
+        if (!analyzed) {
+            throw new IllegalStateException("analyze() must be called first");
+        }
+        final PSGenerator gen = new PSGenerator(out);
+        final Set<PSResource> written = new HashSet<PSResource>();
+        new Pass(in) {
+
+            PSGenerator getGenerator() {
+                return gen;
+            }
+
+            void event(DSCEvent event) throws IOException {
+                event.generate(gen);
+            }
+
+            void endOfProlog() throws IOException {
+                for (Map.Entry<PSResource, ResourceInfo> entry : resources.entrySet()) {
+                    ResourceInfo info = entry.getValue();
+                    if (info.isHoisted() && !info.firstInProlog) {
+                        info.beginComment.generate(gen);
+                        gen.getOutputStream().write(info.content);
+                        gen.writeDSCComment(DSCConstants.END_RESOURCE);
+                        written.add(entry.getKey());
+                    }
+                }
+            }
+
+            void resource(DSCCommentBeginResource comment, boolean inProlog)
+                    throws IOException, DSCException {
+                PSResource res = comment.getResource();
+                ResourceInfo info = resources.get(res);
+                if (info != null && info.isHoisted() && written.contains(res)) {
+                    new DSCCommentIncludeResource(res).generate(gen);
+                    skipResource(null);
+                } else {
+                    comment.generate(gen);
+                    skipResource(gen).generate(gen);
+                    written.add(res);
+                }
+            }
+
+        }.run();
+        gen.flush();
+    }
+
+    /**
+     * Returns the resources that are hoisted into the document prolog.
+     * @return the set of hoisted resources
+     */
+    public Set<PSResource> getHoistedResources() {
+        Set<PSResource> hoisted = new HashSet<PSResource>();
+        for (Map.Entry<PSResource, ResourceInfo> entry : resources.entrySet()) {
+            if (entry.getValue().isHoisted()) {
+                hoisted.add(entry.getKey());
+            }
+        }
+        return Collections.unmodifiableSet(hoisted);
+    }
+
+    /**
+     * Returns the resource tracker holding the usage counts of all resources found during
+     * analysis. The hoisted resources are registered as supplied resources.
+     * @return the resource tracker
+     */
+    public ResourceTracker getResourceTracker() {
+        return this.resourceTracker;
+    }
+
+    private boolean isResourceUsedMoreThanOnce(PSResource res) {
+        return resourceTracker.getUsageCount(res) > 1;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Incompatible VM! " + e.getMessage());
+        }
+    }
+
+    private static boolean endsProlog(String name) {
+        return DSCConstants.END_PROLOG.equals(name)
+                || DSCConstants.BEGIN_SETUP.equals(name)
+                || DSCConstants.PAGE.equals(name)
+                || DSCConstants.TRAILER.equals(name)
+                || DSCConstants.EOF.equals(name);
+    }
+
+    private final class ResourceInfo {
+
+        private final byte[] hash;
+        private final boolean firstInProlog;
+        private boolean conflict;
+        private DSCCommentBeginResource beginComment;
+        private byte[] content;
+
+        private ResourceInfo(byte[] hash, boolean firstInProlog) {
+            this.hash = hash;
+            this.firstInProlog = firstInProlog;
+        }
+
+        private boolean isHoisted() {
+            return !conflict && content != null
+                    && isResourceUsedMoreThanOnce(beginComment.getResource());
+        }
+    }
+
+    /**
+     * Walks through the file keeping track of nested documents and the end of the prolog.
+     */
+    private abstract static class Pass {
+
+        private final DSCParser parser;
+        private final DataSectionHandler dataSectionHandler = new DataSectionHandler();
+
+        Pass(InputStream in) throws IOException, DSCException {
+            this.parser = new DSCParser(in);
+            //Concatenated files contain multiple %%EOF comments
+            this.parser.setCheckEOF(false);
+            this.parser.setReuseEvents(true);
+            this.parser.setNestedDocumentHandler(dataSectionHandler);
+        }
+
+        void run() throws IOException, DSCException {
+            int documentLevel = 0;
+            boolean inProlog = true;
+            dataSectionHandler.gen = getGenerator();
+            while (parser.hasNext()) {
+                DSCEvent event = parser.nextEvent();
+                if (event.isDSCComment()) {
+                    DSCComment comment = event.asDSCComment();
+                    String name = comment.getName();
+                    if (DSCConstants.BEGIN_DOCUMENT.equals(name)) {
+                        documentLevel++;
+                    } else if (DSCConstants.END_DOCUMENT.equals(name)) {
+                        documentLevel--;
+                    } else if (inProlog && documentLevel == 0 && endsProlog(name)) {
+                        inProlog = false;
+                        endOfProlog();
+                    } else if (comment instanceof DSCCommentBeginResource) {
+                        resource((DSCCommentBeginResource)comment, inProlog);
+                        continue;
+                    }
+                }
+                event(event);
+            }
+        }
+
+        /**
+         * Skips the content of the current resource up to the matching %%EndResource.
+         * @param sink the PSGenerator to pass the skipped content to (may be null)
+         * @return the %%EndResource comment
+         */
+        DSCComment skipResource(PSGenerator sink) throws IOException, DSCException {
+            PSGenerator previous = dataSectionHandler.gen;
+            dataSectionHandler.gen = sink;
+            try {
+                int level = 1;
+                while (parser.hasNext()) {
+                    DSCEvent event = parser.nextEvent();
+                    if (event.isDSCComment()) {
+                        String name = event.asDSCComment().getName();
+                        if (DSCConstants.BEGIN_RESOURCE.equals(name)) {
+                            level++;
+                        } else if (DSCConstants.END_RESOURCE.equals(name)) {
+                            level--;
+                            if (level == 0) {
+                                return event.asDSCComment();
+                            }
+                        }
+                    }
+                    if (sink != null) {
+                        event.generate(sink);
+                    }
+                }
+            } finally {
+                dataSectionHandler.gen = previous;
+            }
+            throw new DSCException("File is not DSC-compliant: Didn't find an "
+                    + DSCConstants.END_RESOURCE);
+        }
+
+        PSGenerator getGenerator() {
+            return null;
+        }
+
+        void event(DSCEvent event) throws IOException {
+        }
+
+        void endOfProlog() throws IOException {
+        }
+
+        abstract void resource(DSCCommentBeginResource comment, boolean inProlog)
+                throws IOException, DSCException;
+    }
+
+    /**
+     * Passes data sections (%%BeginData/%%EndData) through unparsed so binary data cannot be
+     * mistaken for resource comments.
+     */
+    private static class DataSectionHandler implements NestedDocumentHandler {
+
+        private PSGenerator gen;
+
+        public void handle(DSCEvent event, DSCParser parser) throws IOException, DSCException {
+            if (event.isDSCComment()
+                    && DSCConstants.BEGIN_DATA.equals(event.asDSCComment().getName())) {
+                if (gen != null) {
+                    event.generate(gen);
+                }
+                parser.setListenersDisabled(true);
+                DSCComment comment = parser.nextDSCComment(DSCConstants.END_DATA, gen);
+                if (comment == null) {
+                    throw new DSCException("File is not DSC-compliant: Didn't find an "
+                            + DSCConstants.END_DATA);
+                }
+                if (gen != null) {
+                    comment.generate(gen);
+                }
+                parser.setListenersDisabled(false);
+                parser.next();
+            }
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+
+        private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+}
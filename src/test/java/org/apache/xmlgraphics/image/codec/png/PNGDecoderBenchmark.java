@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Compares the time needed to decode PNG images with
+ * <code>PNGImageDecoder</code>, <code>PNGRed</code> and ImageIO. Not run
+ * as part of the test suite, start it with <code>main()</code>.
+ */
+public final class PNGDecoderBenchmark {
+
+    private static final int WIDTH = 2000;
+
+    private static final int HEIGHT = 1500;
+
+    private static final int ROUNDS = 10;
+
+    private PNGDecoderBenchmark() {
+    }
+
+    private interface Decoder {
+        Object decode(byte[] data) throws IOException;
+    }
+
+    private static byte[] createPNG(int type) throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.RED, WIDTH, HEIGHT, new Color(0, 128, 255, 64)));
+        g2d.fillRect(0, 0, WIDTH, HEIGHT);
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            g2d.setColor(new Color(random.nextInt(), true));
+            g2d.fillOval(random.nextInt(WIDTH), random.nextInt(HEIGHT), 40, 30);
+        }
+        g2d.dispose();
+        PNGEncodeParam param = PNGEncodeParam.getDefaultEncodeParam(image);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PNGImageEncoder(out, param).encode(image);
+        return out.toByteArray();
+    }
+
+    private static void run(String name, byte[] data, Decoder decoder) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            decoder.decode(data);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms");
+    }
+
+    private static void runAll(String type, byte[] data) throws IOException {
+        final PNGDecodeParam param = new PNGDecodeParam();
+        final PNGDecodeParam noGamma = new PNGDecodeParam();
+        noGamma.setPerformGammaCorrection(false);
+        run(type + ", PNGImageDecoder", data, new Decoder() {
+            public Object decode(byte[] data) throws IOException {
+                return new PNGImageDecoder(new ByteArrayInputStream(data), param)
+                        .decodeAsRenderedImage().getData();
+            }
+        });
+        run(type + ", PNGImageDecoder without gamma", data, new Decoder() {
+            public Object decode(byte[] data) throws IOException {
+                return new PNGImageDecoder(new ByteArrayInputStream(data), noGamma)
+                        .decodeAsRenderedImage().getData();
+            }
+        });
+        run(type + ", PNGRed", data, new Decoder() {
+            public Object decode(byte[] data) throws IOException {
+                return new PNGRed(new ByteArrayInputStream(data), param).getData();
+            }
+        });
+        run(type + ", ImageIO", data, new Decoder() {
+            public Object decode(byte[] data) throws IOException {
+                return ImageIO.read(new ByteArrayInputStream(data));
+            }
+        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        runAll("RGB", createPNG(BufferedImage.TYPE_3BYTE_BGR));
+        runAll("RGBA", createPNG(BufferedImage.TYPE_4BYTE_ABGR));
+        runAll("Gray", createPNG(BufferedImage.TYPE_BYTE_GRAY));
+    }
+}
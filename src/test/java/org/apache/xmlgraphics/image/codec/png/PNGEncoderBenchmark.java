@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Shows the speed/size trade-off of the PNG compression level, strategy
+ * and filter selection settings. Not run as part of the test suite, start
+ * it with <code>main()</code>.
+ */
+public final class PNGEncoderBenchmark {
+
+    private static final int WIDTH = 2000;
+
+    private static final int HEIGHT = 1500;
+
+    private static final int ROUNDS = 5;
+
+    private PNGEncoderBenchmark() {
+    }
+
+    private static BufferedImage createImage() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.RED, WIDTH, HEIGHT, new Color(0, 128, 255)));
+        g2d.fillRect(0, 0, WIDTH, HEIGHT);
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            g2d.setColor(new Color(random.nextInt()));
+            g2d.fillOval(random.nextInt(WIDTH), random.nextInt(HEIGHT), 40, 30);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    private static void run(String name, BufferedImage image, int level, int strategy,
+            int filterSelection, int filterType) throws IOException {
+        PNGEncodeParam param = PNGEncodeParam.getDefaultEncodeParam(image);
+        param.setCompressionLevel(level);
+        param.setCompressionStrategy(strategy);
+        param.setFilterSelection(filterSelection);
+        param.setFilterType(filterType);
+        long best = Long.MAX_VALUE;
+        int size = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long start = System.nanoTime();
+            new PNGImageEncoder(out, param).encode(image);
+            best = Math.min(best, System.nanoTime() - start);
+            size = out.size();
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms, " + (size / 1024) + " KB");
+    }
+
+    public static void main(String[] args) throws IOException {
+        BufferedImage image = createImage();
+        int exhaustive = PNGEncodeParam.FILTER_SELECTION_EXHAUSTIVE;
+        int fast = PNGEncodeParam.FILTER_SELECTION_FAST;
+        int fixed = PNGEncodeParam.FILTER_SELECTION_FIXED;
+        int paeth = PNGEncodeParam.PNG_FILTER_PAETH;
+        int up = PNGEncodeParam.PNG_FILTER_UP;
+        int def = Deflater.DEFAULT_STRATEGY;
+
+        run("Level 9, exhaustive (default)", image, 9, def, exhaustive, paeth);
+        run("Level 9, fast", image, 9, def, fast, paeth);
+        run("Level 6, exhaustive", image, 6, def, exhaustive, paeth);
+        run("Level 6, fast", image, 6, def, fast, paeth);
+        run("Level 6, fixed Up", image, 6, def, fixed, up);
+        run("Level 6, fixed Paeth", image, 6, def, fixed, paeth);
+        run("Level 6, filtered, fast", image, 6, Deflater.FILTERED, fast, paeth);
+        run("Level 1, fast", image, 1, def, fast, paeth);
+        run("Level 1, fixed Up", image, 1, def, fixed, up);
+        run("Huffman only, fast", image, 6, Deflater.HUFFMAN_ONLY, fast, paeth);
+    }
+}
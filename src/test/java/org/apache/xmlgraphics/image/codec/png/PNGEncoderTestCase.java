@@ -20,7 +20,10 @@
 package org.apache.xmlgraphics.image.codec.png;
 
 import java.awt.Color;
+import java.awt.GradientPaint;
 import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_Profile;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
@@ -29,11 +32,24 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import javax.imageio.ImageIO;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import org.apache.xmlgraphics.image.writer.ImageWriterParams;
+import org.apache.xmlgraphics.image.writer.internal.PNGImageWriter;
+
 /**
  * This test validates the PNGEncoder operation. It creates a
  * BufferedImage, then encodes it with the PNGEncoder, then
@@ -108,6 +124,217 @@ public class PNGEncoderTestCase {
         }
     }
 
+    @Test
+    public void testParallelCompression() throws Exception {
+        BufferedImage image = new BufferedImage(157, 211, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        for (int i = 0; i < 40; i++) {
+            g2d.setPaint(new Color(i * 6, 255 - i * 5, (i * 37) % 256));
+            g2d.fillOval(i * 4, i * 5, 60, 40);
+        }
+        g2d.dispose();
+
+        byte[] serial = encode(image, 1, 1000);
+        byte[] parallel = encode(image, 4, 1000);
+        assertArrayEquals(parallel, encode(image, 2, 1000));
+        assertTrue(parallel.length != serial.length);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+            params.setCompressionThreads(4);
+            params.setCompressionBlockSize(1000);
+            params.setCompressionExecutor(executor);
+            assertArrayEquals(parallel, encode(image, params));
+            assertArrayEquals(parallel, encode(image, params));
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(parallel));
+        assertTrue(checkIdentical(image, decoded));
+        decoded = ImageIO.read(new ByteArrayInputStream(serial));
+        assertTrue(checkIdentical(image, decoded));
+    }
+
+    @Test
+    public void testCombineAdler32() {
+        byte[] data = new byte[100000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 31 + (i >> 7));
+        }
+        Adler32 whole = new Adler32();
+        whole.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 70001);
+        Adler32 second = new Adler32();
+        second.update(data, 70001, data.length - 70001);
+        assertEquals(whole.getValue(), PNGImageEncoder.combineAdler32(
+                first.getValue(), second.getValue(), data.length - 70001));
+    }
+
+    @Test
+    public void testFilterSelectionAndCompressionSettings() throws Exception {
+        BufferedImage image = new BufferedImage(97, 63, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        for (int i = 0; i < 20; i++) {
+            g2d.setPaint(new Color(i * 12, 255 - i * 9, (i * 37) % 256, 100 + i * 7));
+            g2d.fillOval(i * 4, i * 3, 40, 30);
+        }
+        g2d.dispose();
+
+        int[] modes = {PNGEncodeParam.FILTER_SELECTION_EXHAUSTIVE,
+                PNGEncodeParam.FILTER_SELECTION_FAST};
+        for (int mode : modes) {
+            PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+            params.setFilterSelection(mode);
+            assertTrue(checkIdentical(image, decode(encode(image, params))));
+        }
+        for (int type = PNGEncodeParam.PNG_FILTER_NONE; type <= PNGEncodeParam.PNG_FILTER_PAETH; type++) {
+            PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+            params.setFilterSelection(PNGEncodeParam.FILTER_SELECTION_FIXED);
+            params.setFilterType(type);
+            params.setCompressionLevel(type * 2);
+            params.setCompressionStrategy(type % 2 == 0 ? Deflater.FILTERED : Deflater.HUFFMAN_ONLY);
+            assertTrue(checkIdentical(image, decode(encode(image, params))));
+            params.setCompressionThreads(3);
+            params.setCompressionBlockSize(500);
+            assertTrue(checkIdentical(image, decode(encode(image, params))));
+        }
+
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+        byte[] best = encode(image, params);
+        params.setCompressionLevel(Deflater.NO_COMPRESSION);
+        assertTrue(encode(image, params).length > best.length);
+        try {
+            params.setCompressionLevel(10);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            params.setFilterType(5);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testImageWriterParams() throws Exception {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setPaint(new GradientPaint(0, 0, Color.blue, 64, 48, Color.orange));
+        g2d.fillRect(0, 0, 64, 48);
+        g2d.dispose();
+
+        PNGImageWriter writer = new PNGImageWriter();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        writer.writeImage(image, bos, new ImageWriterParams());
+        byte[] defaults = bos.toByteArray();
+
+        ImageWriterParams writerParams = new ImageWriterParams();
+        writerParams.setCompressionLevel(Deflater.NO_COMPRESSION);
+        writerParams.setPNGFilterType(PNGEncodeParam.PNG_FILTER_NONE);
+        bos = new ByteArrayOutputStream();
+        writer.writeImage(image, bos, writerParams);
+        byte[] stored = bos.toByteArray();
+
+        assertTrue(stored.length > 64 * 48 * 3);
+        assertTrue(stored.length > defaults.length);
+        assertTrue(checkIdentical(image, decode(stored)));
+        assertTrue(checkIdentical(image, decode(defaults)));
+    }
+
+    @Test
+    public void testColorReduction() throws Exception {
+        BufferedImage bilevel = new BufferedImage(67, 31, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = bilevel.createGraphics();
+        g2d.setColor(Color.white);
+        g2d.fillRect(0, 0, 67, 31);
+        g2d.setColor(Color.black);
+        for (int x = 3; x < 60; x += 7) {
+            g2d.fillRect(x, 2, 1 + x % 3, 27);
+        }
+        g2d.dispose();
+        checkReduction(bilevel, 0, 1);
+
+        BufferedImage gray = new BufferedImage(40, 20, BufferedImage.TYPE_INT_RGB);
+        g2d = gray.createGraphics();
+        for (int i = 0; i < 4; i++) {
+            g2d.setColor(new Color(i * 85, i * 85, i * 85));
+            g2d.fillRect(i * 10, 0, 10, 20);
+        }
+        g2d.dispose();
+        checkReduction(gray, 0, 2);
+
+        BufferedImage palette = new BufferedImage(50, 50, BufferedImage.TYPE_INT_ARGB);
+        g2d = palette.createGraphics();
+        for (int i = 0; i < 9; i++) {
+            g2d.setColor(new Color(i * 30, 200 - i * 20, 7 * i, i % 3 == 0 ? 128 : 255));
+            g2d.fillRect(i * 5, i * 5, 10, 10);
+        }
+        g2d.dispose();
+        checkReduction(palette, 3, 4);
+
+        BufferedImage manyColors = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 32; x++) {
+                manyColors.setRGB(x, y, (x * 8) << 16 | (y * 8) << 8 | 0x40);
+            }
+        }
+        checkReduction(manyColors, 2, 8);
+
+        BufferedImage gray8 = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                gray8.getRaster().setSample(x, y, 0, x * 16 + y);
+            }
+        }
+        checkReduction(gray8, 0, 8);
+
+        // The ICC profile applies to the original color type
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(bilevel);
+        params.setColorReduction(true);
+        params.setICCProfileData(ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData());
+        byte[] encoded = encode(bilevel, params);
+        assertEquals(8, encoded[24]);
+        assertEquals(2, encoded[25]);
+    }
+
+    private void checkReduction(BufferedImage image, int colorType, int bitDepth) throws Exception {
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+        params.setColorReduction(true);
+        byte[] reduced = encode(image, params);
+        // IHDR data starts after the signature, length and chunk type
+        assertEquals(bitDepth, reduced[24]);
+        assertEquals(colorType, reduced[25]);
+        assertTrue(checkIdentical(image, decode(reduced)));
+
+        params.setInterlacing(true);
+        assertTrue(checkIdentical(image, decode(encode(image, params))));
+    }
+
+    private byte[] encode(RenderedImage image, PNGEncodeParam params) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, params).encode(image);
+        return bos.toByteArray();
+    }
+
+    private BufferedImage decode(byte[] data) throws Exception {
+        return ImageIO.read(new ByteArrayInputStream(data));
+    }
+
+    private byte[] encode(RenderedImage image, int threads, int blockSize) throws Exception {
+        PNGEncodeParam params = PNGEncodeParam.getDefaultEncodeParam(image);
+        params.setCompressionThreads(threads);
+        params.setCompressionBlockSize(blockSize);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNGImageEncoder(bos, params).encode(image);
+        return bos.toByteArray();
+    }
+
     /**
      * Template method for building the PNG output stream. This gives a
      * chance to sub-classes (e.g., Base64PNGEncoderTest) to add an
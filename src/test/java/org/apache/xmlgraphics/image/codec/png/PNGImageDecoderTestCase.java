@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.png;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PNGImageDecoderTestCase {
+
+    private BufferedImage createImage(int type) {
+        BufferedImage image = new BufferedImage(67, 45, type);
+        Graphics2D g2d = image.createGraphics();
+        for (int i = 0; i < 20; i++) {
+            g2d.setColor(new Color(i * 12, 255 - i * 11, (i * 41) % 256));
+            g2d.fillOval(i * 3, i * 2, 20, 15);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    private byte[] encode(BufferedImage image, boolean interlaced) throws IOException {
+        PNGEncodeParam param = PNGEncodeParam.getDefaultEncodeParam(image);
+        param.setInterlacing(interlaced);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PNGImageEncoder(out, param).encode(image);
+        return out.toByteArray();
+    }
+
+    private RenderedImage decode(byte[] data, PNGDecodeParam param) throws IOException {
+        return new PNGImageDecoder(new ByteArrayInputStream(data), param)
+                .decodeAsRenderedImage();
+    }
+
+    private static void checkSubsampled(Raster full, Raster subsampled, Rectangle region,
+            int xSubsampling, int ySubsampling) {
+        assertEquals((region.width + xSubsampling - 1) / xSubsampling, subsampled.getWidth());
+        assertEquals((region.height + ySubsampling - 1) / ySubsampling, subsampled.getHeight());
+        for (int y = 0; y < subsampled.getHeight(); y++) {
+            for (int x = 0; x < subsampled.getWidth(); x++) {
+                assertArrayEquals(full.getPixel(region.x + x * xSubsampling,
+                        region.y + y * ySubsampling, (int[]) null),
+                        subsampled.getPixel(x, y, (int[]) null));
+            }
+        }
+    }
+
+    private void checkSubsampling(int imageType, PNGDecodeParam param) throws IOException {
+        Rectangle region = new Rectangle(5, 3, 55, 40);
+        for (boolean interlaced : new boolean[] {false, true}) {
+            byte[] data = encode(createImage(imageType), interlaced);
+            Raster full = decode(data, param).getData();
+            param.setSubsampling(3, 2);
+            checkSubsampled(full, decode(data, param).getData(),
+                    new Rectangle(0, 0, 67, 45), 3, 2);
+            param.setSourceRegion(region);
+            checkSubsampled(full, decode(data, param).getData(), region, 3, 2);
+            checkSubsampled(full, new PNGRed(new ByteArrayInputStream(data), param).getData(),
+                    region, 3, 2);
+            param.setSubsampling(1, 1);
+            checkSubsampled(full, decode(data, param).getData(), region, 1, 1);
+            param.setSourceRegion(null);
+        }
+    }
+
+    @Test
+    public void testSubsamplingRGB() throws IOException {
+        checkSubsampling(BufferedImage.TYPE_3BYTE_BGR, new PNGDecodeParam());
+    }
+
+    @Test
+    public void testSubsamplingBilevel() throws IOException {
+        PNGDecodeParam param = new PNGDecodeParam();
+        param.setPerformGammaCorrection(false);
+        checkSubsampling(BufferedImage.TYPE_BYTE_BINARY, param);
+    }
+
+    private static void checkBands(Raster full, RenderedImage image, int bandHeight,
+            int[] tileOrder) {
+        assertEquals(bandHeight, image.getTileHeight());
+        assertEquals(1, image.getNumXTiles());
+        for (int tileY : tileOrder) {
+            Raster tile = image.getTile(0, tileY);
+            assertEquals(tileY * bandHeight, tile.getMinY());
+            int height = Math.min(bandHeight, full.getHeight() - tile.getMinY());
+            checkSubsampled(full.createChild(0, tile.getMinY(), full.getWidth(),
+                    height, 0, 0, null),
+                    tile.createChild(0, tile.getMinY(), full.getWidth(), height, 0, 0, null),
+                    new Rectangle(0, 0, full.getWidth(), height), 1, 1);
+        }
+    }
+
+    @Test
+    public void testBandDecoding() throws IOException {
+        byte[] data = encode(createImage(BufferedImage.TYPE_3BYTE_BGR), false);
+        PNGDecodeParam param = new PNGDecodeParam();
+        Raster full = decode(data, param).getData();
+        param.setBandHeight(10);
+        param.setMaxDecodedBands(1);
+        RenderedImage image = decode(data, param);
+        assertEquals(5, image.getNumYTiles());
+        // in order, then out of order to restart decoding
+        checkBands(full, image, 10, new int[] {0, 1, 2, 3, 4});
+        checkBands(full, image, 10, new int[] {3, 0, 4, 2, 2});
+        checkBands(full, new PNGRed(new ByteArrayInputStream(data), param), 10,
+                new int[] {0, 1, 4, 1, 2, 3});
+        checkSubsampled(full, new PNGRed(new ByteArrayInputStream(data), param).getData(),
+                new Rectangle(0, 0, 67, 45), 1, 1);
+
+        Rectangle region = new Rectangle(5, 3, 55, 40);
+        param.setSourceRegion(region);
+        param.setSubsampling(3, 2);
+        checkSubsampled(full, decode(data, param).getData(), region, 3, 2);
+        checkSubsampled(full, new PNGRed(new ByteArrayInputStream(data), param).getData(),
+                region, 3, 2);
+    }
+
+    @Test
+    public void testBandDecodingWithFilters() throws IOException {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_3BYTE_BGR);
+        Random random = new Random(3);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) {
+                image.setRGB(x, y, (x * 4) << 16 | (y * 4) << 8 | random.nextInt(256));
+            }
+        }
+        int[] filters = {PNGEncodeParam.PNG_FILTER_UP, PNGEncodeParam.PNG_FILTER_AVERAGE,
+            PNGEncodeParam.PNG_FILTER_PAETH};
+        for (int filter : filters) {
+            // Every row refers to the previous one, also at the start of a band
+            PNGEncodeParam encodeParam = PNGEncodeParam.getDefaultEncodeParam(image);
+            encodeParam.setFilterSelection(PNGEncodeParam.FILTER_SELECTION_FIXED);
+            encodeParam.setFilterType(filter);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new PNGImageEncoder(out, encodeParam).encode(image);
+            byte[] data = out.toByteArray();
+
+            PNGDecodeParam param = new PNGDecodeParam();
+            Raster full = decode(data, param).getData();
+            param.setBandHeight(8);
+            param.setMaxDecodedBands(2);
+            checkBands(full, decode(data, param), 8, new int[] {0, 1, 2, 3, 4, 5, 6, 7});
+            checkBands(full, decode(data, param), 8, new int[] {2, 5, 0, 6, 7, 1});
+            checkBands(full, new PNGRed(new ByteArrayInputStream(data), param), 8,
+                    new int[] {0, 1, 2, 3, 4, 5, 6, 7});
+            checkBands(full, new PNGRed(new ByteArrayInputStream(data), param), 8,
+                    new int[] {3, 4, 1, 7, 2});
+        }
+    }
+
+    @Test
+    public void testBandDecodingInterlaced() throws IOException {
+        byte[] data = encode(createImage(BufferedImage.TYPE_3BYTE_BGR), true);
+        PNGDecodeParam param = new PNGDecodeParam();
+        param.setBandHeight(10);
+        RenderedImage image = decode(data, param);
+        assertEquals(1, image.getNumYTiles());
+        assertEquals(45, image.getTileHeight());
+    }
+
+    private void checkDecoding(int imageType) throws IOException {
+        PNGDecodeParam param = new PNGDecodeParam();
+        param.setPerformGammaCorrection(false);
+        for (boolean interlaced : new boolean[] {false, true}) {
+            byte[] data = encode(createImage(imageType), interlaced);
+            Raster expected = ImageIO.read(new ByteArrayInputStream(data)).getRaster();
+            checkSubsampled(expected, decode(data, param).getData(),
+                    new Rectangle(0, 0, 67, 45), 1, 1);
+            checkSubsampled(expected, new PNGRed(new ByteArrayInputStream(data), param).getData(),
+                    new Rectangle(0, 0, 67, 45), 1, 1);
+        }
+    }
+
+    @Test
+    public void testDecodingRGBA() throws IOException {
+        checkDecoding(BufferedImage.TYPE_4BYTE_ABGR);
+    }
+
+    @Test
+    public void testDecodingGray16() throws IOException {
+        checkDecoding(BufferedImage.TYPE_USHORT_GRAY);
+    }
+
+    @Test
+    public void testDecodingBilevel() throws IOException {
+        checkDecoding(BufferedImage.TYPE_BYTE_BINARY);
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data)
+            throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(type.getBytes("US-ASCII"));
+        crc.update(data);
+        out.writeInt(data.length);
+        out.writeBytes(type);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /** Creates an 8x8 gray PNG whose image data ends after three rows. */
+    private static byte[] createTruncatedPNG() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeLong(0x89504e470d0a1a0aL);
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+        new DataOutputStream(ihdr).write(new byte[] {0, 0, 0, 8, 0, 0, 0, 8, 8, 0, 0, 0, 0});
+        writeChunk(out, "IHDR", ihdr.toByteArray());
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        DeflaterOutputStream dos = new DeflaterOutputStream(idat);
+        dos.write(new byte[3 * 9]);
+        dos.close();
+        writeChunk(out, "IDAT", idat.toByteArray());
+        writeChunk(out, "IEND", new byte[0]);
+        return bout.toByteArray();
+    }
+
+    @Test
+    public void testTruncatedImageData() throws IOException {
+        byte[] data = createTruncatedPNG();
+        PNGDecodeParam param = new PNGDecodeParam();
+        try {
+            decode(data, param);
+            fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+            //expected
+        }
+        param.setBandHeight(2);
+        RenderedImage image = decode(data, param);
+        image.getTile(0, 0);
+        try {
+            image.getTile(0, 1);
+            fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof EOFException);
+        }
+        try {
+            new PNGRed(new ByteArrayInputStream(data), param).getTile(0, 1);
+            fail("RuntimeException expected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof EOFException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBandHeight() {
+        new PNGDecodeParam().setBandHeight(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSubsampling() {
+        new PNGDecodeParam().setSubsampling(0, 1);
+    }
+}
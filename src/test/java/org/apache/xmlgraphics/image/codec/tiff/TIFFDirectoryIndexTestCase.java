@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
+
+public class TIFFDirectoryIndexTestCase {
+
+    private static final int PAGES = 20;
+
+    private SeekableStream createStream(boolean bigTIFF) throws IOException {
+        TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setBigTIFF(bigTIFF);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TIFFImageEncoder encoder = new TIFFImageEncoder(out, param);
+        Object context = null;
+        for (int i = 0; i < PAGES; i++) {
+            context = encoder.encodeMultiple(context,
+                    new BufferedImage(10 + i, 5, BufferedImage.TYPE_BYTE_GRAY));
+        }
+        encoder.finishMultiple(context);
+        return new MemoryCacheSeekableStream(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testRandomAccess() throws IOException {
+        for (boolean bigTIFF : new boolean[] {false, true}) {
+            SeekableStream stream = createStream(bigTIFF);
+            TIFFDirectoryIndex index = new TIFFDirectoryIndex(stream);
+            assertEquals(bigTIFF, index.isBigTIFF());
+            stream.seek(3);
+            for (int i : new int[] {7, 2, PAGES - 1, 0, 7}) {
+                assertEquals(new TIFFDirectory(stream, i).getIFDOffset(),
+                        index.getIFDOffset(stream, i));
+                TIFFDirectory dir = index.getDirectory(stream, i);
+                assertEquals(10 + i, dir.getFieldAsLong(TIFFImageDecoder.TIFF_IMAGE_WIDTH));
+            }
+            assertEquals(PAGES, index.getNumDirectories(stream));
+            assertEquals(TIFFDirectory.getNumDirectories(stream), index.getNumDirectories(stream));
+            assertEquals(3, stream.getFilePointer());
+        }
+    }
+
+    @Test
+    public void testDirectoryOutOfRange() throws IOException {
+        SeekableStream stream = createStream(false);
+        TIFFDirectoryIndex index = new TIFFDirectoryIndex(stream);
+        for (int directory : new int[] {PAGES, -1}) {
+            try {
+                index.getIFDOffset(stream, directory);
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException iae) {
+                //expected
+            }
+        }
+    }
+
+    @Test
+    public void testHasDirectory() throws IOException {
+        SeekableStream stream = createStream(false);
+        TIFFDirectoryIndex index = new TIFFDirectoryIndex(stream);
+        assertTrue(index.hasDirectory(stream, 0));
+        assertTrue(index.hasDirectory(stream, PAGES - 1));
+        assertFalse(index.hasDirectory(stream, PAGES));
+        assertFalse(index.hasDirectory(stream, -1));
+    }
+
+    @Test
+    public void testCyclicList() throws IOException {
+        //Header and one IFD without entries whose next IFD offset points back to itself
+        byte[] data = new byte[] {
+            'I', 'I', 42, 0, 8, 0, 0, 0,
+            0, 0, 8, 0, 0, 0};
+        SeekableStream stream = new MemoryCacheSeekableStream(new ByteArrayInputStream(data));
+        TIFFDirectoryIndex index = new TIFFDirectoryIndex(stream);
+        assertEquals(8, index.getIFDOffset(stream, 0));
+        try {
+            index.hasDirectory(stream, 1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+        try {
+            index.getNumDirectories(stream);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+    }
+}
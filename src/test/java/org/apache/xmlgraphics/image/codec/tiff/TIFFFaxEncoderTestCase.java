@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+
+public class TIFFFaxEncoderTestCase {
+
+    private static final CompressionValue[] CCITT = {
+        CompressionValue.GROUP3_1D, CompressionValue.GROUP3_2D, CompressionValue.GROUP4
+    };
+
+    /** Creates rows of random runs, where most rows are small variations of the previous one. */
+    private static byte[] createRows(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int bytesPerRow = (width + 7) / 8;
+        byte[] data = new byte[bytesPerRow * height];
+        boolean[] pixels = new boolean[width];
+        for (int y = 0; y < height; y++) {
+            if (y == 0 || random.nextInt(4) == 0) {
+                boolean black = random.nextBoolean();
+                int x = 0;
+                while (x < width) {
+                    int run = random.nextInt(8) == 0 ? random.nextInt(3000) : random.nextInt(12);
+                    for (int i = 0; i < run && x < width; i++) {
+                        pixels[x++] = black;
+                    }
+                    black = !black;
+                }
+            } else {
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    int x = random.nextInt(width);
+                    int end = Math.min(width, x + random.nextInt(6));
+                    for (; x < end; x++) {
+                        pixels[x] = !pixels[x];
+                    }
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                if (pixels[x]) {
+                    data[y * bytesPerRow + (x >> 3)] |= 0x80 >> (x & 7);
+                }
+            }
+        }
+        return data;
+    }
+
+    private static byte[] decode(CompressionValue compression, byte[] compressed,
+                                 int width, int height) {
+        byte[] result = new byte[(width + 7) / 8 * height];
+        TIFFFaxDecoder decoder = new TIFFFaxDecoder(1, width, height);
+        if (compression == CompressionValue.GROUP3_1D) {
+            decoder.decode1D(result, compressed, 0, height);
+        } else if (compression == CompressionValue.GROUP3_2D) {
+            decoder.decode2D(result, compressed, 0, height, TIFFFaxEncoder.T4_OPTIONS_2D);
+        } else {
+            decoder.decodeT6(result, compressed, 0, height, 0);
+        }
+        return result;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        int[] widths = {1, 7, 8, 13, 64, 173, 1728, 6000};
+        for (CompressionValue compression : CCITT) {
+            for (int width : widths) {
+                int height = 37;
+                byte[] data = createRows(width, height, width);
+                TIFFFaxEncoder encoder = new TIFFFaxEncoder(compression, width);
+                int length = encoder.encode(data, height);
+                byte[] compressed = new byte[length];
+                System.arraycopy(encoder.getBuffer(), 0, compressed, 0, length);
+                assertArrayEquals(compression + " " + width, data,
+                                  decode(compression, compressed, width, height));
+            }
+        }
+    }
+
+    @Test
+    public void testUniformRows() {
+        int width = 100;
+        int height = 10;
+        byte[] white = new byte[13 * height];
+        byte[] black = new byte[13 * height];
+        for (int i = 0; i < black.length; i++) {
+            black[i] = (byte) (i % 13 == 12 ? 0xf0 : 0xff);
+        }
+        for (CompressionValue compression : CCITT) {
+            TIFFFaxEncoder encoder = new TIFFFaxEncoder(compression, width);
+            for (byte[] data : new byte[][] {white, black}) {
+                int length = encoder.encode(data, height);
+                byte[] compressed = new byte[length];
+                System.arraycopy(encoder.getBuffer(), 0, compressed, 0, length);
+                assertArrayEquals(compression.toString(), data,
+                                  decode(compression, compressed, width, height));
+            }
+        }
+    }
+
+    private static BufferedImage createImage() {
+        BufferedImage image = new BufferedImage(160, 128, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, 160, 128);
+        g2d.setColor(Color.BLACK);
+        for (int i = 0; i < 12; i++) {
+            g2d.drawOval(i * 9, i * 7, 60, 45);
+        }
+        g2d.drawString("CCITT", 70, 100);
+        g2d.dispose();
+        return image;
+    }
+
+    private static void assertSameImage(BufferedImage expected, TIFFImage actual) {
+        Raster raster = actual.getData();
+        ColorModel colorModel = actual.getColorModel();
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y),
+                             colorModel.getRGB(raster.getSample(x, y, 0)));
+            }
+        }
+    }
+
+    @Test
+    public void testImageRoundTrip() throws IOException {
+        BufferedImage image = createImage();
+        for (CompressionValue compression : CCITT) {
+            for (boolean tiled : new boolean[] {false, true}) {
+                TIFFEncodeParam param = new TIFFEncodeParam();
+                param.setCompression(compression);
+                if (tiled) {
+                    param.setWriteTiled(true);
+                    param.setTileSize(32, 32);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                new TIFFImageEncoder(out, param).encode(image);
+                TIFFImage decoded = new TIFFImage(new MemoryCacheSeekableStream(
+                        new ByteArrayInputStream(out.toByteArray())), null, 0);
+                assertEquals(compression.getValue(), decoded.compression);
+                assertSameImage(image, decoded);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonBilevelImage() throws IOException {
+        TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(CompressionValue.GROUP4);
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_BYTE_GRAY);
+        new TIFFImageEncoder(new ByteArrayOutputStream(), param).encode(image);
+    }
+}
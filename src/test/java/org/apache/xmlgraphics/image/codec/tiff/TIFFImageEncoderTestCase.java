@@ -20,14 +20,24 @@ package org.apache.xmlgraphics.image.codec.tiff;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Test;
 
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+import org.apache.xmlgraphics.image.codec.util.SeekableStream;
 import org.apache.xmlgraphics.util.io.IOUtils;
 
 public class TIFFImageEncoderTestCase {
@@ -60,4 +70,163 @@ public class TIFFImageEncoderTestCase {
         gfx.fillRect(50, 50, 100, 100);
         return img;
     }
+
+    private byte[] encode(RenderedImage image, CompressionValue compression, boolean tiled,
+                          boolean parallel, int maxPendingStrips) throws IOException {
+        TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(compression);
+        if (tiled) {
+            param.setWriteTiled(true);
+            param.setTileSize(32, 32);
+        }
+        param.setParallelEncoding(parallel);
+        param.setMaxPendingStrips(maxPendingStrips);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TIFFImageEncoder(out, param).encode(image);
+        return out.toByteArray();
+    }
+
+    private static int[] getPixels(Raster raster) {
+        return raster.getPixels(raster.getMinX(), raster.getMinY(),
+                raster.getWidth(), raster.getHeight(), (int[]) null);
+    }
+
+    @Test
+    public void testParallelEncoding() throws IOException {
+        BufferedImage rgb = new BufferedImage(160, 128, BufferedImage.TYPE_3BYTE_BGR);
+        BufferedImage bilevel = new BufferedImage(160, 128, BufferedImage.TYPE_BYTE_BINARY);
+        for (BufferedImage image : new BufferedImage[] {rgb, bilevel}) {
+            Graphics gfx = image.getGraphics();
+            for (int i = 0; i < 20; i++) {
+                gfx.setColor(new Color(i * 12, 255 - i * 9, (i * 41) % 256));
+                gfx.fillOval(i * 7, i * 5, 50, 40);
+            }
+            gfx.dispose();
+        }
+        CompressionValue[] compressions = {CompressionValue.PACKBITS, CompressionValue.DEFLATE,
+            CompressionValue.GROUP4};
+        for (CompressionValue compression : compressions) {
+            RenderedImage image = compression == CompressionValue.GROUP4 ? bilevel : rgb;
+            for (boolean tiled : new boolean[] {false, true}) {
+                byte[] expected = encode(image, compression, tiled, false, 0);
+                assertArrayEquals(expected, encode(image, compression, tiled, true, 0));
+                assertArrayEquals(expected, encode(image, compression, tiled, true, 1));
+                assertArrayEquals(expected, encode(image, compression, tiled, true, 3));
+            }
+        }
+    }
+
+    @Test
+    public void testIncompressibleDeflateData() throws IOException {
+        BufferedImage image = new BufferedImage(64, 40, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] noise = new byte[64 * 40];
+        new Random(42).nextBytes(noise);
+        image.getRaster().setDataElements(0, 0, 64, 40, noise);
+        for (boolean parallel : new boolean[] {false, true}) {
+            byte[] data = encode(image, CompressionValue.DEFLATE, false, parallel, 0);
+            TIFFImage decoded = new TIFFImage(new MemoryCacheSeekableStream(
+                    new ByteArrayInputStream(data)), null, 0);
+            assertArrayEquals(getPixels(image.getRaster()), getPixels(decoded.getData()));
+        }
+    }
+
+    private byte[] encodePages(RenderedImage[] pages, CompressionValue compression,
+                               boolean streaming, boolean parallel) throws IOException {
+        TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(compression);
+        param.setStreaming(streaming);
+        param.setParallelEncoding(parallel);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TIFFImageEncoder encoder = new TIFFImageEncoder(out, param);
+        Object context = null;
+        for (RenderedImage page : pages) {
+            context = encoder.encodeMultiple(context, page);
+        }
+        encoder.finishMultiple(context);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testStreaming() throws IOException {
+        RenderedImage[] pages = {
+            getImage(BufferedImage.TYPE_3BYTE_BGR),
+            getImage(BufferedImage.TYPE_BYTE_GRAY),
+            getImage(BufferedImage.TYPE_4BYTE_ABGR)
+        };
+        CompressionValue[] compressions = {CompressionValue.NONE, CompressionValue.PACKBITS,
+            CompressionValue.DEFLATE};
+        for (CompressionValue compression : compressions) {
+            byte[] expected = encodePages(pages, compression, false, false);
+            assertArrayEquals(expected, encodePages(pages, compression, true, false));
+            assertArrayEquals(expected, encodePages(pages, compression, true, true));
+        }
+    }
+
+    @Test
+    public void testParallelEncodingFailure() throws IOException {
+        BufferedImage image = new BufferedImage(300, 400, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] noise = new byte[300 * 400 * 3];
+        new Random(7).nextBytes(noise);
+        image.getRaster().setDataElements(0, 0, 300, 400, noise);
+        TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(CompressionValue.DEFLATE);
+        param.setStreaming(true);
+        param.setParallelEncoding(true);
+        param.setMaxPendingStrips(4);
+        OutputStream out = new ByteArrayOutputStream() {
+            public synchronized void write(byte[] b, int off, int len) {
+                if (size() + len > 100000) {
+                    throw new IllegalStateException("Disk full");
+                }
+                super.write(b, off, len);
+            }
+        };
+        try {
+            new TIFFImageEncoder(out, param).encode(image);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertEquals("Disk full", e.getMessage());
+        }
+        // The shared pool is still usable
+        byte[] expected = encode(image, CompressionValue.DEFLATE, false, false, 0);
+        assertArrayEquals(expected, encode(image, CompressionValue.DEFLATE, false, true, 4));
+    }
+
+    @Test
+    public void testBigTIFF() throws IOException {
+        RenderedImage[] pages = {
+            getImage(BufferedImage.TYPE_3BYTE_BGR),
+            getImage(BufferedImage.TYPE_BYTE_GRAY),
+            new BufferedImage(160, 128, BufferedImage.TYPE_4BYTE_ABGR)
+        };
+        CompressionValue[] compressions = {CompressionValue.NONE, CompressionValue.DEFLATE};
+        for (CompressionValue compression : compressions) {
+            TIFFEncodeParam param = new TIFFEncodeParam();
+            param.setCompression(compression);
+            param.setBigTIFF(true);
+            TIFFEncodeParam tiledParam = new TIFFEncodeParam();
+            tiledParam.setCompression(compression);
+            tiledParam.setWriteTiled(true);
+            tiledParam.setTileSize(32, 32);
+            param.setExtraImages(Arrays.asList(pages[1],
+                    new Object[] {pages[2], tiledParam}).iterator());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new TIFFImageEncoder(out, param).encode(pages[0]);
+            byte[] data = out.toByteArray();
+
+            assertArrayEquals(new byte[] {'M', 'M', 0, 43, 0, 8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 16},
+                    Arrays.copyOf(data, 16));
+            SeekableStream stream = new MemoryCacheSeekableStream(new ByteArrayInputStream(data));
+            assertEquals(pages.length, TIFFDirectory.getNumDirectories(stream));
+            for (int i = 0; i < pages.length; i++) {
+                TIFFDirectory dir = new TIFFDirectory(stream, i);
+                assertTrue(dir.isBigTIFF());
+                assertEquals(TIFFField.TIFF_LONG8,
+                        dir.getField(i == 2 ? TIFFImageDecoder.TIFF_TILE_OFFSETS
+                                : TIFFImageDecoder.TIFF_STRIP_OFFSETS).getType());
+                TIFFImage decoded = new TIFFImage(stream, null, i);
+                assertArrayEquals(getPixels(pages[i].getData()), getPixels(decoded.getData()));
+            }
+        }
+    }
 }
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.xmlgraphics.image.codec.util.MemoryCacheSeekableStream;
+
+public class TIFFImageTestCase {
+
+    private BufferedImage createImage() {
+        BufferedImage image = new BufferedImage(160, 128, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g2d = image.createGraphics();
+        for (int i = 0; i < 30; i++) {
+            g2d.setColor(new Color(i * 8, 255 - i * 7, (i * 41) % 256));
+            g2d.fillOval(i * 5, i * 3, 50, 40);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    private byte[] encode(BufferedImage image, CompressionValue compression, boolean tiled)
+            throws IOException {
+        TIFFEncodeParam param = new TIFFEncodeParam();
+        param.setCompression(compression);
+        if (tiled) {
+            param.setWriteTiled(true);
+            param.setTileSize(32, 32);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TIFFImageEncoder(out, param).encode(image);
+        return out.toByteArray();
+    }
+
+    private TIFFImage decode(byte[] data, TIFFDecodeParam param) throws IOException {
+        return new TIFFImage(new MemoryCacheSeekableStream(new ByteArrayInputStream(data)),
+                param, 0);
+    }
+
+    private static int[] getPixels(Raster raster) {
+        return raster.getPixels(raster.getMinX(), raster.getMinY(),
+                raster.getWidth(), raster.getHeight(), (int[]) null);
+    }
+
+    @Test
+    public void testParallelDecoding() throws IOException {
+        BufferedImage image = createImage();
+        int[] expected = getPixels(image.getRaster());
+        CompressionValue[] compressions = {CompressionValue.NONE,
+                CompressionValue.PACKBITS, CompressionValue.DEFLATE};
+        for (CompressionValue compression : compressions) {
+            for (boolean tiled : new boolean[] {false, true}) {
+                byte[] data = encode(image, compression, tiled);
+                TIFFDecodeParam param = new TIFFDecodeParam();
+                param.setParallelDecoding(true);
+                TIFFImage tiff = decode(data, param);
+                assertArrayEquals(expected, getPixels(tiff.getData()));
+                assertArrayEquals(getPixels(decode(data, null).getData()),
+                        getPixels(tiff.getData()));
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentGetTile() throws Exception {
+        byte[] data = encode(createImage(), CompressionValue.DEFLATE, true);
+        final TIFFImage reference = decode(data, null);
+        final TIFFImage tiff = decode(data, null);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 200; i++) {
+                final int tileX = i % tiff.getNumXTiles();
+                final int tileY = (i / tiff.getNumXTiles()) % tiff.getNumYTiles();
+                results.add(executor.submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        assertArrayEquals(getPixels(reference.getTile(tileX, tileY)),
+                                getPixels(tiff.getTile(tileX, tileY)));
+                        return Boolean.TRUE;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTileCache() throws IOException {
+        byte[] data = encode(createImage(), CompressionValue.PACKBITS, true);
+        TIFFDecodeParam param = new TIFFDecodeParam();
+        // Room for two 32x32 RGB tiles
+        param.setTileCacheSize(2 * 32 * 32 * 3);
+        TIFFImage tiff = decode(data, param);
+
+        Raster tile = tiff.getTile(0, 0);
+        assertSame(tile, tiff.getTile(0, 0));
+        tiff.getTile(1, 0);
+        assertSame(tile, tiff.getTile(0, 0));
+        tiff.getTile(2, 0);
+        Raster tile1 = tiff.getTile(1, 0);
+        assertNotSame(tile1, tiff.getTile(2, 0));
+        assertSame(tile1, tiff.getTile(1, 0));
+        assertNotSame(tile, tiff.getTile(0, 0));
+
+        assertArrayEquals(getPixels(decode(data, null).getData()), getPixels(tiff.getData()));
+    }
+
+    private static void checkSubsampled(Raster full, Raster subsampled, Rectangle region,
+            int xSubsampling, int ySubsampling) {
+        assertEquals((region.width + xSubsampling - 1) / xSubsampling, subsampled.getWidth());
+        assertEquals((region.height + ySubsampling - 1) / ySubsampling, subsampled.getHeight());
+        for (int y = 0; y < subsampled.getHeight(); y++) {
+            for (int x = 0; x < subsampled.getWidth(); x++) {
+                assertArrayEquals(full.getPixel(region.x + x * xSubsampling,
+                        region.y + y * ySubsampling, (int[]) null),
+                        subsampled.getPixel(x, y, (int[]) null));
+            }
+        }
+    }
+
+    @Test
+    public void testSubsampling() throws IOException {
+        BufferedImage image = createImage();
+        Rectangle region = new Rectangle(13, 7, 101, 90);
+        for (CompressionValue compression : new CompressionValue[] {CompressionValue.NONE,
+                CompressionValue.DEFLATE}) {
+            for (boolean tiled : new boolean[] {false, true}) {
+                byte[] data = encode(image, compression, tiled);
+                TIFFDecodeParam param = new TIFFDecodeParam();
+                param.setSubsampling(3, 2);
+                checkSubsampled(image.getRaster(), decode(data, param).getData(),
+                        new Rectangle(0, 0, 160, 128), 3, 2);
+                param.setSourceRegion(region);
+                checkSubsampled(image.getRaster(), decode(data, param).getData(), region, 3, 2);
+                param.setParallelDecoding(true);
+                checkSubsampled(image.getRaster(), decode(data, param).getData(), region, 3, 2);
+                param.setSubsampling(1, 1);
+                checkSubsampled(image.getRaster(), decode(data, param).getData(), region, 1, 1);
+            }
+        }
+    }
+
+    @Test
+    public void testSubsamplingBilevel() throws IOException {
+        InputStream in = getClass().getResourceAsStream("bilevel.tiff");
+        TIFFImage full = new TIFFImage(new MemoryCacheSeekableStream(in), null, 0);
+        in = getClass().getResourceAsStream("bilevel.tiff");
+        TIFFDecodeParam param = new TIFFDecodeParam();
+        param.setSubsampling(5, 3);
+        Rectangle region = new Rectangle(3, 1, full.getWidth() - 3, full.getHeight() - 2);
+        param.setSourceRegion(region);
+        TIFFImage subsampled = new TIFFImage(new MemoryCacheSeekableStream(in), param, 0);
+        checkSubsampled(full.getData(), subsampled.getData(), region, 5, 3);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares <code>TIFFLZWDecoder</code> with the previous decoder, which kept
+ * its string table as byte arrays, on the strips of a 3000x2000 RGB image.
+ * Not run as part of the test suite, start it with <code>main()</code>.
+ */
+public final class TIFFLZWDecoderBenchmark {
+
+    private static final int WIDTH = 3000;
+
+    private static final int HEIGHT = 2000;
+
+    private static final int ROWS_PER_STRIP = 8;
+
+    private static final int ROUNDS = 10;
+
+    private TIFFLZWDecoderBenchmark() {
+    }
+
+    private interface StripDecoder {
+        void decode(byte[] data, byte[] uncompData, int h);
+    }
+
+    /** The decoder before the flat string table, for comparison. */
+    private static final class LegacyDecoder implements StripDecoder {
+
+        private byte[][] stringTable;
+        private byte[] data;
+        private byte[] uncompData;
+        private int tableIndex;
+        private int bitsToGet = 9;
+        private int bytePointer;
+        private int dstIndex;
+        private int nextData;
+        private int nextBits;
+
+        public void decode(byte[] data, byte[] uncompData, int h) {
+            initializeStringTable();
+            this.data = data;
+            this.uncompData = uncompData;
+            bytePointer = 0;
+            dstIndex = 0;
+            nextData = 0;
+            nextBits = 0;
+
+            int code;
+            int oldCode = 0;
+            byte[] string;
+            while ((code = getNextCode()) != 257 && dstIndex != uncompData.length) {
+                if (code == 256) {
+                    initializeStringTable();
+                    code = getNextCode();
+                    if (code == 257) {
+                        break;
+                    }
+                    writeString(stringTable[code]);
+                    oldCode = code;
+                } else if (code < tableIndex) {
+                    string = stringTable[code];
+                    writeString(string);
+                    addStringToTable(composeString(stringTable[oldCode], string[0]));
+                    oldCode = code;
+                } else {
+                    string = stringTable[oldCode];
+                    string = composeString(string, string[0]);
+                    writeString(string);
+                    addStringToTable(string);
+                    oldCode = code;
+                }
+            }
+        }
+
+        private void initializeStringTable() {
+            stringTable = new byte[4096][];
+            for (int i = 0; i < 256; i++) {
+                stringTable[i] = new byte[] {(byte) i};
+            }
+            tableIndex = 258;
+            bitsToGet = 9;
+        }
+
+        private void writeString(byte[] string) {
+            for (byte b : string) {
+                uncompData[dstIndex++] = b;
+            }
+        }
+
+        private void addStringToTable(byte[] string) {
+            stringTable[tableIndex++] = string;
+            if (tableIndex == 511) {
+                bitsToGet = 10;
+            } else if (tableIndex == 1023) {
+                bitsToGet = 11;
+            } else if (tableIndex == 2047) {
+                bitsToGet = 12;
+            }
+        }
+
+        private static byte[] composeString(byte[] oldString, byte newString) {
+            byte[] string = Arrays.copyOf(oldString, oldString.length + 1);
+            string[oldString.length] = newString;
+            return string;
+        }
+
+        private int getNextCode() {
+            if (bytePointer >= data.length) {
+                return 257;
+            }
+            nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
+            nextBits += 8;
+            if (nextBits < bitsToGet) {
+                if (bytePointer >= data.length) {
+                    return 257;
+                }
+                nextData = (nextData << 8) | (data[bytePointer++] & 0xff);
+                nextBits += 8;
+            }
+            int code = (nextData >> (nextBits - bitsToGet)) & ((1 << bitsToGet) - 1);
+            nextBits -= bitsToGet;
+            return code;
+        }
+    }
+
+    private static byte[][] createStrips() {
+        Random random = new Random(1);
+        int stripLength = WIDTH * 3 * ROWS_PER_STRIP;
+        byte[][] strips = new byte[HEIGHT / ROWS_PER_STRIP][];
+        for (int s = 0; s < strips.length; s++) {
+            byte[] strip = new byte[stripLength];
+            for (int i = 0; i < stripLength; i += 3) {
+                int x = (i / 3) % WIDTH;
+                int y = s * ROWS_PER_STRIP + i / (3 * WIDTH);
+                // Smooth gradients with some noise and flat areas
+                int noise = (x / 100 + y / 100) % 3 == 0 ? 0 : random.nextInt(4);
+                strip[i] = (byte) (x * 255 / WIDTH + noise);
+                strip[i + 1] = (byte) (y * 255 / HEIGHT + noise);
+                strip[i + 2] = (byte) ((x + y) / 20);
+            }
+            strips[s] = new TIFFLZWDecoderTestCase.Encoder().encode(strip);
+        }
+        return strips;
+    }
+
+    private static void run(String name, byte[][] strips, StripDecoder decoder) {
+        byte[] uncompData = new byte[WIDTH * 3 * ROWS_PER_STRIP];
+        long best = Long.MAX_VALUE;
+        long sum = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            for (byte[] strip : strips) {
+                decoder.decode(strip, uncompData, ROWS_PER_STRIP);
+                sum += uncompData[i];
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms (" + sum + ")");
+    }
+
+    public static void main(String[] args) {
+        byte[][] strips = createStrips();
+        final TIFFLZWDecoder decoder = new TIFFLZWDecoder(WIDTH, 1, 3);
+        run("TIFFLZWDecoder", strips, new StripDecoder() {
+            public void decode(byte[] data, byte[] uncompData, int h) {
+                decoder.decode(data, uncompData, h);
+            }
+        });
+        run("Byte array string table", strips, new LegacyDecoder());
+    }
+}
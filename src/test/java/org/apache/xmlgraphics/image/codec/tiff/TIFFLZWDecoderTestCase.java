@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.tiff;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TIFFLZWDecoderTestCase {
+
+    /** Minimal TIFF LZW encoder using the code widths expected by the decoder. */
+    static final class Encoder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int buffer;
+        private int bits;
+        private int emitted;
+
+        private void emit(int code) {
+            int tableIndex = 258 + Math.max(0, emitted - 1);
+            int width = tableIndex < 511 ? 9 : (tableIndex < 1023 ? 10 : (tableIndex < 2047 ? 11 : 12));
+            buffer = (buffer << width) | code;
+            bits += width;
+            while (bits >= 8) {
+                out.write(buffer >> (bits - 8));
+                bits -= 8;
+            }
+            emitted++;
+        }
+
+        byte[] encode(byte[] in) {
+            Map<Integer, Integer> dict = new HashMap<Integer, Integer>();
+            int nextCode = 258;
+            emit(256);
+            emitted = 0;
+            int w = -1;
+            for (byte b : in) {
+                int c = b & 0xff;
+                if (w < 0) {
+                    w = c;
+                    continue;
+                }
+                Integer code = dict.get(w << 8 | c);
+                if (code != null) {
+                    w = code;
+                    continue;
+                }
+                emit(w);
+                dict.put(w << 8 | c, nextCode++);
+                w = c;
+                if (nextCode == 4093) {
+                    emit(256);
+                    emitted = 0;
+                    dict.clear();
+                    nextCode = 258;
+                }
+            }
+            if (w >= 0) {
+                emit(w);
+            }
+            emit(257);
+            if (bits > 0) {
+                out.write(buffer << (8 - bits));
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static byte[] createData(int size) {
+        Random random = new Random(42);
+        byte[] data = new byte[size];
+        int i = 0;
+        while (i < size) {
+            int run = 1 + random.nextInt(40);
+            boolean repeat = random.nextBoolean();
+            byte value = (byte)random.nextInt(8);
+            for (int j = 0; j < run && i < size; j++) {
+                data[i++] = repeat ? value : (byte)random.nextInt(256);
+            }
+        }
+        return data;
+    }
+
+    @Test
+    public void testDecode() {
+        byte[] expected = createData(300000);
+        byte[] compressed = new Encoder().encode(expected);
+        byte[] decoded = new byte[expected.length];
+        new TIFFLZWDecoder(expected.length, 1, 1).decode(compressed, decoded, 1);
+        assertArrayEquals(expected, decoded);
+
+        // Repeated single bytes exercise codes which are not yet in the table
+        expected = new byte[5000];
+        compressed = new Encoder().encode(expected);
+        decoded = new byte[expected.length];
+        new TIFFLZWDecoder(expected.length, 1, 1).decode(compressed, decoded, 1);
+        assertArrayEquals(expected, decoded);
+    }
+
+    @Test
+    public void testTruncatedOutput() {
+        byte[] data = createData(10000);
+        byte[] decoded = new byte[4321];
+        new TIFFLZWDecoder(decoded.length, 1, 1).decode(new Encoder().encode(data), decoded, 1);
+        byte[] expected = new byte[decoded.length];
+        System.arraycopy(data, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, decoded);
+    }
+
+    @Test
+    public void testPredictor8() {
+        int w = 37;
+        int h = 20;
+        int spp = 3;
+        byte[] expected = createData(w * h * spp);
+        byte[] differenced = expected.clone();
+        int rowLength = w * spp;
+        for (int j = 0; j < h; j++) {
+            for (int i = rowLength - 1; i >= spp; i--) {
+                differenced[j * rowLength + i] -= expected[j * rowLength + i - spp];
+            }
+        }
+        byte[] decoded = new byte[expected.length];
+        new TIFFLZWDecoder(w, 2, spp).decode(new Encoder().encode(differenced), decoded, h);
+        assertArrayEquals(expected, decoded);
+    }
+
+    @Test
+    public void testPredictor16() {
+        testPredictor16(true);
+        testPredictor16(false);
+    }
+
+    private void testPredictor16(boolean bigEndian) {
+        int w = 29;
+        int h = 11;
+        int spp = 2;
+        int count = w * h * spp;
+        Random random = new Random(7);
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (i % (w * spp) < spp ? 0 : samples[i - spp]) + random.nextInt(600) - 300;
+            samples[i] &= 0xffff;
+        }
+        byte[] expected = new byte[count * 2];
+        byte[] differenced = new byte[count * 2];
+        for (int i = 0; i < count; i++) {
+            int diff = i % (w * spp) < spp ? samples[i] : samples[i] - samples[i - spp];
+            put(expected, i, samples[i], bigEndian);
+            put(differenced, i, diff, bigEndian);
+        }
+        byte[] decoded = new byte[expected.length];
+        new TIFFLZWDecoder(w, 2, spp, 16, bigEndian).decode(
+                new Encoder().encode(differenced), decoded, h);
+        assertArrayEquals(expected, decoded);
+    }
+
+    private static void put(byte[] data, int index, int value, boolean bigEndian) {
+        data[index * 2 + (bigEndian ? 0 : 1)] = (byte)(value >> 8);
+        data[index * 2 + (bigEndian ? 1 : 0)] = (byte)value;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MappedFileSeekableStreamTestCase {
+
+    private static final int LENGTH = 50000;
+
+    private byte[] createData(File file) throws IOException {
+        byte[] data = new byte[LENGTH];
+        new Random(7).nextBytes(data);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return data;
+    }
+
+    private void compare(SeekableStream expected, SeekableStream actual) throws IOException {
+        Random random = new Random(13);
+        for (int i = 0; i < 2000; i++) {
+            long pos = random.nextInt(LENGTH - 8);
+            expected.seek(pos);
+            actual.seek(pos);
+            switch (i % 8) {
+            case 0:
+                assertEquals(expected.readInt(), actual.readInt());
+                break;
+            case 1:
+                assertEquals(expected.readIntLE(), actual.readIntLE());
+                break;
+            case 2:
+                assertEquals(expected.readShortLE(), actual.readShortLE());
+                break;
+            case 3:
+                assertEquals(expected.readUnsignedShort(), actual.readUnsignedShort());
+                break;
+            case 4:
+                assertEquals(expected.readUnsignedIntLE(), actual.readUnsignedIntLE());
+                break;
+            case 5:
+                assertEquals(expected.readLong(), actual.readLong());
+                break;
+            case 6:
+                assertEquals(expected.readLongLE(), actual.readLongLE());
+                break;
+            default:
+                byte[] b1 = new byte[(int)Math.min(random.nextInt(12000), LENGTH - pos)];
+                byte[] b2 = new byte[b1.length];
+                expected.readFully(b1);
+                actual.readFully(b2);
+                assertArrayEquals(b1, b2);
+                break;
+            }
+            assertEquals(expected.getFilePointer(), actual.getFilePointer());
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        File file = File.createTempFile("mfss", ".bin");
+        try {
+            byte[] data = createData(file);
+            for (long windowSize : new long[] {1L << 30, 5000, 4105}) {
+                SeekableStream stream = new MappedFileSeekableStream(file, windowSize);
+                try {
+                    compare(new MemoryCacheSeekableStream(new ByteArrayInputStream(data)), stream);
+                } finally {
+                    stream.close();
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testEndOfFile() throws IOException {
+        File file = File.createTempFile("mfss", ".bin");
+        try {
+            byte[] data = createData(file);
+            SeekableStream stream = new MappedFileSeekableStream(file, 5000);
+            try {
+                stream.seek(LENGTH - 2);
+                try {
+                    stream.readInt();
+                    fail("EOFException expected");
+                } catch (EOFException eofe) {
+                    //expected
+                }
+                assertEquals(data[LENGTH - 2] & 0xff, stream.read());
+                byte[] b = new byte[10];
+                assertEquals(1, stream.read(b, 0, 10));
+                assertEquals(-1, stream.read());
+                assertEquals(-1, stream.read(b, 0, 10));
+                stream.seek(LENGTH + 10);
+                assertEquals(-1, stream.read());
+            } finally {
+                stream.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadAfterClose() throws IOException {
+        File file = File.createTempFile("mfss", ".bin");
+        try {
+            createData(file);
+            for (long windowSize : new long[] {1L << 30, 5000}) {
+                SeekableStream stream = new MappedFileSeekableStream(file, windowSize);
+                stream.close();
+                stream.seek(LENGTH - 100);
+                try {
+                    stream.readInt();
+                    fail("IOException expected");
+                } catch (IOException ioe) {
+                    //expected
+                }
+                try {
+                    stream.read(new byte[10], 0, 10);
+                    fail("IOException expected");
+                } catch (IOException ioe) {
+                    //expected
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
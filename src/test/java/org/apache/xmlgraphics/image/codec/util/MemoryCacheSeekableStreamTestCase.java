@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.xmlgraphics.io.Resource;
+import org.apache.xmlgraphics.io.TempResourceResolver;
+
+public class MemoryCacheSeekableStreamTestCase {
+
+    private static final int LENGTH = 300000;
+
+    private static byte[] createData() {
+        byte[] data = new byte[LENGTH];
+        new Random(3).nextBytes(data);
+        return data;
+    }
+
+    /** Returns at most 1000 bytes per read like a slow network stream. */
+    private static InputStream createSource(byte[] data) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1000));
+            }
+        };
+    }
+
+    private static void checkRandomReads(byte[] data, SeekableStream stream) throws IOException {
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            int pos = random.nextInt(LENGTH);
+            stream.seek(pos);
+            if (i % 2 == 0) {
+                assertEquals(data[pos] & 0xff, stream.read());
+            } else {
+                byte[] b = new byte[Math.min(random.nextInt(100000), LENGTH - pos)];
+                stream.readFully(b);
+                for (int j = 0; j < b.length; j++) {
+                    if (b[j] != data[pos + j]) {
+                        fail("Mismatch at " + (pos + j));
+                    }
+                }
+            }
+        }
+        stream.seek(LENGTH);
+        assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        byte[] data = createData();
+        MemoryCacheSeekableStream stream = new MemoryCacheSeekableStream(createSource(data));
+        // Sequential reads fill the cache chunk by chunk
+        byte[] b = new byte[LENGTH];
+        stream.readFully(b);
+        assertArrayEquals(data, b);
+        checkRandomReads(data, stream);
+        stream.close();
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        long pooled = ChunkPool.SHARED.getPooledBytes();
+        MemoryCacheSeekableStream stream = new MemoryCacheSeekableStream(
+                new ByteArrayInputStream(createData()));
+        stream.seek(100000);
+        stream.read();
+        stream.close();
+        assertTrue(ChunkPool.SHARED.getPooledBytes() > pooled);
+        try {
+            stream.read();
+            fail("IOException expected");
+        } catch (IOException ioe) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        final Map<String, ByteArrayOutputStream> resources
+                = new HashMap<String, ByteArrayOutputStream>();
+        TempResourceResolver resolver = new TempResourceResolver() {
+            public Resource getResource(String id) {
+                return new Resource(new ByteArrayInputStream(resources.get(id).toByteArray()));
+            }
+
+            public OutputStream getOutputStream(String id) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                resources.put(id, out);
+                return out;
+            }
+        };
+        byte[] data = createData();
+        MemoryCacheSeekableStream stream = new MemoryCacheSeekableStream(
+                createSource(data), resolver, 50000);
+        stream.seek(40000);
+        assertEquals(data[40000] & 0xff, stream.read());
+        assertEquals(0, resources.size());
+        checkRandomReads(data, stream);
+        assertEquals(1, resources.size());
+        assertEquals(LENGTH, resources.values().iterator().next().size());
+        stream.close();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Measures the primitive read methods of the <code>SeekableStream</code>
+ * implementations. Not run as part of the test suite, start it with
+ * <code>main()</code>.
+ */
+public final class SeekableStreamBenchmark {
+
+    private static final int LENGTH = 4 * 1024 * 1024;
+
+    private static final int ROUNDS = 10;
+
+    private SeekableStreamBenchmark() {
+    }
+
+    private interface StreamFactory {
+        SeekableStream create() throws IOException;
+    }
+
+    private static long readAll(SeekableStream stream) throws IOException {
+        long sum = 0;
+        for (int i = 0; i < LENGTH / 16; i++) {
+            sum += stream.readShort();
+            sum += stream.readUnsignedShortLE();
+            sum += stream.readIntLE();
+            sum += stream.readLong();
+        }
+        stream.seek(0);
+        for (int i = 0; i < LENGTH / 4; i++) {
+            sum += stream.readUnsignedInt();
+        }
+        return sum;
+    }
+
+    private static void run(String name, StreamFactory factory) throws IOException {
+        long best = Long.MAX_VALUE;
+        long sum = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            SeekableStream stream = factory.create();
+            try {
+                long start = System.nanoTime();
+                sum += readAll(stream);
+                best = Math.min(best, System.nanoTime() - start);
+            } finally {
+                stream.close();
+            }
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms (" + sum + ")");
+    }
+
+    public static void main(String[] args) throws IOException {
+        final byte[] data = new byte[LENGTH];
+        new Random(1).nextBytes(data);
+        final File file = File.createTempFile("benchmark", ".bin");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        run("MemoryCacheSeekableStream", new StreamFactory() {
+            public SeekableStream create() {
+                return new MemoryCacheSeekableStream(new ByteArrayInputStream(data));
+            }
+        });
+        run("FileCacheSeekableStream", new StreamFactory() {
+            public SeekableStream create() throws IOException {
+                return new FileCacheSeekableStream(new ByteArrayInputStream(data));
+            }
+        });
+        run("MappedFileSeekableStream", new StreamFactory() {
+            public SeekableStream create() throws IOException {
+                return new MappedFileSeekableStream(file);
+            }
+        });
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.codec.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SeekableStreamTestCase {
+
+    private static final int LENGTH = 10007;
+
+    private static byte[] createData() {
+        byte[] data = new byte[LENGTH];
+        new Random(7).nextBytes(data);
+        return data;
+    }
+
+    private static void checkPrimitiveReads(byte[] data, SeekableStream stream) throws IOException {
+        ByteBuffer big = ByteBuffer.wrap(data);
+        ByteBuffer little = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        int pos = 0;
+        int op = 0;
+        while (pos + 8 <= LENGTH) {
+            assertEquals(pos, stream.getFilePointer());
+            switch (op++ % 14) {
+            case 0:
+                assertEquals(big.getShort(pos), stream.readShort());
+                pos += 2;
+                break;
+            case 1:
+                assertEquals(little.getShort(pos), stream.readShortLE());
+                pos += 2;
+                break;
+            case 2:
+                assertEquals(big.getShort(pos) & 0xffff, stream.readUnsignedShort());
+                pos += 2;
+                break;
+            case 3:
+                assertEquals(little.getShort(pos) & 0xffff, stream.readUnsignedShortLE());
+                pos += 2;
+                break;
+            case 4:
+                assertEquals(big.getChar(pos), stream.readChar());
+                pos += 2;
+                break;
+            case 5:
+                assertEquals(little.getChar(pos), stream.readCharLE());
+                pos += 2;
+                break;
+            case 6:
+                assertEquals(big.getInt(pos), stream.readInt());
+                pos += 4;
+                break;
+            case 7:
+                assertEquals(little.getInt(pos), stream.readIntLE());
+                pos += 4;
+                break;
+            case 8:
+                assertEquals(big.getInt(pos) & 0xffffffffL, stream.readUnsignedInt());
+                pos += 4;
+                break;
+            case 9:
+                assertEquals(little.getInt(pos) & 0xffffffffL, stream.readUnsignedIntLE());
+                pos += 4;
+                break;
+            case 10:
+                assertEquals(big.getLong(pos), stream.readLong());
+                pos += 8;
+                break;
+            case 11:
+                assertEquals(little.getLong(pos), stream.readLongLE());
+                pos += 8;
+                break;
+            case 12:
+                assertEquals(data[pos] & 0xff, stream.read());
+                pos++;
+                break;
+            default:
+                assertEquals(data[pos], stream.readByte());
+                pos++;
+                break;
+            }
+        }
+        stream.seek(LENGTH - 3);
+        try {
+            stream.readInt();
+            fail("EOFException expected");
+        } catch (EOFException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testMemoryCacheSeekableStream() throws IOException {
+        byte[] data = createData();
+        checkPrimitiveReads(data, new MemoryCacheSeekableStream(new ByteArrayInputStream(data)));
+    }
+
+    @Test
+    public void testFileCacheSeekableStream() throws IOException {
+        byte[] data = createData();
+        SeekableStream stream = new FileCacheSeekableStream(new ByteArrayInputStream(data));
+        try {
+            checkPrimitiveReads(data, stream);
+            // Seek backwards across the read buffer
+            Random random = new Random(11);
+            for (int i = 0; i < 1000; i++) {
+                int pos = random.nextInt(LENGTH - 8);
+                stream.seek(pos);
+                assertEquals(ByteBuffer.wrap(data).getLong(pos), stream.readLong());
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testForwardSeekableStream() throws IOException {
+        byte[] data = createData();
+        checkPrimitiveReads(data, new ForwardSeekableStream(new ByteArrayInputStream(data)));
+    }
+}
@@ -24,8 +24,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.imageio.stream.ImageInputStream;
 import javax.xml.transform.Source;
@@ -105,6 +107,36 @@ public class ImageLoaderTestCase {
         sessionContext.checkAllStreamsClosed();
     }
 
+    @Test
+    public void testSubsampleToTargetResolution() throws Exception {
+        String uri = "bgimg72dpi.gif";
+
+        MyImageSessionContext sessionContext = createImageSessionContext();
+        ImageManager manager = imageContext.getImageManager();
+
+        ImageInfo info = manager.preloadImage(uri, sessionContext);
+        Map<String, Object> hints = new HashMap<String, Object>();
+        hints.put(ImageProcessingHints.TARGET_RESOLUTION, 36);
+        hints.put(ImageProcessingHints.SUBSAMPLE_TO_TARGET_RESOLUTION, Boolean.TRUE);
+        ImageRendered imgRed = (ImageRendered) manager.getImage(info,
+                ImageFlavor.RENDERED_IMAGE, hints, sessionContext);
+        assertEquals(96, imgRed.getRenderedImage().getWidth());
+        assertEquals(96, imgRed.getRenderedImage().getHeight());
+        ImageSize size = imgRed.getInfo().getSize();
+        assertEquals(96, size.getWidthPx());
+        assertEquals(36, size.getDpiHorizontal(), 0.001);
+        assertEquals(192000, size.getWidthMpt());
+        assertEquals(192000, size.getHeightMpt());
+
+        //The subsampled image must not be returned for the full image
+        hints.remove(ImageProcessingHints.SUBSAMPLE_TO_TARGET_RESOLUTION);
+        imgRed = (ImageRendered) manager.getImage(info,
+                ImageFlavor.RENDERED_IMAGE, hints, sessionContext);
+        assertEquals(192, imgRed.getRenderedImage().getWidth());
+
+        sessionContext.checkAllStreamsClosed();
+    }
+
     @Test
     public void testEPSASCII() throws Exception {
         String uri = "barcode.eps";
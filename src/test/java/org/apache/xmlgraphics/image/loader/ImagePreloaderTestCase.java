@@ -19,9 +19,12 @@
 
 package org.apache.xmlgraphics.image.loader;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import javax.xml.transform.Source;
 import javax.xml.transform.TransformerException;
@@ -33,8 +36,12 @@ import org.xml.sax.InputSource;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
+import org.apache.xmlgraphics.image.codec.tiff.TIFFEncodeParam;
+import org.apache.xmlgraphics.image.codec.tiff.TIFFImageEncoder;
 import org.apache.xmlgraphics.image.loader.spi.ImageLoaderFactory;
 import org.apache.xmlgraphics.util.MimeConstants;
 
@@ -123,6 +130,56 @@ public class ImagePreloaderTestCase {
         assertEquals(204, info.getSize().getDpiHorizontal(), 0.1);
         assertEquals(550588, info.getSize().getWidthMpt());
         assertEquals(66706, info.getSize().getHeightMpt());
+        assertEquals(Boolean.FALSE, info.getCustomObjects().get(ImageInfo.HAS_MORE_IMAGES));
+    }
+
+    private void writeTIFF(File file, int pages) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            TIFFImageEncoder encoder = new TIFFImageEncoder(out, new TIFFEncodeParam());
+            Object context = null;
+            for (int i = 0; i < pages; i++) {
+                context = encoder.encodeMultiple(context,
+                        new BufferedImage(10 + i, 5, BufferedImage.TYPE_BYTE_GRAY));
+            }
+            encoder.finishMultiple(context);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testTIFFMultiPage() throws Exception {
+        File file = File.createTempFile("multi-page", ".tif");
+        try {
+            writeTIFF(file, 3);
+            String uri = file.toURI().toString();
+
+            ImageSessionContext sessionContext = imageContext.newSessionContext();
+            ImageManager manager = imageContext.getImageManager();
+
+            ImageInfo first = manager.preloadImage(uri + "#page=1", sessionContext);
+            ImageInfo last = manager.preloadImage(uri + "#page=3", sessionContext);
+            assertEquals(10, first.getSize().getWidthPx());
+            assertEquals(12, last.getSize().getWidthPx());
+            assertEquals(Boolean.TRUE, first.getCustomObjects().get(ImageInfo.HAS_MORE_IMAGES));
+            assertEquals(Boolean.FALSE, last.getCustomObjects().get(ImageInfo.HAS_MORE_IMAGES));
+            //The pages of a file share one directory index
+            Object index = first.getCustomObjects().get("TIFF_DIRECTORY_INDEX");
+            assertNotNull(index);
+            assertSame(index, last.getCustomObjects().get("TIFF_DIRECTORY_INDEX"));
+
+            //A changed file gets a new index
+            long lastModified = file.lastModified();
+            writeTIFF(file, 2);
+            file.setLastModified(lastModified + 2000);
+            ImageInfo second = manager.preloadImage(uri + "#page=2", sessionContext);
+            assertEquals(11, second.getSize().getWidthPx());
+            assertEquals(Boolean.FALSE, second.getCustomObjects().get(ImageInfo.HAS_MORE_IMAGES));
+            assertNotSame(index, second.getCustomObjects().get("TIFF_DIRECTORY_INDEX"));
+        } finally {
+            file.delete();
+        }
     }
 
     @Test
@@ -20,6 +20,8 @@
 package org.apache.xmlgraphics.image.loader.impl;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -31,7 +33,9 @@ import org.apache.xmlgraphics.image.loader.ImageContext;
 import org.apache.xmlgraphics.image.loader.ImageException;
 import org.apache.xmlgraphics.image.loader.ImageFlavor;
 import org.apache.xmlgraphics.image.loader.ImageInfo;
+import org.apache.xmlgraphics.image.loader.ImageProcessingHints;
 import org.apache.xmlgraphics.image.loader.ImageSessionContext;
+import org.apache.xmlgraphics.image.loader.ImageSize;
 import org.apache.xmlgraphics.image.loader.MockImageContext;
 import org.apache.xmlgraphics.image.loader.MockImageSessionContext;
 import org.apache.xmlgraphics.util.MimeConstants;
@@ -54,6 +58,22 @@ public class ImageLoaderPNGTestCase {
         assertTrue(im instanceof ImageRendered);
     }
 
+    @Test
+    public void testSubsampling() throws ImageException, IOException {
+        ImageContext context = MockImageContext.newSafeInstance();
+        ImageSessionContext session = new MockImageSessionContext(context);
+        ImageInfo info = new ImageInfo("basn2c08.png", MimeConstants.MIME_PNG);
+        info.setSize(new ImageSize(32, 32, 72));
+        Map<String, Object> hints = new HashMap<String, Object>();
+        hints.put(ImageProcessingHints.SUBSAMPLING, 2);
+        ImageRendered im = (ImageRendered) ilpng.loadImage(info, hints, session);
+        assertEquals(16, im.getRenderedImage().getWidth());
+        assertEquals(16, im.getRenderedImage().getHeight());
+        assertEquals(16, im.getSize().getHeightPx());
+        assertEquals(36, im.getSize().getDpiVertical(), 0.001);
+        assertEquals(info.getSize().getHeightMpt(), im.getSize().getHeightMpt());
+    }
+
     @Test
     public void testGetTargetFlavor() {
         assertEquals(ImageFlavor.RENDERED_IMAGE, ilpng.getTargetFlavor());
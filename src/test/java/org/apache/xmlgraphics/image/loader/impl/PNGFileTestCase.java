@@ -19,13 +19,24 @@
 
 package org.apache.xmlgraphics.image.loader.impl;
 
+import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.ComponentColorModel;
 import java.awt.image.IndexColorModel;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -36,6 +47,7 @@ import org.apache.xmlgraphics.image.loader.ImageSessionContext;
 import org.apache.xmlgraphics.image.loader.MockImageContext;
 import org.apache.xmlgraphics.image.loader.MockImageSessionContext;
 import org.apache.xmlgraphics.util.MimeConstants;
+import org.apache.xmlgraphics.util.io.IOUtils;
 
 public class PNGFileTestCase implements PNGConstants {
 
@@ -85,6 +97,46 @@ public class PNGFileTestCase implements PNGConstants {
         assertEquals("PNG unknown critical chunk: IBLA", exception);
     }
 
+    @Test
+    public void testIDATStreaming() throws ImageException, IOException {
+        ImageContext context = MockImageContext.newSafeInstance();
+        ImageSessionContext session = new MockImageSessionContext(context);
+        ImageInfo info = new ImageInfo("big-image.png", MimeConstants.MIME_PNG);
+        ImageRawPNG irpng = (ImageRawPNG) new ImageLoaderRawPNG().loadImage(info, null, session);
+        assertEquals(15, irpng.getPredictor());
+        assertEquals(irpng.getColorModel() instanceof IndexColorModel ? 1
+                : irpng.getColorModel().getNumComponents(), irpng.getColors());
+        InputStream idat = irpng.createInputStream();
+        assertTrue(idat instanceof IDATInputStream);
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try {
+            IOUtils.copy(idat, streamed);
+        } finally {
+            idat.close();
+        }
+
+        // the four IDAT chunks, read into memory from a stream that cannot seek
+        InputStream in = new BufferedInputStream(new FileInputStream("test/images/big-image.png"));
+        try {
+            PNGFile png = new PNGFile(in, "big-image.png");
+            ImageRawPNG buffered = png.getImageRawPNG(info);
+            assertEquals(buffered.getColumns(), irpng.getColumns());
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            buffered.writeTo(expected);
+            assertArrayEquals(expected.toByteArray(), streamed.toByteArray());
+        } finally {
+            in.close();
+        }
+
+        // the data must be a complete zlib stream of the filtered rows
+        byte[] rows = IOUtils.toByteArray(new InflaterInputStream(
+                new ByteArrayInputStream(streamed.toByteArray())));
+        BufferedImage image = ImageIO.read(new File("test/images/big-image.png"));
+        assertEquals(image.getWidth(), irpng.getColumns());
+        int bytesPerRow = 1 + (irpng.getColumns() * irpng.getColors() * irpng.getBitDepth() + 7) / 8;
+        assertEquals(image.getHeight() * bytesPerRow, rows.length);
+    }
+
     private void testColorTypePNG(String imageName, int colorType) throws ImageException, IOException {
         testColorTypePNG(imageName, colorType, false);
     }
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class Any2sRGBRedTestCase {
+
+    private static final int WIDTH = 37;
+
+    private static final int HEIGHT = 23;
+
+    private static int toLinear(int value) {
+        return (int) Math.round(Any2LsRGBRed.sRGBToLsRGB(value / 255.0) * 255.0);
+    }
+
+    private static int toSRGB(int value) {
+        double v = value / 255.0;
+        if (v <= 0.0031308) {
+            v *= 12.92;
+        } else {
+            v = 1.055 * Math.pow(v, 1.0 / 2.4) - 0.055;
+        }
+        return (int) Math.round(v * 255.0);
+    }
+
+    private static BufferedImage fill(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        Random random = new Random(7);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                for (int b = 0; b < raster.getNumBands(); b++) {
+                    raster.setSample(x, y, b, random.nextInt(256));
+                }
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage createInterleaved(ColorSpace cs, boolean alpha) {
+        ColorModel cm = new ComponentColorModel(cs, alpha, false,
+                alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        return fill(new BufferedImage(cm, cm.createCompatibleWritableRaster(WIDTH, HEIGHT),
+                false, null));
+    }
+
+    private static BufferedImage createBanded(ColorSpace cs) {
+        ColorModel cm = new ComponentColorModel(cs, false, false, Transparency.OPAQUE,
+                DataBuffer.TYPE_BYTE);
+        WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, WIDTH, HEIGHT, 3,
+                new Point(0, 0));
+        return fill(new BufferedImage(cm, raster, false, null));
+    }
+
+    private static void assertConverted(Raster src, Raster dst, boolean toLinear) {
+        assertEquals(src.getBounds(), dst.getBounds());
+        for (int y = src.getMinY(); y < src.getMinY() + src.getHeight(); y++) {
+            for (int x = src.getMinX(); x < src.getMinX() + src.getWidth(); x++) {
+                for (int b = 0; b < src.getNumBands(); b++) {
+                    int value = src.getSample(x, y, b);
+                    int expected = b == 3 ? value : (toLinear ? toLinear(value) : toSRGB(value));
+                    assertEquals("sample " + b + " at " + x + "," + y,
+                            expected, dst.getSample(x, y, b));
+                }
+            }
+        }
+    }
+
+    private static void checkToLinear(BufferedImage image) {
+        CachableRed src = new BufferedImageCachableRed(image);
+        CachableRed red = new Any2LsRGBRed(src);
+        assertConverted(image.getRaster(), red.getData(), true);
+
+        // Byte destination rasters are converted in place
+        WritableRaster wr = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, WIDTH, HEIGHT,
+                image.getRaster().getNumBands(), null);
+        red.copyData(wr);
+        assertConverted(image.getRaster(), wr, true);
+    }
+
+    private static void checkToSRGB(BufferedImage image) {
+        CachableRed red = new Any2sRGBRed(new BufferedImageCachableRed(image));
+        assertConverted(image.getRaster(), red.getData(), false);
+
+        WritableRaster wr = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, WIDTH, HEIGHT,
+                image.getRaster().getNumBands(), null);
+        red.copyData(wr);
+        assertConverted(image.getRaster(), wr, false);
+    }
+
+    @Test
+    public void testIntPackedToLinear() {
+        checkToLinear(fill(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB)));
+        checkToLinear(fill(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB)));
+    }
+
+    @Test
+    public void testByteInterleavedToLinear() {
+        ColorSpace sRGB = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+        checkToLinear(fill(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR)));
+        checkToLinear(fill(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR)));
+        checkToLinear(createInterleaved(sRGB, false));
+        checkToLinear(createInterleaved(sRGB, true));
+    }
+
+    @Test
+    public void testByteBandedToLinear() {
+        checkToLinear(createBanded(ColorSpace.getInstance(ColorSpace.CS_sRGB)));
+    }
+
+    @Test
+    public void testToSRGB() {
+        ColorSpace linearRGB = ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB);
+        checkToSRGB(createInterleaved(linearRGB, false));
+        checkToSRGB(createInterleaved(linearRGB, true));
+        checkToSRGB(createBanded(linearRGB));
+    }
+
+    @Test
+    public void testTiledSource() {
+        CachableRed src = new TileSchedulerTestCase.PatternRed(300, 200, 64);
+        CachableRed red = new Any2LsRGBRed(src);
+        Rectangle rect = new Rectangle(10, 20, 250, 150);
+        assertConverted(src.getData(rect), red.getData(rect), true);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Random;
+
+/**
+ * Measures the sRGB to linear RGB conversion of <code>Any2LsRGBRed</code>
+ * and the reverse conversion of <code>Any2sRGBRed</code> for common
+ * source layouts. Not run as part of the test suite, start it with
+ * <code>main()</code>.
+ */
+public final class GammaConversionBenchmark {
+
+    private static final int WIDTH = 2000;
+
+    private static final int HEIGHT = 1500;
+
+    private static final int ROUNDS = 20;
+
+    private GammaConversionBenchmark() {
+    }
+
+    private static BufferedImage fill(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        Random random = new Random(1);
+        int[] row = new int[WIDTH * raster.getNumBands()];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = random.nextInt(256);
+            }
+            raster.setPixels(0, y, WIDTH, 1, row);
+        }
+        return image;
+    }
+
+    private static BufferedImage createBanded(ColorSpace cs) {
+        ColorModel cm = new ComponentColorModel(cs, false, false, Transparency.OPAQUE,
+                DataBuffer.TYPE_BYTE);
+        WritableRaster raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, WIDTH, HEIGHT, 3,
+                new Point(0, 0));
+        return fill(new BufferedImage(cm, raster, false, null));
+    }
+
+    private static BufferedImage createInterleaved(ColorSpace cs, boolean alpha) {
+        ColorModel cm = new ComponentColorModel(cs, alpha, false,
+                alpha ? Transparency.TRANSLUCENT : Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        return fill(new BufferedImage(cm, cm.createCompatibleWritableRaster(WIDTH, HEIGHT),
+                false, null));
+    }
+
+    private static void run(String name, CachableRed image) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            image.getData();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms");
+    }
+
+    public static void main(String[] args) {
+        ColorSpace sRGB = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+        ColorSpace linearRGB = ColorSpace.getInstance(ColorSpace.CS_LINEAR_RGB);
+        run("sRGB -> linear, int packed RGB", new Any2LsRGBRed(new BufferedImageCachableRed(
+                fill(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB)))));
+        run("sRGB -> linear, int packed ARGB", new Any2LsRGBRed(new BufferedImageCachableRed(
+                fill(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB)))));
+        run("sRGB -> linear, byte interleaved RGB", new Any2LsRGBRed(
+                new BufferedImageCachableRed(createInterleaved(sRGB, false))));
+        run("sRGB -> linear, byte interleaved RGBA", new Any2LsRGBRed(
+                new BufferedImageCachableRed(createInterleaved(sRGB, true))));
+        run("sRGB -> linear, 3BYTE_BGR", new Any2LsRGBRed(new BufferedImageCachableRed(
+                fill(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR)))));
+        run("sRGB -> linear, byte banded RGB", new Any2LsRGBRed(
+                new BufferedImageCachableRed(createBanded(sRGB))));
+        run("linear -> sRGB, byte interleaved RGB", new Any2sRGBRed(
+                new BufferedImageCachableRed(createInterleaved(linearRGB, false))));
+        run("linear -> sRGB, byte banded RGB", new Any2sRGBRed(
+                new BufferedImageCachableRed(createBanded(linearRGB))));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TileCacheTestCase {
+
+    private static final int TILE_BYTES = 32 * 32 * 4;
+
+    /** An image of 2x2 tiles that counts how often tiles are computed. */
+    private static class CountingRed extends AbstractRed {
+
+        private final TileCache cache;
+        private int computed;
+
+        CountingRed(TileCache cache) {
+            ColorModel cm = ColorModel.getRGBdefault();
+            init((CachableRed) null, new Rectangle(0, 0, 64, 64), cm,
+                    cm.createCompatibleSampleModel(32, 32), 0, 0, null);
+            this.cache = cache;
+        }
+
+        public WritableRaster copyData(WritableRaster wr) {
+            computed++;
+            return wr;
+        }
+
+        protected TileCache getTileCache() {
+            return cache;
+        }
+    }
+
+    @Test
+    public void testTilesAreComputedOnce() {
+        TileCache cache = new TileCache(4 * TILE_BYTES);
+        CountingRed red = new CountingRed(cache);
+        Raster tile = red.getTile(1, 0);
+        assertSame(tile, red.getTile(1, 0));
+        red.getTile(0, 1);
+        assertEquals(2, red.computed);
+        assertEquals(2 * TILE_BYTES, cache.getMemoryUsage());
+
+        cache.removeTiles(red);
+        assertEquals(0, cache.getMemoryUsage());
+        red.getTile(1, 0);
+        assertEquals(3, red.computed);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTilesAreEvicted() {
+        TileCache cache = new TileCache(2 * TILE_BYTES);
+        CountingRed red = new CountingRed(cache);
+        CountingRed other = new CountingRed(cache);
+        red.getTile(0, 0);
+        other.getTile(0, 0);
+        red.getTile(0, 0);
+        red.getTile(1, 1);
+        assertEquals(2 * TILE_BYTES, cache.getMemoryUsage());
+        assertNull(cache.getTile(other, 0, 0));
+        red.getTile(0, 0);
+        assertEquals(2, red.computed);
+
+        cache.setMemoryCapacity(TILE_BYTES);
+        assertEquals(TILE_BYTES, cache.getMemoryUsage());
+        cache.flush();
+        assertEquals(0, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testDisabledCache() {
+        CountingRed red = new CountingRed(null);
+        red.getTile(0, 0);
+        red.getTile(0, 0);
+        assertEquals(2, red.computed);
+
+        TileCache cache = new TileCache(0);
+        red = new CountingRed(cache);
+        red.getTile(0, 0);
+        red.getTile(0, 0);
+        assertEquals(2, red.computed);
+        assertEquals(0, cache.getMemoryUsage());
+    }
+
+    @Test
+    public void testDefaultCache() {
+        assertNull(TileCache.getDefaultInstance());
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        CachableRed red = new Any2sRGBRed(new BufferedImageCachableRed(image));
+        TileCache cache = new TileCache(TileCache.DEFAULT_MEMORY_CAPACITY);
+        TileCache.setDefaultInstance(cache);
+        try {
+            assertSame(red.getTile(0, 0), red.getTile(0, 0));
+            assertNotNull(cache.getTile(red, 0, 0));
+
+            //A cached tile is not refreshed until the image's tiles are removed
+            image.setRGB(5, 5, 0xff0000);
+            assertEquals(0, red.getTile(0, 0).getSample(5, 5, 0));
+            cache.removeTiles(red);
+            assertEquals(0xff, red.getTile(0, 0).getSample(5, 5, 0));
+        } finally {
+            TileCache.setDefaultInstance(null);
+        }
+    }
+
+    @Test
+    public void testChangedSourceWithoutCache() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        CachableRed red = new Any2sRGBRed(new BufferedImageCachableRed(image));
+        Raster tile = red.getTile(0, 0);
+        assertEquals(0, tile.getSample(5, 5, 0));
+        assertNotSame(tile, red.getTile(0, 0));
+
+        image.setRGB(5, 5, 0xff0000);
+        assertEquals(0xff, red.getTile(0, 0).getSample(5, 5, 0));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+/**
+ * Measures <code>getData()</code> on a color conversion chain with and
+ * without a {@link TileScheduler}. Not run as part of the test suite,
+ * start it with <code>main()</code>.
+ */
+public final class TileSchedulerBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    private TileSchedulerBenchmark() {
+    }
+
+    private static void run(String name, CachableRed image) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            image.getData();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms");
+    }
+
+    public static void main(String[] args) {
+        CachableRed chain = new Any2sRGBRed(new Any2LsRGBRed(
+                new TileSchedulerTestCase.PatternRed(4000, 3000, 256)));
+        TileScheduler scheduler = new TileScheduler();
+        // alternate the runs so that both profit from the warmed up JIT
+        for (int i = 0; i < 2; i++) {
+            TileScheduler.setDefaultInstance(null);
+            run("sequential", chain);
+            TileScheduler.setDefaultInstance(scheduler);
+            run("parallel (" + scheduler.getPool().getParallelism() + " threads)", chain);
+        }
+    }
+}
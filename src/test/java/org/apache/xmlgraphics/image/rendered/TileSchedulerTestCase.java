@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.image.rendered;
+
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TileSchedulerTestCase {
+
+    /** A tiled image with a pattern computed from the pixel coordinates. */
+    static class PatternRed extends AbstractRed {
+
+        PatternRed(int width, int height, int tileSize) {
+            ColorModel cm = ColorModel.getRGBdefault();
+            init((CachableRed) null, new Rectangle(0, 0, width, height), cm,
+                    cm.createCompatibleSampleModel(tileSize, tileSize), 0, 0, null);
+        }
+
+        public WritableRaster copyData(WritableRaster wr) {
+            Rectangle area = wr.getBounds().intersection(getBounds());
+            int[] pixel = new int[4];
+            for (int y = area.y; y < area.y + area.height; y++) {
+                for (int x = area.x; x < area.x + area.width; x++) {
+                    pixel[0] = x & 0xff;
+                    pixel[1] = y & 0xff;
+                    pixel[2] = (x * y) & 0xff;
+                    pixel[3] = 0xff;
+                    wr.setPixel(x, y, pixel);
+                }
+            }
+            return wr;
+        }
+
+        protected TileCache getTileCache() {
+            return null;
+        }
+    }
+
+    private static int[] getPixels(Raster raster) {
+        return raster.getPixels(raster.getMinX(), raster.getMinY(), raster.getWidth(),
+                raster.getHeight(), (int[]) null);
+    }
+
+    @Test
+    public void testParallelGetData() {
+        CachableRed chain = new Any2sRGBRed(new Any2LsRGBRed(new PatternRed(300, 200, 64)));
+        assertEquals(5, chain.getNumXTiles());
+        Rectangle rect = new Rectangle(10, 20, 250, 150);
+        int[] expected = getPixels(chain.getData(rect));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TileScheduler.setDefaultInstance(new TileScheduler(pool));
+            Raster parallel = chain.getData(rect);
+            assertEquals(rect, parallel.getBounds());
+            assertArrayEquals(expected, getPixels(parallel));
+
+            WritableRaster wr = chain.getColorModel().createCompatibleWritableRaster(250, 150)
+                    .createWritableTranslatedChild(10, 20);
+            new TileScheduler(pool).copyData(chain, wr);
+            assertArrayEquals(expected, getPixels(wr));
+        } finally {
+            TileScheduler.setDefaultInstance(null);
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.java2d.color;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RGBToCMYKConverterTestCase {
+
+    private static final int WIDTH = 211;
+
+    private static final int HEIGHT = 157;
+
+    private static ICC_ColorSpace cmyk;
+
+    @BeforeClass
+    public static void loadProfile() throws IOException {
+        cmyk = new ICC_ColorSpace(ICC_Profile.getInstance("test/images/ISOcoated_v2_300_bas.icc"));
+    }
+
+    private static BufferedImage createImage(int type) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        Random random = new Random(11);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    private static int[] getPixels(BufferedImage image) {
+        return image.getRaster().getPixels(0, 0, image.getWidth(), image.getHeight(), (int[]) null);
+    }
+
+    private static BufferedImage toRGB(BufferedImage image) {
+        BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgbImage.createGraphics();
+        g.setBackground(Color.WHITE);
+        g.clearRect(0, 0, image.getWidth(), image.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgbImage;
+    }
+
+    private static void assertClose(BufferedImage expected, BufferedImage actual, int maxError,
+            double maxMeanError) {
+        int[] e = getPixels(expected);
+        int[] a = getPixels(actual);
+        assertEquals(e.length, a.length);
+        long sum = 0;
+        for (int i = 0; i < e.length; i++) {
+            int error = Math.abs(e[i] - a[i]);
+            assertTrue("sample " + i + ": " + e[i] + " != " + a[i], error <= maxError);
+            sum += error;
+        }
+        assertTrue("mean error " + (double) sum / e.length,
+                (double) sum / e.length <= maxMeanError);
+    }
+
+    private static void checkAccuracy(int gridPoints, int maxError, double maxMeanError) {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB);
+        RGBToCMYKConverter converter = new RGBToCMYKConverter(cmyk, RenderingIntent.AUTO,
+                gridPoints, null);
+        BufferedImage actual = converter.convert(image);
+        assertEquals(WIDTH, actual.getWidth());
+        assertEquals(HEIGHT, actual.getHeight());
+        assertSame(cmyk, actual.getColorModel().getColorSpace());
+        BufferedImage expected = new ColorConvertOp(image.getColorModel().getColorSpace(), cmyk,
+                null).filter(image, null);
+        assertClose(expected, actual, maxError, maxMeanError);
+    }
+
+    @Test
+    public void testAccuracy() {
+        checkAccuracy(17, 12, 0.5);
+        checkAccuracy(33, 6, 0.2);
+    }
+
+    @Test
+    public void testGridPointsAreExact() {
+        BufferedImage image = new BufferedImage(3, 1, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0x000000);
+        image.setRGB(1, 0, 0xFFFFFF);
+        image.setRGB(2, 0, 0x00FF00);
+        BufferedImage expected = new ColorConvertOp(image.getColorModel().getColorSpace(), cmyk,
+                null).filter(image, null);
+        assertClose(expected, new RGBToCMYKConverter(cmyk, RenderingIntent.AUTO, 2, null)
+                .convert(image), 1, 1);
+    }
+
+    @Test
+    public void testLayouts() {
+        RGBToCMYKConverter converter = new RGBToCMYKConverter(cmyk, RenderingIntent.AUTO, 17,
+                null);
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB);
+        int[] expected = getPixels(converter.convert(image));
+
+        BufferedImage bgr = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        bgr.getRaster().setRect(image.getRaster());
+        assertArrayEquals(expected, getPixels(converter.convert(bgr)));
+
+        BufferedImage intBGR = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_BGR);
+        intBGR.getRaster().setRect(image.getRaster());
+        assertArrayEquals(expected, getPixels(converter.convert(intBGR)));
+
+        ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB),
+                false, false, Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+        WritableRaster banded = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, WIDTH, HEIGHT, 3,
+                new Point(0, 0));
+        banded.setRect(image.getRaster());
+        assertArrayEquals(expected, getPixels(converter.convert(
+                new BufferedImage(cm, banded, false, null))));
+
+        // Sub-images start inside the data arrays
+        BufferedImage sub = bgr.getSubimage(10, 20, 100, 50);
+        assertArrayEquals(getPixels(converter.convert(image.getSubimage(10, 20, 100, 50))),
+                getPixels(converter.convert(sub)));
+    }
+
+    @Test
+    public void testAlphaIsCompositedOntoWhite() {
+        RGBToCMYKConverter converter = new RGBToCMYKConverter(cmyk, RenderingIntent.AUTO, 17,
+                null);
+        BufferedImage argb = createImage(BufferedImage.TYPE_INT_ARGB);
+        assertClose(converter.convert(toRGB(argb)), converter.convert(argb), 4, 0.5);
+
+        BufferedImage abgr = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_4BYTE_ABGR);
+        abgr.getRaster().setRect(argb.getRaster());
+        assertArrayEquals(getPixels(converter.convert(argb)), getPixels(converter.convert(abgr)));
+
+        // Premultiplied and gray images are drawn into an RGB image first
+        BufferedImage pre = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        pre.getRaster().setRect(argb.getRaster());
+        assertArrayEquals(getPixels(converter.convert(toRGB(pre))),
+                getPixels(converter.convert(pre)));
+        BufferedImage gray = createImage(BufferedImage.TYPE_BYTE_GRAY);
+        assertArrayEquals(getPixels(converter.convert(toRGB(gray))),
+                getPixels(converter.convert(gray)));
+    }
+
+    @Test
+    public void testParallel() {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB);
+        int[] expected = getPixels(new RGBToCMYKConverter(cmyk, RenderingIntent.AUTO, 17, null)
+                .convert(image));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            RGBToCMYKConverter converter = new RGBToCMYKConverter(cmyk, RenderingIntent.AUTO, 17,
+                    pool);
+            assertArrayEquals(expected, getPixels(converter.convert(image)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetInstance() {
+        RGBToCMYKConverter converter = RGBToCMYKConverter.getInstance(cmyk);
+        assertSame(converter, RGBToCMYKConverter.getInstance(cmyk));
+        assertSame(cmyk, converter.getColorSpace());
+        assertEquals(RGBToCMYKConverter.DEFAULT_GRID_POINTS, converter.getGridPoints());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotCMYK() {
+        new RGBToCMYKConverter((ICC_ColorSpace) ColorSpace.getInstance(ColorSpace.CS_sRGB));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidGridPoints() {
+        new RGBToCMYKConverter(cmyk, RenderingIntent.AUTO, 1, null);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.java2d.color.profile;
+
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.xmlgraphics.java2d.color.RenderingIntent;
+
+public class ColorProfileCacheTestCase {
+
+    private static final File CMYK_PROFILE = new File("test/images/ISOcoated_v2_300_bas.icc");
+
+    private static byte[] readProfile() throws IOException {
+        InputStream in = new FileInputStream(CMYK_PROFILE);
+        try {
+            return ICC_Profile.getInstance(in).getData();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSameContentSharesInstances() throws IOException {
+        ColorProfileCache cache = new ColorProfileCache();
+        ICC_Profile profile = cache.getProfile(readProfile());
+        assertSame(profile, cache.getProfile(readProfile()));
+        InputStream in = new FileInputStream(CMYK_PROFILE);
+        try {
+            assertSame(profile, cache.getProfile(in));
+        } finally {
+            in.close();
+        }
+
+        ICC_ColorSpace colorSpace = cache.getColorSpace(profile);
+        assertSame(profile, colorSpace.getProfile());
+        assertSame(colorSpace, cache.getColorSpace(readProfile()));
+        assertSame(colorSpace, cache.getColorSpace(ICC_Profile.getInstance(readProfile())));
+
+        cache.clear();
+        assertNotSame(profile, cache.getProfile(readProfile()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProfile() {
+        new ColorProfileCache().getProfile(new byte[16]);
+    }
+
+    @Test
+    public void testColorConvertOp() throws IOException {
+        ColorProfileCache cache = new ColorProfileCache();
+        ColorSpace sRGB = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+        ColorSpace cmyk = cache.getColorSpace(readProfile());
+        ColorConvertOp op = cache.getColorConvertOp(sRGB, cmyk, RenderingIntent.AUTO);
+        assertSame(op, cache.getColorConvertOp(sRGB, new ICC_ColorSpace(
+                ICC_Profile.getInstance(readProfile())), RenderingIntent.AUTO));
+
+        ColorConvertOp relative = cache.getColorConvertOp(sRGB, cmyk,
+                RenderingIntent.RELATIVE_COLORIMETRIC);
+        assertNotSame(op, relative);
+        assertSame(relative, cache.getColorConvertOp(sRGB, cmyk,
+                RenderingIntent.RELATIVE_COLORIMETRIC));
+
+        BufferedImage image = new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                image.setRGB(x, y, (x * 16) << 16 | (y * 16) << 8 | ((x + y) * 8));
+            }
+        }
+        BufferedImage expected = new ColorConvertOp(sRGB, cmyk, null).filter(image, null);
+        BufferedImage actual;
+        synchronized (op) {
+            actual = op.filter(image, null);
+        }
+        assertArrayEquals(expected.getRaster().getPixels(0, 0, 16, 16, (int[]) null),
+                actual.getRaster().getPixels(0, 0, 16, 16, (int[]) null));
+    }
+}
@@ -24,9 +24,13 @@ import java.awt.color.ICC_Profile;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class ColorProfileUtilTestCase {
@@ -41,4 +45,28 @@ public class ColorProfileUtilTestCase {
         assertTrue(ColorProfileUtil.isDefaultsRGB(profileFromFile));
     }
 
+    @Test
+    public void testGetProfileID() {
+        byte[] data = ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData();
+        Arrays.fill(data, 84, 100, (byte) 0);
+        byte[] id = ColorProfileUtil.getProfileID(data);
+        assertEquals(16, id.length);
+
+        data[44] = 1;
+        data[ICC_Profile.icHdrRenderingIntent + 3] = ICC_Profile.icSaturation;
+        assertArrayEquals(id, ColorProfileUtil.getProfileID(data));
+
+        System.arraycopy(id, 0, data, 84, 16);
+        assertArrayEquals(id, ColorProfileUtil.getProfileID(data));
+
+        Arrays.fill(data, 84, 100, (byte) 0);
+        data[data.length - 1]++;
+        assertFalse(Arrays.equals(id, ColorProfileUtil.getProfileID(data)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetProfileIDTruncated() {
+        ColorProfileUtil.getProfileID(new byte[90]);
+    }
+
 }
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps.dsc;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.xmlgraphics.ps.DSCConstants;
+import org.apache.xmlgraphics.ps.dsc.events.DSCComment;
+import org.apache.xmlgraphics.ps.dsc.events.DSCCommentPageBoundingBox;
+import org.apache.xmlgraphics.ps.dsc.events.DSCEvent;
+import org.apache.xmlgraphics.ps.dsc.events.UnparsedDSCComment;
+
+public class DSCCommentFactoryTestCase {
+
+    private static final String CUSTOM = "XGCustom";
+
+    @After
+    public void tearDown() {
+        DSCCommentFactory.unregister(CUSTOM);
+    }
+
+    @Test
+    public void testBuiltInComments() {
+        DSCComment first = DSCCommentFactory.createDSCCommentFor(DSCConstants.PAGE_BBOX);
+        DSCComment second = DSCCommentFactory.createDSCCommentFor(DSCConstants.PAGE_BBOX);
+        assertTrue(first instanceof DSCCommentPageBoundingBox);
+        assertNotSame(first, second);
+        assertNull(DSCCommentFactory.createDSCCommentFor("NoSuchComment"));
+    }
+
+    @Test
+    public void testCustomComment() throws Exception {
+        String dsc = "%!PS-Adobe-3.0\n"
+                + "%%" + CUSTOM + ": hello\n"
+                + "%%EOF\n";
+
+        assertTrue(parseCustom(dsc) instanceof UnparsedDSCComment);
+
+        DSCCommentFactory.register(CUSTOM, CustomDSCComment::new);
+        assertTrue(DSCCommentFactory.isRegistered(CUSTOM));
+        DSCComment comment = parseCustom(dsc);
+        assertTrue(comment instanceof CustomDSCComment);
+        assertEquals("hello", ((CustomDSCComment) comment).value);
+
+        DSCCommentFactory.unregister(CUSTOM);
+        assertFalse(DSCCommentFactory.isRegistered(CUSTOM));
+        assertTrue(parseCustom(dsc) instanceof UnparsedDSCComment);
+    }
+
+    private DSCComment parseCustom(String dsc) throws Exception {
+        DSCParser parser = new DSCParser(new ByteArrayInputStream(dsc.getBytes("US-ASCII")));
+        while (parser.hasNext()) {
+            DSCEvent event = parser.nextEvent();
+            if (event.isDSCComment() && CUSTOM.equals(event.asDSCComment().getName())) {
+                return event.asDSCComment();
+            }
+        }
+        return null;
+    }
+
+    private static class CustomDSCComment extends UnparsedDSCComment {
+
+        private String value;
+
+        public CustomDSCComment() {
+            super(CUSTOM);
+        }
+
+        public void parseValue(String value) {
+            super.parseValue(value);
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.xmlgraphics.ps.dsc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+import org.apache.xmlgraphics.ps.DSCConstants;
+import org.apache.xmlgraphics.ps.dsc.events.DSCComment;
+import org.apache.xmlgraphics.ps.dsc.events.DSCCommentIncludeResource;
+import org.apache.xmlgraphics.ps.dsc.events.DSCCommentPage;
+import org.apache.xmlgraphics.ps.dsc.events.DSCCommentPageBoundingBox;
+
+/**
+ * Measures <code>DSCParser.parse</code> on a large synthetic PostScript file, once with the
+ * registered comment suppliers and once with suppliers that instantiate the comments
+ * reflectively, as the factory used to. Not run as part of the test suite, start it with
+ * <code>main()</code>.
+ */
+public final class DSCParserBenchmark {
+
+    private static final int PAGES = 50000;
+
+    private static final int ROUNDS = 10;
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private DSCParserBenchmark() {
+    }
+
+    private static byte[] createFile() throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bout, false, "US-ASCII");
+        out.println("%!PS-Adobe-3.0");
+        out.println("%%Pages: " + PAGES);
+        out.println("%%EndComments");
+        for (int i = 1; i <= PAGES; i++) {
+            out.println("%%Page: " + i + " " + i);
+            out.println("%%PageBoundingBox: 0 0 595 842");
+            for (int j = 0; j < 8; j++) {
+                out.println("%%IncludeResource: font F" + j);
+            }
+            out.println("%% a comment");
+            out.println("0 0 moveto 595 842 lineto stroke");
+        }
+        out.println("%%EOF");
+        out.close();
+        return bout.toByteArray();
+    }
+
+    private static void run(String name, byte[] data) throws IOException, DSCException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            DSCParser parser = new DSCParser(new ByteArrayInputStream(data));
+            parser.parse(new DefaultDSCHandler(DISCARD));
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + (best / 1000000) + " ms");
+    }
+
+    private static <T extends DSCComment> Supplier<T> reflective(final Class<T> clazz) {
+        return new Supplier<T>() {
+            public T get() {
+                try {
+                    return clazz.getDeclaredConstructor().newInstance();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    public static void main(String[] args) throws IOException, DSCException {
+        byte[] data = createFile();
+        run("Suppliers", data);
+
+        Supplier<? extends DSCComment> page = DSCCommentFactory.unregister(DSCConstants.PAGE);
+        Supplier<? extends DSCComment> pageBBox
+                = DSCCommentFactory.unregister(DSCConstants.PAGE_BBOX);
+        Supplier<? extends DSCComment> includeResource
+                = DSCCommentFactory.unregister(DSCConstants.INCLUDE_RESOURCE);
+        DSCCommentFactory.register(DSCConstants.PAGE, reflective(DSCCommentPage.class));
+        DSCCommentFactory.register(DSCConstants.PAGE_BBOX,
+                reflective(DSCCommentPageBoundingBox.class));
+        DSCCommentFactory.register(DSCConstants.INCLUDE_RESOURCE,
+                reflective(DSCCommentIncludeResource.class));
+        try {
+            run("Reflection", data);
+        } finally {
+            DSCCommentFactory.register(DSCConstants.PAGE, page);
+            DSCCommentFactory.register(DSCConstants.PAGE_BBOX, pageBBox);
+            DSCCommentFactory.register(DSCConstants.INCLUDE_RESOURCE, includeResource);
+        }
+    }
+}
@@ -20,9 +20,18 @@
 package org.apache.xmlgraphics.ps.dsc;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.apache.xmlgraphics.ps.PSGenerator;
+import org.apache.xmlgraphics.ps.dsc.events.DSCCommentLanguageLevel;
+import org.apache.xmlgraphics.ps.dsc.events.DSCEvent;
+import org.apache.xmlgraphics.ps.dsc.events.PostScriptComment;
+
 public class DSCParserTestCase {
 
     private final String correctDSC
@@ -56,6 +65,52 @@ public class DSCParserTestCase {
         parseDSC(spuriousContentAfterEOF, false);
     }
 
+    private final String mixedContent
+            = "%!PS-Adobe-3.0\r\n"
+            + "%%LanguageLevel: 2\r\n"
+            + "%%DocumentNeededResources: font Helvetica\n"
+            + "%%+ font Times-Roman\n"
+            + "%comment\r"
+            + "\r\n"
+            + "0 0 moveto\n"
+            + "1 1 lineto\n"
+            + "%%EOF\n";
+
+    @Test
+    public void reusedEventsPassThroughUnchanged() throws Exception {
+        assertEquals(passThrough(mixedContent, false), passThrough(mixedContent, true));
+    }
+
+    @Test
+    public void reusedEventsAreRecycled() throws Exception {
+        DSCParser parser = new DSCParser(new ByteArrayInputStream(
+                mixedContent.getBytes("US-ASCII")));
+        parser.setReuseEvents(true);
+        parser.nextEvent(); //header
+        DSCEvent event = parser.nextEvent();
+        assertEquals(2, ((DSCCommentLanguageLevel) event).getLanguageLevel());
+        parser.nextEvent(); //DocumentNeededResources
+        PostScriptComment comment = (PostScriptComment) parser.nextEvent();
+        assertEquals("comment", comment.getComment());
+        DSCEvent empty = parser.nextEvent();
+        assertEquals("", parser.getLine());
+        parser.nextEvent();
+        assertEquals("0 0 moveto", parser.getLine());
+        assertSame(empty, parser.nextEvent());
+        assertEquals("1 1 lineto", parser.getLine());
+    }
+
+    private String passThrough(String dsc, boolean reuseEvents) throws Exception {
+        DSCParser parser = new DSCParser(new ByteArrayInputStream(dsc.getBytes("US-ASCII")));
+        parser.setReuseEvents(reuseEvents);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PSGenerator gen = new PSGenerator(out);
+        while (parser.hasNext()) {
+            parser.nextEvent().generate(gen);
+        }
+        return out.toString("US-ASCII");
+    }
+
     private void parseDSC(String dsc, boolean checkEOF) throws Exception {
         DSCParser parser = new DSCParser(new ByteArrayInputStream(dsc.getBytes("US-ASCII")));
         parser.setCheckEOF(checkEOF);
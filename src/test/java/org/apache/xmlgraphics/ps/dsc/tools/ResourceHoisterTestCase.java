@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.apache.xmlgraphics.ps.dsc.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.xmlgraphics.ps.PSResource;
+
+public class ResourceHoisterTestCase {
+
+    private static final String FONT_A
+            = "%%BeginResource: font FontA\n"
+            + "/FontA 10 dict def\n"
+            + "%%EndResource\n";
+
+    private static final String FONT_B_1
+            = "%%BeginResource: font FontB\n"
+            + "/FontB 1 dict def\n"
+            + "%%EndResource\n";
+
+    private static final String FONT_B_2
+            = "%%BeginResource: font FontB\n"
+            + "/FontB 2 dict def\n"
+            + "%%EndResource\n";
+
+    private static final String INCLUDE_A = "%%IncludeResource: font FontA\n";
+
+    private static final String HEADER
+            = "%!PS-Adobe-3.0\n"
+            + "%%Pages: 3\n"
+            + "%%EndComments\n"
+            + "%%BeginProlog\n";
+
+    @Test
+    public void testHoistIntoProlog() throws Exception {
+        String in = HEADER
+                + "%%EndProlog\n"
+                + "%%Page: 1 1\n" + FONT_A + FONT_B_1 + "showpage\n"
+                + "%%Page: 2 2\n" + FONT_A + FONT_B_2 + "showpage\n"
+                + "%%Page: 3 3\n"
+                + "%%BeginDocument: sub.eps\n" + FONT_A + "%%EndDocument\n"
+                + "%%Trailer\n"
+                + "%%EOF\n";
+        String expected = HEADER
+                + FONT_A
+                + "%%EndProlog\n"
+                + "%%Page: 1 1\n" + INCLUDE_A + FONT_B_1 + "showpage\n"
+                + "%%Page: 2 2\n" + INCLUDE_A + FONT_B_2 + "showpage\n"
+                + "%%Page: 3 3\n"
+                + "%%BeginDocument: sub.eps\n" + INCLUDE_A + "%%EndDocument\n"
+                + "%%Trailer\n"
+                + "%%EOF\n";
+
+        ResourceHoister hoister = new ResourceHoister();
+        assertEquals(expected, hoist(hoister, in));
+        assertEquals(1, hoister.getHoistedResources().size());
+        PSResource fontA = new PSResource(PSResource.TYPE_FONT, "FontA");
+        assertTrue(hoister.getHoistedResources().contains(fontA));
+        assertEquals(3, hoister.getResourceTracker().getUsageCount(fontA));
+        assertTrue(hoister.getResourceTracker().isResourceSupplied(fontA));
+    }
+
+    @Test
+    public void testFirstOccurrenceInProlog() throws Exception {
+        String in = HEADER
+                + FONT_A
+                + "%%BeginData: 1 Binary Lines\n"
+                + "%%BeginResource: font FontA\n"
+                + "%%EndData\n"
+                + "%%EndProlog\n"
+                + "%%Page: 1 1\n" + FONT_A + "showpage\n"
+                + "%%EOF\n";
+        String expected = HEADER
+                + FONT_A
+                + "%%BeginData: 1 Binary Lines\n"
+                + "%%BeginResource: font FontA\n"
+                + "%%EndData\n"
+                + "%%EndProlog\n"
+                + "%%Page: 1 1\n" + INCLUDE_A + "showpage\n"
+                + "%%EOF\n";
+        assertEquals(expected, hoist(new ResourceHoister(), in));
+    }
+
+    private String hoist(ResourceHoister hoister, String in) throws Exception {
+        byte[] data = in.getBytes("US-ASCII");
+        hoister.analyze(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        hoister.hoistResources(new ByteArrayInputStream(data), out);
+        return out.toString("US-ASCII");
+    }
+
+}